@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the throughput of {@link TopN#selectTopNIntoQueueMultithreaded(Queue, float[], Iterator, int)},
+ * where threads share one synchronized queue, and {@link ConcurrentTopN}, where each thread has its own
+ * heap, for several values of N and numbers of threads. Threads split a fixed set of values between them.
+ * Values increase slowly on average, so that many beat the current least value, which is the case that contends for the shared queue.
+ *
+ * @author Sean Owen
+ */
+public final class ConcurrentTopNLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentTopNLoadIT.class);
+
+  private static final int NUM_VALUES = 8000000;
+  private static final int ITERATIONS = 5;
+
+  @Test
+  public void testThroughput() throws Exception {
+    int cores = Runtime.getRuntime().availableProcessors();
+    float[] values = new float[NUM_VALUES];
+    RandomGenerator random = RandomManager.getRandom();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i + 1000.0f * random.nextFloat();
+    }
+    for (int numThreads : new int[] { 1, 4, cores }) {
+      ExecutorService executor = ExecutorUtils.buildExecutor("ConcurrentTopNLoadIT", numThreads);
+      try {
+        for (int howMany : new int[] { 10, 100, 1000 }) {
+          // Warm up
+          runShared(executor, values, numThreads, howMany);
+          runPerThread(executor, values, numThreads, howMany);
+
+          long sharedMicros = 0L;
+          long perThreadMicros = 0L;
+          for (int i = 0; i < ITERATIONS; i++) {
+            Stopwatch stopwatch = new Stopwatch().start();
+            runShared(executor, values, numThreads, howMany);
+            sharedMicros += stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+            stopwatch = new Stopwatch().start();
+            runPerThread(executor, values, numThreads, howMany);
+            perThreadMicros += stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+          }
+          long totalValues = (long) ITERATIONS * NUM_VALUES;
+          log.info("{} threads, top {}: shared queue {} values/ms, per-thread heaps {} values/ms",
+                   numThreads, howMany,
+                   (1000L * totalValues) / sharedMicros,
+                   (1000L * totalValues) / perThreadMicros);
+        }
+      } finally {
+        ExecutorUtils.shutdownNowAndAwait(executor);
+      }
+    }
+  }
+
+  private static void runShared(ExecutorService executor,
+                                final float[] values,
+                                final int numThreads,
+                                final int howMany) {
+    final Queue<NumericIDValue> topN = TopN.initialQueue(howMany);
+    Collection<Future<Object>> futures = Lists.newArrayListWithCapacity(numThreads);
+    for (int t = 0; t < numThreads; t++) {
+      final int start = t;
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Void call() {
+          float[] queueLeastValue = { Float.NEGATIVE_INFINITY };
+          TopN.selectTopNIntoQueueMultithreaded(topN, queueLeastValue, new ValueIterator(values, start, numThreads), howMany);
+          return null;
+        }
+      }));
+    }
+    ExecutorUtils.getResults(futures);
+    assertEquals(howMany, TopN.selectTopNFromQueue(topN, howMany).size());
+  }
+
+  private static void runPerThread(ExecutorService executor,
+                                   final float[] values,
+                                   final int numThreads,
+                                   int howMany) {
+    final ConcurrentTopN topN = new ConcurrentTopN(howMany);
+    Collection<Future<Object>> futures = Lists.newArrayListWithCapacity(numThreads);
+    for (int t = 0; t < numThreads; t++) {
+      final int start = t;
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Void call() {
+          topN.newHeap().offerAll(new ValueIterator(values, start, numThreads));
+          return null;
+        }
+      }));
+    }
+    ExecutorUtils.getResults(futures);
+    assertEquals(howMany, topN.merge().size());
+  }
+
+  /**
+   * Iterates over every {@code step}-th value, so that threads see disjoint values. Reuses one
+   * {@link NumericIDValue}, as the serving layer's scoring iterators do.
+   */
+  private static final class ValueIterator implements Iterator<NumericIDValue> {
+
+    private final float[] values;
+    private final int step;
+    private final NumericIDValue delegate;
+    private int next;
+
+    private ValueIterator(float[] values, int start, int step) {
+      this.values = values;
+      this.step = step;
+      this.delegate = new NumericIDValue();
+      this.next = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < values.length;
+    }
+
+    @Override
+    public NumericIDValue next() {
+      delegate.set(next, values[next]);
+      next += step;
+      return delegate;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
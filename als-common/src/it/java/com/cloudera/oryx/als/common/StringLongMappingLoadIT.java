@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares {@link StringLongMapping#toLong(String)} with matching a regular expression and hashing with
+ * Guava, as it did before, over a mix of numeric and string IDs. Also compares the heap used to store
+ * the reverse mapping of a million string IDs with a {@link LongObjectMap} of {@link String}s, and measures
+ * {@link StringLongMapping#toString(long)}.
+ *
+ * @author Sean Owen
+ */
+public final class StringLongMappingLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(StringLongMappingLoadIT.class);
+
+  private static final Pattern MOST_LONGS_PATTERN = Pattern.compile("(0|-?[1-9][0-9]{0,17})");
+  private static final HashFunction MD5 = Hashing.md5();
+  private static final int NUM_IDS = 1000000;
+  private static final int ITERATIONS = 5;
+
+  @Test
+  public void testToLong() {
+    String[] ids = buildIDs();
+
+    // Warm up, and check that results are the same
+    for (String id : ids) {
+      assertEquals(oldToLong(id), StringLongMapping.toLong(id));
+    }
+
+    long check = 0L;
+    long allocatedBefore = allocatedBytes();
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (String id : ids) {
+        check += oldToLong(id);
+      }
+    }
+    long oldNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    long oldAllocated = allocatedBytes() - allocatedBefore;
+
+    allocatedBefore = allocatedBytes();
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (String id : ids) {
+        check -= StringLongMapping.toLong(id);
+      }
+    }
+    long newNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    long newAllocated = allocatedBytes() - allocatedBefore;
+
+    int total = ITERATIONS * NUM_IDS;
+    log.info("Regex and Guava: {}ns/ID, {} bytes allocated/ID", oldNanos / total, oldAllocated / total);
+    log.info("StringLongMapping: {}ns/ID, {} bytes allocated/ID", newNanos / total, newAllocated / total);
+    assertEquals(0L, check);
+  }
+
+  @Test
+  public void testReverseMapping() {
+    String[] ids = buildIDs();
+    long[] numericIDs = new long[NUM_IDS];
+    for (int i = 0; i < NUM_IDS; i++) {
+      numericIDs[i] = StringLongMapping.toLong(ids[i]);
+    }
+
+    long heapBefore = usedHeap();
+    LongObjectMap<String> oldMapping = new LongObjectMap<String>();
+    for (int i = 0; i < NUM_IDS; i++) {
+      // Copy, including chars, so that the stored Strings don't share anything with the IDs
+      oldMapping.put(numericIDs[i], new String(ids[i].toCharArray()));
+    }
+    long oldHeap = usedHeap() - heapBefore;
+    assertEquals(NUM_IDS, oldMapping.size());
+    oldMapping = null;
+
+    heapBefore = usedHeap();
+    Stopwatch stopwatch = new Stopwatch().start();
+    StringLongMapping mapping = new StringLongMapping();
+    for (int i = 0; i < NUM_IDS; i++) {
+      mapping.addMapping(ids[i], numericIDs[i]);
+    }
+    long addNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    long newHeap = usedHeap() - heapBefore;
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (int j = 0; j < NUM_IDS; j++) {
+        assertNotNull(mapping.toString(numericIDs[j]));
+      }
+    }
+    long toStringNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+
+    log.info("LongObjectMap: {} bytes/ID", oldHeap / NUM_IDS);
+    log.info("StringLongMapping: {} bytes/ID, {}ns/add, {}ns/toString",
+             newHeap / NUM_IDS, addNanos / NUM_IDS, toStringNanos / (ITERATIONS * NUM_IDS));
+    assertEquals(NUM_IDS, mapping.size());
+    assertTrue(newHeap < oldHeap);
+  }
+
+  /**
+   * @return IDs, a quarter of them numeric, and the rest like typical string IDs
+   */
+  private static String[] buildIDs() {
+    RandomGenerator random = RandomManager.getRandom();
+    String[] ids = new String[NUM_IDS];
+    for (int i = 0; i < NUM_IDS; i++) {
+      if (i % 4 == 0) {
+        ids[i] = Long.toString(random.nextLong() / 10000);
+      } else {
+        ids[i] = "user-" + Long.toHexString(random.nextLong());
+      }
+    }
+    return ids;
+  }
+
+  private static long oldToLong(String id) {
+    return MOST_LONGS_PATTERN.matcher(id).matches() ? Long.parseLong(id) : MD5.hashString(id).asLong();
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @return bytes allocated by this thread so far, or 0 if the JVM does not report it
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0L;
+  }
+
+}
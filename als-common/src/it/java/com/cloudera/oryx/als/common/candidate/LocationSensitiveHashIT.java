@@ -16,7 +16,6 @@
 package com.cloudera.oryx.als.common.candidate;
 
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -31,9 +30,9 @@ import org.slf4j.LoggerFactory;
 
 import com.cloudera.oryx.als.common.lsh.LocationSensitiveHash;
 import com.cloudera.oryx.common.OryxTest;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongSet;
-import com.cloudera.oryx.common.math.SimpleVectorMath;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 import com.cloudera.oryx.common.random.RandomManager;
 import com.cloudera.oryx.common.random.RandomUtils;
 
@@ -62,7 +61,7 @@ public final class LocationSensitiveHashIT extends OryxTest {
 
     for (int iteration = 0; iteration < ITERATIONS; iteration++) {
 
-      LongObjectMap<float[]> Y = new LongObjectMap<float[]>();
+      FeatureMatrix Y = new FeatureMatrix(NUM_FEATURES, NUM_ITEMS);
       for (int i = 0; i < NUM_ITEMS; i++) {
         Y.put(i, RandomUtils.randomUnitVector(NUM_FEATURES, random));
       }
@@ -92,15 +91,15 @@ public final class LocationSensitiveHashIT extends OryxTest {
     assertTrue(avgPercentAllItemsConsidered.getResult() < 0.09);
   }
 
-  private static double[] doTestRandomVecs(LongObjectMap<float[]> Y, float[] userVec) {
+  private static double[] doTestRandomVecs(FeatureMatrix Y, float[] userVec) {
 
     LocationSensitiveHash lsh = new LocationSensitiveHash(Y, 0.1, 20);
 
     LongSet candidates = new LongSet();
     float[][] userVecs = { userVec };
-    for (Iterator<LongObjectMap.MapEntry<float[]>> candidatesIterator : lsh.getCandidateIterator(userVecs)) {
+    for (IntPrimitiveIterator candidatesIterator : lsh.getCandidateIterator(userVecs)) {
       while (candidatesIterator.hasNext()) {
-        candidates.add(candidatesIterator.next().getKey());
+        candidates.add(Y.getID(candidatesIterator.nextInt()));
       }
     }
 
@@ -126,13 +125,13 @@ public final class LocationSensitiveHashIT extends OryxTest {
     return new double[] {percentTopRecsConsidered, ndcg, percentAllItemsConsidered};
   }
 
-  private static List<Long> findTopRecommendations(LongObjectMap<float[]> Y, float[] userVec) {
+  private static List<Long> findTopRecommendations(FeatureMatrix Y, float[] userVec) {
     // SortedMap<Double,Long> allScores = Maps.newTreeMap(Collections.reverseOrder());
     // Above triggers some weird OpenJDK 1.6.0_30 compiler bug. Use equivalent:
     SortedMap<Double,Long> allScores = new TreeMap<Double,Long>(Collections.reverseOrder());
-    for (LongObjectMap.MapEntry<float[]> entry : Y.entrySet()) {
-      double dot = SimpleVectorMath.dot(entry.getValue(), userVec);
-      allScores.put(dot, entry.getKey());
+    for (int row = 0; row < Y.size(); row++) {
+      double dot = Y.dot(row, userVec);
+      allScores.put(dot, Y.getID(row));
     }
     List<Long> topRecommendations = Lists.newArrayList();
     for (Map.Entry<Double,Long> entry : allScores.entrySet()) {
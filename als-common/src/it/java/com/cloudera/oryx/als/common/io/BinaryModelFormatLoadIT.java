@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.DataUtils;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * Compares load time and size on disk of feature vectors in the text format and in the binary format
+ * of {@link BinaryModelFormat}, for a synthetic 10M x 50 model. The model is too large to hold in a
+ * test JVM, so it is generated and written in chunks, and loading decodes each vector without storing it.
+ *
+ * @author Sean Owen
+ */
+public final class BinaryModelFormatLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BinaryModelFormatLoadIT.class);
+
+  private static final int NUM_ROWS = 10000000;
+  private static final int NUM_FEATURES = 50;
+  private static final int ROWS_PER_CHUNK = 1000000;
+
+  @Test
+  public void testLoad() throws Exception {
+    File tempDir = Files.createTempDir();
+    try {
+      File textFile = new File(tempDir, "0.csv.gz");
+      File binaryDir = new File(tempDir, "binary");
+      write(textFile, binaryDir);
+
+      long textBytes = textFile.length();
+      long binaryBytes = sizeOf(binaryDir);
+      log.info("Bytes on disk: text {}MB, binary {}MB", textBytes / 1000000, binaryBytes / 1000000);
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      double textSum = loadText(textFile);
+      long textMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+      stopwatch = new Stopwatch().start();
+      double binarySum = loadBinary(binaryDir);
+      long binaryMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+      log.info("Load time: text {}ms, binary {}ms", textMS, binaryMS);
+      assertEquals(textSum, binarySum, 1.0e-3 * FastMath.abs(textSum) + 1.0);
+    } finally {
+      IOUtils.deleteRecursively(tempDir);
+    }
+  }
+
+  private static void write(File textFile, File binaryDir) throws Exception {
+    RandomGenerator random = RandomManager.getRandom();
+    Writer text = IOUtils.buildGZIPWriter(textFile);
+    try {
+      String[] floatStrings = new String[NUM_FEATURES];
+      for (int chunk = 0; chunk * ROWS_PER_CHUNK < NUM_ROWS; chunk++) {
+        LongObjectMap<float[]> vectors = new LongObjectMap<float[]>(ROWS_PER_CHUNK);
+        for (int i = 0; i < ROWS_PER_CHUNK; i++) {
+          long id = (long) chunk * ROWS_PER_CHUNK + i;
+          float[] vector = RandomUtils.randomUnitVector(NUM_FEATURES, random);
+          vectors.put(id, vector);
+          for (int j = 0; j < NUM_FEATURES; j++) {
+            floatStrings[j] = Float.toString(vector[j]);
+          }
+          text.write(Long.toString(id));
+          text.write('\t');
+          text.write(DelimitedDataUtils.encode(',', (Object[]) floatStrings));
+          text.write('\n');
+        }
+        BinaryModelWriter.writeFeatureVectors(vectors, new File(binaryDir, Integer.toString(chunk)));
+        log.info("Wrote {} rows", (chunk + 1) * ROWS_PER_CHUNK);
+      }
+    } finally {
+      text.close();
+    }
+  }
+
+  private static double loadText(File textFile) throws Exception {
+    double sum = 0.0;
+    for (String line : new FileLineIterable(textFile)) {
+      int tab = line.indexOf('\t');
+      sum += Long.parseLong(line.substring(0, tab));
+      float[] vector = DataUtils.readFeatureVector(line.substring(tab + 1));
+      sum += vector[0];
+    }
+    return sum;
+  }
+
+  private static double loadBinary(File binaryDir) throws Exception {
+    double sum = 0.0;
+    float[] vector = new float[NUM_FEATURES];
+    for (File chunkDir : binaryDir.listFiles()) {
+      for (File part : chunkDir.listFiles()) {
+        MappedFeatureVectors vectors = MappedFeatureVectors.open(part);
+        for (int i = 0; i < vectors.size(); i++) {
+          sum += vectors.getID(i);
+          vectors.getVector(i, vector);
+          sum += vector[0];
+        }
+      }
+    }
+    return sum;
+  }
+
+  private static long sizeOf(File dir) {
+    long size = 0L;
+    for (File file : dir.listFiles()) {
+      size += file.isDirectory() ? sizeOf(file) : file.length();
+    }
+    return size;
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.lsh;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * Compares candidate generation time of {@link LocationSensitiveHash} when probing buckets directly versus
+ * scanning all buckets, the original implementation, over a range of {@code num-hashes}. Also checks that
+ * probing finds the same candidates.
+ *
+ * @author Sean Owen
+ */
+public final class LocationSensitiveHashLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(LocationSensitiveHashLoadIT.class);
+
+  private static final int NUM_FEATURES = 30;
+  private static final int NUM_ITEMS = 500000;
+  private static final int NUM_USERS = 200;
+  private static final double SAMPLE_RATIO = 0.1;
+  private static final int[] NUM_HASHES = { 16, 20, 24, 32, 48, 64 };
+
+  @Test
+  public void testProbeVersusScan() {
+    RandomGenerator random = RandomManager.getRandom();
+    FeatureMatrix Y = new FeatureMatrix(NUM_FEATURES, NUM_ITEMS);
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      Y.put(i, RandomUtils.randomUnitVector(NUM_FEATURES, random));
+    }
+    float[][][] userVectors = new float[NUM_USERS][][];
+    for (int i = 0; i < NUM_USERS; i++) {
+      userVectors[i] = new float[][] { RandomUtils.randomUnitVector(NUM_FEATURES, random) };
+    }
+
+    for (int numHashes : NUM_HASHES) {
+      LocationSensitiveHash lsh = new LocationSensitiveHash(Y, SAMPLE_RATIO, numHashes);
+
+      // Warm up
+      for (float[][] userVector : userVectors) {
+        countCandidates(lsh.getCandidateIterator(userVector));
+        countCandidates(lsh.getCandidateIteratorByScan(userVector));
+      }
+
+      // Time only generating the candidate iterators, which is what differs
+      long totalBuckets = 0L;
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (float[][] userVector : userVectors) {
+        totalBuckets += lsh.getCandidateIterator(userVector).size();
+      }
+      long probeMicros = stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+
+      stopwatch = new Stopwatch().start();
+      for (float[][] userVector : userVectors) {
+        totalBuckets -= lsh.getCandidateIteratorByScan(userVector).size();
+      }
+      long scanMicros = stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+      assertEquals(0L, totalBuckets);
+
+      long totalCandidates = 0L;
+      for (float[][] userVector : userVectors) {
+        totalCandidates += countCandidates(lsh.getCandidateIterator(userVector));
+      }
+
+      long found = 0L;
+      long expected = 0L;
+      for (float[][] userVector : userVectors) {
+        LongSet probed = toRows(lsh.getCandidateIterator(userVector));
+        LongSet scanned = toRows(lsh.getCandidateIteratorByScan(userVector));
+        expected += scanned.size();
+        for (long row : scanned) {
+          if (probed.contains(row)) {
+            found++;
+          }
+        }
+      }
+      double recall = expected == 0L ? 1.0 : (double) found / expected;
+
+      log.info("num-hashes {}: {} candidates/query, {}us/query vs {}us/query by scan, recall {}",
+               numHashes,
+               totalCandidates / NUM_USERS,
+               probeMicros / NUM_USERS,
+               scanMicros / NUM_USERS,
+               recall);
+      assertEquals(1.0, recall);
+    }
+  }
+
+  private static long countCandidates(Collection<IntPrimitiveIterator> candidates) {
+    long count = 0L;
+    for (IntPrimitiveIterator it : candidates) {
+      while (it.hasNext()) {
+        it.nextInt();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static LongSet toRows(Collection<IntPrimitiveIterator> candidates) {
+    LongSet rows = new LongSet();
+    for (IntPrimitiveIterator it : candidates) {
+      while (it.hasNext()) {
+        rows.add(it.nextInt());
+      }
+    }
+    return rows;
+  }
+
+}
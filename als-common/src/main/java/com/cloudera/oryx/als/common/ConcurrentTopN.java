@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>Finds the top N values from several streams that are consumed by different threads at once. Unlike
+ * {@link TopN#selectTopNIntoQueueMultithreaded(java.util.Queue, float[], Iterator, int)}, threads do not
+ * share a queue. Each thread adds to its own {@link Heap}, obtained from {@link #newHeap()}, which keeps
+ * IDs and values in primitive arrays and allocates nothing per value. Heaps are merged once, by
+ * {@link #merge()}, after all threads are done.</p>
+ *
+ * <p>Once any heap holds N values, no value less than or equal to its least value can be in the overall
+ * top N. Heaps publish this bound so that all threads can discard such values early.</p>
+ *
+ * @author Sean Owen
+ */
+public final class ConcurrentTopN {
+
+  private final int howMany;
+  private final List<Heap> heaps;
+  /**
+   * Updated without synchronization, so a larger bound may be overwritten by a smaller one. Any bound
+   * published by a full heap is valid, so this only costs some pruning.
+   */
+  private volatile float lowerBound;
+
+  /**
+   * @param howMany how many top values to choose
+   */
+  public ConcurrentTopN(int howMany) {
+    Preconditions.checkArgument(howMany > 0, "howMany must be positive: %s", howMany);
+    this.howMany = howMany;
+    this.heaps = Lists.newArrayList();
+    this.lowerBound = Float.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * @return a new {@link Heap} for the use of one thread
+   */
+  public Heap newHeap() {
+    Heap heap = new Heap();
+    synchronized (heaps) {
+      heaps.add(heap);
+    }
+    return heap;
+  }
+
+  /**
+   * Merges all heaps into the overall top N. Must be called only after all threads have finished adding
+   * values, and only once.
+   *
+   * @return the top N values (at most), ordered by value descending.
+   */
+  public List<NumericIDValue> merge() {
+    Heap[] sorted;
+    synchronized (heaps) {
+      sorted = heaps.toArray(new Heap[heaps.size()]);
+    }
+    int total = 0;
+    for (Heap heap : sorted) {
+      heap.sortDescending();
+      total += heap.size;
+    }
+    int resultSize = FastMath.min(howMany, total);
+    if (resultSize == 0) {
+      return Collections.emptyList();
+    }
+
+    // k-way merge of the sorted heaps; k is about the number of threads, so a linear scan of heads is enough
+    int[] heads = new int[sorted.length];
+    List<NumericIDValue> result = Lists.newArrayListWithCapacity(resultSize);
+    for (int i = 0; i < resultSize; i++) {
+      int best = -1;
+      float bestValue = Float.NEGATIVE_INFINITY;
+      for (int h = 0; h < sorted.length; h++) {
+        Heap heap = sorted[h];
+        int head = heads[h];
+        if (head < heap.size && (best < 0 || heap.values[head] > bestValue)) {
+          best = h;
+          bestValue = heap.values[head];
+        }
+      }
+      Heap bestHeap = sorted[best];
+      result.add(new NumericIDValue(bestHeap.ids[heads[best]], bestValue));
+      heads[best]++;
+    }
+    return result;
+  }
+
+  /**
+   * A bounded min-heap of IDs and values, to be used by one thread.
+   */
+  public final class Heap {
+
+    private final long[] ids;
+    private final float[] values;
+    private int size;
+
+    private Heap() {
+      ids = new long[howMany];
+      values = new float[howMany];
+    }
+
+    /**
+     * @param values stream of values from which to choose; {@code null} elements are skipped
+     */
+    public void offerAll(Iterator<NumericIDValue> values) {
+      while (values.hasNext()) {
+        NumericIDValue value = values.next();
+        if (value != null) {
+          offer(value.getID(), value.getValue());
+        }
+      }
+    }
+
+    /**
+     * @param value value to consider for the top N
+     * @return true iff {@link #offer(long, float)} would currently add the value. Callers can use this to skip
+     *  further work for values that would not be added.
+     */
+    public boolean accepts(float value) {
+      return value > lowerBound && (size < howMany || value > values[0]);
+    }
+
+    /**
+     * @param id ID of value
+     * @param value value to consider for the top N
+     */
+    public void offer(long id, float value) {
+      if (value <= lowerBound) {
+        return;
+      }
+      if (size < howMany) {
+        siftUp(id, value);
+        if (size == howMany) {
+          publishBound();
+        }
+      } else if (value > values[0]) {
+        replaceLeast(id, value);
+        publishBound();
+      }
+    }
+
+    private void publishBound() {
+      float least = values[0];
+      if (least > lowerBound) {
+        lowerBound = least;
+      }
+    }
+
+    private void siftUp(long id, float value) {
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (values[parent] <= value) {
+          break;
+        }
+        ids[i] = ids[parent];
+        values[i] = values[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      values[i] = value;
+    }
+
+    private void replaceLeast(long id, float value) {
+      siftDown(id, value, size);
+    }
+
+    private void siftDown(long id, float value, int heapSize) {
+      int i = 0;
+      int half = heapSize >>> 1;
+      while (i < half) {
+        int child = 2 * i + 1;
+        int right = child + 1;
+        if (right < heapSize && values[right] < values[child]) {
+          child = right;
+        }
+        if (value <= values[child]) {
+          break;
+        }
+        ids[i] = ids[child];
+        values[i] = values[child];
+        i = child;
+      }
+      ids[i] = id;
+      values[i] = value;
+    }
+
+    /**
+     * Heap sort: repeatedly moves the least value to the end, leaving values in descending order.
+     */
+    private void sortDescending() {
+      for (int end = size - 1; end > 0; end--) {
+        long leastID = ids[0];
+        float leastValue = values[0];
+        siftDown(ids[end], values[end], end);
+        ids[end] = leastID;
+        values[end] = leastValue;
+      }
+    }
+
+  }
+
+}
@@ -203,6 +203,35 @@ public interface OryxRecommender {
                                 boolean considerKnownItems,
                                 Rescorer rescorer) throws NoSuchUserException, NotReadyException;
 
+  /**
+   * Recommends to each of many users independently, like {@link #recommend(String, int, boolean, Rescorer)}
+   * with no {@link Rescorer}, but in fewer passes over all items than one per user. Every item is scored
+   * exactly, rather than only the candidates chosen by a configured
+   * {@link com.cloudera.oryx.als.common.candidate.CandidateFilter}, so results can differ from
+   * {@link #recommend(String, int, boolean, Rescorer)}'s when one that approximates, like locality-sensitive
+   * hashing, is configured.
+   *
+   * @param userIDs users for which recommendations are to be computed
+   * @param howMany desired number of recommendations for each user
+   * @param considerKnownItems for each user, whether items that the user is already associated to are
+   *  candidates for recommendation
+   * @return for each user, in order, {@link List} of recommended {@link IDValue}s, ordered from most strongly
+   *  recommend to least, or {@code null} if the user is not known in the model
+   * @throws NotReadyException if the recommender has no model available yet
+   * @throws UnsupportedOperationException if known items are not to be considered for a known user, but
+   *  {@link #hasKnownItems()} is false
+   */
+  List<List<IDValue>> recommendToBatch(String[] userIDs,
+                                       int[] howMany,
+                                       boolean[] considerKnownItems) throws NotReadyException;
+
+  /**
+   * @return true if the model records the items each user is already associated to, which is required in order
+   *  to not consider known items when recommending
+   * @throws NotReadyException if the recommender has no model available yet
+   */
+  boolean hasKnownItems() throws NotReadyException;
+
   /**
    * Computes recommendations for a user that is not known to the model yet; instead, the user's
    * associated items are supplied to the method and it proceeds as if a user with these associated
@@ -13,26 +13,61 @@
  * License.
  */
 
+
 package com.cloudera.oryx.als.common;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
 
-import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.random.RandomUtils;
 
 /**
- * Encapsulates a mapping from {@link String} to {@code long} and back. Given {@link String}s, it hashes
+ * <p>Encapsulates a mapping from {@link String} to {@code long} and back. Given {@link String}s, it hashes
  * them to {@code long} and stores the mapping, so that the original {@link String} can be recovered from the
  * {@code long}. In the rare case that two hash to the same value, the more recent mapping "wins" and overwrites
- * a previous value.
+ * a previous value.</p>
+ *
+ * <p>Strings are stored once each, UTF-8 encoded, one after the other in large chunks of bytes, rather than as
+ * {@link String} objects. An open-addressed table maps each {@code long} to where its string starts. Both only
+ * grow; an overwritten mapping's old string is not reclaimed. Adding mappings is synchronized, but looking them
+ * up takes no lock: the table and chunks are published so that a reader sees each mapping either completely or
+ * not at all. A string with an unpaired surrogate char can't be encoded in UTF-8 and comes back with a '?'
+ * in its place, as it would if written to a file in UTF-8.</p>
  *
  * @author Sean Owen
  */
 public final class StringLongMapping {
 
+  /** Max digits of an ID treated as a number; see {@link #isNumeric(CharSequence)} */
+  private static final int MAX_NUMERIC_DIGITS = 18;
+  private static final int CHUNK_BYTES = 1 << 20;
+  private static final int MIN_TABLE_SLOTS = 64;
+  private static final double MAX_LOAD = 0.7;
+
+  private volatile Table table;
+  /** Chunks of encoded strings; replaced by a longer copy when one is added */
+  private volatile byte[][] chunks;
+  private volatile int size;
+  // Guarded by this:
+  private byte[] currentChunk;
+  private int chunkPosition;
+
+  public StringLongMapping() {
+    table = new Table(MIN_TABLE_SLOTS);
+    chunks = new byte[0][];
+  }
+
+  public static long toLong(CharSequence id) {
+    return isNumeric(id) ? parseNumeric(id) : RandomUtils.hash(id);
+  }
+
   /**
    * long min/max values are 19 digits. We're looking at only up to 18 digits here.
    * Very big longs will be treated as strings and hashed. This is useful because
@@ -43,20 +78,45 @@ public final class StringLongMapping {
    * mapping. (We also save catching an exception in long parsing this way since any
    * long matching this will definitely be parseable.) Note that we do not treat values
    * with a leading 0 as if they are numeric, but negative values are fine.
+   *
+   * @return true iff the ID is "0", or an optional '-', then a nonzero digit, then up to 17 more digits
    */
-  private static final Pattern MOST_LONGS_PATTERN = Pattern.compile("(0|-?[1-9][0-9]{0,17})");
-  // Must start with a non-zero digit, then up to 17 more. (Of course, 0 by itself is allowed.)
-
-  private final LongObjectMap<String> reverseMapping;
-  private final ReadWriteLock lock;
-
-  public StringLongMapping() {
-    reverseMapping = new LongObjectMap<String>();
-    lock = new ReentrantReadWriteLock();
+  public static boolean isNumeric(CharSequence id) {
+    int length = id.length();
+    if (length == 0) {
+      return false;
+    }
+    int start = id.charAt(0) == '-' ? 1 : 0;
+    int digits = length - start;
+    if (digits == 0 || digits > MAX_NUMERIC_DIGITS) {
+      return false;
+    }
+    char first = id.charAt(start);
+    if (first == '0') {
+      return length == 1;
+    }
+    if (first < '1' || first > '9') {
+      return false;
+    }
+    for (int i = start + 1; i < length; i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
   }
 
-  public static long toLong(String id) {
-    return MOST_LONGS_PATTERN.matcher(id).matches() ? Long.parseLong(id) : RandomUtils.hash(id);
+  /**
+   * @param id ID for which {@link #isNumeric(CharSequence)} is true
+   */
+  private static long parseNumeric(CharSequence id) {
+    boolean negative = id.charAt(0) == '-';
+    long value = 0L;
+    for (int i = negative ? 1 : 0; i < id.length(); i++) {
+      value = 10L * value + (id.charAt(i) - '0');
+    }
+    return negative ? -value : value;
   }
 
   /**
@@ -64,8 +124,8 @@ public final class StringLongMapping {
    * @return hash of {@code id} argument, now stored in the mapping
    */
   public long add(String id) {
-    if (MOST_LONGS_PATTERN.matcher(id).matches()) {
-      return Long.parseLong(id);
+    if (isNumeric(id)) {
+      return parseNumeric(id);
     }
     long numericID = RandomUtils.hash(id);
     addMapping(id, numericID);
@@ -77,18 +137,73 @@ public final class StringLongMapping {
    * @param numericID explicit, supplied hash of {@code id} argument, given to be
    *  stored in the mapping
    */
-  public void addMapping(String id, long numericID) {
-    Lock writeLock = lock.writeLock();
-    writeLock.lock();
-    try {
-      reverseMapping.put(numericID, id);
-    } finally {
-      writeLock.unlock();
+  public synchronized void addMapping(String id, long numericID) {
+    Table theTable = table;
+    int slot = theTable.find(numericID);
+    long existing = theTable.getHandle(slot);
+    int length = utf8Length(id);
+    if (existing != 0L && equalsAt(existing, id, length)) {
+      return;
+    }
+    int position = reserve(varIntLength(length) + length);
+    byte[] chunk = currentChunk;
+    int stringStart = writeVarInt(length, chunk, position);
+    encodeUTF8(id, chunk, stringStart);
+    long handle = handle(chunks.length - 1, position);
+    if (existing == 0L) {
+      theTable.insert(slot, numericID, handle);
+      size++;
+      maybeGrow(size);
+    } else {
+      theTable.setHandle(slot, handle);
+    }
+  }
+
+  /**
+   * Adds many mappings at once, whose strings are already UTF-8 encoded, as in the binary model format.
+   * The strings are copied as bytes, without decoding them.
+   *
+   * @param numericIDs numeric IDs, from the current position
+   * @param offsets {@code count + 1} offsets into {@code strings}, from the current position; string
+   *  {@code i} is from offset {@code i}, inclusive, to offset {@code i + 1}, exclusive
+   * @param strings UTF-8 encoded strings, at the given offsets
+   * @param count number of mappings
+   */
+  public synchronized void addMappingsUTF8(LongBuffer numericIDs, IntBuffer offsets, ByteBuffer strings, int count) {
+    Preconditions.checkArgument(count >= 0, "Bad count: %s", count);
+    maybeGrow(size + count);
+    int idsStart = numericIDs.position();
+    int offsetsStart = offsets.position();
+    ByteBuffer source = strings.duplicate();
+    int stringsStart = source.position();
+    for (int i = 0; i < count; i++) {
+      long numericID = numericIDs.get(idsStart + i);
+      int from = stringsStart + offsets.get(offsetsStart + i);
+      int length = stringsStart + offsets.get(offsetsStart + i + 1) - from;
+
+      Table theTable = table;
+      int slot = theTable.find(numericID);
+      long existing = theTable.getHandle(slot);
+      if (existing != 0L && equalsAt(existing, source, from, length)) {
+        continue;
+      }
+      int position = reserve(varIntLength(length) + length);
+      byte[] chunk = currentChunk;
+      int stringStart = writeVarInt(length, chunk, position);
+      source.position(from);
+      source.get(chunk, stringStart, length);
+      long handle = handle(chunks.length - 1, position);
+      if (existing == 0L) {
+        theTable.insert(slot, numericID, handle);
+        size++;
+      } else {
+        theTable.setHandle(slot, handle);
+      }
     }
   }
 
   public int size() {
-    return reverseMapping.size();
+    return size;
   }
 
   /**
@@ -97,25 +212,255 @@ public final class StringLongMapping {
    *   the argument as a {@link String}
    */
   public String toString(long numericID) {
-    String id = null;
-    Lock readLock = lock.readLock();
-    readLock.lock();
-    try {
-      id = reverseMapping.get(numericID);
-    } finally {
-      readLock.unlock();
+    Table theTable = table;
+    long handle = theTable.getHandle(theTable.find(numericID));
+    if (handle == 0L) {
+      return Long.toString(numericID);
+    }
+    byte[] chunk = chunks[chunkIndex(handle)];
+    int position = chunkOffset(handle);
+    int length = readVarInt(chunk, position);
+    position += varIntLength(length);
+    return new String(chunk, position, length, Charsets.UTF_8);
+  }
+
+  /**
+   * @return all numeric IDs with a mapping, in no particular order. Mappings added while this runs may or
+   *  may not be included.
+   */
+  public long[] getNumericIDs() {
+    Table theTable = table;
+    long[] ids = new long[size];
+    int count = 0;
+    for (int slot = 0; slot <= theTable.mask; slot++) {
+      if (theTable.getHandle(slot) != 0L) {
+        if (count == ids.length) {
+          ids = Arrays.copyOf(ids, 2 * count + 1);
+        }
+        ids[count++] = theTable.getKey(slot);
+      }
+    }
+    return count == ids.length ? ids : Arrays.copyOf(ids, count);
+  }
+
+  // Below, only called while holding this object's lock
+
+  /**
+   * @return position in {@link #currentChunk} of {@code bytes} free bytes, adding a chunk if needed
+   */
+  private int reserve(int bytes) {
+    if (currentChunk == null || chunkPosition + bytes > currentChunk.length) {
+      currentChunk = new byte[FastMath.max(CHUNK_BYTES, bytes)];
+      chunkPosition = 0;
+      byte[][] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+      newChunks[newChunks.length - 1] = currentChunk;
+      chunks = newChunks;
+    }
+    int position = chunkPosition;
+    chunkPosition += bytes;
+    return position;
+  }
+
+  private void maybeGrow(int neededSize) {
+    Table theTable = table;
+    int slots = theTable.mask + 1;
+    if (neededSize <= MAX_LOAD * slots) {
+      return;
+    }
+    while (neededSize > MAX_LOAD * slots) {
+      slots <<= 1;
+    }
+    Table newTable = new Table(slots);
+    for (int slot = 0; slot <= theTable.mask; slot++) {
+      long handle = theTable.getHandle(slot);
+      if (handle != 0L) {
+        long key = theTable.getKey(slot);
+        newTable.insert(newTable.find(key), key, handle);
+      }
+    }
+    table = newTable;
+  }
+
+  private boolean equalsAt(long handle, String id, int utf8Length) {
+    byte[] chunk = chunks[chunkIndex(handle)];
+    int position = chunkOffset(handle);
+    int length = readVarInt(chunk, position);
+    position += varIntLength(length);
+    return length == utf8Length && compareUTF8(id, chunk, position);
+  }
+
+  private boolean equalsAt(long handle, ByteBuffer source, int from, int sourceLength) {
+    byte[] chunk = chunks[chunkIndex(handle)];
+    int position = chunkOffset(handle);
+    int length = readVarInt(chunk, position);
+    position += varIntLength(length);
+    if (length != sourceLength) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (chunk[position + i] != source.get(from + i)) {
+        return false;
+      }
     }
-    return id == null ? Long.toString(numericID) : id;
+    return true;
+  }
+
+  private static long handle(int chunkIndex, int offset) {
+    // Chunk index is stored plus 1 so that no handle is 0, which marks an empty slot
+    return ((long) (chunkIndex + 1) << 32) | offset;
+  }
+
+  private static int chunkIndex(long handle) {
+    return (int) (handle >>> 32) - 1;
   }
 
-  // Careful, this is controlled by the lock
+  private static int chunkOffset(long handle) {
+    return (int) handle;
+  }
 
-  public LongObjectMap<String> getReverseMapping() {
-    return reverseMapping;
+  private static int varIntLength(int value) {
+    int length = 1;
+    while ((value >>>= 7) != 0) {
+      length++;
+    }
+    return length;
   }
 
-  public ReadWriteLock getLock() {
-    return lock;
+  private static int readVarInt(byte[] chunk, int position) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = chunk[position++];
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  /**
+   * @return position after the written value
+   */
+  private static int writeVarInt(int value, byte[] dest, int position) {
+    while ((value & ~0x7F) != 0) {
+      dest[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    dest[position++] = (byte) value;
+    return position;
+  }
+
+  private static int utf8Length(String s) {
+    return encodeOrCompareUTF8(s, null, 0, false);
+  }
+
+  private static void encodeUTF8(String s, byte[] dest, int position) {
+    encodeOrCompareUTF8(s, dest, position, true);
+  }
+
+  private static boolean compareUTF8(String s, byte[] dest, int position) {
+    return encodeOrCompareUTF8(s, dest, position, false) >= 0;
+  }
+
+  /**
+   * Encodes a string in UTF-8 the way {@link String#getBytes(java.nio.charset.Charset)} does, and either writes
+   * the bytes to {@code dest}, compares them to those in {@code dest}, or if {@code dest} is {@code null}, just
+   * counts them.
+   *
+   * @return number of bytes, or -1 if comparing and the bytes differ
+   */
+  private static int encodeOrCompareUTF8(String s, byte[] dest, int position, boolean write) {
+    int start = position;
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      int c = s.charAt(i);
+      int numBytes;
+      if (c < 0x80) {
+        numBytes = 1;
+      } else if (c < 0x800) {
+        numBytes = 2;
+      } else if (Character.isSurrogate((char) c)) {
+        if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          c = Character.toCodePoint((char) c, s.charAt(++i));
+          numBytes = 4;
+        } else {
+          c = '?';
+          numBytes = 1;
+        }
+      } else {
+        numBytes = 3;
+      }
+      if (dest != null) {
+        for (int j = 0; j < numBytes; j++) {
+          byte b;
+          if (numBytes == 1) {
+            b = (byte) c;
+          } else if (j == 0) {
+            // Leading byte: 110xxxxx, 1110xxxx or 11110xxx
+            b = (byte) ((0xF00 >> numBytes) | (c >> (6 * (numBytes - 1))));
+          } else {
+            b = (byte) (0x80 | ((c >> (6 * (numBytes - 1 - j))) & 0x3F));
+          }
+          if (write) {
+            dest[position] = b;
+          } else if (dest[position] != b) {
+            return -1;
+          }
+          position++;
+        }
+      } else {
+        position += numBytes;
+      }
+    }
+    return position - start;
+  }
+
+  /**
+   * Open-addressed table of numeric IDs and handles to their strings. Each slot is two consecutive longs:
+   * the ID, then the handle, which is 0 if the slot is empty. A handle is set only after its ID, so a reader
+   * that sees a nonzero handle sees its ID.
+   */
+  private static final class Table {
+
+    private final AtomicLongArray entries;
+    private final int mask;
+
+    private Table(int slots) {
+      entries = new AtomicLongArray(2 * slots);
+      mask = slots - 1;
+    }
+
+    /**
+     * @return slot holding the ID, or else the empty slot where it would be inserted
+     */
+    int find(long key) {
+      long hash = key * 0x9E3779B97F4A7C15L;
+      int slot = (int) (hash ^ (hash >>> 32)) & mask;
+      while (true) {
+        if (getHandle(slot) == 0L || getKey(slot) == key) {
+          return slot;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    long getKey(int slot) {
+      return entries.get(2 * slot);
+    }
+
+    long getHandle(int slot) {
+      return entries.get(2 * slot + 1);
+    }
+
+    void insert(int slot, long key, long handle) {
+      entries.lazySet(2 * slot, key);
+      entries.set(2 * slot + 1, handle);
+    }
+
+    void setHandle(int slot, long handle) {
+      entries.set(2 * slot + 1, handle);
+    }
+
   }
 
 }
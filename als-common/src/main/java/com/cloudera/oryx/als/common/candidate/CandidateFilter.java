@@ -16,9 +16,9 @@
 package com.cloudera.oryx.als.common.candidate;
 
 import java.util.Collection;
-import java.util.Iterator;
 
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 
 /**
  * <p>Implementations of this interface speed up the recommendation process by pre-selecting a set of items
@@ -36,7 +36,7 @@ import com.cloudera.oryx.common.collection.LongObjectMap;
  * {@link com.cloudera.oryx.als.common.rescorer.RescorerProvider} unless it's clear that it is not fast
  * enough.</em></p>
  *
- * <p>Implementations should define a constructor that accepts a parameter of type {@link LongObjectMap}.
+ * <p>Implementations should define a constructor that accepts a parameter of type {@link FeatureMatrix}.
  * This is a reference to the "Y" matrix in the model -- item-feature matrix.
  * Access to Y is protected by a lock, but, the implementation can assume that it is locked for
  * reading (not writing) during the constructor call, and is locked for reading (not writing) during
@@ -52,7 +52,7 @@ public interface CandidateFilter {
   // Note that your implementation will need a constructor matching the following, which is how it
   // gets a reference to the set of items:
   
-  // public YourCandidateFilter(FastByIDMap<float[]> Y) {
+  // public YourCandidateFilter(FeatureMatrix Y) {
   //   ...
   // }
 
@@ -61,11 +61,11 @@ public interface CandidateFilter {
    *  influence which items are returned. Use {@link com.cloudera.oryx.als.common.StringLongMapping#toLong(String)}
    *  to find the numeric internal ID for a given string ID.
    * @return a set of items most likely to be a good recommendation for the given users. These are returned
-   *  as item ID / vector pairs ({@link LongObjectMap}'s {@code MapEntry}). They are returned as an {@link Iterator},
+   *  as rows of Y ({@link FeatureMatrix#indexOf(long)}). They are returned as an {@link IntPrimitiveIterator},
    *  and not just one, but potentially many. If several are returned, then the caller can process the
-   *  {@link Iterator}s in parallel for speed.
+   *  {@link IntPrimitiveIterator}s in parallel for speed.
    */
-  Collection<Iterator<LongObjectMap.MapEntry<float[]>>> getCandidateIterator(float[][] userVectors);
+  Collection<IntPrimitiveIterator> getCandidateIterator(float[][] userVectors);
 
   /**
    * Note a new item has appeared at run-time.
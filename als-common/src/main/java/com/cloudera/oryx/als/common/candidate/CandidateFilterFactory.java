@@ -21,7 +21,7 @@ import com.cloudera.oryx.common.ClassUtils;
 import com.google.common.base.Preconditions;
 import com.typesafe.config.Config;
 
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.settings.ConfigUtils;
 
 /**
@@ -29,8 +29,10 @@ import com.cloudera.oryx.common.settings.ConfigUtils;
  * If the "model.candidateFilter.customClass" system property is set, then this class will be loaded and used.
  * See notes in {@link CandidateFilter} about how the class must be implemented.</p>
  * 
- * <p>Otherwise, if "model.lsh.sample-ratio" is set to a value less than 1, then {@link LocationSensitiveHashFilter}
- * will be used. It is a somewhat special case, a built-in type of filter.</p>
+ * <p>Otherwise, "model.candidate-filter" chooses one of the built-in filters: "lsh" for
+ * {@link LocationSensitiveHashFilter}, "hnsw" for {@link HierarchicalNavigableSmallWorldFilter}, or "identity"
+ * for an implementation that does no filtering. If it is not set, then {@link LocationSensitiveHashFilter}
+ * will be used if "model.lsh.sample-ratio" is set to a value less than 1.</p>
  * 
  * <p>Otherwise an implementation that does no filtering will be returned.</p>
  * 
@@ -41,6 +43,10 @@ public final class CandidateFilterFactory {
   private final double lshSampleRatio;
   private final int numHashes;
   private final String candidateFilterClassName;
+  private final String candidateFilterName;
+  private final int hnswMaxConnections;
+  private final int hnswEfConstruction;
+  private final int hnswEfSearch;
 
   public CandidateFilterFactory() {
     Config config = ConfigUtils.getDefaultConfig();
@@ -49,6 +55,18 @@ public final class CandidateFilterFactory {
     candidateFilterClassName =
         config.hasPath("serving-layer.candidate-filter-class") ?
         config.getString("serving-layer.candidate-filter-class") : null;
+    if (config.hasPath("model.candidate-filter")) {
+      candidateFilterName = config.getString("model.candidate-filter");
+    } else {
+      candidateFilterName = lshSampleRatio < 1.0 ? "lsh" : "identity";
+    }
+    Preconditions.checkArgument(
+        "identity".equals(candidateFilterName) || "lsh".equals(candidateFilterName) ||
+        "hnsw".equals(candidateFilterName),
+        "Unknown candidate filter: %s", candidateFilterName);
+    hnswMaxConnections = config.getInt("model.hnsw.max-connections");
+    hnswEfConstruction = config.getInt("model.hnsw.ef-construction");
+    hnswEfSearch = config.getInt("model.hnsw.ef-search");
   }
 
   /**
@@ -57,7 +75,7 @@ public final class CandidateFilterFactory {
    * @param Y item-feature matrix
    * @param yReadLock read lock that should be acquired to access {@code Y}
    */
-  public CandidateFilter buildCandidateFilter(LongObjectMap<float[]> Y, Lock yReadLock) {
+  public CandidateFilter buildCandidateFilter(FeatureMatrix Y, Lock yReadLock) {
     Preconditions.checkNotNull(Y);
     if (!Y.isEmpty()) {
       yReadLock.lock();
@@ -65,13 +83,20 @@ public final class CandidateFilterFactory {
         if (candidateFilterClassName != null) {
           return ClassUtils.loadInstanceOf(candidateFilterClassName,
                                            CandidateFilter.class,
-                                           new Class<?>[]{LongObjectMap.class},
+                                           new Class<?>[]{FeatureMatrix.class},
                                            new Object[]{Y});
         }
-        // LSH is a bit of a special case, handled here
-        if (lshSampleRatio < 1.0) {
+        // LSH and HNSW are a bit of a special case, handled here
+        if ("lsh".equals(candidateFilterName)) {
           return new LocationSensitiveHashFilter(Y, lshSampleRatio, numHashes);
         }
+        if ("hnsw".equals(candidateFilterName)) {
+          return new HierarchicalNavigableSmallWorldFilter(Y,
+                                                           yReadLock,
+                                                           hnswMaxConnections,
+                                                           hnswEfConstruction,
+                                                           hnswEfSearch);
+        }
       } finally {
         yReadLock.unlock();
       }
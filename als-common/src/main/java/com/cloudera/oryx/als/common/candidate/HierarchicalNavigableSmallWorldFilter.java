@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.candidate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.base.Preconditions;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.common.hnsw.HierarchicalNavigableSmallWorld;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+
+/**
+ * A {@link CandidateFilter} based on a {@link HierarchicalNavigableSmallWorld} graph, which chooses as candidates
+ * the items whose vectors have approximately the largest dot product with the user vectors.
+ *
+ * <p>New items start with no meaningful vector, so are not inserted into the graph immediately. Until then
+ * they are always candidates. Once enough have accumulated, a background thread inserts them all, with their
+ * vectors at that time. A new item that still has no vector on two successive insertions is dropped.
+ * Requests for candidates only read the graph.</p>
+ *
+ * @author Sean Owen
+ */
+public final class HierarchicalNavigableSmallWorldFilter implements CandidateFilter {
+
+  /** New items are inserted into the graph once there are this many */
+  private static final int INSERT_BATCH_SIZE = 100;
+
+  /** Shared by all instances; insertions are infrequent and short */
+  private static final ExecutorService INSERT_EXECUTOR =
+      ExecutorUtils.buildExecutor("HierarchicalNavigableSmallWorldFilter", 1);
+
+  private final FeatureMatrix Y;
+  private final Lock yReadLock;
+  private final HierarchicalNavigableSmallWorld graph;
+  private final int efSearch;
+  /** Set while an insertion of new items is queued or running */
+  private final AtomicBoolean inserting;
+  /** Guards newItemSet and missingVector, and writes to newItems */
+  private final Object newItemsLock;
+  private final LongSet newItemSet;
+  /** New items that had no vector at the last insertion */
+  private final LongSet missingVector;
+  /** IDs in newItemSet, in the order added; see {@link NewItems} */
+  private volatile NewItems newItems;
+
+  /**
+   * @param Y item-feature matrix
+   * @param yReadLock read lock that should be acquired to access {@code Y} outside of
+   *  {@link #getCandidateIterator(float[][])}
+   */
+  public HierarchicalNavigableSmallWorldFilter(FeatureMatrix Y,
+                                               Lock yReadLock,
+                                               int maxConnections,
+                                               int efConstruction,
+                                               int efSearch) {
+    Preconditions.checkArgument(efSearch >= 1, "Bad ef search: %s", efSearch);
+    this.Y = Y;
+    this.yReadLock = yReadLock;
+    this.graph = new HierarchicalNavigableSmallWorld(Y, maxConnections, efConstruction);
+    this.efSearch = efSearch;
+    inserting = new AtomicBoolean();
+    newItemsLock = new Object();
+    newItemSet = new LongSet();
+    missingVector = new LongSet();
+    newItems = new NewItems(new long[16], 0);
+  }
+
+  @Override
+  public Collection<IntPrimitiveIterator> getCandidateIterator(float[][] userVectors) {
+    // Same items may be found for several user vectors, or be both new and in the graph, briefly
+    LongSet candidateIDs = new LongSet();
+    for (float[] userVector : userVectors) {
+      candidateIDs.addAll(graph.search(userVector, efSearch));
+    }
+    NewItems theNewItems = newItems;
+    for (int i = 0; i < theNewItems.count; i++) {
+      candidateIDs.add(theNewItems.ids[i]);
+    }
+    return Collections.singletonList(Y.rowIterator(candidateIDs.toArray()));
+  }
+
+  /**
+   * Starts inserting new items into the graph in the background, if enough have accumulated and an insertion
+   * isn't already queued or running.
+   */
+  private void maybeInsertNewItems() {
+    if (newItems.count >= INSERT_BATCH_SIZE && inserting.compareAndSet(false, true)) {
+      INSERT_EXECUTOR.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            insertNewItems();
+          } finally {
+            inserting.set(false);
+          }
+          // More may have accumulated meanwhile
+          maybeInsertNewItems();
+        }
+      });
+    }
+  }
+
+  private void insertNewItems() {
+    NewItems theNewItems = newItems;
+    LongSet done = new LongSet();
+    LongSet noVector = new LongSet();
+    for (int i = 0; i < theNewItems.count; i++) {
+      long itemID = theNewItems.ids[i];
+      float[] vector;
+      yReadLock.lock();
+      try {
+        vector = Y.get(itemID);
+      } finally {
+        yReadLock.unlock();
+      }
+      if (vector == null) {
+        noVector.add(itemID);
+      } else {
+        graph.insert(itemID, vector);
+        done.add(itemID);
+      }
+    }
+    synchronized (newItemsLock) {
+      LongSet stillMissing = new LongSet();
+      for (long itemID : noVector.toArray()) {
+        if (missingVector.contains(itemID)) {
+          // Had no vector last time either; drop it
+          done.add(itemID);
+        } else {
+          stillMissing.add(itemID);
+        }
+      }
+      missingVector.clear();
+      missingVector.addAll(stillMissing);
+      for (long itemID : done.toArray()) {
+        newItemSet.remove(itemID);
+      }
+      // A new array, since readers of the current one may read any of its entries
+      long[] ids = newItemSet.toArray();
+      newItems = new NewItems(Arrays.copyOf(ids, Math.max(16, 2 * ids.length)), ids.length);
+    }
+  }
+
+  @Override
+  public void addItem(String itemID) {
+    long longItemID = StringLongMapping.toLong(itemID);
+    synchronized (newItemsLock) {
+      if (newItemSet.add(longItemID)) {
+        NewItems theNewItems = newItems;
+        long[] ids = theNewItems.ids;
+        int count = theNewItems.count;
+        if (count == ids.length) {
+          ids = Arrays.copyOf(ids, 2 * count);
+        }
+        ids[count] = longItemID;
+        newItems = new NewItems(ids, count + 1);
+      }
+    }
+    maybeInsertNewItems();
+  }
+
+  /**
+   * The first {@code count} entries of {@code ids}. Entries before {@code count} never change, and later ones
+   * are only written before a {@link NewItems} with a larger count is published, so readers need no lock.
+   * The array is replaced by one twice as large when full.
+   */
+  private static final class NewItems {
+    private final long[] ids;
+    private final int count;
+    private NewItems(long[] ids, int count) {
+      this.ids = ids;
+      this.count = count;
+    }
+  }
+
+}
@@ -17,29 +17,29 @@ package com.cloudera.oryx.als.common.candidate;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 
 /**
  * Does no filtering.
  * 
  * @author Sean Owen
  */
-final class IdentityCandidateFilter implements CandidateFilter {
+public final class IdentityCandidateFilter implements CandidateFilter {
   
-  private final LongObjectMap<float[]> Y;
+  private final FeatureMatrix Y;
 
   /**
    * @param Y item vectors to hash
    */
-  IdentityCandidateFilter(LongObjectMap<float[]> Y) {
+  public IdentityCandidateFilter(FeatureMatrix Y) {
     this.Y = Y;
   }
 
   @Override
-  public Collection<Iterator<LongObjectMap.MapEntry<float[]>>> getCandidateIterator(float[][] userVectors) {
-    return Collections.singleton(Y.entrySet().iterator());
+  public Collection<IntPrimitiveIterator> getCandidateIterator(float[][] userVectors) {
+    return Collections.singleton(Y.rowIterator());
   }
 
   @Override
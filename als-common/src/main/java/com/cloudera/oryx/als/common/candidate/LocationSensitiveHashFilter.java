@@ -16,10 +16,10 @@
 package com.cloudera.oryx.als.common.candidate;
 
 import java.util.Collection;
-import java.util.Iterator;
 
 import com.cloudera.oryx.als.common.lsh.LocationSensitiveHash;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 
 /**
  * A {@link CandidateFilter} based on location-sensitive hashing, which chooses a set of candidate items
@@ -31,12 +31,12 @@ public final class LocationSensitiveHashFilter implements CandidateFilter {
 
   private final LocationSensitiveHash delegate;
 
-  public LocationSensitiveHashFilter(LongObjectMap<float[]> Y, double lshSampleRatio, int numHashes) {
+  public LocationSensitiveHashFilter(FeatureMatrix Y, double lshSampleRatio, int numHashes) {
     delegate = new LocationSensitiveHash(Y, lshSampleRatio, numHashes);
   }
 
   @Override
-  public Collection<Iterator<LongObjectMap.MapEntry<float[]>>> getCandidateIterator(float[][] userVectors) {
+  public Collection<IntPrimitiveIterator> getCandidateIterator(float[][] userVectors) {
     return delegate.getCandidateIterator(userVectors);
   }
 
@@ -15,6 +15,7 @@
 
 package com.cloudera.oryx.als.common.factorizer.als;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -26,18 +27,19 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Doubles;
 import com.typesafe.config.Config;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.util.FastMath;
-import org.apache.commons.math3.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
 import com.cloudera.oryx.common.collection.LongFloatMap;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
 import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.math.CholeskySolver;
+import com.cloudera.oryx.common.math.GramMatrixAccumulator;
 import com.cloudera.oryx.common.math.SimpleVectorMath;
 import com.cloudera.oryx.common.random.RandomManager;
 import com.cloudera.oryx.common.random.RandomUtils;
@@ -55,8 +57,8 @@ import com.cloudera.oryx.als.common.factorizer.MatrixFactorizer;
  * <p>This implementation varies in some small details; it does not use the same mechanism for explaining ratings
  * for example and seeds the initial Y differently.</p>
  *
- * <p>Note that in this implementation, matrices are sparse and are implemented with a {@link com.cloudera.oryx.common.collection.LongObjectMap} of
- * {@link com.cloudera.oryx.common.collection.LongFloatMap} so as to be able to use {@code long} keys. In many cases, a tall, skinny matrix is
+ * <p>Note that in this implementation, the input matrix R is sparse and is implemented with a
+ * {@link CompressedSparseMatrix} so as to be able to use {@code long} keys. In many cases, a tall, skinny matrix is
  * needed (sparse rows, dense columns). This is represented with {@link com.cloudera.oryx.common.collection.LongObjectMap} of {@code float[]}.</p>
  *
  * <p>This implementation implements essentially this function, expressed in Octave/Matlab:</p>
@@ -108,6 +110,11 @@ import com.cloudera.oryx.als.common.factorizer.MatrixFactorizer;
  *
  * end}
  *
+ * <p>If "model.solver" is "cg", each row that already has a value is instead updated by a few iterations of the
+ * conjugate gradient method with {@link ConjugateGradientSolver}, rather than computing {@code pinv} exactly.
+ * The first iteration still solves every row exactly, since initial values of Y may be random rather than
+ * previous values.</p>
+ *
  * @author Sean Owen
  */
 public final class AlternatingLeastSquares implements MatrixFactorizer {
@@ -120,18 +127,25 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
   private static final long LOG_INTERVAL = 100000;
   private static final int MAX_FAR_FROM_VECTORS = 100000;
 
-  private final LongObjectMap<LongFloatMap> RbyRow;
-  private final LongObjectMap<LongFloatMap> RbyColumn;
+  private final CompressedSparseMatrix RbyRow;
+  private final CompressedSparseMatrix RbyColumn;
   private final int features;
   private final double estimateErrorConvergenceThreshold;
   private final int maxIterations;
+  private final double alpha;
+  private final double lambda;
+  private final boolean reconstructRMatrix;
+  private final boolean lossIgnoresUnspecified;
+  private final ThreadLocal<CholeskySolver> solvers;
+  private final ThreadLocal<ConjugateGradientSolver> cgSolvers;
   private LongObjectMap<float[]> X;
   private LongObjectMap<float[]> Y;
   private LongObjectMap<float[]> previousY;
 
   /**
    * @param RbyRow the input R matrix, indexed by row
-   * @param RbyColumn the input R matrix, indexed by column
+   * @param RbyColumn the input R matrix, indexed by column. It must be the transpose of {@code RbyRow};
+   *  it is only checked for {@code null} here, since the column view is computed from {@code RbyRow}
    * @param features number of features, must be positive
    * @param estimateErrorConvergenceThreshold when the average absolute difference in estimated user-item
    *   scores falls below this threshold between iterations, iterations will stop
@@ -142,16 +156,82 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
                                  int features,
                                  double estimateErrorConvergenceThreshold,
                                  int maxIterations) {
-    Preconditions.checkNotNull(RbyRow);
+    this(toCompressed(Preconditions.checkNotNull(RbyRow)),
+         features,
+         estimateErrorConvergenceThreshold,
+         maxIterations);
     Preconditions.checkNotNull(RbyColumn);
+  }
+
+  /**
+   * @param R the input R matrix, indexed by row
+   * @param features number of features, must be positive
+   * @param estimateErrorConvergenceThreshold when the average absolute difference in estimated user-item
+   *   scores falls below this threshold between iterations, iterations will stop
+   * @param maxIterations caps the number of iterations run. If non-positive, there is no cap.
+   */
+  public AlternatingLeastSquares(CompressedSparseMatrix R,
+                                 final int features,
+                                 double estimateErrorConvergenceThreshold,
+                                 int maxIterations) {
+    Preconditions.checkNotNull(R);
     Preconditions.checkArgument(features > 0, "features must be positive: %s", features);
     Preconditions.checkArgument(estimateErrorConvergenceThreshold > 0.0 && estimateErrorConvergenceThreshold < 1.0,
                                 "threshold must be in (0,1): %s", estimateErrorConvergenceThreshold);
-    this.RbyRow = RbyRow;
-    this.RbyColumn = RbyColumn;
+    this.RbyRow = R;
+    this.RbyColumn = R.transpose();
     this.features = features;
     this.estimateErrorConvergenceThreshold = estimateErrorConvergenceThreshold;
     this.maxIterations = maxIterations;
+
+    Config config = ConfigUtils.getDefaultConfig();
+    alpha = config.getDouble("model.alpha");
+    lambda = config.getDouble("model.lambda") * alpha;
+    // This will cause the ALS algorithm to reconstruction the input matrix R, rather than the
+    // matrix P = R > 0 . Don't use this unless you understand it!
+    reconstructRMatrix = config.getBoolean("model.reconstruct-r-matrix");
+    // Causes the loss function to exclude entries for any input pairs that do not appear in the
+    // input and are implicitly 0
+    // Likewise, don't touch this for now unless you know what it does.
+    lossIgnoresUnspecified = config.getBoolean("model.loss-ignores-unspecified");
+    String solver = config.getString("model.solver");
+    Preconditions.checkArgument("exact".equals(solver) || "cg".equals(solver), "Unknown solver: %s", solver);
+    final int cgIterations = config.getInt("model.cg-iterations");
+
+    // Each thread computing rows reuses its own solver's buffers
+    solvers = new ThreadLocal<CholeskySolver>() {
+      @Override
+      protected CholeskySolver initialValue() {
+        return new CholeskySolver(features);
+      }
+    };
+    if ("cg".equals(solver)) {
+      cgSolvers = new ThreadLocal<ConjugateGradientSolver>() {
+        @Override
+        protected ConjugateGradientSolver initialValue() {
+          return new ConjugateGradientSolver(features,
+                                             cgIterations,
+                                             alpha,
+                                             lambda,
+                                             reconstructRMatrix,
+                                             lossIgnoresUnspecified);
+        }
+      };
+    } else {
+      cgSolvers = null;
+    }
+  }
+
+  private static CompressedSparseMatrix toCompressed(LongObjectMap<LongFloatMap> RbyRow) {
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    for (LongObjectMap.MapEntry<LongFloatMap> row : RbyRow.entrySet()) {
+      long rowID = row.getKey();
+      for (LongFloatMap.MapEntry entry : row.getValue().entrySet()) {
+        builder.add(rowID, entry.getKey(), entry.getValue());
+      }
+    }
+    // Values were already pruned when the maps were built; keep them all
+    return builder.build(0.0f);
   }
 
   @Override
@@ -176,7 +256,7 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
   @Override
   public Void call() throws ExecutionException, InterruptedException {
 
-    X = new LongObjectMap<float[]>(RbyRow.size());
+    X = new LongObjectMap<float[]>(RbyRow.getNumRows());
 
     boolean randomY = previousY == null || previousY.isEmpty();
     Y = constructInitialY(previousY);
@@ -186,12 +266,12 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
 
     RandomGenerator random = RandomManager.getRandom();
     long[] testUserIDs = RandomUtils.chooseAboutNFromStream(NUM_USER_ITEMS_TO_TEST_CONVERGENCE, 
-                                                            RbyRow.keySetIterator(), 
-                                                            RbyRow.size(), 
+                                                            RbyRow.rowIDIterator(), 
+                                                            RbyRow.getNumRows(), 
                                                             random);
     long[] testItemIDs = RandomUtils.chooseAboutNFromStream(NUM_USER_ITEMS_TO_TEST_CONVERGENCE, 
-                                                            RbyColumn.keySetIterator(), 
-                                                            RbyColumn.size(), 
+                                                            RbyColumn.rowIDIterator(), 
+                                                            RbyColumn.getNumRows(), 
                                                             random);
     double[][] estimates = new double[testUserIDs.length][testItemIDs.length];
     if (!X.isEmpty()) {
@@ -207,7 +287,8 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
       int iterationNumber = 0;
       while (true) {
         iterateXFromY(executor);
-        iterateYFromX(executor);
+        // Initial Y may be random, and so no useful start for a few conjugate gradient iterations
+        iterateYFromX(executor, iterationNumber == 0);
         DoubleWeightedMean averageAbsoluteEstimateDiff = new DoubleWeightedMean();
         for (int i = 0; i < testUserIDs.length; i++) {
           for (int j = 0; j < testItemIDs.length; j++) {
@@ -254,7 +335,7 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
     if (previousY == null || previousY.isEmpty()) {
       // Common case: have to start from scratch
       log.info("Starting from new, random Y matrix");      
-      randomY = new LongObjectMap<float[]>(RbyColumn.size());
+      randomY = new LongObjectMap<float[]>(RbyColumn.getNumRows());
       
     } else {
       
@@ -300,7 +381,7 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
       }
       recentVectors.add(entry.getValue());
     }
-    LongPrimitiveIterator it = RbyColumn.keySetIterator();
+    LongPrimitiveIterator it = RbyColumn.rowIDIterator();
     long count = 0;
     while (it.hasNext()) {
       long id = it.nextLong();
@@ -324,9 +405,9 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
    */
   private void iterateXFromY(ExecutorService executor) throws ExecutionException, InterruptedException {
 
-    RealMatrix YTY = MatrixUtils.transposeTimesSelf(Y);
+    RealMatrix YTY = MatrixUtils.transposeTimesSelf(Y, ExecutorUtils.getParallelism());
     Collection<Future<?>> futures = Lists.newArrayList();
-    addWorkers(RbyRow, Y, YTY, X, executor, futures);
+    addWorkers(RbyRow, Y, YTY, X, false, executor, futures);
 
     int count = 0;
     long total = 0;
@@ -348,12 +429,14 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
 
   /**
    * Runs one iteration to compute Y from X.
+   *
+   * @param exact if true, solve each row exactly even if it has a previous value
    */
-  private void iterateYFromX(ExecutorService executor) throws ExecutionException, InterruptedException {
+  private void iterateYFromX(ExecutorService executor, boolean exact) throws ExecutionException, InterruptedException {
 
-    RealMatrix XTX = MatrixUtils.transposeTimesSelf(X);
+    RealMatrix XTX = MatrixUtils.transposeTimesSelf(X, ExecutorUtils.getParallelism());
     Collection<Future<?>> futures = Lists.newArrayList();
-    addWorkers(RbyColumn, X, XTX, Y, executor, futures);
+    addWorkers(RbyColumn, X, XTX, Y, exact, executor, futures);
 
     int count = 0;
     long total = 0;
@@ -373,124 +456,152 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
     }
   }
 
-  private void addWorkers(LongObjectMap<LongFloatMap> R,
+  private void addWorkers(CompressedSparseMatrix R,
                           LongObjectMap<float[]> M,
                           RealMatrix MTM, 
                           LongObjectMap<float[]> MTags,
+                          boolean exact,
                           ExecutorService executor,                          
                           Collection<Future<?>> futures) {
-    if (R != null) {
-      List<Pair<Long, LongFloatMap>> workUnit = Lists.newArrayListWithCapacity(WORK_UNIT_SIZE);
-      for (LongObjectMap.MapEntry<LongFloatMap> entry : R.entrySet()) {
-        workUnit.add(new Pair<Long,LongFloatMap>(entry.getKey(), entry.getValue()));
-        if (workUnit.size() == WORK_UNIT_SIZE) {
-          futures.add(executor.submit(new Worker(features, M, MTM, MTags, workUnit)));
-          workUnit = Lists.newArrayListWithCapacity(WORK_UNIT_SIZE);
-        }
-      }
-      if (!workUnit.isEmpty()) {
-        futures.add(executor.submit(new Worker(features, M, MTM, MTags, workUnit)));
+    // Look up each column's vector once, rather than once per entry
+    int numColumns = R.getNumColumns();
+    float[][] columnVectors = new float[numColumns][];
+    for (int column = 0; column < numColumns; column++) {
+      long columnID = R.getColumnID(column);
+      float[] vector = M.get(columnID);
+      if (vector == null) {
+        log.warn("No vector for {}. This should not happen. Continuing...", columnID);
       }
+      columnVectors[column] = vector;
+    }
+    int numRows = R.getNumRows();
+    for (int from = 0; from < numRows; from += WORK_UNIT_SIZE) {
+      int to = FastMath.min(from + WORK_UNIT_SIZE, numRows);
+      futures.add(executor.submit(new Worker(R, columnVectors, MTM, MTags, exact, from, to)));
     }
   }
 
-  private static final class Worker implements Callable<Object> {
+  private final class Worker implements Callable<Object> {
 
-    private final int features;
-    private final LongObjectMap<float[]> Y;
-    private final RealMatrix YTY;
+    private final CompressedSparseMatrix R;
+    private final float[][] columnVectors;
+    private final double[][] YTY;
     private final LongObjectMap<float[]> X;
-    private final Iterable<Pair<Long, LongFloatMap>> workUnit;
+    private final boolean exact;
+    private final int fromRow;
+    private final int toRow;
 
-    private Worker(int features,
-                   LongObjectMap<float[]> Y,
+    private Worker(CompressedSparseMatrix R,
+                   float[][] columnVectors,
                    RealMatrix YTY,
                    LongObjectMap<float[]> X,
-                   Iterable<Pair<Long, LongFloatMap>> workUnit) {
-      this.features = features;
-      this.Y = Y;
-      this.YTY = YTY;
+                   boolean exact,
+                   int fromRow,
+                   int toRow) {
+      this.R = R;
+      this.columnVectors = columnVectors;
+      this.YTY = MatrixUtils.accessMatrixDataDirectly(YTY);
       this.X = X;
-      this.workUnit = workUnit;
+      this.exact = exact;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
     }
 
     @Override
     public Void call() {
 
-      Config config = ConfigUtils.getDefaultConfig();
-      double alpha = config.getDouble("model.alpha");
-      double lambda = config.getDouble("model.lambda") * alpha;
-      // This will cause the ALS algorithm to reconstruction the input matrix R, rather than the
-      // matrix P = R > 0 . Don't use this unless you understand it!
-      boolean reconstructRMatrix = config.getBoolean("model.reconstruct-r-matrix");
-      // Causes the loss function to exclude entries for any input pairs that do not appear in the
-      // input and are implicitly 0
-      // Likewise, don't touch this for now unless you know what it does.
-      boolean lossIgnoresUnspecified = config.getBoolean("model.loss-ignores-unspecified");
-
-      int features = this.features;
-      // Each worker has a batch of rows to compute:
-      for (Pair<Long,LongFloatMap> work : workUnit) {
+      int features = AlternatingLeastSquares.this.features;
+      CholeskySolver solver = solvers.get();
+      // Only the upper triangle of Wu is computed and read, as it is symmetric
+      double[] WuData = solver.getA();
+      double[] YTCupu = solver.getB();
+
+      // Each worker has a range of rows to compute:
+      for (int row = fromRow; row < toRow; row++) {
 
         // Row (column) in original R matrix containing total association value. For simplicity we will
         // talk about users and rows only in the comments and variables. It's symmetric for columns / items.
-        // This is Ru:
-        LongFloatMap ru = work.getSecond();
+        // This is Ru, at indices ruStart to ruEnd of R:
+        long userID = R.getRowID(row);
+        int ruStart = R.rowStart(row);
+        int ruEnd = R.rowEnd(row);
+
+        if (cgSolvers != null && !exact) {
+          float[] previous;
+          synchronized (X) {
+            previous = X.get(userID);
+          }
+          // A few iterations are only enough when starting from the previous value; otherwise solve exactly
+          if (previous != null) {
+            ConjugateGradientSolver cgSolver = cgSolvers.get();
+            cgSolver.startRow();
+            for (int index = ruStart; index < ruEnd; index++) {
+              float[] vector = columnVectors[R.columnAt(index)];
+              if (vector != null) {
+                cgSolver.addValue(vector, R.valueAt(index));
+              }
+            }
+            float[] xu = cgSolver.solve(YTY, ruEnd - ruStart, previous);
+            synchronized (X) {
+              X.put(userID, xu);
+            }
+            continue;
+          }
+        }
 
         // Start computing Wu = (YT*Cu*Y + lambda*I) = (YT*Y + YT*(Cu-I)*Y + lambda*I),
         // by first starting with a copy of YT * Y. Or, a variant on YT * Y, if LOSS_IGNORES_UNSPECIFIED is set
-        RealMatrix Wu =
+        double[][] WuStart =
             lossIgnoresUnspecified ?
-            partialTransposeTimesSelf(Y, YTY.getRowDimension(), ru.keySetIterator()) : 
-            YTY.copy();
-
-        double[][] WuData = MatrixUtils.accessMatrixDataDirectly(Wu);
-        double[] YTCupu = new double[features];
+            MatrixUtils.accessMatrixDataDirectly(
+                partialTransposeTimesSelf(R, columnVectors, features, ruStart, ruEnd)) :
+            YTY;
+        for (int i = 0; i < features; i++) {
+          System.arraycopy(WuStart[i], i, WuData, i * features + i, features - i);
+        }
+        Arrays.fill(YTCupu, 0.0);
 
-        for (LongFloatMap.MapEntry entry : ru.entrySet()) {
+        for (int index = ruStart; index < ruEnd; index++) {
 
-          double xu = entry.getValue();
+          double xu = R.valueAt(index);
 
-          float[] vector = Y.get(entry.getKey());
+          float[] vector = columnVectors[R.columnAt(index)];
           if (vector == null) {
-            log.warn("No vector for {}. This should not happen. Continuing...", entry.getKey());
             continue;
           }
 
           // Wu and YTCupu
           if (reconstructRMatrix) {
-            for (int row = 0; row < features; row++) {
-              YTCupu[row] += xu * vector[row];
+            for (int i = 0; i < features; i++) {
+              YTCupu[i] += xu * vector[i];
             }
           } else {
             double cu = 1.0 + alpha * FastMath.abs(xu);            
-            for (int row = 0; row < features; row++) {
-              float vectorAtRow = vector[row];
+            for (int i = 0; i < features; i++) {
+              float vectorAtRow = vector[i];
               double rowValue = vectorAtRow * (cu - 1.0);
-              double[] WuDataRow = WuData[row];              
-              for (int col = 0; col < features; col++) {
-                WuDataRow[col] += rowValue * vector[col];
-                //Wu.addToEntry(row, col, rowValue * vector[col]);
+              int rowOffset = i * features;
+              for (int col = i; col < features; col++) {
+                WuData[rowOffset + col] += rowValue * vector[col];
               }
               if (xu > 0.0) {
-                YTCupu[row] += vectorAtRow * cu;
+                YTCupu[i] += vectorAtRow * cu;
               }
             }
           }
 
         }
 
-        double lambdaTimesCount = lambda * ru.size();
+        double lambdaTimesCount = lambda * (ruEnd - ruStart);
         for (int x = 0; x < features; x++) {
-          WuData[x][x] += lambdaTimesCount;          
-          //Wu.addToEntry(x, x, lambdaTimesCount);
+          WuData[x * features + x] += lambdaTimesCount;
         }
 
-        float[] xu = MatrixUtils.getSolver(Wu).solveDToF(YTCupu);
+        float[] xu = solver.solveDToF();
 
         // Store result:
         synchronized (X) {
-          X.put(work.getFirst(), xu);
+          X.put(userID, xu);
         }
 
         // Process is identical for computing Y from X. Swap X in for Y, Y for X, i for u, etc.
@@ -498,30 +609,28 @@ public final class AlternatingLeastSquares implements MatrixFactorizer {
       return null;
     }
 
-    /**
-     * Like {@link MatrixUtils#transposeTimesSelf(com.cloudera.oryx.common.collection.LongObjectMap)}, but instead of computing MT * M,
-     * it computes MT * C * M, where C is a diagonal matrix of 1s and 0s. This is like pretending some
-     * rows of M are 0.
-     * 
-     * @see MatrixUtils#transposeTimesSelf(com.cloudera.oryx.common.collection.LongObjectMap)
-     */
-    private static RealMatrix partialTransposeTimesSelf(LongObjectMap<float[]> M,
-                                                        int dimension, 
-                                                        LongPrimitiveIterator keys) {
-      RealMatrix result = new Array2DRowRealMatrix(dimension, dimension);
-      while (keys.hasNext()) {
-        long key = keys.next();
-        float[] vector = M.get(key);
-        for (int row = 0; row < dimension; row++) {
-          float rowValue = vector[row];
-          for (int col = 0; col < dimension; col++) {
-            result.addToEntry(row, col, rowValue * vector[col]);
-          }
-        }
+  }
+
+  /**
+   * Like {@link MatrixUtils#transposeTimesSelf(com.cloudera.oryx.common.collection.LongObjectMap)}, but instead of computing MT * M,
+   * it computes MT * C * M, where C is a diagonal matrix of 1s and 0s. This is like pretending some
+   * rows of M are 0.
+   * 
+   * @see MatrixUtils#transposeTimesSelf(com.cloudera.oryx.common.collection.LongObjectMap)
+   */
+  private static RealMatrix partialTransposeTimesSelf(CompressedSparseMatrix R,
+                                                      float[][] columnVectors,
+                                                      int dimension,
+                                                      int start,
+                                                      int end) {
+    GramMatrixAccumulator result = new GramMatrixAccumulator(dimension);
+    for (int index = start; index < end; index++) {
+      float[] vector = columnVectors[R.columnAt(index)];
+      if (vector != null) {
+        result.add(vector);
       }
-      return result;
     }
-
+    return result.toMatrix();
   }
 
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.factorizer.als;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>Approximately computes one row xu of X from Y and the row Ru of R, as {@link AlternatingLeastSquares} does,
+ * with a few iterations of the conjugate gradient method instead of solving the normal equations exactly.
+ * Started from the row's value in the previous iteration, a few iterations are enough, as that value is
+ * already close to the solution.</p>
+ *
+ * <p>The system is never formed. It is Wu * xu = YT*Cu*pu where Wu = YT*Y + YT*(Cu-I)*Y + lambda*count*I, and
+ * multiplying by Wu only needs the precomputed YT*Y and the rows of Y for items in Ru, since Cu-I is 0 elsewhere.
+ * Each iteration costs time proportional to the number of features times the number of features plus the
+ * number of items in Ru, rather than the cube of the number of features of an exact solve.</p>
+ *
+ * <p>One instance is meant to be reused for many rows by one thread. It is not thread-safe.</p>
+ *
+ * @author Sean Owen
+ * @see "Takacs, Pilaszy and Tikk, Applications of the Conjugate Gradient Method for Implicit Feedback
+ *  Collaborative Filtering"
+ */
+public final class ConjugateGradientSolver {
+
+  /** Squared norm of the residual below which the solution is considered exact */
+  private static final double CONVERGED_RESIDUAL = 1.0e-10;
+
+  private final int features;
+  private final int iterations;
+  private final double alpha;
+  private final double lambda;
+  private final boolean reconstructRMatrix;
+  private final boolean lossIgnoresUnspecified;
+  private final double[] x;
+  private final double[] r;
+  private final double[] p;
+  private final double[] Ap;
+  private float[][] vectors;
+  private double[] weights;
+  private int numVectors;
+
+  /**
+   * @param features number of features
+   * @param iterations conjugate gradient iterations per row
+   * @param alpha alpha model parameter
+   * @param lambda over-fitting parameter, already multiplied by {@code alpha}
+   * @param reconstructRMatrix see "model.reconstruct-r-matrix"
+   * @param lossIgnoresUnspecified see "model.loss-ignores-unspecified"
+   */
+  public ConjugateGradientSolver(int features,
+                                 int iterations,
+                                 double alpha,
+                                 double lambda,
+                                 boolean reconstructRMatrix,
+                                 boolean lossIgnoresUnspecified) {
+    Preconditions.checkArgument(features > 0, "features must be positive: %s", features);
+    Preconditions.checkArgument(iterations > 0, "iterations must be positive: %s", iterations);
+    this.features = features;
+    this.iterations = iterations;
+    this.alpha = alpha;
+    this.lambda = lambda;
+    this.reconstructRMatrix = reconstructRMatrix;
+    this.lossIgnoresUnspecified = lossIgnoresUnspecified;
+    x = new double[features];
+    r = new double[features];
+    p = new double[features];
+    Ap = new double[features];
+    vectors = new float[16][];
+    weights = new double[16];
+  }
+
+  /**
+   * Starts computing a new row. Call {@link #addValue(float[], double)} for each of its values, and then
+   * {@link #solve(double[][], int, float[])}.
+   */
+  public void startRow() {
+    numVectors = 0;
+    Arrays.fill(r, 0.0);
+  }
+
+  /**
+   * @param vector row of Y for an item in Ru
+   * @param xu value in Ru for the item
+   */
+  public void addValue(float[] vector, double xu) {
+    int features = this.features;
+    double[] r = this.r;
+    // Collect the rows of Y that Wu depends on, with their weights in Wu, and compute b = YT*Cu*pu into r.
+    // With loss ignoring unspecified values, Wu's YT*Y term only includes these rows.
+    double weight = lossIgnoresUnspecified ? 1.0 : 0.0;
+    if (reconstructRMatrix) {
+      for (int row = 0; row < features; row++) {
+        r[row] += xu * vector[row];
+      }
+    } else {
+      double cu = 1.0 + alpha * FastMath.abs(xu);
+      weight += cu - 1.0;
+      if (xu > 0.0) {
+        for (int row = 0; row < features; row++) {
+          r[row] += vector[row] * cu;
+        }
+      }
+    }
+    if (weight != 0.0) {
+      if (numVectors == vectors.length) {
+        vectors = Arrays.copyOf(vectors, 2 * numVectors);
+        weights = Arrays.copyOf(weights, 2 * numVectors);
+      }
+      vectors[numVectors] = vector;
+      weights[numVectors] = weight;
+      numVectors++;
+    }
+  }
+
+  /**
+   * @param YTY YT * Y, as a dense array; not used if loss ignores unspecified values
+   * @param count number of values in Ru
+   * @param start starting value of xu, typically its previous value, or {@code null} to start from 0
+   * @return new value of xu
+   */
+  public float[] solve(double[][] YTY, int count, float[] start) {
+    int features = this.features;
+    double[] x = this.x;
+    double[] r = this.r;
+    double[] p = this.p;
+    double[] Ap = this.Ap;
+    double lambdaTimesCount = lambda * count;
+    // r = b - Wu * x
+    if (start == null) {
+      Arrays.fill(x, 0.0);
+    } else {
+      for (int i = 0; i < features; i++) {
+        x[i] = start[i];
+      }
+      multiplyWu(YTY, lambdaTimesCount, x, Ap);
+      for (int i = 0; i < features; i++) {
+        r[i] -= Ap[i];
+      }
+    }
+    System.arraycopy(r, 0, p, 0, features);
+    double rsOld = dot(r, r);
+
+    for (int iteration = 0; iteration < iterations && rsOld > CONVERGED_RESIDUAL; iteration++) {
+      multiplyWu(YTY, lambdaTimesCount, p, Ap);
+      double pAp = dot(p, Ap);
+      if (!(pAp > 0.0)) {
+        // Wu is not positive definite in direction p; stop rather than diverge
+        break;
+      }
+      double stepSize = rsOld / pAp;
+      for (int i = 0; i < features; i++) {
+        x[i] += stepSize * p[i];
+        r[i] -= stepSize * Ap[i];
+      }
+      double rsNew = dot(r, r);
+      double beta = rsNew / rsOld;
+      for (int i = 0; i < features; i++) {
+        p[i] = r[i] + beta * p[i];
+      }
+      rsOld = rsNew;
+    }
+
+    float[] result = new float[features];
+    for (int i = 0; i < features; i++) {
+      result[i] = (float) x[i];
+    }
+    return result;
+  }
+
+  /**
+   * Computes Wu * v into result.
+   */
+  private void multiplyWu(double[][] YTY, double lambdaTimesCount, double[] v, double[] result) {
+    int features = this.features;
+    if (lossIgnoresUnspecified) {
+      Arrays.fill(result, 0.0);
+    } else {
+      for (int i = 0; i < features; i++) {
+        double[] YTYRow = YTY[i];
+        double sum = 0.0;
+        for (int j = 0; j < features; j++) {
+          sum += YTYRow[j] * v[j];
+        }
+        result[i] = sum;
+      }
+    }
+    for (int n = 0; n < numVectors; n++) {
+      float[] vector = vectors[n];
+      double dot = 0.0;
+      for (int i = 0; i < features; i++) {
+        dot += vector[i] * v[i];
+      }
+      double scaled = weights[n] * dot;
+      for (int i = 0; i < features; i++) {
+        result[i] += scaled * vector[i];
+      }
+    }
+    for (int i = 0; i < features; i++) {
+      result[i] += lambdaTimesCount * v[i];
+    }
+  }
+
+  private static double dot(double[] a, double[] b) {
+    double dot = 0.0;
+    for (int i = 0; i < a.length; i++) {
+      dot += a[i] * b[i];
+    }
+    return dot;
+  }
+
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.hnsw;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * <p>This class implements a hierarchical navigable small world (HNSW) graph over item vectors. Like
+ * {@link com.cloudera.oryx.als.common.lsh.LocationSensitiveHash}, it is used to quickly, approximately, find
+ * the item vectors with largest dot product with a given user vector, but, rather than sampling a fraction
+ * of all items, it walks a graph toward the best items and so examines a number of items that grows only
+ * slowly with the number of items.</p>
+ *
+ * <p>Each item is a node in one or more layers of graph. All items are in layer 0, and each item is
+ * also in each higher layer with exponentially decreasing probability. In each layer, an item is linked to
+ * up to M of its nearest neighbors (2M in layer 0). A search starts at the single item in the top layer,
+ * moves greedily toward the query through the sparse upper layers, and then, in layer 0, does a best-first
+ * search that keeps the "ef" nearest items found so far.</p>
+ *
+ * <p>Nearest-neighbor search works with distances, not dot products. Item vectors are therefore transformed
+ * by appending one dimension, whose value makes every item vector's norm equal to the largest item norm.
+ * User vectors are given a 0 in this dimension. The squared Euclidean distance between a transformed user
+ * and item vector is then a constant, for a given user, minus twice their dot product, so the nearest
+ * items are exactly those with largest dot product.</p>
+ *
+ * <p>Items can be inserted after the graph is built. An item whose norm exceeds the largest norm at build time
+ * is padded with 0, so its distances are somewhat overstated. Searches may proceed concurrently, but block
+ * while an item is inserted.</p>
+ *
+ * <p><em>This is experimental, and is disabled unless "model.candidate-filter" is set to "hnsw".</em></p>
+ *
+ * @author Sean Owen
+ */
+public final class HierarchicalNavigableSmallWorld {
+
+  private static final Logger log = LoggerFactory.getLogger(HierarchicalNavigableSmallWorld.class);
+
+  private final int numFeatures;
+  /** Length of stored vectors: the features, plus one dimension added by the transformation above */
+  private final int stride;
+  private final int maxConnections;
+  private final int maxConnections0;
+  private final int efConstruction;
+  private final double levelMultiplier;
+  /** Largest item vector norm at build time, which the transformation pads all item vectors up to */
+  private final double maxNorm;
+  private final RandomGenerator random;
+  private final ReadWriteLock lock;
+
+  // All guarded by lock:
+  private int size;
+  private long[] ids;
+  private float[] vectors;
+  /** Per node, per layer: neighbor count, followed by neighbor nodes */
+  private int[][][] neighbors;
+  private final LongSet idSet;
+  private int entryPoint;
+  private int topLevel;
+  /** Per thread, nodes visited by the current search */
+  private final ThreadLocal<VisitedNodes> visitedNodes;
+
+  /**
+   * @param Y item vectors to index
+   * @param maxConnections maximum number of neighbors of each item in layers above 0 ("M")
+   * @param efConstruction number of nearest items to consider when choosing an inserted item's neighbors
+   */
+  public HierarchicalNavigableSmallWorld(FeatureMatrix Y, int maxConnections, int efConstruction) {
+    Preconditions.checkNotNull(Y);
+    Preconditions.checkArgument(!Y.isEmpty(), "Y is empty");
+    Preconditions.checkArgument(maxConnections >= 2, "Bad max connections: %s", maxConnections);
+    Preconditions.checkArgument(efConstruction >= 1, "Bad ef construction: %s", efConstruction);
+
+    numFeatures = Y.getNumFeatures();
+    stride = numFeatures + 1;
+    this.maxConnections = maxConnections;
+    maxConnections0 = 2 * maxConnections;
+    this.efConstruction = FastMath.max(efConstruction, maxConnections);
+    levelMultiplier = 1.0 / FastMath.log(maxConnections);
+    random = RandomManager.getRandom();
+    lock = new ReentrantReadWriteLock();
+    visitedNodes = new ThreadLocal<VisitedNodes>() {
+      @Override
+      protected VisitedNodes initialValue() {
+        return new VisitedNodes();
+      }
+    };
+
+    int numItems = Y.size();
+    double theMaxNorm = 0.0;
+    for (int row = 0; row < numItems; row++) {
+      theMaxNorm = FastMath.max(theMaxNorm, Y.norm(row));
+    }
+    maxNorm = theMaxNorm;
+
+    ids = new long[numItems];
+    vectors = new float[numItems * stride];
+    neighbors = new int[numItems][][];
+    idSet = new LongSet(numItems);
+    entryPoint = -1;
+    topLevel = -1;
+
+    log.info("Building HNSW graph over {} items, M = {}, ef construction = {}",
+             numItems, maxConnections, this.efConstruction);
+    float[] data = Y.getData();
+    lock.writeLock().lock();
+    try {
+      for (int row = 0; row < numItems; row++) {
+        doInsert(Y.getID(row), data, row * numFeatures);
+        if ((row + 1) % 100000 == 0) {
+          log.info("Inserted {} items", row + 1);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    log.info("Built HNSW graph with {} layers", topLevel + 1);
+  }
+
+  /**
+   * @return number of items in the graph
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param itemID item to insert
+   * @param vector item's feature vector
+   * @return true if inserted, or false if the item was already in the graph
+   */
+  public boolean insert(long itemID, float[] vector) {
+    Preconditions.checkArgument(vector.length == numFeatures, "Bad vector length: %s", vector.length);
+    lock.writeLock().lock();
+    try {
+      return doInsert(itemID, vector, 0);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param userVector user vector to find items for
+   * @param ef number of items to find; larger values find the best items more reliably, but more slowly
+   * @return IDs of (approximately) the {@code ef} items with largest dot product with the user vector, from
+   *  largest to smallest
+   */
+  public long[] search(float[] userVector, int ef) {
+    Preconditions.checkArgument(userVector.length == numFeatures, "Bad vector length: %s", userVector.length);
+    Preconditions.checkArgument(ef >= 1, "Bad ef: %s", ef);
+    // Padded with 0 in the added dimension
+    float[] query = Arrays.copyOf(userVector, stride);
+    lock.readLock().lock();
+    try {
+      if (entryPoint < 0) {
+        return new long[0];
+      }
+      int current = entryPoint;
+      for (int level = topLevel; level > 0; level--) {
+        current = greedySearch(query, 0, current, level);
+      }
+      Candidate[] found = searchLayer(query, 0, current, ef, 0);
+      long[] result = new long[found.length];
+      for (int i = 0; i < found.length; i++) {
+        result[i] = ids[found[i].node];
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private boolean doInsert(long itemID, float[] source, int offset) {
+    if (!idSet.add(itemID)) {
+      return false;
+    }
+    int level = randomLevel();
+    int node = addNode(itemID, source, offset, level);
+    int nodeOffset = node * stride;
+
+    if (entryPoint < 0) {
+      entryPoint = node;
+      topLevel = level;
+      return true;
+    }
+
+    int current = entryPoint;
+    for (int l = topLevel; l > level; l--) {
+      current = greedySearch(vectors, nodeOffset, current, l);
+    }
+    for (int l = FastMath.min(level, topLevel); l >= 0; l--) {
+      Candidate[] found = searchLayer(vectors, nodeOffset, current, efConstruction, l);
+      int maxConn = l == 0 ? maxConnections0 : maxConnections;
+      int[] selected = selectNeighbors(found, maxConn);
+      int[] nodeNeighbors = neighbors[node][l];
+      nodeNeighbors[0] = selected.length;
+      System.arraycopy(selected, 0, nodeNeighbors, 1, selected.length);
+      for (int neighbor : selected) {
+        connect(neighbor, node, l, maxConn);
+      }
+      current = found[0].node;
+    }
+
+    if (level > topLevel) {
+      topLevel = level;
+      entryPoint = node;
+    }
+    return true;
+  }
+
+  private int randomLevel() {
+    // 1 - nextDouble() is in (0,1]
+    return (int) (-FastMath.log(1.0 - random.nextDouble()) * levelMultiplier);
+  }
+
+  private int addNode(long itemID, float[] source, int offset, int level) {
+    if (size == ids.length) {
+      int newCapacity = FastMath.max(16, size + (size >> 1));
+      ids = Arrays.copyOf(ids, newCapacity);
+      vectors = Arrays.copyOf(vectors, newCapacity * stride);
+      neighbors = Arrays.copyOf(neighbors, newCapacity);
+    }
+    int node = size++;
+    ids[node] = itemID;
+
+    int nodeOffset = node * stride;
+    double normSquared = 0.0;
+    for (int i = 0; i < numFeatures; i++) {
+      float f = source[offset + i];
+      vectors[nodeOffset + i] = f;
+      normSquared += f * f;
+    }
+    vectors[nodeOffset + numFeatures] = (float) FastMath.sqrt(FastMath.max(0.0, maxNorm * maxNorm - normSquared));
+
+    int[][] nodeNeighbors = new int[level + 1][];
+    for (int l = 0; l <= level; l++) {
+      nodeNeighbors[l] = new int[(l == 0 ? maxConnections0 : maxConnections) + 1];
+    }
+    neighbors[node] = nodeNeighbors;
+    return node;
+  }
+
+  /**
+   * Links {@code node} from {@code neighbor}, re-selecting {@code neighbor}'s neighbors if it has too many.
+   */
+  private void connect(int neighbor, int node, int level, int maxConn) {
+    int[] neighborNeighbors = neighbors[neighbor][level];
+    int count = neighborNeighbors[0];
+    if (count < maxConn) {
+      neighborNeighbors[count + 1] = node;
+      neighborNeighbors[0] = count + 1;
+      return;
+    }
+    int neighborOffset = neighbor * stride;
+    Candidate[] candidates = new Candidate[count + 1];
+    for (int i = 0; i < count; i++) {
+      int other = neighborNeighbors[i + 1];
+      candidates[i] = new Candidate(other, distance(vectors, neighborOffset, other));
+    }
+    candidates[count] = new Candidate(node, distance(vectors, neighborOffset, node));
+    Arrays.sort(candidates);
+    int[] selected = selectNeighbors(candidates, maxConn);
+    neighborNeighbors[0] = selected.length;
+    System.arraycopy(selected, 0, neighborNeighbors, 1, selected.length);
+  }
+
+  /**
+   * Chooses neighbors from candidates sorted by distance, keeping only those that are closer to the new item
+   * than to any neighbor already chosen, so that links point in diverse directions. This leaves room in most
+   * neighbor lists, so that linking new items rarely requires choosing again.
+   */
+  private int[] selectNeighbors(Candidate[] candidates, int maxConn) {
+    int[] selected = new int[FastMath.min(maxConn, candidates.length)];
+    int numSelected = 0;
+    for (Candidate candidate : candidates) {
+      if (numSelected == selected.length) {
+        break;
+      }
+      int candidateOffset = candidate.node * stride;
+      boolean diverse = true;
+      for (int i = 0; i < numSelected; i++) {
+        if (distance(vectors, candidateOffset, selected[i]) < candidate.distance) {
+          diverse = false;
+          break;
+        }
+      }
+      if (diverse) {
+        selected[numSelected++] = candidate.node;
+      }
+    }
+    return numSelected == selected.length ? selected : Arrays.copyOf(selected, numSelected);
+  }
+
+  /**
+   * @return node in the given layer that is nearest the query, found by moving from {@code entry} to a nearer
+   *  neighbor until there is none
+   */
+  private int greedySearch(float[] query, int queryOffset, int entry, int level) {
+    int current = entry;
+    float currentDistance = distance(query, queryOffset, current);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      int[] currentNeighbors = neighbors[current][level];
+      for (int i = 1; i <= currentNeighbors[0]; i++) {
+        int neighbor = currentNeighbors[i];
+        float neighborDistance = distance(query, queryOffset, neighbor);
+        if (neighborDistance < currentDistance) {
+          current = neighbor;
+          currentDistance = neighborDistance;
+          changed = true;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * @return up to {@code ef} nodes in the given layer nearest the query, nearest first
+   */
+  private Candidate[] searchLayer(float[] query, int queryOffset, int entry, int ef, int level) {
+    VisitedNodes visited = visitedNodes.get();
+    visited.clear(size);
+    visited.add(entry);
+    float entryDistance = distance(query, queryOffset, entry);
+    NodeHeap toVisit = new NodeHeap(ef, false);
+    toVisit.push(entry, entryDistance);
+    NodeHeap results = new NodeHeap(ef + 1, true);
+    results.push(entry, entryDistance);
+
+    while (!toVisit.isEmpty()) {
+      int candidate = toVisit.peekNode();
+      if (toVisit.peekDistance() > results.peekDistance()) {
+        break;
+      }
+      toVisit.pop();
+      int[] candidateNeighbors = neighbors[candidate][level];
+      for (int i = 1; i <= candidateNeighbors[0]; i++) {
+        int neighbor = candidateNeighbors[i];
+        if (visited.add(neighbor)) {
+          float neighborDistance = distance(query, queryOffset, neighbor);
+          if (results.size() < ef || neighborDistance < results.peekDistance()) {
+            toVisit.push(neighbor, neighborDistance);
+            results.push(neighbor, neighborDistance);
+            if (results.size() > ef) {
+              results.pop();
+            }
+          }
+        }
+      }
+    }
+
+    // Popping furthest first fills the array from the end
+    Candidate[] found = new Candidate[results.size()];
+    for (int i = found.length - 1; i >= 0; i--) {
+      found[i] = new Candidate(results.peekNode(), results.peekDistance());
+      results.pop();
+    }
+    return found;
+  }
+
+  /**
+   * @return squared Euclidean distance between the transformed vector at {@code queryOffset} in {@code query}
+   *  and the given node's vector
+   */
+  private float distance(float[] query, int queryOffset, int node) {
+    float[] theVectors = vectors;
+    int nodeOffset = node * stride;
+    float total = 0.0f;
+    for (int i = 0; i < stride; i++) {
+      float delta = query[queryOffset + i] - theVectors[nodeOffset + i];
+      total += delta * delta;
+    }
+    return total;
+  }
+
+  private static final class Candidate implements Comparable<Candidate> {
+
+    private final int node;
+    private final float distance;
+
+    private Candidate(int node, float distance) {
+      this.node = node;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      return Float.compare(distance, other.distance);
+    }
+
+  }
+
+  /**
+   * A set of nodes, which can be cleared in constant time by advancing a stamp rather than clearing a table.
+   */
+  private static final class VisitedNodes {
+
+    private int[] stamps;
+    private int stamp;
+
+    private VisitedNodes() {
+      stamps = new int[0];
+    }
+
+    void clear(int numNodes) {
+      if (stamps.length < numNodes) {
+        stamps = new int[numNodes + (numNodes >> 3)];
+        stamp = 1;
+      } else if (++stamp == 0) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+    }
+
+    boolean add(int node) {
+      if (stamps[node] == stamp) {
+        return false;
+      }
+      stamps[node] = stamp;
+      return true;
+    }
+
+  }
+
+  /**
+   * A binary heap of nodes, ordered by distance, nearest or furthest first.
+   */
+  private static final class NodeHeap {
+
+    private final boolean furthestFirst;
+    private int[] nodes;
+    private float[] distances;
+    private int size;
+
+    private NodeHeap(int initialCapacity, boolean furthestFirst) {
+      this.furthestFirst = furthestFirst;
+      nodes = new int[initialCapacity];
+      distances = new float[initialCapacity];
+    }
+
+    int size() {
+      return size;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int peekNode() {
+      return nodes[0];
+    }
+
+    float peekDistance() {
+      return distances[0];
+    }
+
+    void push(int node, float distance) {
+      if (size == nodes.length) {
+        int newCapacity = FastMath.max(16, size << 1);
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        distances = Arrays.copyOf(distances, newCapacity);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >> 1;
+        if (!precedes(distance, distances[parent])) {
+          break;
+        }
+        nodes[i] = nodes[parent];
+        distances[i] = distances[parent];
+        i = parent;
+      }
+      nodes[i] = node;
+      distances[i] = distance;
+    }
+
+    void pop() {
+      int last = --size;
+      int node = nodes[last];
+      float distance = distances[last];
+      int i = 0;
+      int half = last >> 1;
+      while (i < half) {
+        int child = (i << 1) + 1;
+        int right = child + 1;
+        if (right < last && precedes(distances[right], distances[child])) {
+          child = right;
+        }
+        if (!precedes(distances[child], distance)) {
+          break;
+        }
+        nodes[i] = nodes[child];
+        distances[i] = distances[child];
+        i = child;
+      }
+      nodes[i] = node;
+      distances[i] = distance;
+    }
+
+    private boolean precedes(float a, float b) {
+      return furthestFirst ? a > b : a < b;
+    }
+
+  }
+
+}
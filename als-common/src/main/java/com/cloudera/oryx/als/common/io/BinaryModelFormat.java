@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Defines the binary layout of model files written by {@link BinaryModelWriter} and read by
+ * {@link MappedFeatureVectors}, {@link MappedKnownItems} and {@link MappedIDMapping}. Each directory
+ * of output (X, Y, known items, ID mapping) holds one or more "part" files, each no larger than about
+ * 1GB so that it can be mapped with {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ * All values are big-endian. Each part begins with a 32-byte header:
+ *
+ * <ul>
+ *   <li>{@code int} magic number, {@link #MAGIC}</li>
+ *   <li>{@code int} format version, {@link #VERSION}</li>
+ *   <li>{@code int} part type: {@link #FEATURE_VECTORS}, {@link #KNOWN_ITEMS} or {@link #ID_MAPPING}</li>
+ *   <li>{@code int} number of entries, {@code count}</li>
+ *   <li>{@code long} type-specific size, {@code extra}</li>
+ *   <li>{@code long} CRC32 checksum of everything after the header</li>
+ * </ul>
+ *
+ * <p>The header is followed by a payload whose layout depends on the type. In all cases, it starts with
+ * {@code long[count]} of IDs in ascending order:</p>
+ *
+ * <ul>
+ *   <li>Feature vectors: sorted IDs, then {@code float[count * extra]} of rows, where {@code extra} is the
+ *    number of features. Row {@code i} belongs to the {@code i}th ID.</li>
+ *   <li>Known items: sorted user IDs, then {@code int[count + 1]} offsets, then {@code long[extra]} item IDs.
+ *    The items for the {@code i}th user are found between offsets {@code i} (inclusive) and {@code i+1}
+ *    (exclusive), as in compressed sparse row encoding.</li>
+ *   <li>ID mapping: sorted numeric IDs, then {@code int[count + 1]} offsets, then {@code byte[extra]} of
+ *    UTF-8 encoded string IDs, delimited by offsets in the same way.</li>
+ * </ul>
+ *
+ * @author Sean Owen
+ */
+public final class BinaryModelFormat {
+
+  /** "ORYX" in ASCII */
+  public static final int MAGIC = 0x4F525958;
+  public static final int VERSION = 1;
+
+  public static final int FEATURE_VECTORS = 1;
+  public static final int KNOWN_ITEMS = 2;
+  public static final int ID_MAPPING = 3;
+
+  /** Suffix of part file names */
+  public static final String SUFFIX = ".bin";
+
+  static final int HEADER_BYTES = 32;
+  /** Target maximum size of a part's payload */
+  static final long MAX_PART_BYTES = 1L << 30;
+
+  private static final int CHECKSUM_BUFFER_BYTES = 1 << 16;
+
+  private BinaryModelFormat() {
+  }
+
+  /**
+   * @param file file name to check
+   * @return true iff the file name looks like a part file in this format
+   */
+  public static boolean isPartFile(String file) {
+    return file.endsWith(SUFFIX);
+  }
+
+  static String partFileName(int part) {
+    return part + SUFFIX;
+  }
+
+  static void writeHeader(File file, int type, int count, long extra, long checksum) throws IOException {
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      out.seek(0L);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(type);
+      out.writeInt(count);
+      out.writeLong(extra);
+      out.writeLong(checksum);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Maps a part file into memory and checks its header and checksum.
+   *
+   * @param file part file to map
+   * @param expectedType type the part is expected to have
+   * @return mapped header, which is at position 0, and payload, which follows {@link #HEADER_BYTES}
+   * @throws IOException if the file can't be read, or is not a valid part of the expected type
+   */
+  static MappedByteBuffer map(File file, int expectedType) throws IOException {
+    MappedByteBuffer buffer;
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+        throw new IOException("Bad size " + size + " for " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+    } finally {
+      // Mapping remains valid after the channel is closed
+      in.close();
+    }
+
+    int magic = buffer.getInt(0);
+    if (magic != MAGIC) {
+      throw new IOException("Bad magic number " + Integer.toHexString(magic) + " in " + file);
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported version " + version + " in " + file);
+    }
+    int type = buffer.getInt(8);
+    if (type != expectedType) {
+      throw new IOException("Expected type " + expectedType + " but was " + type + " in " + file);
+    }
+    long expectedChecksum = buffer.getLong(24);
+    long checksum = checksum(buffer);
+    if (checksum != expectedChecksum) {
+      throw new IOException("Checksum mismatch in " + file + "; file is corrupt or truncated");
+    }
+    return buffer;
+  }
+
+  static int getCount(ByteBuffer buffer) {
+    return buffer.getInt(12);
+  }
+
+  static long getExtra(ByteBuffer buffer) {
+    return buffer.getLong(16);
+  }
+
+  /**
+   * @return a view of the buffer from byte {@code offset}, of {@code length} bytes
+   */
+  static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+    Preconditions.checkArgument(offset + length <= buffer.capacity(),
+                                "Section exceeds file: %s + %s > %s", offset, length, buffer.capacity());
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position((int) offset);
+    duplicate.limit((int) (offset + length));
+    return duplicate.slice();
+  }
+
+  private static long checksum(ByteBuffer buffer) {
+    ByteBuffer payload = buffer.duplicate();
+    payload.position(HEADER_BYTES);
+    CRC32 crc = new CRC32();
+    byte[] chunk = new byte[CHECKSUM_BUFFER_BYTES];
+    while (payload.hasRemaining()) {
+      int length = FastMath.min(chunk.length, payload.remaining());
+      payload.get(chunk, 0, length);
+      crc.update(chunk, 0, length);
+    }
+    return crc.getValue();
+  }
+
+}
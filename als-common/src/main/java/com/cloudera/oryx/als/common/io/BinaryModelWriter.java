@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.math3.util.FastMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+
+/**
+ * Writes model data in the layout described by {@link BinaryModelFormat}. Each method writes one or more
+ * part files into a given directory.
+ *
+ * @author Sean Owen
+ */
+public final class BinaryModelWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(BinaryModelWriter.class);
+
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private BinaryModelWriter() {
+  }
+
+  /**
+   * @param vectors map of IDs to feature vectors, all of the same length
+   * @param dir directory to write parts into
+   */
+  public static void writeFeatureVectors(LongObjectMap<float[]> vectors, File dir) throws IOException {
+    writeFeatureVectors(vectors, dir, 0);
+  }
+
+  /**
+   * @param vectors map of IDs to feature vectors, all of the same length
+   * @param dir directory to write parts into
+   * @param firstPart number of the first part to write, so that several calls can write into one directory
+   * @return number of the next part to write
+   */
+  public static int writeFeatureVectors(LongObjectMap<float[]> vectors, File dir, int firstPart)
+      throws IOException {
+    if (vectors.isEmpty()) {
+      return firstPart;
+    }
+    long[] ids = sortedKeys(vectors);
+    int numFeatures = vectors.get(ids[0]).length;
+    int rowsPerPart = (int) (BinaryModelFormat.MAX_PART_BYTES / (8L + 4L * numFeatures));
+    int part = firstPart;
+    for (int from = 0; from < ids.length; from += rowsPerPart) {
+      int to = (int) FastMath.min((long) from + rowsPerPart, ids.length);
+      PartWriter out = new PartWriter(new File(dir, BinaryModelFormat.partFileName(part++)));
+      try {
+        for (int i = from; i < to; i++) {
+          out.data.writeLong(ids[i]);
+        }
+        for (int i = from; i < to; i++) {
+          writeVector(out.data, vectors.get(ids[i]), numFeatures);
+        }
+      } finally {
+        out.close();
+      }
+      out.finish(BinaryModelFormat.FEATURE_VECTORS, to - from, numFeatures);
+    }
+    log.info("Wrote {} feature vectors in {} parts to {}", ids.length, part - firstPart, dir);
+    return part;
+  }
+
+  /**
+   * @param knownItemIDs map of user IDs to the set of item IDs each is associated to
+   * @param dir directory to write parts into
+   */
+  public static void writeKnownItems(LongObjectMap<LongSet> knownItemIDs, File dir) throws IOException {
+    writeKnownItems(knownItemIDs, dir, 0);
+  }
+
+  /**
+   * @param knownItemIDs map of user IDs to the set of item IDs each is associated to
+   * @param dir directory to write parts into
+   * @param firstPart number of the first part to write, so that several calls can write into one directory
+   * @return number of the next part to write
+   */
+  public static int writeKnownItems(LongObjectMap<LongSet> knownItemIDs, File dir, int firstPart)
+      throws IOException {
+    if (knownItemIDs == null || knownItemIDs.isEmpty()) {
+      return firstPart;
+    }
+    long[] userIDs = sortedKeys(knownItemIDs);
+    int part = firstPart;
+    int from = 0;
+    while (from < userIDs.length) {
+      // Take users until the part is full, but always at least one
+      int to = from;
+      long totalItems = 0L;
+      long bytes = 0L;
+      do {
+        int numItems = knownItemIDs.get(userIDs[to]).size();
+        totalItems += numItems;
+        bytes += 8L + 4L + 8L * numItems;
+        to++;
+      } while (to < userIDs.length && bytes < BinaryModelFormat.MAX_PART_BYTES);
+
+      PartWriter out = new PartWriter(new File(dir, BinaryModelFormat.partFileName(part++)));
+      try {
+        for (int i = from; i < to; i++) {
+          out.data.writeLong(userIDs[i]);
+        }
+        int offset = 0;
+        out.data.writeInt(offset);
+        for (int i = from; i < to; i++) {
+          offset += knownItemIDs.get(userIDs[i]).size();
+          out.data.writeInt(offset);
+        }
+        for (int i = from; i < to; i++) {
+          LongPrimitiveIterator it = knownItemIDs.get(userIDs[i]).iterator();
+          while (it.hasNext()) {
+            out.data.writeLong(it.nextLong());
+          }
+        }
+      } finally {
+        out.close();
+      }
+      out.finish(BinaryModelFormat.KNOWN_ITEMS, to - from, totalItems);
+      from = to;
+    }
+    log.info("Wrote known items for {} users in {} parts to {}", userIDs.length, part - firstPart, dir);
+    return part;
+  }
+
+  /**
+   * @param idMapping mapping of numeric to string IDs
+   * @param dir directory to write parts into
+   */
+  public static void writeIDMapping(StringLongMapping idMapping, File dir) throws IOException {
+    writeIDMapping(idMapping, dir, 0);
+  }
+
+  /**
+   * @param idMapping mapping of numeric to string IDs
+   * @param dir directory to write parts into
+   * @param firstPart number of the first part to write, so that several calls can write into one directory
+   * @return number of the next part to write
+   */
+  public static int writeIDMapping(StringLongMapping idMapping, File dir, int firstPart) throws IOException {
+    long[] ids = idMapping.getNumericIDs();
+    if (ids.length == 0) {
+      return firstPart;
+    }
+    Arrays.sort(ids);
+    int part = firstPart;
+    int from = 0;
+    while (from < ids.length) {
+      int to = from;
+      long totalBytes = 0L;
+      do {
+        totalBytes += 8L + 4L + idMapping.toString(ids[to]).length() * 3L; // UTF-8 upper bound
+        to++;
+      } while (to < ids.length && totalBytes < BinaryModelFormat.MAX_PART_BYTES);
+
+      byte[][] encoded = new byte[to - from][];
+      long stringBytes = 0L;
+      for (int i = from; i < to; i++) {
+        encoded[i - from] = idMapping.toString(ids[i]).getBytes(Charsets.UTF_8);
+        stringBytes += encoded[i - from].length;
+      }
+
+      PartWriter out = new PartWriter(new File(dir, BinaryModelFormat.partFileName(part++)));
+      try {
+        for (int i = from; i < to; i++) {
+          out.data.writeLong(ids[i]);
+        }
+        int offset = 0;
+        out.data.writeInt(offset);
+        for (byte[] bytes : encoded) {
+          offset += bytes.length;
+          out.data.writeInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+          out.data.write(bytes);
+        }
+      } finally {
+        out.close();
+      }
+      out.finish(BinaryModelFormat.ID_MAPPING, to - from, stringBytes);
+      from = to;
+    }
+    log.info("Wrote mapping of {} IDs in {} parts to {}", ids.length, part - firstPart, dir);
+    return part;
+  }
+
+  private static void writeVector(DataOutputStream out, float[] vector, int numFeatures) throws IOException {
+    if (vector.length != numFeatures) {
+      throw new IOException("Expected " + numFeatures + " features but got " + vector.length);
+    }
+    for (float f : vector) {
+      out.writeFloat(f);
+    }
+  }
+
+  private static long[] sortedKeys(LongObjectMap<?> map) {
+    long[] keys = new long[map.size()];
+    LongPrimitiveIterator it = map.keySetIterator();
+    int i = 0;
+    while (it.hasNext()) {
+      keys[i++] = it.nextLong();
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Writes a part's payload after a placeholder header, checksumming as it goes. The real header is
+   * written by {@link #finish(int, int, long)} once the payload is complete.
+   */
+  private static final class PartWriter implements Closeable {
+
+    private final File file;
+    private final CheckedOutputStream checked;
+    final DataOutputStream data;
+
+    PartWriter(File file) throws IOException {
+      this.file = file;
+      Files.createParentDirs(file);
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(new byte[BinaryModelFormat.HEADER_BYTES]);
+      checked = new CheckedOutputStream(out, new CRC32());
+      // Buffer before checksumming so that the checksum is updated a block at a time
+      data = new DataOutputStream(new BufferedOutputStream(checked, BUFFER_BYTES));
+    }
+
+    void finish(int type, int count, long extra) throws IOException {
+      BinaryModelFormat.writeHeader(file, type, count, extra, checked.getChecksum().getValue());
+    }
+
+    @Override
+    public void close() throws IOException {
+      data.close();
+    }
+
+  }
+
+}
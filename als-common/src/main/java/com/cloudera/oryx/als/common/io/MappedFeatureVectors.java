@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A read-only view of one part of feature vectors, as written by
+ * {@link BinaryModelWriter#writeFeatureVectors(com.cloudera.oryx.common.collection.LongObjectMap, File)},
+ * backed by a memory-mapped file. Not thread-safe.
+ *
+ * @author Sean Owen
+ * @see BinaryModelFormat
+ */
+public final class MappedFeatureVectors {
+
+  private final int size;
+  private final int numFeatures;
+  private final LongBuffer ids;
+  private final FloatBuffer data;
+
+  private MappedFeatureVectors(ByteBuffer buffer) throws IOException {
+    size = BinaryModelFormat.getCount(buffer);
+    long extra = BinaryModelFormat.getExtra(buffer);
+    if (size < 0 || extra <= 0 || extra > Integer.MAX_VALUE) {
+      throw new IOException("Bad size " + size + " or number of features " + extra);
+    }
+    numFeatures = (int) extra;
+    long idsOffset = BinaryModelFormat.HEADER_BYTES;
+    long dataOffset = idsOffset + 8L * size;
+    ids = BinaryModelFormat.slice(buffer, idsOffset, 8L * size).asLongBuffer();
+    data = BinaryModelFormat.slice(buffer, dataOffset, 4L * size * numFeatures).asFloatBuffer();
+  }
+
+  /**
+   * @param file part file to map
+   * @return feature vectors in the file
+   * @throws IOException if the file can't be read or is not a valid feature vector part
+   */
+  public static MappedFeatureVectors open(File file) throws IOException {
+    return new MappedFeatureVectors(BinaryModelFormat.map(file, BinaryModelFormat.FEATURE_VECTORS));
+  }
+
+  /**
+   * @return number of feature vectors in this part
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * @param index index of a vector, from 0 to {@link #size()} - 1. IDs are in ascending order.
+   * @return ID of the vector
+   */
+  public long getID(int index) {
+    return ids.get(index);
+  }
+
+  /**
+   * @param id ID to find
+   * @return index of the vector with the given ID, or -1 if not present
+   */
+  public int indexOf(long id) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midID = ids.get(mid);
+      if (midID < id) {
+        low = mid + 1;
+      } else if (midID > id) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param index index of a vector, from 0 to {@link #size()} - 1
+   * @param into array of length {@link #getNumFeatures()} to copy the vector into
+   */
+  public void getVector(int index, float[] into) {
+    Preconditions.checkArgument(into.length == numFeatures, "Wrong length: %s", into.length);
+    data.position(index * numFeatures);
+    data.get(into);
+  }
+
+}
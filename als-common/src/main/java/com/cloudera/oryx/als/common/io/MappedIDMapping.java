@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import com.google.common.base.Charsets;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+
+/**
+ * A read-only view of one part of an ID mapping, as written by
+ * {@link BinaryModelWriter#writeIDMapping(StringLongMapping, File)},
+ * backed by a memory-mapped file. Not thread-safe.
+ *
+ * @author Sean Owen
+ * @see BinaryModelFormat
+ */
+public final class MappedIDMapping {
+
+  private final int size;
+  private final LongBuffer ids;
+  private final IntBuffer offsets;
+  private final ByteBuffer strings;
+
+  private MappedIDMapping(ByteBuffer buffer) throws IOException {
+    size = BinaryModelFormat.getCount(buffer);
+    long stringBytes = BinaryModelFormat.getExtra(buffer);
+    if (size < 0 || stringBytes < 0) {
+      throw new IOException("Bad size " + size + " or string bytes " + stringBytes);
+    }
+    long idsOffset = BinaryModelFormat.HEADER_BYTES;
+    long offsetsOffset = idsOffset + 8L * size;
+    long stringsOffset = offsetsOffset + 4L * (size + 1);
+    ids = BinaryModelFormat.slice(buffer, idsOffset, 8L * size).asLongBuffer();
+    offsets = BinaryModelFormat.slice(buffer, offsetsOffset, 4L * (size + 1)).asIntBuffer();
+    strings = BinaryModelFormat.slice(buffer, stringsOffset, stringBytes);
+  }
+
+  /**
+   * @param file part file to map
+   * @return ID mapping entries in the file
+   * @throws IOException if the file can't be read or is not a valid ID mapping part
+   */
+  public static MappedIDMapping open(File file) throws IOException {
+    return new MappedIDMapping(BinaryModelFormat.map(file, BinaryModelFormat.ID_MAPPING));
+  }
+
+  /**
+   * @return number of mappings in this part
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index index of a mapping, from 0 to {@link #size()} - 1. IDs are in ascending order.
+   * @return numeric ID
+   */
+  public long getID(int index) {
+    return ids.get(index);
+  }
+
+  /**
+   * @param index index of a mapping, from 0 to {@link #size()} - 1
+   * @return string ID that the numeric ID maps to
+   */
+  public String getString(int index) {
+    int from = offsets.get(index);
+    int to = offsets.get(index + 1);
+    byte[] bytes = new byte[to - from];
+    strings.position(from);
+    strings.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  /**
+   * Adds all mappings in this part to the given mapping, copying strings' UTF-8 bytes without decoding them.
+   *
+   * @param mapping mapping to add to
+   */
+  public void addTo(StringLongMapping mapping) {
+    ByteBuffer allStrings = strings.duplicate();
+    allStrings.position(0);
+    mapping.addMappingsUTF8(ids.duplicate(), offsets.duplicate(), allStrings, size);
+  }
+
+}
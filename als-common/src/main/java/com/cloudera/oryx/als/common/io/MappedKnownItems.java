@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import com.cloudera.oryx.common.collection.LongSet;
+
+/**
+ * A read-only view of one part of known item IDs, as written by
+ * {@link BinaryModelWriter#writeKnownItems(com.cloudera.oryx.common.collection.LongObjectMap, File)},
+ * backed by a memory-mapped file. Not thread-safe.
+ *
+ * @author Sean Owen
+ * @see BinaryModelFormat
+ */
+public final class MappedKnownItems {
+
+  private final int size;
+  private final LongBuffer userIDs;
+  private final IntBuffer offsets;
+  private final LongBuffer itemIDs;
+
+  private MappedKnownItems(ByteBuffer buffer) throws IOException {
+    size = BinaryModelFormat.getCount(buffer);
+    long totalItems = BinaryModelFormat.getExtra(buffer);
+    if (size < 0 || totalItems < 0) {
+      throw new IOException("Bad size " + size + " or number of items " + totalItems);
+    }
+    long userIDsOffset = BinaryModelFormat.HEADER_BYTES;
+    long offsetsOffset = userIDsOffset + 8L * size;
+    long itemIDsOffset = offsetsOffset + 4L * (size + 1);
+    userIDs = BinaryModelFormat.slice(buffer, userIDsOffset, 8L * size).asLongBuffer();
+    offsets = BinaryModelFormat.slice(buffer, offsetsOffset, 4L * (size + 1)).asIntBuffer();
+    itemIDs = BinaryModelFormat.slice(buffer, itemIDsOffset, 8L * totalItems).asLongBuffer();
+  }
+
+  /**
+   * @param file part file to map
+   * @return known items in the file
+   * @throws IOException if the file can't be read or is not a valid known items part
+   */
+  public static MappedKnownItems open(File file) throws IOException {
+    return new MappedKnownItems(BinaryModelFormat.map(file, BinaryModelFormat.KNOWN_ITEMS));
+  }
+
+  /**
+   * @return number of users in this part
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index index of a user, from 0 to {@link #size()} - 1. IDs are in ascending order.
+   * @return ID of the user
+   */
+  public long getUserID(int index) {
+    return userIDs.get(index);
+  }
+
+  /**
+   * @param index index of a user, from 0 to {@link #size()} - 1
+   * @return new set of the item IDs known for the user
+   */
+  public LongSet getItemIDs(int index) {
+    int from = offsets.get(index);
+    int to = offsets.get(index + 1);
+    LongSet result = new LongSet(to - from);
+    for (int i = from; i < to; i++) {
+      result.add(itemIDs.get(i));
+    }
+    return result;
+  }
+
+}
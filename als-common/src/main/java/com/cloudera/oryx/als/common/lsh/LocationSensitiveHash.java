@@ -15,22 +15,22 @@
 
 package com.cloudera.oryx.als.common.lsh;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import org.apache.commons.math3.random.RandomGenerator;
-import org.apache.commons.math3.util.ArithmeticUtils;
+import org.apache.commons.math3.util.CombinatoricsUtils;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
-import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 import com.cloudera.oryx.common.random.RandomManager;
 
 /**
@@ -57,7 +57,9 @@ import com.cloudera.oryx.common.random.RandomManager;
  *
  * <p>To produce a list of candidate item vectors for a given user vector, the user vector's signature is
  * computed. All buckets whose signature matches in "most" bits are matches, and all item vectors inside
- * are candidates.</p>
+ * are candidates. When there are sufficiently fewer signatures within this many bits of a given signature than
+ * there are buckets, those signatures are enumerated and looked up directly; otherwise, all buckets are
+ * scanned.</p>
  *
  * <p><em>This is experimental, and is disabled unless "model.lsh.sample-ratio" is set to a value less than 1.</em></p>
  *
@@ -67,17 +69,34 @@ public final class LocationSensitiveHash {
 
   private static final Logger log = LoggerFactory.getLogger(LocationSensitiveHash.class);
 
-  private final LongObjectMap<float[]> Y;
+  /**
+   * Probing one signature costs roughly this many times more than checking one bucket during a scan,
+   * as measured by LocationSensitiveHashLoadIT.
+   */
+  private static final int PROBE_COST = 4;
+
+  private final FeatureMatrix Y;
   private final boolean[][] randomVectors;
   private final double[] meanVector;
   private final LongObjectMap<long[]> buckets;
-  private final LongSet newItems;
   private final int maxBitsDiffering;
+  /** Masks of all bit patterns with at most maxBitsDiffering bits set, or null if scanning is cheaper */
+  private final long[] probeMasks;
+  /** Guards newItemSet, and writes to newItems and numNewItems */
+  private final Object newItemsLock;
+  private final LongSet newItemSet;
+  /**
+   * IDs in newItemSet, in the order added. Entries before numNewItems never change, so readers need no lock.
+   * The array is replaced by one twice as large when full.
+   */
+  private volatile long[] newItems;
+  /** Written after newItems and its new entry, and so read before it */
+  private volatile int numNewItems;
 
   /**
    * @param Y item vectors to hash
    */
-  public LocationSensitiveHash(LongObjectMap<float[]> Y, double lshSampleRatio, int numHashes) {
+  public LocationSensitiveHash(FeatureMatrix Y, double lshSampleRatio, int numHashes) {
     Preconditions.checkNotNull(Y);
     Preconditions.checkArgument(!Y.isEmpty(), "Y is empty");
 
@@ -95,13 +114,13 @@ public final class LocationSensitiveHash {
     while (bitsDiffering < numHashes && cumulativeProbability < lshSampleRatio) {
       bitsDiffering++;
       cumulativeProbability +=
-          ArithmeticUtils.binomialCoefficientDouble(numHashes, bitsDiffering) / denominator;
+          CombinatoricsUtils.binomialCoefficientDouble(numHashes, bitsDiffering) / denominator;
     }
 
     maxBitsDiffering = bitsDiffering - 1;
     log.info("Max bits differing: {}", maxBitsDiffering);
 
-    int features = Y.entrySet().iterator().next().getValue().length;
+    int features = Y.getNumFeatures();
 
     RandomGenerator random = RandomManager.getRandom();
     randomVectors = new boolean[numHashes][features];
@@ -116,11 +135,14 @@ public final class LocationSensitiveHash {
     buckets = new LongObjectMap<long[]>();
     int count = 0;
     int maxBucketSize = 0;
-    for (LongObjectMap.MapEntry<float[]> entry : Y.entrySet()) {
-      long signature = toBitSignature(entry.getValue());
+    float[] data = Y.getData();
+    int size = Y.size();
+    for (int row = 0; row < size; row++) {
+      long signature = toBitSignature(data, row * features);
+      long itemID = Y.getID(row);
       long[] ids = buckets.get(signature);
       if (ids == null) {
-        buckets.put(signature, new long[] {entry.getKey()});
+        buckets.put(signature, new long[] {itemID});
       } else {
         int length = ids.length;
         // Large majority of arrays will be length 1; all are short.
@@ -129,7 +151,7 @@ public final class LocationSensitiveHash {
         for (int i = 0; i < length; i++) {
           newIDs[i] = ids[i];
         }
-        newIDs[length] = entry.getKey();
+        newIDs[length] = itemID;
         maxBucketSize = FastMath.max(maxBucketSize, newIDs.length);
         buckets.put(signature, newIDs);
       }
@@ -140,19 +162,63 @@ public final class LocationSensitiveHash {
 
     log.info("Max bucket size {}", maxBucketSize);
     log.info("Put {} items into {} buckets", Y.size(), buckets.size());
+
+    double numProbes = 0.0;
+    for (int bits = 0; bits <= maxBitsDiffering; bits++) {
+      numProbes += CombinatoricsUtils.binomialCoefficientDouble(numHashes, bits);
+    }
+    if (numProbes * PROBE_COST <= buckets.size()) {
+      probeMasks = buildProbeMasks(numHashes, maxBitsDiffering);
+      log.info("Probing {} signatures per lookup", probeMasks.length);
+    } else {
+      probeMasks = null;
+      log.info("Scanning all buckets per lookup, which is cheaper than probing {} signatures", numProbes);
+    }
+
     // A separate bucket for new items, which will always be considered
-    newItems = new LongSet();
+    newItemsLock = new Object();
+    newItemSet = new LongSet();
+    newItems = new long[8];
+  }
+
+  /**
+   * @return all {@code long} values whose lowest {@code numHashes} bits have at most {@code maxBits} set
+   */
+  private static long[] buildProbeMasks(int numHashes, int maxBits) {
+    long numProbes = 0L;
+    for (int bits = 0; bits <= maxBits; bits++) {
+      numProbes += CombinatoricsUtils.binomialCoefficient(numHashes, bits);
+    }
+    long[] masks = new long[(int) numProbes];
+    int count = 0;
+    for (int bits = 0; bits <= maxBits; bits++) {
+      count = addProbeMasks(masks, count, 0L, 0, numHashes, bits);
+    }
+    return masks;
+  }
+
+  private static int addProbeMasks(long[] masks, int count, long mask, int fromBit, int numHashes, int bitsLeft) {
+    if (bitsLeft == 0) {
+      masks[count] = mask;
+      return count + 1;
+    }
+    int newCount = count;
+    for (int bit = fromBit; bit <= numHashes - bitsLeft; bit++) {
+      newCount = addProbeMasks(masks, newCount, mask | (1L << bit), bit + 1, numHashes, bitsLeft - 1);
+    }
+    return newCount;
   }
 
-  private static double[] findMean(LongObjectMap<float[]> Y, int features) {
+  private static double[] findMean(FeatureMatrix Y, int features) {
     double[] theMeanVector = new double[features];
-    for (LongObjectMap.MapEntry<float[]> entry : Y.entrySet()) {
-      float[] vec = entry.getValue();
+    float[] data = Y.getData();
+    int size = Y.size();
+    for (int row = 0; row < size; row++) {
+      int offset = row * features;
       for (int i = 0; i < features; i++) {
-        theMeanVector[i] += vec[i];
+        theMeanVector[i] += data[offset + i];
       }
     }
-    int size = Y.size();
     for (int i = 0; i < features; i++) {
       theMeanVector[i] /= size;
     }
@@ -160,13 +226,17 @@ public final class LocationSensitiveHash {
   }
 
   private long toBitSignature(float[] vector) {
+    return toBitSignature(vector, 0);
+  }
+
+  private long toBitSignature(float[] vector, int offset) {
     long l = 0L;
     double[] theMeanVector = meanVector;
     for (boolean[] randomVector : randomVectors) {
       // Dot product. true == +1, false == -1
       double total = 0.0;
       for (int i = 0; i < randomVector.length; i++) {
-        double delta = vector[i] - theMeanVector[i];
+        double delta = vector[offset + i] - theMeanVector[i];
         if (randomVector[i]) {
           total += delta;
         } else {
@@ -182,127 +252,85 @@ public final class LocationSensitiveHash {
     return l;
   }
 
-  public Collection<Iterator<LongObjectMap.MapEntry<float[]>>> getCandidateIterator(float[][] userVectors) {
-    long[] bitSignatures = new long[userVectors.length];
-    for (int i = 0; i < userVectors.length; i++) {
-      bitSignatures[i] = toBitSignature(userVectors[i]);
+  public Collection<IntPrimitiveIterator> getCandidateIterator(float[][] userVectors) {
+    long[] bitSignatures = toBitSignatures(userVectors);
+    Collection<IntPrimitiveIterator> inputs;
+    if (probeMasks != null && (long) probeMasks.length * bitSignatures.length * PROBE_COST <= buckets.size()) {
+      inputs = probeBuckets(bitSignatures);
+    } else {
+      inputs = scanBuckets(bitSignatures);
     }
-    Collection<Iterator<LongObjectMap.MapEntry<float[]>>> inputs = Lists.newArrayList();
-    for (LongObjectMap.MapEntry<long[]> entry : buckets.entrySet()) {
-      for (long bitSignature : bitSignatures) {
-        if (Long.bitCount(bitSignature ^ entry.getKey()) <= maxBitsDiffering) { // # bits differing
-          inputs.add(new IDArrayToEntryIterator(entry.getValue()));
-          break;
-        }
-      }
-    }
-
-    synchronized (newItems) {
-      if (!newItems.isEmpty()) {
-        // Have to clone because it's being written to
-        inputs.add(new IDToEntryIterator(newItems.clone().iterator()));
-      }
-    }
-
+    addNewItems(inputs);
     return inputs;
   }
 
-  public void addItem(String itemID) {
-    if (newItems != null) {
-      long longItemID = StringLongMapping.toLong(itemID);
-      synchronized (newItems) {
-        newItems.add(longItemID);
-      }
-    }
-  }
-
   /**
-   * @see IDArrayToEntryIterator
+   * Like {@link #getCandidateIterator(float[][])}, but always scans all buckets. This is the original
+   * implementation, kept for comparison.
    */
-  private final class IDToEntryIterator implements Iterator<LongObjectMap.MapEntry<float[]>> {
-
-    private final LongPrimitiveIterator input;
-    private final MutableMapEntry delegate;
-
-    private IDToEntryIterator(LongPrimitiveIterator input) {
-      this.input = input;
-      this.delegate = new MutableMapEntry();
-    }
-
-    @Override
-    public boolean hasNext() {
-      return input.hasNext();
-    }
-
-    @Override
-    public LongObjectMap.MapEntry<float[]> next() {
-      // Will throw NoSuchElementException if needed:
-      long itemID = input.nextLong();
-      delegate.set(itemID, Y.get(itemID));
-      return delegate;
-    }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException();
-    }
-
+  Collection<IntPrimitiveIterator> getCandidateIteratorByScan(float[][] userVectors) {
+    Collection<IntPrimitiveIterator> inputs = scanBuckets(toBitSignatures(userVectors));
+    addNewItems(inputs);
+    return inputs;
   }
 
-  /**
-   * @see IDToEntryIterator
-   */
-  private final class IDArrayToEntryIterator implements Iterator<LongObjectMap.MapEntry<float[]>> {
-
-    private int offset;
-    private final long[] input;
-    private final MutableMapEntry delegate;
-
-    private IDArrayToEntryIterator(long[] input) {
-      this.input = input;
-      this.delegate = new MutableMapEntry();
-    }
-
-    @Override
-    public boolean hasNext() {
-      return offset < input.length;
+  private long[] toBitSignatures(float[][] userVectors) {
+    long[] bitSignatures = new long[userVectors.length];
+    for (int i = 0; i < userVectors.length; i++) {
+      bitSignatures[i] = toBitSignature(userVectors[i]);
     }
+    return bitSignatures;
+  }
 
-    @Override
-    public LongObjectMap.MapEntry<float[]> next() {
-      if (offset >= input.length) {
-        throw new NoSuchElementException();
+  private Collection<IntPrimitiveIterator> probeBuckets(long[] bitSignatures) {
+    Collection<IntPrimitiveIterator> inputs = Lists.newArrayList();
+    // With several signatures, the same bucket may be within range of more than one
+    LongSet probed = bitSignatures.length > 1 ? new LongSet() : null;
+    for (long bitSignature : bitSignatures) {
+      for (long probeMask : probeMasks) {
+        long signature = bitSignature ^ probeMask;
+        long[] ids = buckets.get(signature);
+        if (ids != null && (probed == null || probed.add(signature))) {
+          inputs.add(Y.rowIterator(ids));
+        }
       }
-      long itemID = input[offset++];
-      delegate.set(itemID, Y.get(itemID));
-      return delegate;
     }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException();
-    }
-
+    return inputs;
   }
 
-  private static final class MutableMapEntry implements LongObjectMap.MapEntry<float[]> {
-
-    private long key;
-    private float[] value;
-
-    @Override
-    public long getKey() {
-      return key;
+  private Collection<IntPrimitiveIterator> scanBuckets(long[] bitSignatures) {
+    Collection<IntPrimitiveIterator> inputs = Lists.newArrayList();
+    for (LongObjectMap.MapEntry<long[]> entry : buckets.entrySet()) {
+      for (long bitSignature : bitSignatures) {
+        if (Long.bitCount(bitSignature ^ entry.getKey()) <= maxBitsDiffering) { // # bits differing
+          inputs.add(Y.rowIterator(entry.getValue()));
+          break;
+        }
+      }
     }
+    return inputs;
+  }
 
-    @Override
-    public float[] getValue() {
-      return value;
+  private void addNewItems(Collection<IntPrimitiveIterator> inputs) {
+    int theNumNewItems = numNewItems;
+    if (theNumNewItems > 0) {
+      inputs.add(Y.rowIterator(newItems, theNumNewItems));
     }
+  }
 
-    public void set(long key, float[] value) {
-      this.key = key;
-      this.value = value;
+  public void addItem(String itemID) {
+    long longItemID = StringLongMapping.toLong(itemID);
+    synchronized (newItemsLock) {
+      if (newItemSet.add(longItemID)) {
+        long[] theNewItems = newItems;
+        int theNumNewItems = numNewItems;
+        if (theNumNewItems == theNewItems.length) {
+          theNewItems = Arrays.copyOf(theNewItems, 2 * theNumNewItems);
+          newItems = theNewItems;
+        }
+        theNewItems[theNumNewItems] = longItemID;
+        numNewItems = theNumNewItems + 1;
+      }
     }
   }
 
@@ -43,6 +43,11 @@ import com.cloudera.oryx.common.io.IOUtils;
  */
 public final class ALSModelDescription {
 
+  /** Original format: gzipped, delimited text */
+  public static final String TEXT_FORMAT = "text";
+  /** Format defined by {@link com.cloudera.oryx.als.common.io.BinaryModelFormat} */
+  public static final String BINARY_FORMAT = "binary";
+
   private final Map<String,String> pathByKey = Maps.newHashMap();
 
   private Map<String,String> getPathByKey() {
@@ -81,6 +86,22 @@ public final class ALSModelDescription {
     pathByKey.put("idMappingPath", path);
   }
 
+  /**
+   * @return format of the files under the paths above; {@link #TEXT_FORMAT} if not specified
+   */
+  public String getFormat() {
+    String format = pathByKey.get("format");
+    return format == null ? TEXT_FORMAT : format;
+  }
+
+  public void setFormat(String format) {
+    pathByKey.put("format", format);
+  }
+
+  public boolean isBinary() {
+    return BINARY_FORMAT.equals(getFormat());
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof ALSModelDescription)) {
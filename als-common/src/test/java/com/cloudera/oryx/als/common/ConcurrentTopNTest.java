@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link ConcurrentTopN}.
+ *
+ * @author Sean Owen
+ */
+public final class ConcurrentTopNTest extends OryxTest {
+
+  @Test
+  public void testEmpty() {
+    ConcurrentTopN topN = new ConcurrentTopN(2);
+    topN.newHeap();
+    assertEquals(0, topN.merge().size());
+    assertEquals(0, new ConcurrentTopN(2).merge().size());
+  }
+
+  @Test
+  public void testFewerThanN() {
+    ConcurrentTopN topN = new ConcurrentTopN(5);
+    topN.newHeap().offer(1L, 1.0f);
+    topN.newHeap().offer(2L, 2.0f);
+    List<NumericIDValue> top = topN.merge();
+    assertEquals(2, top.size());
+    assertEquals(2L, top.get(0).getID());
+    assertEquals(1L, top.get(1).getID());
+  }
+
+  @Test
+  public void testNulls() {
+    List<NumericIDValue> candidates = Lists.newArrayList(null, new NumericIDValue(1L, 1.0f), null);
+    ConcurrentTopN topN = new ConcurrentTopN(3);
+    topN.newHeap().offerAll(candidates.iterator());
+    List<NumericIDValue> top = topN.merge();
+    assertEquals(1, top.size());
+    assertEquals(1L, top.get(0).getID());
+  }
+
+  @Test
+  public void testMatchesTopN() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int howMany : new int[] { 1, 3, 10, 100 }) {
+      List<NumericIDValue> candidates = Lists.newArrayList();
+      for (long id = 0; id < 1000; id++) {
+        candidates.add(new NumericIDValue(id, random.nextFloat()));
+      }
+      ConcurrentTopN topN = new ConcurrentTopN(howMany);
+      ConcurrentTopN.Heap[] heaps = { topN.newHeap(), topN.newHeap(), topN.newHeap() };
+      for (int i = 0; i < candidates.size(); i++) {
+        NumericIDValue candidate = candidates.get(i);
+        heaps[i % heaps.length].offer(candidate.getID(), candidate.getValue());
+      }
+      assertEquals(TopN.selectTopN(candidates.iterator(), howMany), topN.merge());
+    }
+  }
+
+  @Test
+  public void testMultithreaded() throws Exception {
+    final List<NumericIDValue> candidates = Lists.newArrayList();
+    for (long id = 0; id < 100000; id++) {
+      candidates.add(new NumericIDValue(id, (float) ((id * 7919L) % 100003L)));
+    }
+    Collections.shuffle(candidates);
+    final ConcurrentTopN topN = new ConcurrentTopN(10);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int start = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ConcurrentTopN.Heap heap = topN.newHeap();
+          for (int i = start; i < candidates.size(); i += 4) {
+            NumericIDValue candidate = candidates.get(i);
+            heap.offer(candidate.getID(), candidate.getValue());
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(TopN.selectTopN(candidates.iterator(), 10), topN.merge());
+  }
+
+}
@@ -15,10 +15,17 @@
 
 package com.cloudera.oryx.als.common;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.junit.Test;
 
 import com.cloudera.oryx.common.OryxTest;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
 
 /**
  * Tests {@link StringLongMapping}.
@@ -77,9 +84,84 @@ public final class StringLongMappingTest extends OryxTest {
   public void testMapping() {
     StringLongMapping mapping = new StringLongMapping();
     long hash = mapping.add("foo");
-    LongObjectMap<String> reverse = mapping.getReverseMapping();
-    assertEquals(1, reverse.size());
-    assertEquals("foo", reverse.get(hash));
+    assertEquals(1, mapping.size());
+    assertArrayEquals(new long[] { hash }, mapping.getNumericIDs());
+    assertEquals("foo", mapping.toString(hash));
+  }
+
+  @Test
+  public void testNotNumeric() {
+    for (String id : new String[] { "", "-", "-0", "00", "1a", "a1", "+1", " 1", "1 ", "1.0", "\u0661" }) {
+      assertEquals(id, RandomUtils.hash(id), StringLongMapping.toLong(id));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    StringLongMapping mapping = new StringLongMapping();
+    RandomGenerator random = RandomManager.getRandom();
+    int numIDs = 100000;
+    String[] ids = new String[numIDs];
+    long[] numericIDs = new long[numIDs];
+    for (int i = 0; i < numIDs; i++) {
+      String id;
+      switch (i % 4) {
+        case 0:
+          id = Long.toString(random.nextLong() / 100);
+          break;
+        case 1:
+          id = "item-" + random.nextInt();
+          break;
+        case 2:
+          // Non-ASCII, including chars outside the Basic Multilingual Plane
+          id = "\u00e9l\u00e8ve-\u4e2d\ud83d\ude00-" + i;
+          break;
+        default:
+          id = Integer.toString(random.nextInt(1000));
+          break;
+      }
+      ids[i] = id;
+      numericIDs[i] = mapping.add(id);
+      // Adding the same ID again has no effect
+      assertEquals(numericIDs[i], mapping.add(id));
+    }
+    for (int i = 0; i < numIDs; i++) {
+      assertEquals(StringLongMapping.toLong(ids[i]), numericIDs[i]);
+      assertEquals(ids[i], mapping.toString(numericIDs[i]));
+    }
+  }
+
+  @Test
+  public void testOverwrite() {
+    StringLongMapping mapping = new StringLongMapping();
+    mapping.addMapping("foo", 1L);
+    mapping.addMapping("bar", 1L);
+    assertEquals(1, mapping.size());
+    assertEquals("bar", mapping.toString(1L));
+    assertEquals("2", mapping.toString(2L));
+  }
+
+  @Test
+  public void testAddMappingsUTF8() {
+    String[] ids = { "foo", "", "\u00e9l\u00e8ve", "bar" };
+    long[] numericIDs = { 3L, 5L, 7L, 11L };
+    int[] offsets = new int[ids.length + 1];
+    ByteBuffer strings = ByteBuffer.allocate(100);
+    for (int i = 0; i < ids.length; i++) {
+      strings.put(ids[i].getBytes(Charsets.UTF_8));
+      offsets[i + 1] = strings.position();
+    }
+    strings.flip();
+
+    StringLongMapping mapping = new StringLongMapping();
+    mapping.addMapping("baz", 3L);
+    for (int repeat = 0; repeat < 2; repeat++) {
+      mapping.addMappingsUTF8(LongBuffer.wrap(numericIDs), IntBuffer.wrap(offsets), strings, ids.length);
+    }
+    assertEquals(ids.length, mapping.size());
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(ids[i], mapping.toString(numericIDs[i]));
+    }
   }
 
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.factorizer.als;
+
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Tests {@link AlternatingLeastSquares} when {@code model.solver=cg}, which should converge to about the same
+ * result as the exact solver in {@link AlternatingLeastSquaresTest}.
+ *
+ * @author Sean Owen
+ */
+public final class AlternatingLeastSquaresConjugateGradientTest extends OryxTest {
+
+  @Test
+  public void testALSConjugateGradient() throws Exception {
+    RealMatrix exact = AlternatingLeastSquaresTest.buildTestXYTProduct();
+
+    ConfigUtils.overlayConfigOnDefault(getResourceAsFile("AlternatingLeastSquaresConjugateGradientTest.conf"));
+
+    RealMatrix product = AlternatingLeastSquaresTest.buildTestXYTProduct();
+    for (int row = 0; row < exact.getRowDimension(); row++) {
+      assertArrayEquals(exact.getRow(row), product.getRow(row), 0.001);
+    }
+  }
+
+}
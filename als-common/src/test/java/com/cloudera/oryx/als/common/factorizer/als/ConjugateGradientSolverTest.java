@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.factorizer.als;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.math.MatrixUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link ConjugateGradientSolver} against solving the same normal equations exactly.
+ *
+ * @author Sean Owen
+ */
+public final class ConjugateGradientSolverTest extends OryxTest {
+
+  private static final int FEATURES = 20;
+  private static final int ITEMS = 200;
+  private static final double ALPHA = 1.0;
+  private static final double LAMBDA = 0.1;
+
+  @Test
+  public void testSolve() {
+    RandomGenerator random = RandomManager.getRandom();
+    LongObjectMap<float[]> Y = new LongObjectMap<float[]>();
+    for (long item = 0; item < ITEMS; item++) {
+      float[] vector = new float[FEATURES];
+      for (int i = 0; i < FEATURES; i++) {
+        vector[i] = (float) random.nextGaussian();
+      }
+      Y.put(item, vector);
+    }
+    double[][] YTY = MatrixUtils.accessMatrixDataDirectly(MatrixUtils.transposeTimesSelf(Y));
+    LongFloatMap ru = new LongFloatMap();
+    for (int i = 0; i < 30; i++) {
+      ru.put(random.nextInt(ITEMS), 1.0f + random.nextInt(5));
+    }
+
+    float[] exact = solveExactly(YTY, Y, ru);
+
+    // Enough iterations from 0 to converge, as conjugate gradient is exact after at most FEATURES iterations
+    ConjugateGradientSolver fromZero = new ConjugateGradientSolver(FEATURES, FEATURES, ALPHA, LAMBDA, false, false);
+    assertArrayEquals(exact, solve(fromZero, YTY, Y, ru, null), 1.0e-4f);
+
+    // A few iterations from nearby
+    float[] start = new float[FEATURES];
+    for (int i = 0; i < FEATURES; i++) {
+      start[i] = exact[i] + (float) (0.01 * random.nextGaussian());
+    }
+    ConjugateGradientSolver fromStart = new ConjugateGradientSolver(FEATURES, 3, ALPHA, LAMBDA, false, false);
+    float[] approximate = solve(fromStart, YTY, Y, ru, start);
+    assertTrue(distance(exact, approximate) < distance(exact, start));
+    assertArrayEquals(exact, approximate, 0.005f);
+  }
+
+  private static float[] solve(ConjugateGradientSolver solver,
+                               double[][] YTY,
+                               LongObjectMap<float[]> Y,
+                               LongFloatMap ru,
+                               float[] start) {
+    solver.startRow();
+    for (LongFloatMap.MapEntry entry : ru.entrySet()) {
+      solver.addValue(Y.get(entry.getKey()), entry.getValue());
+    }
+    return solver.solve(YTY, ru.size(), start);
+  }
+
+  private static float[] solveExactly(double[][] YTY, LongObjectMap<float[]> Y, LongFloatMap ru) {
+    double[][] Wu = new double[FEATURES][];
+    for (int i = 0; i < FEATURES; i++) {
+      Wu[i] = YTY[i].clone();
+      Wu[i][i] += LAMBDA * ru.size();
+    }
+    double[] b = new double[FEATURES];
+    for (LongFloatMap.MapEntry entry : ru.entrySet()) {
+      float[] vector = Y.get(entry.getKey());
+      double cu = 1.0 + ALPHA * entry.getValue();
+      for (int i = 0; i < FEATURES; i++) {
+        for (int j = 0; j < FEATURES; j++) {
+          Wu[i][j] += (cu - 1.0) * vector[i] * vector[j];
+        }
+        b[i] += cu * vector[i];
+      }
+    }
+    return MatrixUtils.getSolver(new Array2DRowRealMatrix(Wu, false)).solveDToF(b);
+  }
+
+  private static double distance(float[] a, float[] b) {
+    double sum = 0.0;
+    for (int i = 0; i < a.length; i++) {
+      double diff = a[i] - b[i];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.hnsw;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+public final class HierarchicalNavigableSmallWorldTest extends OryxTest {
+
+  private static final int NUM_FEATURES = 10;
+  private static final int NUM_ITEMS = 2000;
+  private static final int NUM_QUERIES = 100;
+  private static final int HOW_MANY = 10;
+
+  @Test
+  public void testRecall() {
+    RandomGenerator random = RandomManager.getRandom();
+    FeatureMatrix Y = randomMatrix(random, NUM_ITEMS);
+    HierarchicalNavigableSmallWorld graph = new HierarchicalNavigableSmallWorld(Y, 8, 50);
+    assertEquals(NUM_ITEMS, graph.size());
+
+    long hits = 0L;
+    for (int i = 0; i < NUM_QUERIES; i++) {
+      float[] query = randomVector(random);
+      long[] found = graph.search(query, 50);
+      assertEquals(50, found.length);
+      LongSet foundTop = new LongSet();
+      for (int j = 0; j < HOW_MANY; j++) {
+        foundTop.add(found[j]);
+      }
+      hits += exactTop(Y, query).intersectionSize(foundTop);
+    }
+    assertTrue(hits >= 0.9 * NUM_QUERIES * HOW_MANY);
+  }
+
+  @Test
+  public void testLargestDotFirst() {
+    FeatureMatrix Y = new FeatureMatrix(2, 3);
+    Y.put(1L, new float[] {1.0f, 0.0f});
+    Y.put(2L, new float[] {3.0f, 0.0f});
+    Y.put(3L, new float[] {0.0f, 2.0f});
+    HierarchicalNavigableSmallWorld graph = new HierarchicalNavigableSmallWorld(Y, 2, 10);
+    // Nearest to (1,0) is item 1, but largest dot product is with item 2
+    assertArrayEquals(new long[] {2L, 1L, 3L}, graph.search(new float[] {1.0f, 0.0f}, 3));
+    assertArrayEquals(new long[] {3L, 2L, 1L}, graph.search(new float[] {0.1f, 1.0f}, 3));
+  }
+
+  @Test
+  public void testInsert() {
+    RandomGenerator random = RandomManager.getRandom();
+    FeatureMatrix Y = randomMatrix(random, 100);
+    HierarchicalNavigableSmallWorld graph = new HierarchicalNavigableSmallWorld(Y, 8, 50);
+    float[] vector = randomVector(random);
+    assertTrue(graph.insert(1000L, vector));
+    assertFalse(graph.insert(1000L, vector));
+    assertEquals(101, graph.size());
+    // Scaled up, the new item has the largest dot product with its own direction
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] *= 10.0f;
+    }
+    assertTrue(graph.insert(1001L, vector));
+    assertEquals(1001L, graph.search(vector, 10)[0]);
+  }
+
+  private static FeatureMatrix randomMatrix(RandomGenerator random, int numItems) {
+    FeatureMatrix Y = new FeatureMatrix(NUM_FEATURES, numItems);
+    for (int i = 0; i < numItems; i++) {
+      Y.put(i, randomVector(random));
+    }
+    return Y;
+  }
+
+  private static float[] randomVector(RandomGenerator random) {
+    float[] vector = RandomUtils.randomUnitVector(NUM_FEATURES, random);
+    // Vary norms, which matter for dot products
+    float scale = (float) (0.5 + random.nextDouble());
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] *= scale;
+    }
+    return vector;
+  }
+
+  private static LongSet exactTop(FeatureMatrix Y, float[] query) {
+    LongSet top = new LongSet();
+    boolean[] taken = new boolean[Y.size()];
+    for (int n = 0; n < HOW_MANY; n++) {
+      int best = -1;
+      double bestDot = Double.NEGATIVE_INFINITY;
+      for (int row = 0; row < Y.size(); row++) {
+        double dot = Y.dot(row, query);
+        if (!taken[row] && dot > bestDot) {
+          best = row;
+          bestDot = dot;
+        }
+      }
+      taken[best] = true;
+      top.add(Y.getID(best));
+    }
+    return top;
+  }
+
+}
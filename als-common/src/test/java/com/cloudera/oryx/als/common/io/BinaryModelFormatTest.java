@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * Tests {@link BinaryModelWriter} and the readers of its output.
+ *
+ * @author Sean Owen
+ */
+public final class BinaryModelFormatTest extends OryxTest {
+
+  private File tempDir;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    tempDir = Files.createTempDir();
+  }
+
+  @Override
+  @After
+  public void tearDown() throws Exception {
+    IOUtils.deleteRecursively(tempDir);
+    super.tearDown();
+  }
+
+  @Test
+  public void testFeatureVectors() throws Exception {
+    RandomGenerator random = RandomManager.getRandom();
+    LongObjectMap<float[]> vectors = new LongObjectMap<float[]>();
+    for (int i = 0; i < 1000; i++) {
+      vectors.put(random.nextLong(), RandomUtils.randomUnitVector(10, random));
+    }
+    BinaryModelWriter.writeFeatureVectors(vectors, tempDir);
+
+    MappedFeatureVectors mapped = MappedFeatureVectors.open(new File(tempDir, "0.bin"));
+    assertEquals(vectors.size(), mapped.size());
+    assertEquals(10, mapped.getNumFeatures());
+    float[] vector = new float[10];
+    long previousID = Long.MIN_VALUE;
+    for (int i = 0; i < mapped.size(); i++) {
+      long id = mapped.getID(i);
+      assertTrue(id > previousID);
+      previousID = id;
+      mapped.getVector(i, vector);
+      assertArrayEquals(vectors.get(id), vector);
+      assertEquals(i, mapped.indexOf(id));
+    }
+    assertEquals(-1, mapped.indexOf(previousID + 1));
+  }
+
+  @Test
+  public void testSortedFeatureVectors() throws Exception {
+    LongObjectMap<float[]> matrix = new LongObjectMap<float[]>();
+    matrix.put(3L, new float[] {1.0f, 2.0f});
+    matrix.put(1L, new float[] {-1.0f, 0.5f});
+    BinaryModelWriter.writeFeatureVectors(matrix, tempDir);
+
+    MappedFeatureVectors mapped = MappedFeatureVectors.open(new File(tempDir, "0.bin"));
+    assertEquals(2, mapped.size());
+    assertEquals(1L, mapped.getID(0));
+    assertEquals(3L, mapped.getID(1));
+    float[] vector = new float[2];
+    mapped.getVector(1, vector);
+    assertArrayEquals(new float[] {1.0f, 2.0f}, vector);
+  }
+
+  @Test
+  public void testFirstPart() throws Exception {
+    LongObjectMap<float[]> first = new LongObjectMap<float[]>();
+    first.put(5L, new float[] {1.0f, 2.0f});
+    LongObjectMap<float[]> second = new LongObjectMap<float[]>();
+    second.put(2L, new float[] {3.0f, 4.0f});
+    int nextPart = BinaryModelWriter.writeFeatureVectors(first, tempDir, 0);
+    assertEquals(1, nextPart);
+    assertEquals(2, BinaryModelWriter.writeFeatureVectors(second, tempDir, nextPart));
+    assertEquals(5L, MappedFeatureVectors.open(new File(tempDir, "0.bin")).getID(0));
+    assertEquals(2L, MappedFeatureVectors.open(new File(tempDir, "1.bin")).getID(0));
+  }
+
+  @Test
+  public void testKnownItems() throws Exception {
+    LongObjectMap<LongSet> knownItems = new LongObjectMap<LongSet>();
+    for (long userID = 0; userID < 100; userID++) {
+      LongSet itemIDs = new LongSet();
+      for (long itemID = 0; itemID < userID % 7; itemID++) {
+        itemIDs.add(userID * itemID);
+      }
+      knownItems.put(userID, itemIDs);
+    }
+    BinaryModelWriter.writeKnownItems(knownItems, tempDir);
+
+    MappedKnownItems mapped = MappedKnownItems.open(new File(tempDir, "0.bin"));
+    assertEquals(knownItems.size(), mapped.size());
+    for (int i = 0; i < mapped.size(); i++) {
+      long userID = mapped.getUserID(i);
+      assertEquals(i, userID);
+      LongSet expected = knownItems.get(userID);
+      LongSet actual = mapped.getItemIDs(i);
+      assertEquals(expected.size(), actual.size());
+      for (long itemID : expected) {
+        assertTrue(actual.contains(itemID));
+      }
+    }
+  }
+
+  @Test
+  public void testIDMapping() throws Exception {
+    StringLongMapping mapping = new StringLongMapping();
+    long fooID = mapping.add("foo");
+    long unicodeID = mapping.add("\u00FC\u00DF\u4E2D");
+    BinaryModelWriter.writeIDMapping(mapping, tempDir);
+
+    MappedIDMapping mapped = MappedIDMapping.open(new File(tempDir, "0.bin"));
+    assertEquals(2, mapped.size());
+    for (int i = 0; i < mapped.size(); i++) {
+      long id = mapped.getID(i);
+      if (id == fooID) {
+        assertEquals("foo", mapped.getString(i));
+      } else {
+        assertEquals(unicodeID, id);
+        assertEquals("\u00FC\u00DF\u4E2D", mapped.getString(i));
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorrupt() throws Exception {
+    LongObjectMap<float[]> matrix = new LongObjectMap<float[]>();
+    matrix.put(1L, new float[] {1.0f, 2.0f});
+    BinaryModelWriter.writeFeatureVectors(matrix, tempDir);
+    File part = new File(tempDir, "0.bin");
+    RandomAccessFile raf = new RandomAccessFile(part, "rw");
+    try {
+      raf.seek(raf.length() - 1);
+      raf.write(0x7F);
+    } finally {
+      raf.close();
+    }
+    MappedFeatureVectors.open(part);
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongType() throws Exception {
+    LongObjectMap<float[]> matrix = new LongObjectMap<float[]>();
+    matrix.put(1L, new float[] {1.0f, 2.0f});
+    BinaryModelWriter.writeFeatureVectors(matrix, tempDir);
+    MappedKnownItems.open(new File(tempDir, "0.bin"));
+  }
+
+}
@@ -43,4 +43,18 @@ public final class ALSModelDescriptionTest extends OryxTest {
     assertEquals(amd, ret);
   }
 
+  @Test
+  public void testFormat() throws Exception {
+    ALSModelDescription amd = new ALSModelDescription();
+    assertEquals(ALSModelDescription.TEXT_FORMAT, amd.getFormat());
+    assertFalse(amd.isBinary());
+    amd.setFormat(ALSModelDescription.BINARY_FORMAT);
+
+    File tmp = File.createTempFile("als", ".pmml.gz");
+    tmp.deleteOnExit();
+
+    ALSModelDescription.write(tmp, amd);
+    assertTrue(ALSModelDescription.read(tmp).isBinary());
+  }
+
 }
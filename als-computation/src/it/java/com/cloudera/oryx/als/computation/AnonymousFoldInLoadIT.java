@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Sets;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.serving.AnonymousUserCache;
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Measures {@code estimateForAnonymous} for baskets of 5, 20 and 100 items when the anonymous user's vector
+ * is folded in, and when it is found in the {@link AnonymousUserCache}, using the
+ * <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set like {@link LoadIT}.
+ *
+ * @author Sean Owen
+ */
+public final class AnonymousFoldInLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(AnonymousFoldInLoadIT.class);
+
+  private static final int NUM_BASKETS = 1000;
+  private static final int[] BASKET_SIZES = { 5, 20, 100 };
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testBasketLatency() throws Exception {
+    Set<String> itemIDSet = Sets.newHashSet();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          itemIDSet.add(DelimitedDataUtils.decode(line)[1]);
+        }
+      }
+    }
+    String[] itemIDs = itemIDSet.toArray(new String[itemIDSet.size()]);
+
+    ServerRecommender client = getRecommender();
+    AnonymousUserCache cache = client.getAnonymousUserCache();
+    assertNotNull(cache);
+    RandomGenerator random = RandomManager.getRandom();
+
+    for (int basketSize : BASKET_SIZES) {
+      String[][] baskets = new String[NUM_BASKETS][basketSize];
+      float[][] values = new float[NUM_BASKETS][basketSize];
+      String[] toItemIDs = new String[NUM_BASKETS];
+      for (int i = 0; i < NUM_BASKETS; i++) {
+        for (int j = 0; j < basketSize; j++) {
+          baskets[i][j] = itemIDs[random.nextInt(itemIDs.length)];
+          values[i][j] = 1.0f + random.nextInt(5);
+        }
+        toItemIDs[i] = itemIDs[random.nextInt(itemIDs.length)];
+      }
+
+      float[] estimates = new float[NUM_BASKETS];
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (int i = 0; i < NUM_BASKETS; i++) {
+        estimates[i] = client.estimateForAnonymous(toItemIDs[i], baskets[i], values[i]);
+      }
+      long foldInMicros = stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+
+      // The same baskets, in reverse order, must be found in the cache
+      long hitsBefore = cache.getHits();
+      for (int i = 0; i < NUM_BASKETS; i++) {
+        reverse(baskets[i], values[i]);
+      }
+      stopwatch = new Stopwatch().start();
+      for (int i = 0; i < NUM_BASKETS; i++) {
+        assertEquals(estimates[i], client.estimateForAnonymous(toItemIDs[i], baskets[i], values[i]), 0.0f);
+      }
+      long cachedMicros = stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+
+      log.info("{} items: {}us/request folded in, {}us/request cached",
+               basketSize, foldInMicros / NUM_BASKETS, cachedMicros / NUM_BASKETS);
+      assertEquals(hitsBefore + NUM_BASKETS, cache.getHits());
+    }
+  }
+
+  private static void reverse(String[] itemIDs, float[] values) {
+    for (int i = 0, j = itemIDs.length - 1; i < j; i++, j--) {
+      String itemID = itemIDs[i];
+      itemIDs[i] = itemIDs[j];
+      itemIDs[j] = itemID;
+      float value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+  }
+
+}
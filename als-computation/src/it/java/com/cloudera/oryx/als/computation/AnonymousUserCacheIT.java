@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import org.junit.Test;
+
+import com.cloudera.oryx.als.serving.AnonymousUserCache;
+import com.cloudera.oryx.als.serving.ModelVersions;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.common.OryxTest;
+
+/**
+ * Tests that {@link AnonymousUserCache} finds a vector for the same items and values in any order, and not
+ * after the generation changes or one of its items is updated.
+ *
+ * @author Sean Owen
+ */
+public final class AnonymousUserCacheIT extends OryxTest {
+
+  private static final long[] ITEM_IDS = { 3L, 1L, 2L, 1L };
+  private static final float[] VALUES = { 1.0f, 2.0f, 1.0f, 0.5f };
+  private static final float[] FEATURES = { 0.1f, 0.2f };
+
+  @Test
+  public void testAnyOrder() {
+    AnonymousUserCache cache = new AnonymousUserCache(10, new ModelVersions());
+    Generation generation = new Generation();
+    cache.put(cache.key(generation, ITEM_IDS, VALUES), FEATURES);
+    assertSame(FEATURES, cache.get(cache.key(generation,
+                                             new long[] { 1L, 2L, 1L, 3L },
+                                             new float[] { 0.5f, 1.0f, 2.0f, 1.0f })));
+    assertNull(cache.get(cache.key(generation,
+                                   new long[] { 1L, 2L, 1L, 3L },
+                                   new float[] { 2.0f, 1.0f, 0.5f, 2.0f })));
+    assertNull(cache.get(cache.key(generation, ITEM_IDS, null)));
+  }
+
+  @Test
+  public void testGenerationChange() {
+    AnonymousUserCache cache = new AnonymousUserCache(10, new ModelVersions());
+    Generation generation = new Generation();
+    cache.put(cache.key(generation, ITEM_IDS, VALUES), FEATURES);
+    assertSame(FEATURES, cache.get(cache.key(generation, ITEM_IDS, VALUES)));
+
+    generation.recomputeState();
+    assertNull(cache.get(cache.key(generation, ITEM_IDS, VALUES)));
+    assertEquals(0, cache.size());
+
+    cache.put(cache.key(generation, ITEM_IDS, VALUES), FEATURES);
+    Generation newGeneration = new Generation();
+    assertNull(cache.get(cache.key(newGeneration, ITEM_IDS, VALUES)));
+  }
+
+  @Test
+  public void testItemUpdate() {
+    ModelVersions versions = new ModelVersions();
+    AnonymousUserCache cache = new AnonymousUserCache(10, versions);
+    Generation generation = new Generation();
+    cache.put(cache.key(generation, ITEM_IDS, VALUES), FEATURES);
+    versions.invalidate(ITEM_IDS[0]);
+    assertNull(cache.get(cache.key(generation, ITEM_IDS, VALUES)));
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Maps;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.DataUtils;
+import com.cloudera.oryx.als.common.candidate.CandidateFilter;
+import com.cloudera.oryx.als.common.candidate.HierarchicalNavigableSmallWorldFilter;
+import com.cloudera.oryx.als.common.candidate.IdentityCandidateFilter;
+import com.cloudera.oryx.als.common.candidate.LocationSensitiveHashFilter;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.servcomp.Namespaces;
+import com.cloudera.oryx.common.servcomp.Store;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Compares recall@10 and queries per second of the built-in {@link CandidateFilter}s, over the model computed
+ * from the <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set used by {@link LoadIT}.
+ * Recall is measured against the exact top 10 items by dot product, for a sample of user vectors.
+ *
+ * @author Sean Owen
+ */
+public final class CandidateFilterLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(CandidateFilterLoadIT.class);
+
+  private static final int NUM_QUERIES = 2000;
+  private static final int HOW_MANY = 10;
+  private static final double LSH_SAMPLE_RATIO = 0.1;
+  private static final int LSH_NUM_HASHES = 20;
+  private static final int HNSW_MAX_CONNECTIONS = 16;
+  private static final int HNSW_EF_CONSTRUCTION = 100;
+  private static final int HNSW_EF_SEARCH = 100;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testRecallVersusThroughput() throws Exception {
+    String instanceDir = ConfigUtils.getDefaultConfig().getString("model.instance-dir");
+    String generationPrefix = Namespaces.getInstanceGenerationPrefix(instanceDir, 0);
+    FeatureMatrix X = readFeatureVectors(generationPrefix + "X/");
+    FeatureMatrix Y = readFeatureVectors(generationPrefix + "Y/");
+    log.info("Read {} user and {} item vectors", X.size(), Y.size());
+
+    RandomGenerator random = RandomManager.getRandom();
+    float[][][] queries = new float[NUM_QUERIES][][];
+    for (int i = 0; i < NUM_QUERIES; i++) {
+      queries[i] = new float[][] { X.get(X.getID(random.nextInt(X.size()))) };
+    }
+
+    CandidateFilter exactFilter = new IdentityCandidateFilter(Y);
+    LongSet[] exact = new LongSet[NUM_QUERIES];
+    for (int i = 0; i < NUM_QUERIES; i++) {
+      exact[i] = topN(Y, exactFilter.getCandidateIterator(queries[i]), queries[i][0]);
+    }
+
+    Map<String,CandidateFilter> filters = Maps.newLinkedHashMap();
+    filters.put("identity", exactFilter);
+    filters.put("lsh", new LocationSensitiveHashFilter(Y, LSH_SAMPLE_RATIO, LSH_NUM_HASHES));
+    Stopwatch buildStopwatch = new Stopwatch().start();
+    filters.put("hnsw", new HierarchicalNavigableSmallWorldFilter(Y,
+                                                                   new ReentrantReadWriteLock().readLock(),
+                                                                   HNSW_MAX_CONNECTIONS,
+                                                                   HNSW_EF_CONSTRUCTION,
+                                                                   HNSW_EF_SEARCH));
+    log.info("Built HNSW graph in {}ms", buildStopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS));
+
+    Map<String,Double> recalls = Maps.newHashMap();
+    for (Map.Entry<String,CandidateFilter> entry : filters.entrySet()) {
+      CandidateFilter filter = entry.getValue();
+      // Warm up
+      for (float[][] query : queries) {
+        topN(Y, filter.getCandidateIterator(query), query[0]);
+      }
+
+      LongSet[] found = new LongSet[NUM_QUERIES];
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (int i = 0; i < NUM_QUERIES; i++) {
+        found[i] = topN(Y, filter.getCandidateIterator(queries[i]), queries[i][0]);
+      }
+      long elapsedMicros = FastMath.max(1L, stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS));
+
+      long hits = 0L;
+      long total = 0L;
+      for (int i = 0; i < NUM_QUERIES; i++) {
+        hits += exact[i].intersectionSize(found[i]);
+        total += exact[i].size();
+      }
+      double recall = (double) hits / total;
+      recalls.put(entry.getKey(), recall);
+      log.info("{}: recall@{} {}, {} queries/second",
+               entry.getKey(), HOW_MANY, recall, (1000000L * NUM_QUERIES) / elapsedMicros);
+    }
+
+    assertEquals(1.0, recalls.get("identity").doubleValue());
+    assertTrue(recalls.get("hnsw") >= 0.9);
+  }
+
+  private static FeatureMatrix readFeatureVectors(String prefix) throws Exception {
+    FeatureMatrix matrix = new FeatureMatrix();
+    Store store = Store.get();
+    for (String file : store.list(prefix, true)) {
+      for (String line : new FileLineIterable(store.readFrom(file))) {
+        int tab = line.indexOf('\t');
+        Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", file, line);
+        matrix.put(Long.parseLong(line.substring(0, tab)), DataUtils.readFeatureVector(line.substring(tab + 1)));
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * @return IDs of the {@link #HOW_MANY} candidate items with largest dot product with the user vector
+   */
+  private static LongSet topN(FeatureMatrix Y, Collection<IntPrimitiveIterator> candidates, float[] userVector) {
+    int[] topRows = new int[HOW_MANY];
+    double[] topDots = new double[HOW_MANY];
+    Arrays.fill(topDots, Double.NEGATIVE_INFINITY);
+    int count = 0;
+    for (IntPrimitiveIterator it : candidates) {
+      while (it.hasNext()) {
+        int row = it.nextInt();
+        double dot = Y.dot(row, userVector);
+        if (count < HOW_MANY || dot > topDots[HOW_MANY - 1]) {
+          // Insertion into sorted arrays, largest first
+          int i = FastMath.min(count, HOW_MANY - 1);
+          while (i > 0 && topDots[i - 1] < dot) {
+            topDots[i] = topDots[i - 1];
+            topRows[i] = topRows[i - 1];
+            i--;
+          }
+          topDots[i] = dot;
+          topRows[i] = row;
+          if (count < HOW_MANY) {
+            count++;
+          }
+        }
+      }
+    }
+    LongSet ids = new LongSet();
+    for (int i = 0; i < count; i++) {
+      ids.add(Y.getID(topRows[i]));
+    }
+    return ids;
+  }
+
+}
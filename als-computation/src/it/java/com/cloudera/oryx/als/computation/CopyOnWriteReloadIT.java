@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.servcomp.Namespaces;
+import com.cloudera.oryx.common.servcomp.Store;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Tests that, with {@code model.copy-on-write-reload} enabled, requests made while a new generation is
+ * repeatedly loaded never observe a partially-loaded model. Each new generation is a copy of the first,
+ * so every request should see the same, complete model throughout. Uses the
+ * <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 100K data set.
+ *
+ * @author Sean Owen
+ */
+public final class CopyOnWriteReloadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(CopyOnWriteReloadIT.class);
+
+  private static final int NUM_RELOADS = 5;
+  private static final int NUM_USERS = 943;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens100K");
+  }
+
+  @Test
+  public void testRecommendDuringReload() throws Exception {
+    final ServerRecommender client = getRecommender();
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicLong requests = new AtomicLong();
+
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    Collection<Future<Object>> futures = Lists.newArrayList();
+    try {
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Void call() throws Exception {
+            RandomGenerator random = RandomManager.getRandom();
+            while (!done.get()) {
+              String userID = Integer.toString(random.nextInt(NUM_USERS) + 1);
+              // Throws NotReadyException or NoSuchUserException if the model is absent or partial
+              List<?> recs = client.recommend(userID, HOW_MANY);
+              assertEquals(HOW_MANY, recs.size());
+              requests.incrementAndGet();
+            }
+            return null;
+          }
+        }));
+      }
+
+      String instanceDir = ConfigUtils.getDefaultConfig().getString("model.instance-dir");
+      for (int generationID = 1; generationID <= NUM_RELOADS; generationID++) {
+        copyGeneration(instanceDir, 0, generationID);
+        client.refresh();
+        // Give the reload time to complete while readers keep going
+        Thread.sleep(5000L);
+        log.info("Generation {}: {} requests so far", generationID, requests.get());
+      }
+
+    } finally {
+      done.set(true);
+      ExecutorUtils.getResults(futures);
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+
+    assertTrue(requests.get() > 0);
+  }
+
+  private static void copyGeneration(String instanceDir, int fromGenerationID, int toGenerationID)
+      throws Exception {
+    File tempDir = Files.createTempDir();
+    try {
+      Store store = Store.get();
+      store.downloadDirectory(Namespaces.getInstanceGenerationPrefix(instanceDir, fromGenerationID), tempDir);
+      store.uploadDirectory(Namespaces.getInstanceGenerationPrefix(instanceDir, toGenerationID), tempDir, false);
+      store.touch(Namespaces.getGenerationDoneKey(instanceDir, toGenerationID));
+    } finally {
+      IOUtils.deleteRecursively(tempDir);
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.NumericIDValue;
+import com.cloudera.oryx.als.common.TopN;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.als.serving.generation.ItemPopularityIndex;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the latency of finding the most popular items by counting all known items on each request, as
+ * {@code mostPopularItems} did before, and by {@link ItemPopularityIndex}, over a million users. Between
+ * requests, some users gain known items, as with {@code setPreference}.
+ *
+ * @author Sean Owen
+ */
+public final class MostPopularItemsLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(MostPopularItemsLoadIT.class);
+
+  private static final int NUM_USERS = 1000000;
+  private static final int NUM_ITEMS = 50000;
+  private static final int ITEMS_PER_USER = 20;
+  private static final int NUM_REQUESTS = 20;
+  private static final int UPDATES_PER_REQUEST = 1000;
+  private static final int HOW_MANY = 10;
+
+  @Test
+  public void testMostPopularLatency() {
+    RandomGenerator random = RandomManager.getRandom();
+    Generation generation = new Generation();
+    LongObjectMap<LongSet> knownItemIDs = generation.getKnownItemIDs();
+    for (long userID = 0; userID < NUM_USERS; userID++) {
+      LongSet itemIDs = new LongSet(ITEMS_PER_USER);
+      for (int i = 0; i < ITEMS_PER_USER; i++) {
+        itemIDs.add(randomPopularItem(random));
+      }
+      knownItemIDs.put(userID, itemIDs);
+    }
+    Stopwatch buildStopwatch = new Stopwatch().start();
+    generation.recomputeState();
+    log.info("Built index in {}ms", buildStopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS));
+    ItemPopularityIndex itemPopularity = generation.getItemPopularity();
+
+    long countingMicros = 0L;
+    long indexMicros = 0L;
+    for (int request = 0; request < NUM_REQUESTS; request++) {
+      for (int i = 0; i < UPDATES_PER_REQUEST; i++) {
+        long itemID = randomPopularItem(random);
+        if (knownItemIDs.get(random.nextInt(NUM_USERS)).add(itemID)) {
+          itemPopularity.increment(itemID);
+        }
+      }
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      List<NumericIDValue> expected = countMostPopular(knownItemIDs);
+      countingMicros += stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+
+      stopwatch = new Stopwatch().start();
+      List<NumericIDValue> actual = itemPopularity.getMostPopular(HOW_MANY);
+      indexMicros += stopwatch.stop().elapsedTime(TimeUnit.MICROSECONDS);
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+      }
+    }
+
+    log.info("Most popular items: {}us/request by counting, {}us/request by index",
+             countingMicros / NUM_REQUESTS, indexMicros / NUM_REQUESTS);
+  }
+
+  /**
+   * @return an item ID, skewed toward low IDs as item popularity usually is
+   */
+  private static long randomPopularItem(RandomGenerator random) {
+    double uniform = random.nextDouble();
+    return (long) (NUM_ITEMS * uniform * uniform * uniform);
+  }
+
+  /**
+   * As {@code mostPopularItems} did before {@link ItemPopularityIndex}.
+   */
+  private static List<NumericIDValue> countMostPopular(LongObjectMap<LongSet> knownItemIDs) {
+    LongFloatMap itemCounts = new LongFloatMap();
+    for (LongObjectMap.MapEntry<LongSet> entry : knownItemIDs.entrySet()) {
+      LongPrimitiveIterator it = entry.getValue().iterator();
+      while (it.hasNext()) {
+        itemCounts.increment(it.nextLong(), 1.0f);
+      }
+    }
+    return TopN.selectTopN(new CountIterator(itemCounts.entrySet().iterator()), HOW_MANY);
+  }
+
+  private static final class CountIterator implements Iterator<NumericIDValue> {
+
+    private final Iterator<LongFloatMap.MapEntry> countsIterator;
+
+    private CountIterator(Iterator<LongFloatMap.MapEntry> countsIterator) {
+      this.countsIterator = countsIterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return countsIterator.hasNext();
+    }
+
+    @Override
+    public NumericIDValue next() {
+      LongFloatMap.MapEntry entry = countsIterator.next();
+      return new NumericIDValue(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.NoSuchItemException;
+import com.cloudera.oryx.als.common.NoSuchUserException;
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Measures p50 and p99 latency of {@code mostSimilarItems} and {@code recommendedBecause}, which scan all
+ * items in parallel partitions, under concurrent load from 1, 4 and as many client threads as there are cores.
+ * Uses the <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set like {@link LoadIT}.
+ *
+ * @author Sean Owen
+ */
+public final class MostSimilarItemsLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(MostSimilarItemsLoadIT.class);
+
+  private static final int REQUESTS_PER_CLIENT = 1000;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testLatencyUnderLoad() throws Exception {
+    List<String[]> userItems = Lists.newArrayList();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          String[] columns = DelimitedDataUtils.decode(line);
+          userItems.add(new String[] { columns[0], columns[1] });
+        }
+      }
+    }
+    String[][] pairs = userItems.toArray(new String[userItems.size()][]);
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    // Warm up
+    runClients(pairs, cores);
+    for (int numClients : new int[] { 1, 4, cores }) {
+      long[] latencies = runClients(pairs, numClients);
+      Arrays.sort(latencies);
+      long p50 = percentile(latencies, 0.5);
+      long p99 = percentile(latencies, 0.99);
+      log.info("{} clients on {} cores: p50 {}us, p99 {}us", numClients, cores, p50, p99);
+      assertTrue(p50 <= p99);
+      assertTrue(p99 < 1000000L);
+    }
+  }
+
+  /**
+   * @return latency in microseconds of each request made by all clients
+   */
+  private long[] runClients(final String[][] pairs, int numClients) throws Exception {
+    final ServerRecommender client = getRecommender();
+    ExecutorService executor = Executors.newFixedThreadPool(numClients);
+    try {
+      Collection<Future<long[]>> futures = Lists.newArrayListWithCapacity(numClients);
+      for (int i = 0; i < numClients; i++) {
+        futures.add(executor.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            RandomGenerator random = RandomManager.getRandom();
+            long[] latencies = new long[REQUESTS_PER_CLIENT];
+            for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+              String[] pair = pairs[random.nextInt(pairs.length)];
+              long start = System.nanoTime();
+              try {
+                if (random.nextBoolean()) {
+                  client.mostSimilarItems(pair[1], HOW_MANY);
+                } else {
+                  client.recommendedBecause(pair[0], pair[1], HOW_MANY);
+                }
+              } catch (NoSuchItemException nsie) {
+                // continue
+              } catch (NoSuchUserException nsue) {
+                // continue
+              }
+              latencies[i] = (System.nanoTime() - start) / 1000L;
+            }
+            return latencies;
+          }
+        }));
+      }
+      long[] allLatencies = new long[numClients * REQUESTS_PER_CLIENT];
+      int offset = 0;
+      for (long[] latencies : ExecutorUtils.getResults(futures)) {
+        System.arraycopy(latencies, 0, allLatencies, offset, latencies.length);
+        offset += latencies.length;
+      }
+      return allLatencies;
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    return sorted[(int) (p * (sorted.length - 1))];
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Measures the sustained rate at which many threads can set new preferences, as {@code /pref} does, including
+ * writing them all out, using the <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set
+ * like {@link LoadIT}.
+ *
+ * @author Sean Owen
+ */
+public final class PreferenceIngestLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(PreferenceIngestLoadIT.class);
+
+  private static final int NUM_THREADS = 16;
+  private static final int PREFS_PER_THREAD = 50000;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testIngestRate() throws Exception {
+    Set<String> userIDSet = Sets.newHashSet();
+    Set<String> itemIDSet = Sets.newHashSet();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          String[] columns = DelimitedDataUtils.decode(line);
+          userIDSet.add(columns[0]);
+          itemIDSet.add(columns[1]);
+        }
+      }
+    }
+    final String[] userIDs = userIDSet.toArray(new String[userIDSet.size()]);
+    final String[] itemIDs = itemIDSet.toArray(new String[itemIDSet.size()]);
+
+    final ServerRecommender client = getRecommender();
+    ExecutorService executor = ExecutorUtils.buildExecutor("PreferenceIngestLoadIT", NUM_THREADS);
+    try {
+      List<Callable<Object>> tasks = Lists.newArrayListWithCapacity(NUM_THREADS);
+      for (int t = 0; t < NUM_THREADS; t++) {
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Void call() {
+            RandomGenerator random = RandomManager.getRandom();
+            for (int i = 0; i < PREFS_PER_THREAD; i++) {
+              client.setPreference(userIDs[random.nextInt(userIDs.length)],
+                                   itemIDs[random.nextInt(itemIDs.length)],
+                                   1.0f + random.nextInt(5));
+            }
+            return null;
+          }
+        });
+      }
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      List<Future<Object>> futures = executor.invokeAll(tasks);
+      ExecutorUtils.getResults(futures);
+      long acceptedMS = stopwatch.elapsedTime(TimeUnit.MILLISECONDS);
+      // Waits for queued preferences to be written before the appender is flushed
+      client.refresh();
+      long writtenMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+      long total = (long) NUM_THREADS * PREFS_PER_THREAD;
+      log.info("{} preferences from {} threads: {}/s accepted, {}/s written",
+               total, NUM_THREADS, total * 1000L / acceptedMS, total * 1000L / writtenMS);
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import com.cloudera.oryx.als.serving.generation.ALSGenerationManager;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Tests that preferences still queued in {@link ALSGenerationManager} when it is closed are written to the
+ * file that is uploaded at shutdown, in each writer's order.
+ *
+ * @author Sean Owen
+ */
+public final class PreferenceQueueFlushIT extends OryxTest {
+
+  private static final int NUM_THREADS = 4;
+  private static final int PREFS_PER_THREAD = 10000;
+
+  @Override
+  protected String getTestConfigResource() {
+    return "AbstractComputationIT.conf";
+  }
+
+  @Test
+  public void testFlushOnClose() throws Exception {
+    ConfigUtils.overlayConfigOnDefault(getResourceAsFile(getClass().getSimpleName() + ".conf"));
+    File generationDir = new File(TEST_TEMP_BASE_DIR, "00000");
+    IOUtils.mkdirs(generationDir);
+    // Not under the instance dir, which must contain only generations
+    File appendDir = Files.createTempDir();
+    appendDir.deleteOnExit();
+
+    final ALSGenerationManager manager = new ALSGenerationManager(appendDir);
+    ExecutorService executor = ExecutorUtils.buildExecutor("PreferenceQueueFlushIT", NUM_THREADS);
+    try {
+      List<Future<Object>> futures = Lists.newArrayListWithCapacity(NUM_THREADS);
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final String userID = "user" + t;
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < PREFS_PER_THREAD; i++) {
+              if (i % 10 == 9) {
+                manager.remove(userID, Integer.toString(i));
+              } else {
+                manager.append(userID, Integer.toString(i), 1.0f);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      ExecutorUtils.getResults(futures);
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+    // Closes without an explicit flush; whatever is still queued must be written now
+    manager.close();
+    assertEquals(0, manager.getPendingWrites());
+
+    File inboundDir = new File(generationDir, "inbound");
+    File[] appendFiles = inboundDir.listFiles(IOUtils.NOT_HIDDEN);
+    assertNotNull(appendFiles);
+    int[] nextExpected = new int[NUM_THREADS];
+    int count = 0;
+    for (File appendFile : appendFiles) {
+      for (CharSequence line : new FileLineIterable(appendFile)) {
+        String[] columns = DelimitedDataUtils.decode(line);
+        int thread = Integer.parseInt(columns[0].substring("user".length()));
+        int i = Integer.parseInt(columns[1]);
+        assertEquals(nextExpected[thread], i);
+        assertEquals(i % 10 == 9 ? "" : "1.0", columns[2]);
+        nextExpected[thread]++;
+        count++;
+      }
+    }
+    assertEquals(NUM_THREADS * PREFS_PER_THREAD, count);
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.IDValue;
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+
+/**
+ * Compares the throughput of {@link ServerRecommender#recommendToBatch(String[], int[], boolean[])} with
+ * that of one {@link ServerRecommender#recommend(String, int)} call per user, and checks they agree, using
+ * the <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set like {@link LoadIT}.
+ *
+ * @author Sean Owen
+ */
+public final class RecommendToBatchLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(RecommendToBatchLoadIT.class);
+
+  private static final int NUM_USERS = 5000;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testBatchThroughput() throws Exception {
+    Set<String> userIDSet = Sets.newLinkedHashSet();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          userIDSet.add(DelimitedDataUtils.decode(line)[0]);
+          if (userIDSet.size() == NUM_USERS) {
+            break;
+          }
+        }
+      }
+    }
+    String[] userIDs = userIDSet.toArray(new String[userIDSet.size()]);
+    int numUsers = userIDs.length;
+    int[] howMany = new int[numUsers];
+    Arrays.fill(howMany, HOW_MANY);
+    boolean[] considerKnownItems = new boolean[numUsers];
+
+    ServerRecommender client = getRecommender();
+    // Warm up
+    client.recommendToBatch(userIDs, howMany, considerKnownItems);
+    for (String userID : userIDs) {
+      client.recommend(userID, HOW_MANY);
+    }
+
+    Stopwatch stopwatch = new Stopwatch().start();
+    List<List<IDValue>> batchResults = client.recommendToBatch(userIDs, howMany, considerKnownItems);
+    long batchMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    stopwatch = new Stopwatch().start();
+    List<List<IDValue>> singleResults = Lists.newArrayListWithCapacity(numUsers);
+    for (String userID : userIDs) {
+      singleResults.add(client.recommend(userID, HOW_MANY));
+    }
+    long singleMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    log.info("Recommendations for {} users: {}ms in one batch, {}ms one at a time", numUsers, batchMS, singleMS);
+
+    for (int i = 0; i < numUsers; i++) {
+      List<IDValue> batch = batchResults.get(i);
+      List<IDValue> single = singleResults.get(i);
+      assertEquals(single.size(), batch.size());
+      for (int j = 0; j < single.size(); j++) {
+        assertEquals(single.get(j).getValue(), batch.get(j).getValue(), 1.0e-4f);
+      }
+    }
+  }
+
+}
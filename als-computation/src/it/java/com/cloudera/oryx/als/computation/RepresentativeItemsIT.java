@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.als.common.NumericIDValue;
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.common.TopN;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.als.serving.generation.RepresentativeItems;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests that {@link RepresentativeItems} selects the same items as {@code popularRepresentativeItems} did on
+ * each request, by a top-1 search of all items along each feature's unit vector, including after item vectors
+ * change.
+ *
+ * @author Sean Owen
+ */
+public final class RepresentativeItemsIT extends OryxTest {
+
+  private static final int NUM_ITEMS = 50000;
+  private static final int NUM_FEATURES = 20;
+
+  @Test
+  public void testLoad() {
+    Generation generation = buildGeneration();
+    generation.recomputeState();
+    List<String> expected = selectOnDemand(generation.getY(), generation.getIDMapping());
+    assertEquals(NUM_FEATURES, expected.size());
+    assertEquals(expected, generation.getRepresentativeItems().get());
+  }
+
+  @Test
+  public void testParallel() {
+    Generation generation = buildGeneration();
+    for (int parallelism : new int[] {1, 2, 3, 8}) {
+      RepresentativeItems representativeItems = newRepresentativeItems(generation, 1, 0L, parallelism);
+      representativeItems.rebuild();
+      assertEquals(selectOnDemand(generation.getY(), generation.getIDMapping()), representativeItems.get());
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    Generation generation = new Generation();
+    assertTrue(generation.getRepresentativeItems().get().isEmpty());
+  }
+
+  @Test
+  public void testRefreshAfterChanges() {
+    Generation generation = buildGeneration();
+    RepresentativeItems representativeItems = newRepresentativeItems(generation, 10, 0L, 2);
+    representativeItems.rebuild();
+    List<String> before = representativeItems.get();
+
+    for (int i = 0; i < 9; i++) {
+      promoteItem(generation, i, i);
+      representativeItems.itemChanged();
+    }
+    assertEquals(before, representativeItems.get());
+
+    promoteItem(generation, 9, 9);
+    representativeItems.itemChanged();
+    List<String> after = representativeItems.get();
+    assertEquals(selectOnDemand(generation.getY(), generation.getIDMapping()), after);
+    for (int f = 0; f < 10; f++) {
+      assertEquals(Integer.toString(f), after.get(f));
+    }
+  }
+
+  @Test
+  public void testMinRefreshInterval() {
+    Generation generation = buildGeneration();
+    RepresentativeItems representativeItems = newRepresentativeItems(generation, 1, 1L, 2);
+    representativeItems.rebuild();
+    List<String> before = representativeItems.get();
+    promoteItem(generation, 0, 0);
+    representativeItems.itemChanged();
+    assertEquals(before, representativeItems.get());
+  }
+
+  private static Generation buildGeneration() {
+    RandomGenerator random = RandomManager.getRandom();
+    Generation generation = new Generation();
+    FeatureMatrix Y = generation.getY();
+    for (long itemID = 0; itemID < NUM_ITEMS; itemID++) {
+      float[] vector = new float[NUM_FEATURES];
+      for (int f = 0; f < NUM_FEATURES; f++) {
+        vector[f] = (float) random.nextGaussian();
+      }
+      Y.put(itemID, vector);
+    }
+    return generation;
+  }
+
+  private static RepresentativeItems newRepresentativeItems(Generation generation,
+                                                            int refreshAfterChanges,
+                                                            long minRefreshIntervalHours,
+                                                            int parallelism) {
+    return new RepresentativeItems(generation.getY(),
+                                   generation.getYLock().readLock(),
+                                   generation.getIDMapping(),
+                                   refreshAfterChanges,
+                                   minRefreshIntervalHours,
+                                   TimeUnit.HOURS,
+                                   parallelism);
+  }
+
+  /**
+   * Makes an item the largest along a feature.
+   */
+  private static void promoteItem(Generation generation, long itemID, int feature) {
+    FeatureMatrix Y = generation.getY();
+    float[] vector = Y.get(itemID);
+    vector[feature] = 100.0f;
+    Y.put(itemID, vector);
+  }
+
+  /**
+   * As {@code popularRepresentativeItems} did before {@link RepresentativeItems}.
+   */
+  private static List<String> selectOnDemand(FeatureMatrix Y, StringLongMapping idMapping) {
+    int numFeatures = Y.getNumFeatures();
+    List<String> result = Lists.newArrayListWithCapacity(numFeatures);
+    float[] unitVector = new float[numFeatures];
+    for (int f = 0; f < numFeatures; f++) {
+      unitVector[f] = 1.0f;
+      List<NumericIDValue> values = Lists.newArrayListWithCapacity(Y.size());
+      for (int row = 0; row < Y.size(); row++) {
+        values.add(new NumericIDValue(Y.getID(row), (float) Y.dot(row, unitVector)));
+      }
+      List<NumericIDValue> top = TopN.selectTopN(values.iterator(), 1);
+      result.add(top.isEmpty() ? null : idMapping.toString(top.get(0).getID()));
+      unitVector[f] = 0.0f;
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cloudera.oryx.als.common.IDValue;
+import com.cloudera.oryx.als.serving.ModelVersions;
+import com.cloudera.oryx.als.serving.ResultCache;
+import com.cloudera.oryx.als.serving.ServerRecommender;
+
+/**
+ * Tests that the {@link ResultCache} never returns a result made stale by a preference update to the user or
+ * item it is about, as tracked by {@link ModelVersions}, using the
+ * <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 100K data set. Each cached result is
+ * compared to the same result computed by a method that bypasses the cache.
+ *
+ * @author Sean Owen
+ */
+public final class ResultCacheIT extends AbstractComputationIT {
+
+  private static final int NUM_USERS = 100;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens100K");
+  }
+
+  @Test
+  public void testNoStaleResults() throws Exception {
+    ServerRecommender client = getRecommender();
+    ResultCache cache = client.getResultCache();
+    assertNotNull(cache);
+
+    for (int user = 1; user <= NUM_USERS; user++) {
+      String userID = Integer.toString(user);
+
+      List<IDValue> recommended = client.recommend(userID, HOW_MANY);
+      long hits = cache.getHits();
+      assertSameResults(recommended, client.recommend(userID, HOW_MANY));
+      assertEquals(hits + 1, cache.getHits());
+
+      // The top recommendation becomes a known item, so a stale result would still include it
+      String itemID = recommended.get(0).getID();
+      client.mostSimilarItems(itemID, HOW_MANY);
+      client.setPreference(userID, itemID, 5.0f);
+
+      List<IDValue> afterSet = client.recommend(userID, HOW_MANY);
+      for (IDValue value : afterSet) {
+        assertFalse(itemID.equals(value.getID()));
+      }
+      assertSameResults(client.recommendToMany(new String[] { userID }, HOW_MANY, false, null), afterSet);
+      assertSameResults(client.mostSimilarItems(new String[] { itemID, itemID }, HOW_MANY),
+                        client.mostSimilarItems(itemID, HOW_MANY));
+
+      client.removePreference(userID, itemID);
+      assertSameResults(client.recommendToMany(new String[] { userID }, HOW_MANY, false, null),
+                        client.recommend(userID, HOW_MANY));
+    }
+  }
+
+  private static void assertSameResults(List<IDValue> expected, List<IDValue> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getID(), actual.get(i).getID());
+      assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 1.0e-5f);
+    }
+  }
+
+}
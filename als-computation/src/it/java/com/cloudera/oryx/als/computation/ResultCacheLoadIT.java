@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Sets;
+import org.apache.commons.math3.distribution.IntegerDistribution;
+import org.apache.commons.math3.distribution.ZipfDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.serving.ResultCache;
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Replays a log of {@code recommend} and {@code mostSimilarItems} requests whose users and items follow a Zipf
+ * distribution, with and without the {@link ResultCache}, using the
+ * <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set like {@link LoadIT}.
+ * {@link ResultCacheIT} checks that cached results are correct.
+ *
+ * @author Sean Owen
+ */
+public final class ResultCacheLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(ResultCacheLoadIT.class);
+
+  private static final int NUM_REQUESTS = 20000;
+  private static final double ZIPF_EXPONENT = 1.0;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testZipfReplay() throws Exception {
+    Set<String> userIDSet = Sets.newHashSet();
+    Set<String> itemIDSet = Sets.newHashSet();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          String[] columns = DelimitedDataUtils.decode(line);
+          userIDSet.add(columns[0]);
+          itemIDSet.add(columns[1]);
+        }
+      }
+    }
+    String[] userIDs = userIDSet.toArray(new String[userIDSet.size()]);
+    String[] itemIDs = itemIDSet.toArray(new String[itemIDSet.size()]);
+
+    RandomGenerator random = RandomManager.getRandom();
+    IntegerDistribution userRanks = new ZipfDistribution(random, userIDs.length, ZIPF_EXPONENT);
+    IntegerDistribution itemRanks = new ZipfDistribution(random, itemIDs.length, ZIPF_EXPONENT);
+    String[] requestUserIDs = new String[NUM_REQUESTS];
+    String[] requestItemIDs = new String[NUM_REQUESTS];
+    for (int i = 0; i < NUM_REQUESTS; i++) {
+      requestUserIDs[i] = userIDs[userRanks.sample() - 1];
+      requestItemIDs[i] = itemIDs[itemRanks.sample() - 1];
+    }
+
+    ServerRecommender client = getRecommender();
+    ResultCache cache = client.getResultCache();
+    assertNotNull(cache);
+
+    // Multi-user and multi-item methods bypass the cache but do the same work
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < NUM_REQUESTS; i++) {
+      if (i % 2 == 0) {
+        client.recommendToMany(new String[] { requestUserIDs[i] }, HOW_MANY, false, null);
+      } else {
+        client.mostSimilarItems(new String[] { requestItemIDs[i], requestItemIDs[i] }, HOW_MANY);
+      }
+    }
+    long uncachedMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < NUM_REQUESTS; i++) {
+      if (i % 2 == 0) {
+        client.recommend(requestUserIDs[i], HOW_MANY);
+      } else {
+        client.mostSimilarItems(requestItemIDs[i], HOW_MANY);
+      }
+    }
+    long cachedMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    log.info("{} requests: {}ms uncached, {}ms cached; {} hits, {} misses, {} evictions",
+             NUM_REQUESTS, uncachedMS, cachedMS, cache.getHits(), cache.getMisses(), cache.getEvictions());
+    assertTrue(cache.getHits() > 0);
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.pmml.ALSModelDescription;
+import com.cloudera.oryx.als.serving.generation.ALSGenerationManager;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Writes a synthetic generation whose X, Y, known items and ID mapping are each split across many files, loads
+ * it with {@link ALSGenerationManager} using several numbers of parse threads, and checks that each load is
+ * complete. Logs the time each load takes.
+ *
+ * @author Sean Owen
+ */
+public final class ShardedModelLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardedModelLoadIT.class);
+
+  private static final int NUM_USERS = 100000;
+  private static final int NUM_ITEMS = 20000;
+  private static final int NUM_FEATURES = 30;
+  private static final int NUM_SHARDS = 8;
+  private static final int ITEMS_PER_USER = 5;
+  private static final int[] PARSE_PARALLELISMS = { 1, 2, 4, 8 };
+
+  @Override
+  protected String getTestConfigResource() {
+    return "AbstractComputationIT.conf";
+  }
+
+  @Test
+  public void testLoadShards() throws Exception {
+    File generationDir = new File(TEST_TEMP_BASE_DIR, "00000");
+    IOUtils.mkdirs(generationDir);
+    writeGeneration(generationDir);
+    // Not under the instance dir, which must contain only generations
+    File appendDir = Files.createTempDir();
+    appendDir.deleteOnExit();
+
+    for (int parseParallelism : PARSE_PARALLELISMS) {
+      ConfigUtils.overlayConfigOnDefault("serving-layer.model-load.parse-parallelism=" + parseParallelism + '\n' +
+                                         "serving-layer.warm-up.requests=0");
+      Stopwatch stopwatch = new Stopwatch().start();
+      ALSGenerationManager manager = new ALSGenerationManager(appendDir);
+      try {
+        manager.awaitReady();
+        log.info("Loaded with {} parse threads in {}ms",
+                 parseParallelism, stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS));
+        checkGeneration(manager.getCurrentGeneration());
+      } finally {
+        manager.close();
+      }
+    }
+  }
+
+  private static void writeGeneration(File generationDir) throws IOException {
+    ALSModelDescription modelDescription = new ALSModelDescription();
+    modelDescription.setXPath("X");
+    modelDescription.setYPath("Y");
+    modelDescription.setKnownItemsPath("knownItems");
+    modelDescription.setIDMappingPath("idMapping");
+    ALSModelDescription.write(new File(generationDir, "model.pmml.gz"), modelDescription);
+
+    RandomGenerator random = RandomManager.getRandom();
+    writeFeatureVectors(new File(generationDir, "X"), NUM_USERS, random);
+    writeFeatureVectors(new File(generationDir, "Y"), NUM_ITEMS, random);
+
+    File knownItemsDir = new File(generationDir, "knownItems");
+    IOUtils.mkdirs(knownItemsDir);
+    File idMappingDir = new File(generationDir, "idMapping");
+    IOUtils.mkdirs(idMappingDir);
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      Writer knownItemsOut = IOUtils.buildGZIPWriter(new File(knownItemsDir, shardName(shard)));
+      try {
+        for (int user = shard; user < NUM_USERS; user += NUM_SHARDS) {
+          knownItemsOut.write(Integer.toString(user));
+          knownItemsOut.write('\t');
+          for (int i = 0; i < ITEMS_PER_USER; i++) {
+            if (i > 0) {
+              knownItemsOut.write(',');
+            }
+            knownItemsOut.write(Integer.toString(knownItem(user, i)));
+          }
+          knownItemsOut.write('\n');
+        }
+      } finally {
+        knownItemsOut.close();
+      }
+      Writer idMappingOut = IOUtils.buildGZIPWriter(new File(idMappingDir, shardName(shard)));
+      try {
+        for (int item = shard; item < NUM_ITEMS; item += NUM_SHARDS) {
+          idMappingOut.write(item + ",item" + item + '\n');
+        }
+      } finally {
+        idMappingOut.close();
+      }
+    }
+
+    Files.touch(new File(generationDir, "_SUCCESS"));
+  }
+
+  private static void writeFeatureVectors(File dir, int numRows, RandomGenerator random) throws IOException {
+    IOUtils.mkdirs(dir);
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      Writer out = IOUtils.buildGZIPWriter(new File(dir, shardName(shard)));
+      try {
+        for (int row = shard; row < numRows; row += NUM_SHARDS) {
+          out.write(Integer.toString(row));
+          out.write('\t');
+          for (int f = 0; f < NUM_FEATURES; f++) {
+            if (f > 0) {
+              out.write(',');
+            }
+            // Row's own ID in its first feature, so that it can be checked after loading
+            out.write(Float.toString(f == 0 ? row : (float) random.nextGaussian()));
+          }
+          out.write('\n');
+        }
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  private static void checkGeneration(Generation generation) {
+    assertNotNull(generation);
+    checkFeatureVectors(generation.getX(), NUM_USERS);
+    checkFeatureVectors(generation.getY(), NUM_ITEMS);
+    assertEquals(NUM_USERS, generation.getKnownItemIDs().size());
+    for (int user = 0; user < NUM_USERS; user += 997) {
+      LongSet itemIDs = generation.getKnownItemIDs().get(user);
+      for (int i = 0; i < ITEMS_PER_USER; i++) {
+        assertTrue(itemIDs.contains(knownItem(user, i)));
+      }
+    }
+    for (int item = 0; item < NUM_ITEMS; item += 997) {
+      assertEquals("item" + item, generation.getIDMapping().toString(item));
+    }
+  }
+
+  private static void checkFeatureVectors(FeatureMatrix matrix, int numRows) {
+    assertEquals(numRows, matrix.size());
+    assertEquals(NUM_FEATURES, matrix.getNumFeatures());
+    for (int id = 0; id < numRows; id++) {
+      assertEquals((float) id, matrix.get(id)[0]);
+    }
+  }
+
+  private static int knownItem(int user, int i) {
+    return (user * 31 + i * 7919) % NUM_ITEMS;
+  }
+
+  private static String shardName(int shard) {
+    return String.format("part-%05d.gz", shard);
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.serving.ServerRecommender;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the latency of the first requests, once the Serving Layer reports it is ready after loading a model,
+ * with that of requests after many others have run. The model is warmed up before it is reported ready, so the
+ * first should be about as fast.
+ * Uses the <a href="http://grouplens.org/datasets/movielens/">GroupLens</a> 10M data set like {@link LoadIT}.
+ *
+ * @author Sean Owen
+ */
+public final class WarmUpLoadIT extends AbstractComputationIT {
+
+  private static final Logger log = LoggerFactory.getLogger(WarmUpLoadIT.class);
+
+  private static final int NUM_TIMED_REQUESTS = 50;
+  private static final int NUM_STEADY_STATE_REQUESTS = 10000;
+  private static final int HOW_MANY = 10;
+
+  @Override
+  protected File getTestDataPath() {
+    return getResourceAsFile("grouplens10M-ABC");
+  }
+
+  @Test
+  public void testFirstRequestLatency() throws Exception {
+    List<String> userIDs = Lists.newArrayList();
+    List<String> itemIDs = Lists.newArrayList();
+    readIDs(userIDs, itemIDs);
+
+    ServerRecommender client = getRecommender();
+    assertTrue(client.isReady());
+
+    RandomGenerator random = RandomManager.getRandom();
+    long firstMedianNanos = medianLatencyNanos(client, userIDs, itemIDs, random);
+
+    for (int i = 0; i < NUM_STEADY_STATE_REQUESTS; i++) {
+      makeRequest(client, i, userIDs, itemIDs, random);
+    }
+    long steadyMedianNanos = medianLatencyNanos(client, userIDs, itemIDs, random);
+
+    log.info("Median latency: {}us for first requests, {}us in steady state",
+             firstMedianNanos / 1000, steadyMedianNanos / 1000);
+  }
+
+  private static long medianLatencyNanos(ServerRecommender client,
+                                         List<String> userIDs,
+                                         List<String> itemIDs,
+                                         RandomGenerator random) throws Exception {
+    long[] latencies = new long[NUM_TIMED_REQUESTS];
+    for (int i = 0; i < NUM_TIMED_REQUESTS; i++) {
+      long start = System.nanoTime();
+      makeRequest(client, i, userIDs, itemIDs, random);
+      latencies[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(latencies);
+    return latencies[NUM_TIMED_REQUESTS / 2];
+  }
+
+  private static void makeRequest(ServerRecommender client,
+                                  int i,
+                                  List<String> userIDs,
+                                  List<String> itemIDs,
+                                  RandomGenerator random) throws Exception {
+    if (i % 2 == 0) {
+      client.recommend(userIDs.get(random.nextInt(userIDs.size())), HOW_MANY);
+    } else {
+      client.mostSimilarItems(itemIDs.get(random.nextInt(itemIDs.size())), HOW_MANY);
+    }
+  }
+
+  private static void readIDs(List<String> userIDs, List<String> itemIDs) throws IOException {
+    Set<String> userIDSet = Sets.newHashSet();
+    Set<String> itemIDSet = Sets.newHashSet();
+    for (File f : TEST_TEMP_INBOUND_DIR.listFiles(IOUtils.NOT_HIDDEN)) {
+      if (!f.getName().contains("oryx-append")) {
+        for (CharSequence line : new FileLineIterable(f)) {
+          String[] columns = DelimitedDataUtils.decode(line);
+          userIDSet.add(columns[0]);
+          itemIDSet.add(columns[1]);
+        }
+      }
+    }
+    userIDs.addAll(userIDSet);
+    itemIDs.addAll(itemIDSet);
+  }
+
+}
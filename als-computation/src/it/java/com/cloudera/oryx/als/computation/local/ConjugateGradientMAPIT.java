@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import com.typesafe.config.Config;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.factorizer.als.AlternatingLeastSquares;
+import com.cloudera.oryx.als.common.factorizer.als.ConjugateGradientSolver;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.math.MatrixUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+import com.cloudera.oryx.common.settings.ConfigUtils;
+
+/**
+ * Compares mean average precision, as computed by {@link ComputeMAP}, and running time of
+ * {@link AlternatingLeastSquares} with {@code model.solver} set to "exact" and to "cg", after several
+ * numbers of iterations, on synthetic data with clusters of users and items. Also checks "cg" as distributed
+ * computation runs it, starting each vector from 0 with {@code model.distributed-cg-iterations} iterations.
+ *
+ * @author Sean Owen
+ */
+public final class ConjugateGradientMAPIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ConjugateGradientMAPIT.class);
+
+  private static final int NUM_USERS = 4000;
+  private static final int NUM_ITEMS = 1500;
+  private static final int NUM_CLUSTERS = 20;
+  private static final int ITEMS_PER_USER = 30;
+  /** Fraction of each user's items chosen from its own cluster, rather than at random */
+  private static final double IN_CLUSTER_FRACTION = 0.8;
+  private static final double TEST_FRACTION = 0.2;
+  private static final int FEATURES = 100;
+  private static final int[] ITERATIONS = { 3, 6, 10 };
+
+  /** Multiple of the configured conjugate gradient iterations taken as converged, when starting from 0 */
+  private static final int CONVERGED_CG_ITERATIONS_MULTIPLE = 3;
+
+  @Test
+  public void testMAP() throws Exception {
+    File testDir = new File(TEST_TEMP_BASE_DIR, "test");
+    CompressedSparseMatrix R = buildData(testDir);
+
+    double[] exactMAPs = new double[ITERATIONS.length];
+    for (String solver : new String[] {"exact", "cg"}) {
+      for (int i = 0; i < ITERATIONS.length; i++) {
+        int iterations = ITERATIONS[i];
+        ConfigUtils.overlayConfigOnDefault("model.solver=" + solver);
+        AlternatingLeastSquares als =
+            new AlternatingLeastSquares(R, FEATURES, 1.0e-9, iterations);
+        Stopwatch stopwatch = new Stopwatch().start();
+        als.call();
+        long millis = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+        double map = new ComputeMAP(testDir, als.getX(), als.getY()).call();
+        log.info("{} solver, {} iterations: {}ms, MAP {}", solver, iterations, millis, map);
+        if ("exact".equals(solver)) {
+          exactMAPs[i] = map;
+        } else {
+          assertTrue(map > 0.9 * exactMAPs[i]);
+        }
+      }
+    }
+
+    int cgIterations = ConfigUtils.getDefaultConfig().getInt("model.distributed-cg-iterations");
+    for (int i = 0; i < ITERATIONS.length; i++) {
+      int iterations = ITERATIONS[i];
+      Stopwatch stopwatch = new Stopwatch().start();
+      double map = coldStartMAP(R, testDir, iterations, cgIterations);
+      long millis = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+      double convergedMAP = coldStartMAP(R, testDir, iterations, CONVERGED_CG_ITERATIONS_MULTIPLE * cgIterations);
+      log.info("cg solver from 0, {} iterations: {}ms, MAP {} ({} when converged)",
+               iterations, millis, map, convergedMAP);
+      assertTrue(map > 0.9 * exactMAPs[i]);
+      assertEquals(convergedMAP, map, 0.01 * convergedMAP);
+    }
+  }
+
+  private static CompressedSparseMatrix buildData(File testDir) throws IOException {
+    RandomGenerator random = RandomManager.getRandom();
+    CompressedSparseMatrix.Builder RBuilder = CompressedSparseMatrix.builder();
+    IOUtils.mkdirs(testDir);
+    Writer testOut = Files.newWriter(new File(testDir, "test.csv"), Charsets.UTF_8);
+    try {
+      for (long user = 0; user < NUM_USERS; user++) {
+        int cluster = (int) (user % NUM_CLUSTERS);
+        LongSet items = new LongSet();
+        while (items.size() < ITEMS_PER_USER) {
+          long item;
+          if (random.nextDouble() < IN_CLUSTER_FRACTION) {
+            item = cluster + NUM_CLUSTERS * random.nextInt(NUM_ITEMS / NUM_CLUSTERS);
+          } else {
+            item = random.nextInt(NUM_ITEMS);
+          }
+          if (!items.add(item)) {
+            continue;
+          }
+          if (random.nextDouble() < TEST_FRACTION) {
+            testOut.write(user + "," + item + '\n');
+          } else {
+            RBuilder.add(user, item, 1.0f + random.nextInt(3));
+          }
+        }
+      }
+    } finally {
+      testOut.close();
+    }
+    return RBuilder.build(0.0f);
+  }
+
+  /**
+   * Runs alternating least squares like distributed computation with the "cg" solver: every vector of every
+   * iteration is solved starting from 0, as {@code RowReduceFn} does.
+   *
+   * @return MAP of the resulting model
+   */
+  private static double coldStartMAP(CompressedSparseMatrix R,
+                                     File testDir,
+                                     int iterations,
+                                     int cgIterations) throws Exception {
+    Config config = ConfigUtils.getDefaultConfig();
+    double alpha = config.getDouble("model.alpha");
+    double lambda = alpha * config.getDouble("model.lambda");
+    ConjugateGradientSolver cgSolver =
+        new ConjugateGradientSolver(FEATURES, cgIterations, alpha, lambda, false, false);
+    RandomGenerator random = RandomManager.getRandom();
+    LongObjectMap<float[]> Y = new LongObjectMap<float[]>();
+    for (int column = 0; column < R.getNumColumns(); column++) {
+      Y.put(R.getColumnID(column), RandomUtils.randomUnitVector(FEATURES, random));
+    }
+    CompressedSparseMatrix RbyColumn = R.transpose();
+    LongObjectMap<float[]> X = null;
+    for (int i = 0; i < iterations; i++) {
+      X = solveFromZero(R, Y, cgSolver);
+      Y = solveFromZero(RbyColumn, X, cgSolver);
+    }
+    return new ComputeMAP(testDir, X, Y).call();
+  }
+
+  private static LongObjectMap<float[]> solveFromZero(CompressedSparseMatrix R,
+                                                      LongObjectMap<float[]> Y,
+                                                      ConjugateGradientSolver cgSolver) {
+    double[][] YTY = MatrixUtils.accessMatrixDataDirectly(MatrixUtils.transposeTimesSelf(Y));
+    LongObjectMap<float[]> X = new LongObjectMap<float[]>();
+    for (int row = 0; row < R.getNumRows(); row++) {
+      cgSolver.startRow();
+      for (int index = R.rowStart(row); index < R.rowEnd(row); index++) {
+        cgSolver.addValue(Y.get(R.getColumnID(R.columnAt(index))), R.valueAt(index));
+      }
+      X.put(R.getRowID(row), cgSolver.solve(YTY, R.rowSize(row), null));
+    }
+    return X;
+  }
+
+}
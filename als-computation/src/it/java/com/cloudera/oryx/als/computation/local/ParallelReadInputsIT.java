@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.LangUtils;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests that {@link ReadInputs} gives exactly the same matrix and ID mapping when reading many small splits
+ * in parallel as when reading serially, and as reading each line in turn with {@link FileLineIterable} and
+ * {@link DelimitedDataUtils#decode(CharSequence)}. Also tests that the known items kept while reading each
+ * line in turn are the entries of the matrix built without pruning.
+ *
+ * @author Sean Owen
+ */
+public final class ParallelReadInputsIT extends OryxTest {
+
+  private static final int LINES_PER_FILE = 20000;
+  private static final String[] VALUES = {
+      "", "", "1", "1.0", "2.5", "-1", "-0.25", "0.001", "0", "3.25e-1", "12345678", "0.1234567891", ".5", "7.",
+  };
+
+  @Test
+  public void testInbound() throws Exception {
+    File inputDir = writeInput(true);
+    doTestSameResult(inputDir, true);
+  }
+
+  @Test
+  public void testNumeric() throws Exception {
+    File inputDir = writeInput(false);
+    doTestSameResult(inputDir, false);
+  }
+
+  private static void doTestSameResult(File inputDir, boolean isInbound) throws Exception {
+    CompressedSparseMatrix.Builder expectedR = CompressedSparseMatrix.builder();
+    LongObjectMap<LongSet> expectedKnownItemIDs = new LongObjectMap<LongSet>();
+    StringLongMapping expectedMapping = new StringLongMapping();
+    readLineByLine(inputDir, isInbound, expectedR, expectedKnownItemIDs, expectedMapping);
+
+    CompressedSparseMatrix.Builder serialR = CompressedSparseMatrix.builder();
+    StringLongMapping serialMapping = new StringLongMapping();
+    new ReadInputs(inputDir, isInbound, serialR, serialMapping, 1, Long.MAX_VALUE).call();
+
+    CompressedSparseMatrix.Builder parallelR = CompressedSparseMatrix.builder();
+    StringLongMapping parallelMapping = new StringLongMapping();
+    new ReadInputs(inputDir, isInbound, parallelR, parallelMapping, 4, 997).call();
+
+    for (float zeroThreshold : new float[] {0.0f, 0.01f}) {
+      CompressedSparseMatrix expected = expectedR.build(zeroThreshold);
+      assertFalse(expected.isEmpty());
+      assertSameMatrix(expected, serialR.build(zeroThreshold));
+      assertSameMatrix(expected, parallelR.build(zeroThreshold));
+      assertSameMatrix(expected, parallelR.build(0.0f).prune(zeroThreshold));
+    }
+    assertKnownItemsAreEntries(expectedKnownItemIDs, parallelR.build(0.0f));
+    assertSameMapping(expectedMapping, serialMapping);
+    assertSameMapping(expectedMapping, parallelMapping);
+  }
+
+  /**
+   * Writes files in several forms: uncompressed and compressed, with and without values, quoted,
+   * with Windows line endings and non-ASCII IDs.
+   */
+  private static File writeInput(boolean isInbound) throws IOException {
+    RandomGenerator random = RandomManager.getRandom();
+    File inputDir = new File(TEST_TEMP_BASE_DIR, isInbound ? "inbound" : "numeric");
+    IOUtils.mkdirs(inputDir);
+    String[] names = {"2.csv", "0.csv.gz", "1.csv", "3.csv"};
+    for (int f = 0; f < names.length; f++) {
+      File file = new File(inputDir, names[f]);
+      Writer out = names[f].endsWith(".gz") ? IOUtils.buildGZIPWriter(file) : Files.newWriter(file, Charsets.UTF_8);
+      try {
+        for (int i = 0; i < LINES_PER_FILE; i++) {
+          String userID = randomID(isInbound, 500, random);
+          String itemID = randomID(isInbound, 200, random);
+          StringBuilder line = new StringBuilder();
+          if (random.nextInt(50) == 0) {
+            // Quoted, and for string IDs, containing the delimiter
+            line.append('"').append(userID).append(isInbound ? ",x\"," : "\",").append(itemID);
+          } else {
+            line.append(userID).append(',').append(itemID);
+          }
+          if (f != 3) {
+            line.append(',').append(VALUES[random.nextInt(VALUES.length)]);
+          }
+          line.append(f == 1 ? "\r\n" : "\n");
+          out.write(line.toString());
+        }
+        // Last line without a newline
+        out.write(randomID(isInbound, 500, random) + ',' + randomID(isInbound, 200, random));
+      } finally {
+        out.close();
+      }
+      // Files are read in order of modification, not name
+      assertTrue(file.setLastModified(1000000000000L + 1000000L * f));
+    }
+    return inputDir;
+  }
+
+  private static String randomID(boolean isInbound, int range, RandomGenerator random) {
+    int id = random.nextInt(range);
+    if (!isInbound) {
+      // Long.MIN_VALUE and Long.MAX_VALUE are reserved as keys
+      return Long.toString(id % 3 == 0 ? Long.MIN_VALUE + 1 + id : id % 3 == 1 ? Long.MAX_VALUE - 1 - id : -id);
+    }
+    switch (id % 4) {
+      case 0:
+        return Integer.toString(id);
+      case 1:
+        return "id" + id;
+      case 2:
+        return "\u00fc" + id;
+      default:
+        return "00" + id;
+    }
+  }
+
+  /**
+   * Reads as {@link ReadInputs} did before it read in parallel.
+   */
+  static void readLineByLine(File inputDir,
+                             boolean isInbound,
+                             CompressedSparseMatrix.Builder R,
+                             LongObjectMap<LongSet> knownItemIDs,
+                             StringLongMapping idMapping) throws IOException {
+    File[] inputFiles = inputDir.listFiles(IOUtils.NOT_HIDDEN);
+    Arrays.sort(inputFiles, ByLastModifiedComparator.INSTANCE);
+    for (File inputFile : inputFiles) {
+      for (CharSequence line : new FileLineIterable(inputFile)) {
+        String[] columns = DelimitedDataUtils.decode(line);
+        long userID = isInbound ? idMapping.add(columns[0]) : Long.parseLong(columns[0]);
+        long itemID = isInbound ? idMapping.add(columns[1]) : Long.parseLong(columns[1]);
+        float value;
+        if (columns.length > 2) {
+          String valueToken = columns[2];
+          value = valueToken.isEmpty() ? Float.NaN : LangUtils.parseFloat(valueToken);
+        } else {
+          value = 1.0f;
+        }
+        LongSet itemIDs = knownItemIDs.get(userID);
+        if (Float.isNaN(value)) {
+          R.remove(userID, itemID);
+          if (itemIDs != null) {
+            itemIDs.remove(itemID);
+            if (itemIDs.isEmpty()) {
+              knownItemIDs.remove(userID);
+            }
+          }
+        } else {
+          R.add(userID, itemID, value);
+          if (itemIDs == null) {
+            itemIDs = new LongSet();
+            knownItemIDs.put(userID, itemIDs);
+          }
+          itemIDs.add(itemID);
+        }
+      }
+    }
+  }
+
+  private static void assertSameMatrix(CompressedSparseMatrix expected, CompressedSparseMatrix actual) {
+    assertEquals(expected.getNumRows(), actual.getNumRows());
+    assertEquals(expected.getNumColumns(), actual.getNumColumns());
+    assertEquals(expected.size(), actual.size());
+    for (int row = 0; row < expected.getNumRows(); row++) {
+      assertEquals(expected.getRowID(row), actual.getRowID(row));
+      assertEquals(expected.rowStart(row), actual.rowStart(row));
+    }
+    for (int column = 0; column < expected.getNumColumns(); column++) {
+      assertEquals(expected.getColumnID(column), actual.getColumnID(column));
+    }
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.columnAt(i), actual.columnAt(i));
+      // Exactly the same, as the same values are summed in the same order
+      assertEquals(Float.floatToIntBits(expected.valueAt(i)), Float.floatToIntBits(actual.valueAt(i)));
+    }
+  }
+
+  private static void assertKnownItemsAreEntries(LongObjectMap<LongSet> knownItemIDs, CompressedSparseMatrix R) {
+    assertEquals(knownItemIDs.size(), R.getNumRows());
+    for (LongObjectMap.MapEntry<LongSet> entry : knownItemIDs.entrySet()) {
+      int row = R.indexOfRow(entry.getKey());
+      assertTrue(row >= 0);
+      LongSet itemIDs = entry.getValue();
+      assertEquals(itemIDs.size(), R.rowSize(row));
+      for (int i = R.rowStart(row); i < R.rowEnd(row); i++) {
+        assertTrue(itemIDs.contains(R.getColumnID(R.columnAt(i))));
+      }
+    }
+  }
+
+  private static void assertSameMapping(StringLongMapping expected, StringLongMapping actual) {
+    long[] expectedIDs = expected.getNumericIDs();
+    long[] actualIDs = actual.getNumericIDs();
+    Arrays.sort(expectedIDs);
+    Arrays.sort(actualIDs);
+    assertArrayEquals(expectedIDs, actualIDs);
+    for (long id : expectedIDs) {
+      assertEquals(expected.toString(id), actual.toString(id));
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the rate at which input lines are read by {@link ReadInputs}, serially and in parallel, and by
+ * reading each line in turn as it did before, which also kept known items.
+ *
+ * @author Sean Owen
+ */
+public final class ReadInputsLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ReadInputsLoadIT.class);
+
+  private static final int NUM_FILES = 4;
+  private static final int LINES_PER_FILE = 1000000;
+  private static final int NUM_USERS = 1000000;
+  private static final int NUM_ITEMS = 100000;
+  private static final long SPLIT_BYTES = 4L << 20;
+
+  @Test
+  public void testIngestRate() throws Exception {
+    File inputDir = writeInput();
+    int parallelism = ExecutorUtils.getParallelism();
+
+    // Warm up each, then time
+    for (int i = 0; i < 2; i++) {
+      long lineByLineMS = readLineByLine(inputDir);
+      long serialMS = read(inputDir, 1);
+      long parallelMS = read(inputDir, parallelism);
+      if (i == 1) {
+        long lines = (long) NUM_FILES * LINES_PER_FILE;
+        log.info("Lines/sec: line by line {}, serial {}, parallel ({} threads) {}",
+                 1000L * lines / lineByLineMS, 1000L * lines / serialMS, parallelism, 1000L * lines / parallelMS);
+      }
+    }
+  }
+
+  private static long readLineByLine(File inputDir) throws IOException {
+    Stopwatch stopwatch = new Stopwatch().start();
+    ParallelReadInputsIT.readLineByLine(inputDir,
+                                        true,
+                                        CompressedSparseMatrix.builder(),
+                                        new LongObjectMap<LongSet>(),
+                                        new StringLongMapping());
+    return stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+  }
+
+  private static long read(File inputDir, int parallelism) throws Exception {
+    Stopwatch stopwatch = new Stopwatch().start();
+    new ReadInputs(inputDir,
+                   true,
+                   CompressedSparseMatrix.builder(),
+                   new StringLongMapping(),
+                   parallelism,
+                   SPLIT_BYTES).call();
+    return stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+  }
+
+  private static File writeInput() throws IOException {
+    RandomGenerator random = RandomManager.getRandom();
+    File inputDir = new File(TEST_TEMP_BASE_DIR, "inbound");
+    IOUtils.mkdirs(inputDir);
+    for (int f = 0; f < NUM_FILES; f++) {
+      Writer out = Files.newWriter(new File(inputDir, f + ".csv"), Charsets.UTF_8);
+      try {
+        for (int i = 0; i < LINES_PER_FILE; i++) {
+          // Numeric user IDs, string item IDs
+          out.write(random.nextInt(NUM_USERS) + ",item" + random.nextInt(NUM_ITEMS) + ',' +
+                    (1 + random.nextInt(5)) + '\n');
+        }
+      } finally {
+        out.close();
+      }
+    }
+    return inputDir;
+  }
+
+}
@@ -22,11 +22,14 @@ import java.util.Collection;
 import java.util.List;
 
 import com.cloudera.oryx.als.common.DataUtils;
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.common.io.BinaryModelWriter;
 import com.cloudera.oryx.als.common.pmml.ALSModelDescription;
 import com.cloudera.oryx.als.computation.merge.MergeIDMappingStep;
 import com.cloudera.oryx.als.computation.merge.SplitTestStep;
 import com.cloudera.oryx.common.collection.LongFloatMap;
 import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.io.DelimitedDataUtils;
 import com.cloudera.oryx.common.io.IOUtils;
 import com.cloudera.oryx.common.iterator.FileLineIterable;
@@ -34,9 +37,9 @@ import com.cloudera.oryx.common.settings.ConfigUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import com.google.common.primitives.Doubles;
 import com.typesafe.config.Config;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +59,7 @@ import com.cloudera.oryx.als.computation.recommend.DistributeRecommendWorkStep;
 import com.cloudera.oryx.als.computation.recommend.RecommendStep;
 import com.cloudera.oryx.als.computation.similar.DistributeSimilarWorkStep;
 import com.cloudera.oryx.als.computation.similar.SimilarStep;
+import com.cloudera.oryx.common.math.GramMatrixAccumulator;
 import com.cloudera.oryx.common.math.MatrixUtils;
 import com.cloudera.oryx.common.servcomp.Namespaces;
 import com.cloudera.oryx.common.servcomp.Store;
@@ -387,13 +391,25 @@ public final class ALSDistributedGenerationRunner extends DistributedGenerationR
       store.recursiveDelete(generationPrefix + "similarItems/");
     } else {
       log.info("X and Y have sufficient rank");
+      boolean binaryOutput = ConfigUtils.getDefaultConfig().getBoolean("model.binary-output");
+      if (binaryOutput) {
+        publishBinaryModel(generationPrefix);
+      }
       File tempModelDescriptionFile = File.createTempFile("model-", ".pmml.gz");
       tempModelDescriptionFile.deleteOnExit();
       ALSModelDescription modelDescription = new ALSModelDescription();
-      modelDescription.setKnownItemsPath("knownItems");
-      modelDescription.setXPath("X");
-      modelDescription.setYPath("Y");
-      modelDescription.setIDMappingPath("idMapping");
+      if (binaryOutput) {
+        modelDescription.setFormat(ALSModelDescription.BINARY_FORMAT);
+        modelDescription.setKnownItemsPath("binary/knownItems");
+        modelDescription.setXPath("binary/X");
+        modelDescription.setYPath("binary/Y");
+        modelDescription.setIDMappingPath("binary/idMapping");
+      } else {
+        modelDescription.setKnownItemsPath("knownItems");
+        modelDescription.setXPath("X");
+        modelDescription.setYPath("Y");
+        modelDescription.setIDMappingPath("idMapping");
+      }
       ALSModelDescription.write(tempModelDescriptionFile, modelDescription);
       store.upload(generationPrefix + "model.pmml.gz", tempModelDescriptionFile, false);
       IOUtils.deleteRecursively(tempModelDescriptionFile);
@@ -402,27 +418,83 @@ public final class ALSDistributedGenerationRunner extends DistributedGenerationR
     super.doPost();
   }
 
+  /**
+   * Converts the published text X, Y, known items and ID mapping into the binary model format, under
+   * {@code binary/}. Each text part is read, converted and uploaded in turn, so only one part need be held
+   * in memory or on local disk at once. Reducers partition by ID, so each ID occurs in just one text part,
+   * and IDs need only be sorted within each binary part.
+   */
+  private static void publishBinaryModel(String generationPrefix) throws IOException {
+    log.info("Writing binary model");
+    Store store = Store.get();
+    String binaryPrefix = generationPrefix + "binary/";
+    for (String subDir : new String[] {"X", "Y", "knownItems", "idMapping"}) {
+      int part = 0;
+      for (String textPart : store.list(generationPrefix + subDir + '/', true)) {
+        File tempBinaryDir = Files.createTempDir();
+        try {
+          if ("knownItems".equals(subDir)) {
+            part = BinaryModelWriter.writeKnownItems(readKnownItems(textPart), tempBinaryDir, part);
+          } else if ("idMapping".equals(subDir)) {
+            part = BinaryModelWriter.writeIDMapping(readIDMapping(textPart), tempBinaryDir, part);
+          } else {
+            part = BinaryModelWriter.writeFeatureVectors(readFeatureVectors(textPart), tempBinaryDir, part);
+          }
+          store.uploadDirectory(binaryPrefix + subDir, tempBinaryDir, false);
+        } finally {
+          IOUtils.deleteRecursively(tempBinaryDir);
+        }
+      }
+      log.info("Wrote {} binary parts of {}", part, subDir);
+    }
+  }
+
+  private static LongObjectMap<float[]> readFeatureVectors(String xOrYFilePrefix) throws IOException {
+    LongObjectMap<float[]> vectors = new LongObjectMap<float[]>();
+    for (String line : new FileLineIterable(Store.get().readFrom(xOrYFilePrefix))) {
+      int tab = line.indexOf('\t');
+      Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", xOrYFilePrefix, line);
+      vectors.put(Long.parseLong(line.substring(0, tab)), DataUtils.readFeatureVector(line.substring(tab + 1)));
+    }
+    return vectors;
+  }
+
+  private static LongObjectMap<LongSet> readKnownItems(String knownItemFilePrefix) throws IOException {
+    LongObjectMap<LongSet> knownItemIDs = new LongObjectMap<LongSet>();
+    for (String line : new FileLineIterable(Store.get().readFrom(knownItemFilePrefix))) {
+      int tab = line.indexOf('\t');
+      Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", knownItemFilePrefix, line);
+      LongSet itemIDs = new LongSet();
+      for (String itemID : DelimitedDataUtils.decode(line.substring(tab + 1), ',')) {
+        itemIDs.add(Long.parseLong(itemID));
+      }
+      knownItemIDs.put(Long.parseLong(line.substring(0, tab)), itemIDs);
+    }
+    return knownItemIDs;
+  }
+
+  private static StringLongMapping readIDMapping(String idMappingFilePrefix) throws IOException {
+    StringLongMapping idMapping = new StringLongMapping();
+    for (CharSequence line : new FileLineIterable(Store.get().readFrom(idMappingFilePrefix))) {
+      String[] columns = DelimitedDataUtils.decode(line, ',');
+      idMapping.addMapping(columns[1], Long.parseLong(columns[0]));
+    }
+    return idMapping;
+  }
+
   private static boolean doesXorYHasSufficientRank(String xOrYPrefix) throws IOException {
-    double[][] transposeTimesSelf = null;
+    GramMatrixAccumulator transposeTimesSelf = null;
     Store store = Store.get();
     for (String xOrYFilePrefix : store.list(xOrYPrefix, true)) {
       for (String line : new FileLineIterable(store.readFrom(xOrYFilePrefix))) {
         int tab = line.indexOf('\t');
 
         float[] elements = DataUtils.readFeatureVector(line.substring(tab + 1));
-        int features = elements.length;
 
         if (transposeTimesSelf == null) {
-          transposeTimesSelf = new double[features][features];
-        }
-
-        for (int i = 0; i < features; i++) {
-          double rowFactor = elements[i];
-          double[] transposeTimesSelfRow = transposeTimesSelf[i];
-          for (int j = 0; j < features; j++) {
-            transposeTimesSelfRow[j] += rowFactor * elements[j];
-          }
+          transposeTimesSelf = new GramMatrixAccumulator(elements.length);
         }
+        transposeTimesSelf.add(elements);
 
       }
       
@@ -430,8 +502,7 @@ public final class ALSDistributedGenerationRunner extends DistributedGenerationR
       // it's all but impossible that it would be singular when the rest was loaded
       
       if (transposeTimesSelf != null && 
-          transposeTimesSelf.length != 0 && 
-          MatrixUtils.isNonSingular(new Array2DRowRealMatrix(transposeTimesSelf))) {
+          MatrixUtils.isNonSingular(transposeTimesSelf.toMatrix())) {
         return true;
       } else {
         log.info("Matrix is not yet proved to be non-singular, continuing to load...");
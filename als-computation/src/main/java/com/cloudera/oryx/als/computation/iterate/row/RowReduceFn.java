@@ -15,6 +15,7 @@
 
 package com.cloudera.oryx.als.computation.iterate.row;
 
+import com.cloudera.oryx.als.common.factorizer.als.ConjugateGradientSolver;
 import com.cloudera.oryx.als.computation.types.MatrixRow;
 import com.cloudera.oryx.common.collection.LongFloatMap;
 import com.cloudera.oryx.common.collection.LongObjectMap;
@@ -40,6 +41,7 @@ public final class RowReduceFn extends OryxReduceMapFn<Long, Iterable<LongFloatM
   private double lambda;
   private boolean reconstructRMatrix;
   private boolean lossIgnoresUnspecified;
+  private ConjugateGradientSolver cgSolver;
 
   public RowReduceFn(YState yState) {
     this.yState = yState;
@@ -64,6 +66,20 @@ public final class RowReduceFn extends OryxReduceMapFn<Long, Iterable<LongFloatM
     log.info("alpha = {}, lambda = {}", alpha, lambda);
 
     yState.initialize(getContext(), getPartition(), getNumPartitions());
+
+    String solver = config.getString("model.solver");
+    Preconditions.checkArgument("exact".equals(solver) || "cg".equals(solver), "Unknown solver: %s", solver);
+    if ("cg".equals(solver)) {
+      // Rows start from 0 here, so take more iterations than local computation, which starts from previous values
+      int cgIterations = config.getInt("model.distributed-cg-iterations");
+      Preconditions.checkArgument(cgIterations > 0, "distributed-cg-iterations must be positive: %s", cgIterations);
+      cgSolver = new ConjugateGradientSolver(yState.getYTY().getRowDimension(),
+                                             cgIterations,
+                                             alpha,
+                                             lambda,
+                                             reconstructRMatrix,
+                                             lossIgnoresUnspecified);
+    }
   }
 
   @Override
@@ -73,6 +89,20 @@ public final class RowReduceFn extends OryxReduceMapFn<Long, Iterable<LongFloatM
     LongObjectMap<float[]> Y = yState.getY();
     RealMatrix YTY = yState.getYTY();
 
+    if (cgSolver != null) {
+      Preconditions.checkState(!values.isEmpty(), "No values for user {}?", input.first());
+      // The previous value of this row isn't available here, so start from 0
+      cgSolver.startRow();
+      for (LongFloatMap.MapEntry entry : values.entrySet()) {
+        long itemID = entry.getKey();
+        float[] vector = Y.get(itemID);
+        Preconditions.checkNotNull(vector, "No feature vector for %s", itemID);
+        cgSolver.addValue(vector, entry.getValue());
+      }
+      float[] xu = cgSolver.solve(MatrixUtils.accessMatrixDataDirectly(YTY), values.size(), null);
+      return new MatrixRow(input.first(), xu);
+    }
+
     // Start computing Wu = (YT*Cu*Y + lambda*I) = (YT*Y + YT*(Cu-I)*Y + lambda*I),
     // by first starting with a copy of YT * Y. Or, a variant on YT * Y, if LOSS_IGNORES_UNSPECIFIED is set
     RealMatrix Wu;
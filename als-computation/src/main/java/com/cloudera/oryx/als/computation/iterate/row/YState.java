@@ -19,9 +19,9 @@ import com.cloudera.oryx.als.computation.ComputationDataUtils;
 import com.cloudera.oryx.als.computation.types.MatrixRow;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.math.GramMatrixAccumulator;
 import com.cloudera.oryx.common.servcomp.Namespaces;
 import com.google.common.base.Preconditions;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.crunch.io.avro.AvroFileSource;
 import org.apache.crunch.types.PType;
@@ -76,8 +76,7 @@ final class YState implements Serializable {
       throw new IllegalStateException(e);
     }
 
-    RealMatrix theYTY = null;
-    int dimension = 0;
+    GramMatrixAccumulator theYTY = null;
     long count = 0;
     for (MatrixRow record : in) {
       long keyID = record.getRowId();
@@ -85,15 +84,9 @@ final class YState implements Serializable {
       Preconditions.checkNotNull(vector, "Vector was null for %s?", keyID);
 
       if (theYTY == null) {
-        dimension = vector.length;
-        theYTY = new Array2DRowRealMatrix(dimension, dimension);
-      }
-      for (int row = 0; row < dimension; row++) {
-        double rowValue = vector[row];
-        for (int col = 0; col < dimension; col++) {
-          theYTY.addToEntry(row, col, rowValue * vector[col]);
-        }
+        theYTY = new GramMatrixAccumulator(vector.length);
       }
+      theYTY.add(vector);
 
       if (expectedIDs == null || expectedIDs.contains(keyID)) {
         Y.put(keyID, vector);
@@ -105,7 +98,7 @@ final class YState implements Serializable {
     }
 
     Preconditions.checkNotNull(theYTY);
-    YTY = theYTY;
+    YTY = theYTY.toMatrix();
   }
 
   public LongObjectMap<float[]> getY() {
@@ -23,7 +23,7 @@ import java.io.IOException;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
 import com.cloudera.oryx.als.common.factorizer.MatrixFactorizer;
-import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.io.IOUtils;
@@ -78,26 +78,35 @@ public final class ALSLocalGenerationRunner extends LocalGenerationRunner {
 
       Config config = ConfigUtils.getDefaultConfig();
 
-      boolean noKnownItems = config.getBoolean("model.no-known-items");
-      LongObjectMap<LongSet> knownItemIDs = noKnownItems ? null : new LongObjectMap<LongSet>();
-      LongObjectMap<LongFloatMap> RbyRow = new LongObjectMap<LongFloatMap>();
-      LongObjectMap<LongFloatMap> RbyColumn = new LongObjectMap<LongFloatMap>();
+      CompressedSparseMatrix.Builder RBuilder = CompressedSparseMatrix.builder();
       StringLongMapping idMapping = new StringLongMapping();
 
       if (lastGenerationID >= 0) {
-        new ReadInputs(lastInputDir, false, knownItemIDs, RbyRow, RbyColumn, idMapping).call();
-        new ReadInputs(lastTestDir, false, knownItemIDs, RbyRow, RbyColumn, idMapping).call();
+        new ReadInputs(lastInputDir, false, RBuilder, idMapping).call();
+        new ReadInputs(lastTestDir, false, RBuilder, idMapping).call();
         new ReadMapping(lastMappingDir, idMapping).call();
       }
-      new ReadInputs(currentTrainDir, true, knownItemIDs, RbyRow, RbyColumn, idMapping).call();
+      new ReadInputs(currentTrainDir, true, RBuilder, idMapping).call();
+
+      CompressedSparseMatrix allR = RBuilder.build(0.0f);
+      RBuilder = null; // Let the builder's arrays be collected before factoring
+
+      // Items are known to a user if the last change to them added a value, even a near-zero one
+      boolean noKnownItems = config.getBoolean("model.no-known-items");
+      LongObjectMap<LongSet> knownItemIDs = noKnownItems ? null : toKnownItemIDs(allR);
+
+      // Near-zero entries are pruned before factoring
+      float zeroThreshold = (float) config.getDouble("model.decay.zeroThreshold");
+      CompressedSparseMatrix R = allR.prune(zeroThreshold);
+      allR = null;
 
-      if (RbyRow.isEmpty() || RbyColumn.isEmpty()) {
+      if (R.isEmpty()) {
         return;
       }
 
-      MatrixFactorizer als = new FactorMatrix(RbyRow, RbyColumn).call();
+      MatrixFactorizer als = new FactorMatrix(R).call();
 
-      new WriteOutputs(tempOutDir, RbyRow, knownItemIDs, als.getX(), als.getY(), idMapping).call();
+      new WriteOutputs(tempOutDir, R, knownItemIDs, als.getX(), als.getY(), idMapping).call();
 
       if (config.getDouble("model.test-set-fraction") > 0.0) {
         new ComputeMAP(currentTestDir, als.getX(), als.getY()).call();
@@ -123,4 +132,17 @@ public final class ALSLocalGenerationRunner extends LocalGenerationRunner {
     }
   }
 
+  private static LongObjectMap<LongSet> toKnownItemIDs(CompressedSparseMatrix R) {
+    int numRows = R.getNumRows();
+    LongObjectMap<LongSet> knownItemIDs = new LongObjectMap<LongSet>(numRows);
+    for (int row = 0; row < numRows; row++) {
+      LongSet itemIDs = new LongSet(R.rowSize(row));
+      for (int i = R.rowStart(row); i < R.rowEnd(row); i++) {
+        itemIDs.add(R.getColumnID(R.columnAt(i)));
+      }
+      knownItemIDs.put(R.getRowID(row), itemIDs);
+    }
+    return knownItemIDs;
+  }
+
 }
@@ -33,7 +33,7 @@ import com.cloudera.oryx.common.iterator.FileLineIterable;
 import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
 import com.cloudera.oryx.common.math.SimpleVectorMath;
 
-final class ComputeMAP implements Callable<Object> {
+final class ComputeMAP implements Callable<Double> {
 
   private static final Logger log = LoggerFactory.getLogger(ComputeMAP.class);
 
@@ -48,7 +48,7 @@ final class ComputeMAP implements Callable<Object> {
   }
 
   @Override
-  public Object call() throws IOException {
+  public Double call() throws IOException {
 
     LongObjectMap<LongSet> testData = new LongObjectMap<LongSet>();
 
@@ -116,9 +116,9 @@ final class ComputeMAP implements Callable<Object> {
       meanAveragePrecision.increment(averagePrecision);
     }
 
-    log.info("Mean average precision: {}", meanAveragePrecision.getResult());
-
-    return null;
+    double result = meanAveragePrecision.getResult();
+    log.info("Mean average precision: {}", result);
+    return result;
   }
 
 }
@@ -23,8 +23,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import com.cloudera.oryx.als.common.factorizer.als.AlternatingLeastSquares;
-import com.cloudera.oryx.common.collection.LongFloatMap;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
 import com.cloudera.oryx.common.math.SingularMatrixSolverException;
 import com.cloudera.oryx.common.settings.ConfigUtils;
 import com.cloudera.oryx.computation.common.JobException;
@@ -33,12 +32,10 @@ final class FactorMatrix implements Callable<AlternatingLeastSquares> {
 
   private static final Logger log = LoggerFactory.getLogger(FactorMatrix.class);
 
-  private final LongObjectMap<LongFloatMap> RbyRow;
-  private final LongObjectMap<LongFloatMap> RbyColumn;
+  private final CompressedSparseMatrix R;
 
-  FactorMatrix(LongObjectMap<LongFloatMap> rbyRow, LongObjectMap<LongFloatMap> rbyColumn) {
-    RbyRow = rbyRow;
-    RbyColumn = rbyColumn;
+  FactorMatrix(CompressedSparseMatrix R) {
+    this.R = R;
   }
 
   @Override
@@ -50,8 +47,7 @@ final class FactorMatrix implements Callable<AlternatingLeastSquares> {
       int features = config.getInt("model.features");
       double convergenceThreshold = config.getDouble("model.iterations.convergence-threshold");
       int maxIterations = config.getInt("model.iterations.max");
-      AlternatingLeastSquares als = new AlternatingLeastSquares(RbyRow,
-                                                                RbyColumn,
+      AlternatingLeastSquares als = new AlternatingLeastSquares(R,
                                                                 features,
                                                                 convergenceThreshold,
                                                                 maxIterations);
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.computation.local;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.LangUtils;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.IOUtils;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * <p>Reads the lines of one input file, or of a byte range of an uncompressed one, for {@link ReadInputs}.
+ * The changes they make to the input matrix and to the ID mapping are collected here, and merged by
+ * {@link #mergeInto(CompressedSparseMatrix.Builder, StringLongMapping)} in the order the lines were read, so
+ * that reading splits in parallel gives the same result as reading serially.</p>
+ *
+ * <p>A split owns the lines that start in its byte range. Lines are parsed directly from bytes: fields are
+ * found by scanning for the delimiter, and numeric IDs and simple decimal values are parsed without creating
+ * a {@link String}. Lines containing a quote are decoded with {@link DelimitedDataUtils#decode(CharSequence)}
+ * instead.</p>
+ *
+ * @author Sean Owen
+ */
+final class ReadInputSplit implements Callable<ReadInputSplit> {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte QUOTE = '"';
+  private static final int MAX_FIELDS = 3;
+  /** Integers below this are exactly representable as a {@code float} */
+  private static final int MAX_EXACT_FLOAT_INT = 1 << 24;
+  /** Powers of 10 that are exactly representable as a {@code float} */
+  private static final float[] POWERS_OF_10 = {
+      1.0e0f, 1.0e1f, 1.0e2f, 1.0e3f, 1.0e4f, 1.0e5f, 1.0e6f, 1.0e7f, 1.0e8f, 1.0e9f, 1.0e10f,
+  };
+
+  private final File file;
+  private final long start;
+  private final long end;
+  private final boolean isInbound;
+
+  private final CompressedSparseMatrix.Builder R;
+  private final LongObjectMap<String> newMappings;
+  private final int[] fieldStarts;
+  private final int[] fieldEnds;
+  private final ASCIISequence field;
+  private long lines;
+
+  /**
+   * @param file file to read
+   * @param start offset of the first byte of the range to read. Must be 0 if the file is compressed.
+   * @param end offset after the last byte of the range to read, or {@link Long#MAX_VALUE} to read to the end
+   * @param isInbound if true, IDs are strings to hash and map, as in {@link StringLongMapping#add(String)};
+   *  otherwise they are already numeric IDs
+   */
+  ReadInputSplit(File file, long start, long end, boolean isInbound) {
+    this.file = file;
+    this.start = start;
+    this.end = end;
+    this.isInbound = isInbound;
+    R = CompressedSparseMatrix.builder();
+    newMappings = new LongObjectMap<String>();
+    fieldStarts = new int[MAX_FIELDS];
+    fieldEnds = new int[MAX_FIELDS];
+    field = new ASCIISequence();
+  }
+
+  long getLines() {
+    return lines;
+  }
+
+  @Override
+  public ReadInputSplit call() throws IOException {
+    InputStream in;
+    // Absolute offset of buffer[0]
+    long position;
+    // Unless at the start of the file, the line that overlaps the start of the range belongs to the previous
+    // split. Start at the byte before the range, and skip through the first newline.
+    boolean skipping;
+    if (start == 0L) {
+      in = IOUtils.openMaybeDecompressing(file);
+      position = 0L;
+      skipping = false;
+    } else {
+      FileInputStream fileIn = new FileInputStream(file);
+      fileIn.getChannel().position(start - 1);
+      in = fileIn;
+      position = start - 1;
+      skipping = true;
+    }
+
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int length = 0;
+      int lineStart = 0;
+      int scanFrom = 0;
+      boolean eof = false;
+      while (true) {
+        int newline = indexOf(buffer, (byte) '\n', scanFrom, length);
+        if (newline < 0) {
+          if (eof) {
+            // Last line, without a newline
+            if (lineStart < length && !skipping && position + lineStart < end) {
+              parseLine(buffer, lineStart, length);
+            }
+            break;
+          }
+          // Keep the partial line, and read more after it
+          if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+            length -= lineStart;
+            position += lineStart;
+            lineStart = 0;
+          }
+          if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+          }
+          scanFrom = length;
+          int read = in.read(buffer, length, buffer.length - length);
+          if (read < 0) {
+            eof = true;
+          } else {
+            length += read;
+          }
+          continue;
+        }
+        if (skipping) {
+          skipping = false;
+        } else {
+          if (position + lineStart >= end) {
+            break;
+          }
+          parseLine(buffer, lineStart, newline);
+        }
+        lineStart = newline + 1;
+        scanFrom = lineStart;
+      }
+    } finally {
+      in.close();
+    }
+    return this;
+  }
+
+  /**
+   * Applies this split's changes after those already made to the arguments.
+   */
+  void mergeInto(CompressedSparseMatrix.Builder allR, StringLongMapping idMapping) {
+    allR.addAll(R);
+    for (LongObjectMap.MapEntry<String> entry : newMappings.entrySet()) {
+      idMapping.addMapping(entry.getValue(), entry.getKey());
+    }
+  }
+
+  private void parseLine(byte[] bytes, int from, int to) {
+    if (to > from && bytes[to - 1] == '\r') {
+      to--;
+    }
+    if (to == from) {
+      return;
+    }
+    lines++;
+
+    char delimiter = DelimitedDataUtils.DELIMITER;
+    if (delimiter >= 0x80) {
+      parseDecodedLine(new String(bytes, from, to - from, Charsets.UTF_8));
+      return;
+    }
+    int numFields = 0;
+    int fieldStart = from;
+    for (int i = from; i < to; i++) {
+      byte b = bytes[i];
+      if (b == QUOTE) {
+        parseDecodedLine(new String(bytes, from, to - from, Charsets.UTF_8));
+        return;
+      }
+      if (b == delimiter && numFields < MAX_FIELDS) {
+        fieldStarts[numFields] = fieldStart;
+        fieldEnds[numFields] = i;
+        numFields++;
+        fieldStart = i + 1;
+      }
+    }
+    if (numFields < MAX_FIELDS) {
+      fieldStarts[numFields] = fieldStart;
+      fieldEnds[numFields] = to;
+      numFields++;
+    }
+    checkFields(numFields, bytes, from, to);
+
+    long userID = parseID(bytes, fieldStarts[0], fieldEnds[0]);
+    long itemID = parseID(bytes, fieldStarts[1], fieldEnds[1]);
+    float value;
+    if (numFields > 2) {
+      value = fieldStarts[2] == fieldEnds[2] ? Float.NaN : parseValue(bytes, fieldStarts[2], fieldEnds[2]);
+    } else {
+      value = 1.0f;
+    }
+    apply(userID, itemID, value);
+  }
+
+  private void parseDecodedLine(String line) {
+    String[] columns = DelimitedDataUtils.decode(line);
+    checkFields(columns.length, line);
+    long userID = parseID(columns[0]);
+    long itemID = parseID(columns[1]);
+    float value;
+    if (columns.length > 2) {
+      String valueToken = columns[2];
+      value = valueToken.isEmpty() ? Float.NaN : LangUtils.parseFloat(valueToken);
+    } else {
+      value = 1.0f;
+    }
+    apply(userID, itemID, value);
+  }
+
+  private void checkFields(int numFields, byte[] bytes, int from, int to) {
+    if (numFields < 2) {
+      checkFields(numFields, new String(bytes, from, to - from, Charsets.UTF_8));
+    }
+  }
+
+  private void checkFields(int numFields, String line) {
+    if (numFields < 2) {
+      throw new IllegalArgumentException("Bad line in " + file + ": " + line);
+    }
+  }
+
+  private void apply(long userID, long itemID, float value) {
+    if (Float.isNaN(value)) {
+      // Remove, not set
+      R.remove(userID, itemID);
+    } else {
+      R.add(userID, itemID, value);
+    }
+  }
+
+  private long parseID(byte[] bytes, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] < 0) {
+        // Not ASCII
+        return parseID(new String(bytes, from, to - from, Charsets.UTF_8));
+      }
+    }
+    field.set(bytes, from, to);
+    return parseID(field);
+  }
+
+  private long parseID(CharSequence id) {
+    if (!isInbound) {
+      return parseLong(id);
+    }
+    if (StringLongMapping.isNumeric(id)) {
+      return StringLongMapping.toLong(id);
+    }
+    long numericID = RandomUtils.hash(id);
+    if (!newMappings.containsKey(numericID)) {
+      newMappings.put(numericID, id.toString());
+    }
+    return numericID;
+  }
+
+  /**
+   * Like {@link Long#parseLong(String)}, but without creating a {@link String} in the common case.
+   */
+  private static long parseLong(CharSequence s) {
+    int length = s.length();
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && s.charAt(0) == '-') {
+      negative = true;
+      i++;
+    }
+    if (i == length) {
+      return Long.parseLong(s.toString());
+    }
+    // Accumulate negatively, since Long.MIN_VALUE has no positive counterpart
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long multiplyMin = limit / 10;
+    long result = 0L;
+    for (; i < length; i++) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < multiplyMin) {
+        // Let Long.parseLong decide, or throw the usual exception
+        return Long.parseLong(s.toString());
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        return Long.parseLong(s.toString());
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Like {@link LangUtils#parseFloat(String)}. Values with up to 7 significant digits and 10 decimal places,
+   * like "1" or "-0.25", are parsed directly; the result is exact, as it is the correctly rounded quotient of
+   * two exactly representable {@code float}s. Others are parsed as a {@link String}.
+   */
+  private static float parseValue(byte[] bytes, int from, int to) {
+    int i = from;
+    boolean negative = bytes[i] == '-';
+    if (negative) {
+      i++;
+    }
+    int mantissa = 0;
+    int digits = 0;
+    int decimalPlaces = -1;
+    for (; i < to; i++) {
+      byte b = bytes[i];
+      if (b == '.' && decimalPlaces < 0) {
+        decimalPlaces = 0;
+        continue;
+      }
+      int digit = b - '0';
+      if (digit < 0 || digit > 9) {
+        return parseValueString(bytes, from, to);
+      }
+      mantissa = 10 * mantissa + digit;
+      if (mantissa >= MAX_EXACT_FLOAT_INT) {
+        return parseValueString(bytes, from, to);
+      }
+      digits++;
+      if (decimalPlaces >= 0) {
+        decimalPlaces++;
+      }
+    }
+    if (digits == 0 || decimalPlaces >= POWERS_OF_10.length) {
+      return parseValueString(bytes, from, to);
+    }
+    float value = decimalPlaces > 0 ? mantissa / POWERS_OF_10[decimalPlaces] : (float) mantissa;
+    return negative ? -value : value;
+  }
+
+  private static float parseValueString(byte[] bytes, int from, int to) {
+    return LangUtils.parseFloat(new String(bytes, from, to - from, Charsets.UTF_8));
+  }
+
+  private static int indexOf(byte[] bytes, byte b, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * A reusable view of a range of ASCII bytes as chars.
+   */
+  private static final class ASCIISequence implements CharSequence {
+
+    private byte[] bytes;
+    private int from;
+    private int to;
+
+    void set(byte[] bytes, int from, int to) {
+      this.bytes = bytes;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public int length() {
+      return to - from;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) bytes[from + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return new String(bytes, from, to - from, Charsets.US_ASCII);
+    }
+
+  }
+
+}
@@ -13,9 +13,11 @@
  * License.
  */
 
+
 package com.cloudera.oryx.als.computation.local;
 
-import com.typesafe.config.Config;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,126 +25,140 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
-import com.cloudera.oryx.common.LangUtils;
-import com.cloudera.oryx.common.collection.LongFloatMap;
-import com.cloudera.oryx.common.collection.LongObjectMap;
-import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
 import com.cloudera.oryx.common.io.IOUtils;
-import com.cloudera.oryx.common.iterator.FileLineIterable;
-import com.cloudera.oryx.common.math.MatrixUtils;
-import com.cloudera.oryx.common.io.DelimitedDataUtils;
-import com.cloudera.oryx.common.settings.ConfigUtils;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
 
+/**
+ * Reads input files, in order of last modification, into a {@link CompressedSparseMatrix.Builder} and an ID
+ * mapping. Files are read in parallel, and uncompressed files larger than a split size are also read in
+ * parallel by byte range, each by a {@link ReadInputSplit}. Their results are merged in the order of the lines
+ * in the input, and so are the same as when read serially.
+ */
 final class ReadInputs implements Callable<Object> {
 
   private static final Logger log = LoggerFactory.getLogger(ReadInputs.class);
 
+  private static final long DEFAULT_SPLIT_BYTES = 64L << 20;
+
   private final File inputDir;
   private final boolean isInbound;
-  private final LongObjectMap<LongSet> knownItemIDs;
-  private final LongObjectMap<LongFloatMap> RbyRow;
-  private final LongObjectMap<LongFloatMap> RbyColumn;
+  private final CompressedSparseMatrix.Builder R;
   private final StringLongMapping idMapping;
+  private final int parallelism;
+  private final long splitBytes;
 
   ReadInputs(File inputDir,
              boolean isInbound,
-             LongObjectMap<LongSet> knownItemIDs,
-             LongObjectMap<LongFloatMap> rbyRow,
-             LongObjectMap<LongFloatMap> rbyColumn,
+             CompressedSparseMatrix.Builder R,
              StringLongMapping idMapping) {
+    this(inputDir, isInbound, R, idMapping, ExecutorUtils.getParallelism(), DEFAULT_SPLIT_BYTES);
+  }
+
+  /**
+   * @param parallelism number of splits read at once
+   * @param splitBytes uncompressed files are read in splits of about this many bytes
+   */
+  ReadInputs(File inputDir,
+             boolean isInbound,
+             CompressedSparseMatrix.Builder R,
+             StringLongMapping idMapping,
+             int parallelism,
+             long splitBytes) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+    Preconditions.checkArgument(splitBytes > 0, "splitBytes must be positive: %s", splitBytes);
     this.inputDir = inputDir;
     this.isInbound = isInbound;
-    this.knownItemIDs = knownItemIDs;
-    RbyRow = rbyRow;
-    RbyColumn = rbyColumn;
+    this.R = R;
     this.idMapping = idMapping;
+    this.parallelism = parallelism;
+    this.splitBytes = splitBytes;
   }
 
   @Override
-  public Void call() throws IOException {
-
-    readInput();
-
-    log.info("Pruning near-zero entries");
-    Config config = ConfigUtils.getDefaultConfig();
-    float zeroThreshold = (float) config.getDouble("model.decay.zeroThreshold");
-
-    removeSmall(RbyRow, zeroThreshold);
-    removeSmall(RbyColumn, zeroThreshold);
-
-    return null;
-  }
-
-  private void readInput() throws IOException {
+  public Void call() throws IOException, InterruptedException {
     File[] inputFiles = inputDir.listFiles(IOUtils.NOT_HIDDEN);
     if (inputFiles == null || inputFiles.length == 0) {
       log.info("No input files in {}", inputDir);
-      return;
+      return null;
     }
     Arrays.sort(inputFiles, ByLastModifiedComparator.INSTANCE);
 
+    List<ReadInputSplit> splits = Lists.newArrayList();
     for (File inputFile : inputFiles) {
-      log.info("Reading {}", inputFile);
-      for (CharSequence line : new FileLineIterable(inputFile)) {
-
-        String[] columns = DelimitedDataUtils.decode(line);
-
-        String userIDString = columns[0];
-        long userID = isInbound ? idMapping.add(userIDString) : Long.parseLong(userIDString);
-        String itemIDString = columns[1];
-        long itemID = isInbound ? idMapping.add(itemIDString) : Long.parseLong(itemIDString);
-        float value;
-        if (columns.length > 2) {
-          String valueToken = columns[2];
-          value = valueToken.isEmpty() ? Float.NaN : LangUtils.parseFloat(valueToken);
-        } else {
-          value = 1.0f;
-        }
+      long length = inputFile.length();
+      int numSplits = isCompressed(inputFile) ? 1 : (int) FastMath.max(1L, length / splitBytes);
+      log.info("Reading {} in {} split(s)", inputFile, numSplits);
+      for (int i = 0; i < numSplits; i++) {
+        long start = i * (length / numSplits);
+        long end = i == numSplits - 1 ? Long.MAX_VALUE : (i + 1) * (length / numSplits);
+        splits.add(new ReadInputSplit(inputFile, start, end, isInbound));
+      }
+    }
 
-        if (Float.isNaN(value)) {
-          // Remove, not set
-          MatrixUtils.remove(userID, itemID, RbyRow, RbyColumn);
-        } else {
-          MatrixUtils.addTo(userID, itemID, value, RbyRow, RbyColumn);
+    long startMS = System.currentTimeMillis();
+    long lines = 0;
+    int numThreads = FastMath.min(parallelism, splits.size());
+    if (numThreads == 1) {
+      for (ReadInputSplit split : splits) {
+        split.call();
+        lines += split.getLines();
+        split.mergeInto(R, idMapping);
+      }
+    } else {
+      ExecutorService executor = ExecutorUtils.buildExecutor("ReadInputs", numThreads);
+      try {
+        List<Future<ReadInputSplit>> futures = Lists.newArrayListWithCapacity(splits.size());
+        for (ReadInputSplit split : splits) {
+          futures.add(executor.submit(split));
         }
-
-        if (knownItemIDs != null) {
-          LongSet itemIDs = knownItemIDs.get(userID);
-          if (Float.isNaN(value)) {
-            // Remove, not set
-            if (itemIDs != null) {
-              itemIDs.remove(itemID);
-              if (itemIDs.isEmpty()) {
-                knownItemIDs.remove(userID);
-              }
-            }
-          } else {
-            if (itemIDs == null) {
-              itemIDs = new LongSet();
-              knownItemIDs.put(userID, itemIDs);
-            }
-            itemIDs.add(itemID);
-          }
+        splits = null;
+        // Merge in order, while later splits are still being read. Let each split be collected once merged.
+        for (int i = 0; i < futures.size(); i++) {
+          ReadInputSplit split = getSplit(futures.set(i, null));
+          lines += split.getLines();
+          split.mergeInto(R, idMapping);
         }
-
+      } finally {
+        ExecutorUtils.shutdownNowAndAwait(executor);
       }
     }
 
+    long elapsedMS = System.currentTimeMillis() - startMS;
+    log.info("Read {} lines from {} in {}ms ({} lines/sec)",
+             lines, inputDir, elapsedMS, 1000L * lines / FastMath.max(1L, elapsedMS));
+    return null;
   }
 
-  private static void removeSmall(LongObjectMap<LongFloatMap> matrix, float zeroThreshold) {
-    for (LongObjectMap.MapEntry<LongFloatMap> entry : matrix.entrySet()) {
-      for (Iterator<LongFloatMap.MapEntry> it = entry.getValue().entrySet().iterator(); it.hasNext();) {
-        LongFloatMap.MapEntry entry2 = it.next();
-        if (FastMath.abs(entry2.getValue()) < zeroThreshold) {
-          it.remove();
-        }
+  private static ReadInputSplit getSplit(Future<ReadInputSplit> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
       }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
     }
   }
 
+  /**
+   * @return true if the file will be decompressed by {@link IOUtils#openMaybeDecompressing(File)},
+   *  and so can't be read from an offset
+   */
+  private static boolean isCompressed(File file) {
+    String name = file.getName();
+    return name.endsWith(".gz") || name.endsWith(".zip");
+  }
+
 }
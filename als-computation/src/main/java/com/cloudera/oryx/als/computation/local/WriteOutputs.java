@@ -25,16 +25,17 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.concurrent.Callable;
-import java.util.concurrent.locks.Lock;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.common.io.BinaryModelWriter;
 import com.cloudera.oryx.als.common.pmml.ALSModelDescription;
-import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.CompressedSparseMatrix;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.io.IOUtils;
 import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
 import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.settings.ConfigUtils;
 
 final class WriteOutputs implements Callable<Object> {
 
@@ -44,20 +45,20 @@ final class WriteOutputs implements Callable<Object> {
   private static final String SINGLE_OUT_FILENAME = "0.csv.gz";
 
   private final File modelDir;
-  private final LongObjectMap<LongFloatMap> RbyRow;
+  private final CompressedSparseMatrix R;
   private final LongObjectMap<LongSet> knownItemIDs;
   private final LongObjectMap<float[]> X;
   private final LongObjectMap<float[]> Y;
   private final StringLongMapping idMapping;
 
   WriteOutputs(File modelDir,
-               LongObjectMap<LongFloatMap> RbyRow,
+               CompressedSparseMatrix R,
                LongObjectMap<LongSet> knownItemIDs,
                LongObjectMap<float[]> X,
                LongObjectMap<float[]> Y,
                StringLongMapping idMapping) {
     this.modelDir = modelDir;
-    this.RbyRow = RbyRow;
+    this.R = R;
     this.knownItemIDs = knownItemIDs;
     this.X = X;
     this.Y = Y;
@@ -67,7 +68,7 @@ final class WriteOutputs implements Callable<Object> {
   @Override
   public Void call() throws IOException {
     log.info("Writing current input");
-    writeCombinedInput(RbyRow, new File(modelDir, "input"));
+    writeCombinedInput(R, new File(modelDir, "input"));
     log.info("Writing known items");
     writeIDIDsMap(knownItemIDs, new File(modelDir, "knownItems"));
     log.info("Writing X");
@@ -76,28 +77,45 @@ final class WriteOutputs implements Callable<Object> {
     writeIDFloatMap(Y, new File(modelDir, "Y"));
     log.info("Writing ID mapping");
     writeMapping(idMapping, new File(modelDir, "idMapping"));
+    boolean binaryOutput = ConfigUtils.getDefaultConfig().getBoolean("model.binary-output");
+    if (binaryOutput) {
+      log.info("Writing binary model");
+      File binaryDir = new File(modelDir, "binary");
+      BinaryModelWriter.writeKnownItems(knownItemIDs, new File(binaryDir, "knownItems"));
+      BinaryModelWriter.writeFeatureVectors(X, new File(binaryDir, "X"));
+      BinaryModelWriter.writeFeatureVectors(Y, new File(binaryDir, "Y"));
+      BinaryModelWriter.writeIDMapping(idMapping, new File(binaryDir, "idMapping"));
+    }
     log.info("Writing model");
     File modelDescriptionFile = new File(modelDir, "model.pmml.gz");
     ALSModelDescription modelDescription = new ALSModelDescription();
-    modelDescription.setKnownItemsPath("knownItems");
-    modelDescription.setXPath("X");
-    modelDescription.setYPath("Y");
-    modelDescription.setIDMappingPath("idMapping");
+    if (binaryOutput) {
+      modelDescription.setFormat(ALSModelDescription.BINARY_FORMAT);
+      modelDescription.setKnownItemsPath("binary/knownItems");
+      modelDescription.setXPath("binary/X");
+      modelDescription.setYPath("binary/Y");
+      modelDescription.setIDMappingPath("binary/idMapping");
+    } else {
+      modelDescription.setKnownItemsPath("knownItems");
+      modelDescription.setXPath("X");
+      modelDescription.setYPath("Y");
+      modelDescription.setIDMappingPath("idMapping");
+    }
     ALSModelDescription.write(modelDescriptionFile, modelDescription);
     return null;
   }
 
-  private static void writeCombinedInput(LongObjectMap<LongFloatMap> RbyRow, File inputDir) throws IOException {
+  private static void writeCombinedInput(CompressedSparseMatrix R, File inputDir) throws IOException {
     File outFile = new File(inputDir, SINGLE_OUT_FILENAME);
     Files.createParentDirs(outFile);
-    log.info("Writing input of {} entries to {}", RbyRow.size(), outFile);
+    log.info("Writing input of {} entries to {}", R.size(), outFile);
     Writer out = IOUtils.buildGZIPWriter(outFile);
     try {
-      for (LongObjectMap.MapEntry<LongFloatMap> row : RbyRow.entrySet()) {
-        long rowID = row.getKey();
-        for (LongFloatMap.MapEntry entry : row.getValue().entrySet()) {
-          long colID = entry.getKey();
-          float value = entry.getValue();
+      for (int row = 0; row < R.getNumRows(); row++) {
+        long rowID = R.getRowID(row);
+        for (int index = R.rowStart(row); index < R.rowEnd(row); index++) {
+          long colID = R.getColumnID(R.columnAt(index));
+          float value = R.valueAt(index);
           out.write(DelimitedDataUtils.encode(',', Long.toString(rowID), Long.toString(colID), Float.toString(value)));
           out.write('\n');
         }
@@ -164,15 +182,9 @@ final class WriteOutputs implements Callable<Object> {
     log.info("Writing mapping of {} entries to {}", idMapping.size(), outFile);
     Writer out = IOUtils.buildGZIPWriter(outFile);
     try {
-      Lock lock = idMapping.getLock().readLock();
-      lock.lock();
-      try {
-        for (LongObjectMap.MapEntry<String> entry : idMapping.getReverseMapping().entrySet()) {
-          out.write(DelimitedDataUtils.encode(',', Long.toString(entry.getKey()), entry.getValue()));
-          out.write('\n');
-        }
-      } finally {
-        lock.unlock();
+      for (long numericID : idMapping.getNumericIDs()) {
+        out.write(DelimitedDataUtils.encode(',', Long.toString(numericID), idMapping.toString(numericID)));
+        out.write('\n');
       }
     } finally {
       out.close();
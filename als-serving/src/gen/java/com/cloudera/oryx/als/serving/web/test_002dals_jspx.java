@@ -0,0 +1,505 @@
+/*
+ * Generated by the Jasper component of Apache Tomcat
+ * Version: JspCServletContext/1.0
+ * Generated at: 2026-10-17 11:08:58 UTC
+ * Note: The last modified time of this file was set to
+ *       the last modified time of the source file after
+ *       generation to assist with modification tracking.
+ */
+package com.cloudera.oryx.als.serving.web;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import javax.servlet.jsp.*;
+import com.cloudera.oryx.serving.web.AbstractOryxServingInitListener;
+
+public final class test_002dals_jspx extends org.apache.jasper.runtime.HttpJspBase
+    implements org.apache.jasper.runtime.JspSourceDependent {
+
+  private static final javax.servlet.jsp.JspFactory _jspxFactory =
+          javax.servlet.jsp.JspFactory.getDefaultFactory();
+
+  private static java.util.Map<java.lang.String,java.lang.Long> _jspx_dependants;
+
+  private javax.el.ExpressionFactory _el_expressionfactory;
+  private org.apache.tomcat.InstanceManager _jsp_instancemanager;
+
+  public java.util.Map<java.lang.String,java.lang.Long> getDependants() {
+    return _jspx_dependants;
+  }
+
+  public void _jspInit() {
+    _el_expressionfactory = _jspxFactory.getJspApplicationContext(getServletConfig().getServletContext()).getExpressionFactory();
+    _jsp_instancemanager = org.apache.jasper.runtime.InstanceManagerFactory.getInstanceManager(getServletConfig());
+  }
+
+  public void _jspDestroy() {
+  }
+
+  public void _jspService(final javax.servlet.http.HttpServletRequest request, final javax.servlet.http.HttpServletResponse response)
+        throws java.io.IOException, javax.servlet.ServletException {
+
+    final javax.servlet.jsp.PageContext pageContext;
+    final javax.servlet.ServletContext application;
+    final javax.servlet.ServletConfig config;
+    javax.servlet.jsp.JspWriter out = null;
+    final java.lang.Object page = this;
+    javax.servlet.jsp.JspWriter _jspx_out = null;
+    javax.servlet.jsp.PageContext _jspx_page_context = null;
+
+
+    try {
+      response.setContentType("text/html;charset=UTF-8");
+      pageContext = _jspxFactory.getPageContext(this, request, response,
+      			null, false, 8192, true);
+      _jspx_page_context = pageContext;
+      application = pageContext.getServletContext();
+      config = pageContext.getServletConfig();
+      out = pageContext.getOut();
+      _jspx_out = out;
+
+      out.write("<!DOCTYPE html>");
+      out.write("<html>");
+      out.write("<head>");
+      out.write("<link href=\"style.jspx\" type=\"text/css\" rel=\"stylesheet\"/>");
+      out.write("</head>");
+      out.write("<body>");
+      out.write("<h2>");
+      out.write("Alternating Least Squares");
+      out.write("</h2>");
+      out.write("<table style=\"width:100%\" class=\"layout\">");
+      out.write("<tr>");
+      out.write("<td style=\"width:60%\">");
+      out.write("<table class=\"layout\">");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;User ID");
+      out.write("</td>");
+      out.write("<td colspan=\"2\"/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/recommend");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event, &#039;recommend&#039;,true,new Array(&#039;userid&#039;))\" id=\"recommend-userid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;recommend&#039;,true,new Array(&#039;userid&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID 1");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;");
+      out.write("<em>");
+      out.write("(Item ID 2)");
+      out.write("</em>");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/recommendToAnonymous");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;recommendToAnonymous&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" id=\"recommendToAnonymous-itemid1\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;recommendToAnonymous&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" id=\"recommendToAnonymous-itemid2\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;recommendToAnonymous&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID 1");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;");
+      out.write("<em>");
+      out.write("(Item ID 2)");
+      out.write("</em>");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/similarity");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;similarity&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" id=\"similarity-itemid1\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;similarity&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" id=\"similarity-itemid2\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;similarity&#039;,true,new Array(&#039;itemid1&#039;,&#039;itemid2&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;To Item");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/similarityToItem");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;similarityToItem&#039;,true,new Array(&#039;toitem&#039;,&#039;itemid&#039;))\" id=\"similarityToItem-toitem\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;similarityToItem&#039;,true,new Array(&#039;toitem&#039;,&#039;itemid&#039;))\" id=\"similarityToItem-itemid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;similarityToItem&#039;,true,new Array(&#039;toitem&#039;,&#039;itemid&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;User ID");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/estimate");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;estimate&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"estimate-userid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;estimate&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"estimate-itemid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;estimate&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;User ID");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/because");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;because&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"because-userid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;because&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"because-itemid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;because&#039;,true,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/mostPopularItems");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td colspan=\"2\"/>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;mostPopularItems&#039;,true)\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/popularRepresentativeItems");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td colspan=\"2\"/>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;popularRepresentativeItems&#039;,true)\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+
+    boolean readOnly = (Boolean) application.getAttribute(AbstractOryxServingInitListener.READ_ONLY_KEY);
+    if (readOnly) {
+  
+      out.write("<tr>");
+      out.write("<td style=\"text-align:center\" colspan=\"4\">");
+      out.write("<em>");
+      out.write("(Read-only Mode)");
+      out.write("</em>");
+      out.write("</td>");
+      out.write("</tr>");
+
+    } else {
+  
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td/>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;User ID");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("&nbsp;&nbsp;Item ID");
+      out.write("</td>");
+      out.write("<td/>");
+      out.write("</tr>");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/pref");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;pref&#039;,false,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"pref-userid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write('/');
+      out.write("</code>");
+      out.write("<input onkeyup=\"return handleReturn(event,&#039;pref&#039;,false,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" id=\"pref-itemid\" type=\"text\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;pref&#039;,false,new Array(&#039;userid&#039;,&#039;itemid&#039;))\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form id=\"ingestFileForm\" style=\"padding:10px\" enctype=\"multipart/form-data\" method=\"post\" action=\"ingest\">");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/ingest");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td colspan=\"2\">");
+      out.write("<input style=\"width:140px\" name=\"ingestedFile\" type=\"file\"/>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"document.getElementById(&#039;ingestFileForm&#039;).submit()\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/ingest");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td colspan=\"2\">");
+      out.write("<textarea id=\"ingestData\" rows=\"20\">");
+      out.write("userID,itemID[,value]...");
+      out.write("</textarea>");
+      out.write("</td>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;ingest&#039;,false,[],&#039;ingestData&#039;)\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+      out.write("<tr>");
+      out.write("<td colspan=\"4\">");
+      out.write("<hr/>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("<form style=\"padding:10px\" action=\"#\">");
+      out.write("<tr>");
+      out.write("<td>");
+      out.write("<code>");
+      out.write("/refresh");
+      out.write("</code>");
+      out.write("</td>");
+      out.write("<td colspan=\"2\"/>");
+      out.write("<td>");
+      out.write("<a onclick=\"return doQuery(&#039;refresh&#039;,false)\" class=\"arrow\" href=\"#\">");
+      out.write("&#x27AC;");
+      out.write("</a>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</form>");
+
+    }
+  
+      out.write("</table>");
+      out.write("</td>");
+      out.write("<td style=\"width:40%\">");
+      out.write("<div style=\"background-color:#404040;padding:10px;min-height:500px;white-space:normal\">");
+      out.write("<pre>");
+      out.write("<code id=\"request-result\">");
+      out.write('[');
+      out.write(']');
+      out.write("</code>");
+      out.write("</pre>");
+      out.write("</div>");
+      out.write("</td>");
+      out.write("</tr>");
+      out.write("</table>");
+      out.write("</body>");
+      out.write("</html>");
+    } catch (java.lang.Throwable t) {
+      if (!(t instanceof javax.servlet.jsp.SkipPageException)){
+        out = _jspx_out;
+        if (out != null && out.getBufferSize() != 0)
+          try { out.clearBuffer(); } catch (java.io.IOException e) {}
+        if (_jspx_page_context != null) _jspx_page_context.handlePageException(t);
+        else throw new ServletException(t);
+      }
+    } finally {
+      _jspxFactory.releasePageContext(_jspx_page_context);
+    }
+  }
+}
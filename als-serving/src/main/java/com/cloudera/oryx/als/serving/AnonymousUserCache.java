@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.common.collection.BoundedCache;
+
+/**
+ * <p>Caches feature vectors that were folded in for anonymous users, as by
+ * {@link ServerRecommender#recommendToAnonymous(String[], float[], int)} and
+ * {@link ServerRecommender#estimateForAnonymous(String, String[], float[])}, so that the same items and values
+ * need not be folded in again.</p>
+ *
+ * <p>Keys are the items and values as a multiset, so that their order does not matter. A key also includes the
+ * {@link ModelVersions} epoch and the versions of its items. The vector depends only on these items' vectors
+ * and on the solver for the current {@link Generation}, so a cached vector is always the one that would be
+ * computed. Entries of earlier epochs no longer match, and are evicted as the least recently used.</p>
+ *
+ * @author Sean Owen
+ */
+public final class AnonymousUserCache {
+
+  private final BoundedCache<Key,float[]> cache;
+  private final ModelVersions versions;
+
+  public AnonymousUserCache(int maxSize, ModelVersions versions) {
+    cache = new BoundedCache<Key,float[]>(maxSize, 0L, TimeUnit.SECONDS);
+    this.versions = versions;
+  }
+
+  /**
+   * @param generation current generation
+   * @param itemIDs items the anonymous user has a preference for, in any order
+   * @param values values of the preferences, or {@code null} if all are 1
+   */
+  public Key key(Generation generation, long[] itemIDs, float[] values) {
+    int epoch = versions.epochFor(generation);
+    int numItems = itemIDs.length;
+    long[] sortedItemIDs = itemIDs.clone();
+    float[] sortedValues = new float[numItems];
+    if (values == null) {
+      Arrays.fill(sortedValues, 1.0f);
+    } else {
+      System.arraycopy(values, 0, sortedValues, 0, numItems);
+    }
+    sortPairs(sortedItemIDs, sortedValues);
+    int[] itemVersions = new int[numItems];
+    for (int i = 0; i < numItems; i++) {
+      itemVersions[i] = versions.version(sortedItemIDs[i]);
+    }
+    return new Key(epoch, sortedItemIDs, sortedValues, itemVersions);
+  }
+
+  /**
+   * @return cached vector, which must not be modified, or {@code null} if not present
+   */
+  public float[] get(Key key) {
+    return cache.get(key);
+  }
+
+  /**
+   * @param features vector to cache, which must not be modified afterwards
+   */
+  public void put(Key key, float[] features) {
+    cache.put(key, features);
+  }
+
+  public long getHits() {
+    return cache.getHits();
+  }
+
+  public long getMisses() {
+    return cache.getMisses();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * Sorts by item ID, then value, moving values with their item IDs. Insertion sort is used since there are
+   * usually only a few items.
+   */
+  private static void sortPairs(long[] itemIDs, float[] values) {
+    for (int i = 1; i < itemIDs.length; i++) {
+      long itemID = itemIDs[i];
+      float value = values[i];
+      int j = i - 1;
+      while (j >= 0 && (itemIDs[j] > itemID || (itemIDs[j] == itemID && Float.compare(values[j], value) > 0))) {
+        itemIDs[j + 1] = itemIDs[j];
+        values[j + 1] = values[j];
+        j--;
+      }
+      itemIDs[j + 1] = itemID;
+      values[j + 1] = value;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return cache.toString();
+  }
+
+  public static final class Key {
+
+    private final int epoch;
+    private final long[] itemIDs;
+    private final float[] values;
+    private final int[] itemVersions;
+    private final int hashCode;
+
+    private Key(int epoch, long[] itemIDs, float[] values, int[] itemVersions) {
+      this.epoch = epoch;
+      this.itemIDs = itemIDs;
+      this.values = values;
+      this.itemVersions = itemVersions;
+      int hash = epoch;
+      hash = 31 * hash + Arrays.hashCode(itemIDs);
+      hash = 31 * hash + Arrays.hashCode(values);
+      hashCode = 31 * hash + Arrays.hashCode(itemVersions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return epoch == other.epoch && hashCode == other.hashCode &&
+          Arrays.equals(itemIDs, other.itemIDs) &&
+          Arrays.equals(values, other.values) &&
+          Arrays.equals(itemVersions, other.itemVersions);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+  }
+
+}
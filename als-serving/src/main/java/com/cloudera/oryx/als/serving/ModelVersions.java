@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.google.common.primitives.Longs;
+
+import com.cloudera.oryx.als.serving.generation.Generation;
+
+/**
+ * <p>Versions of the parts of the model that cached values depend on, for use in cache keys. A key that
+ * includes the versions it was computed from stops matching once any of them changes, so entries need not be
+ * found and removed. A value computed concurrently with a change is stored under the old versions, and so is
+ * never returned.</p>
+ *
+ * <p>An epoch changes when the current {@link Generation} is replaced or reloaded. The previous epoch keeps its
+ * number too, so a generation that is warmed up while the previous one still serves requests does not change
+ * the numbers either one's keys use. Each user and item ID also
+ * has a version, which {@link #invalidate(long)} changes when its vector or known items are updated. These are
+ * kept per stripe of IDs, not per ID, so invalidating an ID also invalidates others in the same stripe, which
+ * is harmless.</p>
+ *
+ * @author Sean Owen
+ * @see ResultCache
+ * @see AnonymousUserCache
+ */
+public final class ModelVersions {
+
+  private static final int NUM_VERSION_STRIPES = 1 << 12;
+
+  private final AtomicIntegerArray versions;
+  private volatile Epoch epoch;
+  private volatile Epoch previousEpoch;
+
+  public ModelVersions() {
+    versions = new AtomicIntegerArray(NUM_VERSION_STRIPES);
+    epoch = new Epoch(null, 0, 0);
+    previousEpoch = epoch;
+  }
+
+  /**
+   * @return number of the epoch of {@code generation}, which is the same for as long as it is not reloaded
+   */
+  public int epochFor(Generation generation) {
+    int stateVersion = generation.getStateVersion();
+    Epoch theEpoch = epoch;
+    if (theEpoch.isFor(generation, stateVersion)) {
+      return theEpoch.number;
+    }
+    Epoch thePreviousEpoch = previousEpoch;
+    if (thePreviousEpoch.isFor(generation, stateVersion)) {
+      return thePreviousEpoch.number;
+    }
+    synchronized (this) {
+      theEpoch = epoch;
+      if (theEpoch.isFor(generation, stateVersion)) {
+        return theEpoch.number;
+      }
+      if (previousEpoch.isFor(generation, stateVersion)) {
+        return previousEpoch.number;
+      }
+      Epoch newEpoch = new Epoch(generation, stateVersion, theEpoch.number + 1);
+      previousEpoch = theEpoch;
+      epoch = newEpoch;
+      return newEpoch.number;
+    }
+  }
+
+  public int version(long id) {
+    return versions.get(stripe(id));
+  }
+
+  /**
+   * Changes the version of a user or item. Must be called after the user or item's vector or known items
+   * have been updated.
+   */
+  public void invalidate(long id) {
+    versions.incrementAndGet(stripe(id));
+  }
+
+  private static int stripe(long id) {
+    return (Longs.hashCode(id) & 0x7FFFFFFF) % NUM_VERSION_STRIPES;
+  }
+
+  private static final class Epoch {
+
+    private final Generation generation;
+    private final int stateVersion;
+    private final int number;
+
+    private Epoch(Generation generation, int stateVersion, int number) {
+      this.generation = generation;
+      this.stateVersion = stateVersion;
+      this.number = number;
+    }
+
+    boolean isFor(Generation generation, int stateVersion) {
+      return this.generation == generation && this.stateVersion == stateVersion;
+    }
+
+  }
+
+}
@@ -22,7 +22,8 @@ import com.google.common.base.Preconditions;
 import com.cloudera.oryx.als.common.NumericIDValue;
 import com.cloudera.oryx.als.common.rescorer.PairRescorer;
 import com.cloudera.oryx.als.common.StringLongMapping;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 import com.cloudera.oryx.common.math.SimpleVectorMath;
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Floats;
@@ -40,12 +41,14 @@ final class MostSimilarItemIterator implements Iterator<NumericIDValue> {
   private final NumericIDValue delegate;
   private final float[][] itemFeatures;
   private final double[] itemFeatureNorms;
-  private final Iterator<LongObjectMap.MapEntry<float[]>> Yiterator;
+  private final IntPrimitiveIterator candidateRows;
+  private final FeatureMatrix Y;
   private final long[] toItemIDs;
   private final PairRescorer rescorer;
   private final StringLongMapping idMapping;
 
-  MostSimilarItemIterator(Iterator<LongObjectMap.MapEntry<float[]>> Yiterator,
+  MostSimilarItemIterator(IntPrimitiveIterator candidateRows,
+                          FeatureMatrix Y,
                           long[] toItemIDs,
                           float[][] itemFeatures,
                           PairRescorer rescorer,
@@ -53,7 +56,8 @@ final class MostSimilarItemIterator implements Iterator<NumericIDValue> {
     delegate = new NumericIDValue();
     this.toItemIDs = toItemIDs;
     this.itemFeatures = itemFeatures;
-    this.Yiterator = Yiterator;
+    this.candidateRows = candidateRows;
+    this.Y = Y;
     this.rescorer = rescorer;
     itemFeatureNorms = new double[itemFeatures.length];
     for (int i = 0; i < itemFeatures.length; i++) {
@@ -64,13 +68,13 @@ final class MostSimilarItemIterator implements Iterator<NumericIDValue> {
 
   @Override
   public boolean hasNext() {
-    return Yiterator.hasNext();
+    return candidateRows.hasNext();
   }
 
   @Override
   public NumericIDValue next() {
-    LongObjectMap.MapEntry<float[]> entry = Yiterator.next();
-    long itemID = entry.getKey();
+    int row = candidateRows.nextInt();
+    long itemID = Y.getID(row);
     
     for (long l : toItemIDs) {
       if (l == itemID) {
@@ -79,8 +83,7 @@ final class MostSimilarItemIterator implements Iterator<NumericIDValue> {
     }
 
     PairRescorer rescorer1 = this.rescorer;
-    float[] candidateFeatures = entry.getValue();
-    double candidateFeaturesNorm = SimpleVectorMath.norm(candidateFeatures);
+    double candidateFeaturesNorm = Y.norm(row);
     double total = 0.0;
 
     int length = itemFeatures.length;
@@ -89,7 +92,7 @@ final class MostSimilarItemIterator implements Iterator<NumericIDValue> {
       if (rescorer1 != null && rescorer1.isFiltered(idMapping.toString(itemID), idMapping.toString(toItemID))) {
         return null;
       }
-      double similarity = SimpleVectorMath.dot(candidateFeatures, itemFeatures[i]) / 
+      double similarity = Y.dot(row, itemFeatures[i]) /
           (candidateFeaturesNorm * itemFeatureNorms[i]);
       if (!Doubles.isFinite(similarity)) {
         return null;
@@ -22,9 +22,9 @@ import com.google.common.base.Preconditions;
 import com.cloudera.oryx.als.common.NumericIDValue;
 import com.cloudera.oryx.als.common.rescorer.Rescorer;
 import com.cloudera.oryx.als.common.StringLongMapping;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongSet;
-import com.cloudera.oryx.common.math.SimpleVectorMath;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Floats;
@@ -41,20 +41,23 @@ final class RecommendIterator implements Iterator<NumericIDValue> {
 
   private final NumericIDValue delegate;
   private final float[][] features;
-  private final Iterator<LongObjectMap.MapEntry<float[]>> Yiterator;
+  private final IntPrimitiveIterator candidateRows;
+  private final FeatureMatrix Y;
   private final LongSet knownItemIDs;
   private final Rescorer rescorer;
   private final StringLongMapping idMapping;
 
   RecommendIterator(float[][] features,
-                    Iterator<LongObjectMap.MapEntry<float[]>> Yiterator,
+                    IntPrimitiveIterator candidateRows,
+                    FeatureMatrix Y,
                     LongSet knownItemIDs,
                     Rescorer rescorer,
                     StringLongMapping idMapping) {
     Preconditions.checkArgument(features.length > 0, "features must not be empty");
     delegate = new NumericIDValue();
     this.features = features;
-    this.Yiterator = Yiterator;
+    this.candidateRows = candidateRows;
+    this.Y = Y;
     this.knownItemIDs = knownItemIDs;
     this.rescorer = rescorer;
     this.idMapping = idMapping;
@@ -62,13 +65,13 @@ final class RecommendIterator implements Iterator<NumericIDValue> {
 
   @Override
   public boolean hasNext() {
-    return Yiterator.hasNext();
+    return candidateRows.hasNext();
   }
 
   @Override
   public NumericIDValue next() {
-    LongObjectMap.MapEntry<float[]> entry = Yiterator.next();
-    long itemID = entry.getKey();
+    int row = candidateRows.nextInt();
+    long itemID = Y.getID(row);
     
     LongSet theKnownItemIDs = knownItemIDs;
     if (theKnownItemIDs != null) {
@@ -84,11 +87,10 @@ final class RecommendIterator implements Iterator<NumericIDValue> {
       return null;
     }
 
-    float[] itemFeatures = entry.getValue();
     double sum = 0.0;
     int count = 0;
     for (float[] oneUserFeatures : features) {
-      sum += SimpleVectorMath.dot(itemFeatures, oneUserFeatures);
+      sum += Y.dot(row, oneUserFeatures);
       count++;
     }
     
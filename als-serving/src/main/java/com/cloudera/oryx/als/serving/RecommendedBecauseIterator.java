@@ -18,7 +18,8 @@ package com.cloudera.oryx.als.serving;
 import java.util.Iterator;
 
 import com.cloudera.oryx.als.common.NumericIDValue;
-import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
 import com.cloudera.oryx.common.math.SimpleVectorMath;
 import com.google.common.primitives.Doubles;
 
@@ -35,28 +36,30 @@ final class RecommendedBecauseIterator implements Iterator<NumericIDValue> {
   private final NumericIDValue delegate;
   private final float[] features;
   private final double featuresNorm;
-  private final Iterator<LongObjectMap.MapEntry<float[]>> toFeaturesIterator;
+  private final IntPrimitiveIterator toRows;
+  private final FeatureMatrix Y;
 
-  RecommendedBecauseIterator(Iterator<LongObjectMap.MapEntry<float[]>> toFeaturesIterator,
+  RecommendedBecauseIterator(IntPrimitiveIterator toRows,
+                             FeatureMatrix Y,
                              float[] features) {
     delegate = new NumericIDValue();
     this.features = features;
     this.featuresNorm = SimpleVectorMath.norm(features);
-    this.toFeaturesIterator = toFeaturesIterator;
+    this.toRows = toRows;
+    this.Y = Y;
   }
 
   @Override
   public boolean hasNext() {
-    return toFeaturesIterator.hasNext();
+    return toRows.hasNext();
   }
 
   @Override
   public NumericIDValue next() {
-    LongObjectMap.MapEntry<float[]> entry = toFeaturesIterator.next();
-    long itemID = entry.getKey();
-    float[] candidateFeatures = entry.getValue();
-    double candidateFeaturesNorm = SimpleVectorMath.norm(candidateFeatures);
-    double estimate = SimpleVectorMath.dot(candidateFeatures, features) / (candidateFeaturesNorm * featuresNorm);
+    int row = toRows.nextInt();
+    long itemID = Y.getID(row);
+    double candidateFeaturesNorm = Y.norm(row);
+    double estimate = Y.dot(row, features) / (candidateFeaturesNorm * featuresNorm);
     if (!Doubles.isFinite(estimate)) {
       return null;
     }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.primitives.Longs;
+
+import com.cloudera.oryx.als.common.IDValue;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.common.collection.BoundedCache;
+
+/**
+ * <p>Caches results of
+ * {@link ServerRecommender#recommend(String, int, boolean, com.cloudera.oryx.als.common.rescorer.Rescorer)},
+ * {@link ServerRecommender#mostSimilarItems(String, int)} and
+ * {@link ServerRecommender#recommendedBecause(String, String, int)}.</p>
+ *
+ * <p>Each key includes the {@link ModelVersions} epoch and the versions of the user and item IDs it is about,
+ * so that invalidating an ID, or a new epoch, makes keys made before no longer match. Stale entries are evicted as
+ * the least recently used.</p>
+ *
+ * <p>Results for one user or item also depend on vectors of other items, which change as other users'
+ * preferences are folded in. These changes do not invalidate entries; they are reflected once entries
+ * expire.</p>
+ *
+ * @author Sean Owen
+ */
+public final class ResultCache {
+
+  private final BoundedCache<Key,List<IDValue>> cache;
+  private final ModelVersions versions;
+
+  ResultCache(int maxSize, long ttlSec, ModelVersions versions) {
+    cache = new BoundedCache<Key,List<IDValue>>(maxSize, ttlSec, TimeUnit.SECONDS);
+    this.versions = versions;
+  }
+
+  Key recommendKey(Generation generation, long userID, int howMany, boolean considerKnownItems) {
+    return new Key(Kind.RECOMMEND, versions.epochFor(generation), userID, versions.version(userID), 0L, 0,
+                   howMany, considerKnownItems);
+  }
+
+  Key mostSimilarItemsKey(Generation generation, long itemID, int howMany) {
+    return new Key(Kind.MOST_SIMILAR_ITEMS, versions.epochFor(generation), itemID, versions.version(itemID), 0L, 0,
+                   howMany, false);
+  }
+
+  Key recommendedBecauseKey(Generation generation, long userID, long itemID, int howMany) {
+    return new Key(Kind.RECOMMENDED_BECAUSE, versions.epochFor(generation),
+                   userID, versions.version(userID), itemID, versions.version(itemID), howMany, false);
+  }
+
+  List<IDValue> get(Key key) {
+    return cache.get(key);
+  }
+
+  void put(Key key, List<IDValue> result) {
+    cache.put(key, Collections.unmodifiableList(result));
+  }
+
+  public long getHits() {
+    return cache.getHits();
+  }
+
+  public long getMisses() {
+    return cache.getMisses();
+  }
+
+  public long getEvictions() {
+    return cache.getEvictions();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return cache.toString();
+  }
+
+  private enum Kind {
+    RECOMMEND,
+    MOST_SIMILAR_ITEMS,
+    RECOMMENDED_BECAUSE,
+  }
+
+  static final class Key {
+
+    private final Kind kind;
+    private final int epoch;
+    private final long id1;
+    private final int version1;
+    private final long id2;
+    private final int version2;
+    private final int howMany;
+    private final boolean flag;
+
+    private Key(Kind kind, int epoch, long id1, int version1, long id2, int version2, int howMany, boolean flag) {
+      this.kind = kind;
+      this.epoch = epoch;
+      this.id1 = id1;
+      this.version1 = version1;
+      this.id2 = id2;
+      this.version2 = version2;
+      this.howMany = howMany;
+      this.flag = flag;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return kind == other.kind && epoch == other.epoch &&
+          id1 == other.id1 && version1 == other.version1 &&
+          id2 == other.id2 && version2 == other.version2 &&
+          howMany == other.howMany && flag == other.flag;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = kind.ordinal();
+      hash = 31 * hash + epoch;
+      hash = 31 * hash + Longs.hashCode(id1);
+      hash = 31 * hash + version1;
+      hash = 31 * hash + Longs.hashCode(id2);
+      hash = 31 * hash + version2;
+      hash = 31 * hash + howMany;
+      return flag ? ~hash : hash;
+    }
+
+  }
+
+}
@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
@@ -35,10 +34,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Floats;
+import com.typesafe.config.Config;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cloudera.oryx.als.common.ConcurrentTopN;
 import com.cloudera.oryx.als.common.IDValue;
 import com.cloudera.oryx.als.common.NoSuchItemException;
 import com.cloudera.oryx.als.common.NoSuchUserException;
@@ -47,23 +48,28 @@ import com.cloudera.oryx.als.common.NumericIDValue;
 import com.cloudera.oryx.als.common.OryxRecommender;
 import com.cloudera.oryx.als.common.StringLongMapping;
 import com.cloudera.oryx.als.common.TopN;
-import com.cloudera.oryx.als.common.candidate.CandidateFilter;
 import com.cloudera.oryx.als.common.rescorer.PairRescorer;
 import com.cloudera.oryx.als.common.rescorer.Rescorer;
 import com.cloudera.oryx.als.serving.generation.ALSGenerationManager;
 import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.als.serving.generation.ItemPopularityIndex;
 import com.cloudera.oryx.common.LangUtils;
 import com.cloudera.oryx.common.ReloadingReference;
-import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.iterator.FileLineIterable;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.iterator.IntPrimitiveArrayIterator;
+import com.cloudera.oryx.common.iterator.IntRangeIterator;
 import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
 import com.cloudera.oryx.common.math.Solver;
 import com.cloudera.oryx.common.math.SimpleVectorMath;
+import com.cloudera.oryx.common.math.VectorKernels;
 import com.cloudera.oryx.common.io.IOUtils;
 import com.cloudera.oryx.common.io.DelimitedDataUtils;
 import com.cloudera.oryx.common.parallel.ExecutorUtils;
+import com.cloudera.oryx.common.settings.ConfigUtils;
 
 /**
  * <p>The core implementation of {@link OryxRecommender} that lies inside the Serving Layer.</p>
@@ -74,9 +80,29 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
   
   private static final Logger log = LoggerFactory.getLogger(ServerRecommender.class);
 
+  /** Scans of fewer rows than this per core are not worth splitting across threads */
+  private static final int MIN_ROWS_PER_PARTITION = 2000;
+  /** Number of users in {@link #recommendToBatch(String[], int[], boolean[])} scored in one pass over items */
+  private static final int BATCH_BLOCK_SIZE = 32;
+  /** Number of rows of Y multiplied by a block of users in one call to {@link VectorKernels} */
+  private static final int BATCH_ROWS_PER_KERNEL = 64;
+  /** Maximum number of one user's consecutive preferences in {@link #ingest(Reader)} folded in together */
+  private static final int MAX_FOLD_IN_BATCH_SIZE = 100;
+  /** Number of locks over rows of X and Y, which serialize writes to a row's vector and norm */
+  private static final int NUM_ROW_WRITE_LOCKS = 1 << 8;
+  private static final Object[] ROW_WRITE_LOCKS = new Object[NUM_ROW_WRITE_LOCKS];
+  static {
+    for (int i = 0; i < NUM_ROW_WRITE_LOCKS; i++) {
+      ROW_WRITE_LOCKS[i] = new Object();
+    }
+  }
+
   private final ALSGenerationManager generationManager;
   private final int numCores;
   private final ReloadingReference<ExecutorService> executor;
+  private final ModelVersions modelVersions;
+  private final ResultCache resultCache;
+  private final AnonymousUserCache anonymousUserCache;
 
   public ServerRecommender(File localInputDir) throws IOException {
     Preconditions.checkNotNull(localInputDir, "No local dir");
@@ -89,10 +115,37 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       }
     });
 
-    this.generationManager = new ALSGenerationManager(localInputDir);
+    Config config = ConfigUtils.getDefaultConfig();
+    modelVersions = new ModelVersions();
+    int resultCacheMaxSize = config.getInt("serving-layer.result-cache.max-size");
+    resultCache = resultCacheMaxSize > 0 ?
+        new ResultCache(resultCacheMaxSize, config.getLong("serving-layer.result-cache.ttl-sec"), modelVersions) :
+        null;
+    int anonymousUserCacheMaxSize = config.getInt("serving-layer.anonymous-user-cache.max-size");
+    anonymousUserCache = anonymousUserCacheMaxSize > 0 ?
+        new AnonymousUserCache(anonymousUserCacheMaxSize, modelVersions) :
+        null;
+
+    this.generationManager = new ALSGenerationManager(
+        localInputDir, new ServingWarmUp(this, config.getConfig("serving-layer.warm-up")));
     this.generationManager.refresh();
   }
 
+  /**
+   * @return cache of recent results, or {@code null} if {@code serving-layer.result-cache.max-size} is 0
+   */
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * @return cache of anonymous users' vectors, or {@code null} if {@code serving-layer.anonymous-user-cache.max-size}
+   *  is 0
+   */
+  public AnonymousUserCache getAnonymousUserCache() {
+    return anonymousUserCache;
+  }
+
   @Override
   public void refresh() {
     generationManager.refresh();
@@ -111,31 +164,62 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     }
   }
 
+  /**
+   * Ingests lines like {@code userID,itemID[,value]}. Consecutive new preferences of one user are folded in
+   * together, so that the user's vector is read and written back once for all of them.
+   */
   @Override
   public void ingest(Reader reader) {
-    for (CharSequence line : new FileLineIterable(reader)) {
-      String[] columns = DelimitedDataUtils.decode(line);
-      if (columns.length < 2) {
-        throw new IllegalArgumentException("Bad line: [" + line + "]");
-      }
-      String userID = columns[0];
-      String itemID = columns[1];
-      if (columns.length > 2) {
-        String valueToken = columns[2];
-        float value = valueToken.isEmpty() ? Float.NaN : LangUtils.parseFloat(valueToken);
+    String batchUserID = null;
+    String[] batchItemIDs = new String[MAX_FOLD_IN_BATCH_SIZE];
+    float[] batchValues = new float[MAX_FOLD_IN_BATCH_SIZE];
+    int batchSize = 0;
+    try {
+      for (CharSequence line : new FileLineIterable(reader)) {
+        String[] columns = DelimitedDataUtils.decode(line);
+        if (columns.length < 2) {
+          throw new IllegalArgumentException("Bad line: [" + line + "]");
+        }
+        String userID = columns[0];
+        String itemID = columns[1];
+        float value;
+        if (columns.length > 2) {
+          String valueToken = columns[2];
+          value = valueToken.isEmpty() ? Float.NaN : LangUtils.parseFloat(valueToken);
+        } else {
+          value = 1.0f;
+        }
+        if (batchSize > 0 &&
+            (Float.isNaN(value) || batchSize == MAX_FOLD_IN_BATCH_SIZE || !userID.equals(batchUserID))) {
+          foldIn(batchUserID, batchItemIDs, batchValues, batchSize);
+          batchSize = 0;
+        }
         if (Float.isNaN(value)) {
           removePreference(userID, itemID);
         } else {
-          setPreference(userID, itemID, value);
+          recordPreference(userID, itemID, value);
+          batchUserID = userID;
+          batchItemIDs[batchSize] = itemID;
+          batchValues[batchSize] = value;
+          batchSize++;
         }
-      } else {
-        setPreference(userID, itemID);
+      }
+    } finally {
+      // Preferences recorded so far are folded in even if a later line fails
+      if (batchSize > 0) {
+        foldIn(batchUserID, batchItemIDs, batchValues, batchSize);
       }
     }
   }
 
   @Override
   public void close() {
+    if (resultCache != null) {
+      log.info("Result cache: {}", resultCache);
+    }
+    if (anonymousUserCache != null) {
+      log.info("Anonymous user cache: {}", anonymousUserCache);
+    }
     generationManager.close();
     ExecutorService executorService = executor.maybeGet();
     if (executorService != null) {
@@ -186,7 +270,19 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
                                  int howMany,
                                  boolean considerKnownItems,
                                  Rescorer rescorer) throws NoSuchUserException, NotReadyException {
-    return recommendToMany(new String[] { userID }, howMany,  considerKnownItems, rescorer);
+    if (resultCache == null || rescorer != null) {
+      return recommendToMany(new String[] { userID }, howMany,  considerKnownItems, rescorer);
+    }
+    ResultCache.Key key = resultCache.recommendKey(getCurrentGeneration(),
+                                                   StringLongMapping.toLong(userID),
+                                                   howMany,
+                                                   considerKnownItems);
+    List<IDValue> result = resultCache.get(key);
+    if (result == null) {
+      result = recommendToMany(new String[] { userID }, howMany,  considerKnownItems, null);
+      resultCache.put(key, result);
+    }
+    return result;
   }
 
   @Override
@@ -198,7 +294,7 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     Preconditions.checkArgument(howMany > 0, "howMany must be positive");
 
     Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> X = generation.getX();
+    FeatureMatrix X = generation.getX();
 
     Lock xLock = generation.getXLock().readLock();
     List<float[]> userFeatures = Lists.newArrayListWithCapacity(userIDs.length);
@@ -258,42 +354,214 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
                                usersKnownItemIDs,
                                rescorer,
                                howMany,
-                               generation.getCandidateFilter());
+                               generation);
     } finally {
       yLock.unlock();
     }
 
   }
 
+  @Override
+  public boolean hasKnownItems() throws NotReadyException {
+    return getCurrentGeneration().getKnownItemIDs() != null;
+  }
+
+  @Override
+  public List<List<IDValue>> recommendToBatch(String[] userIDs,
+                                              int[] howMany,
+                                              boolean[] considerKnownItems) throws NotReadyException {
+
+    int numUsers = userIDs.length;
+    Preconditions.checkArgument(howMany.length == numUsers && considerKnownItems.length == numUsers,
+                                "userIDs, howMany and considerKnownItems must have the same length");
+    for (int n : howMany) {
+      Preconditions.checkArgument(n > 0, "howMany must be positive");
+    }
+
+    Generation generation = getCurrentGeneration();
+    FeatureMatrix X = generation.getX();
+
+    long[] longUserIDs = new long[numUsers];
+    float[][] userFeatures = new float[numUsers][];
+    Lock xLock = generation.getXLock().readLock();
+    xLock.lock();
+    try {
+      for (int i = 0; i < numUsers; i++) {
+        longUserIDs[i] = StringLongMapping.toLong(userIDs[i]);
+        userFeatures[i] = X.get(longUserIDs[i]);
+      }
+    } finally {
+      xLock.unlock();
+    }
+
+    LongObjectMap<LongSet> knownItemIDs = generation.getKnownItemIDs();
+    LongSet[] usersKnownItemIDs = new LongSet[numUsers];
+    Lock knownItemLock = generation.getKnownItemLock().readLock();
+    knownItemLock.lock();
+    try {
+      for (int i = 0; i < numUsers; i++) {
+        if (!considerKnownItems[i] && userFeatures[i] != null) {
+          if (knownItemIDs == null) {
+            throw new UnsupportedOperationException("Can't ignore known items because no known items available");
+          }
+          usersKnownItemIDs[i] = knownItemIDs.get(longUserIDs[i]);
+        }
+      }
+    } finally {
+      knownItemLock.unlock();
+    }
+
+    List<List<IDValue>> results = Lists.newArrayListWithCapacity(numUsers);
+    for (int i = 0; i < numUsers; i++) {
+      results.add(null);
+    }
+
+    // Gather known users into blocks, and score each block in one pass over Y
+    int[] block = new int[BATCH_BLOCK_SIZE];
+    int blockSize = 0;
+    for (int i = 0; i < numUsers; i++) {
+      if (userFeatures[i] != null) {
+        block[blockSize++] = i;
+        if (blockSize == BATCH_BLOCK_SIZE) {
+          batchTopN(block, blockSize, userFeatures, usersKnownItemIDs, howMany, generation, results);
+          blockSize = 0;
+        }
+      }
+    }
+    if (blockSize > 0) {
+      batchTopN(block, blockSize, userFeatures, usersKnownItemIDs, howMany, generation, results);
+    }
+    return results;
+  }
+
+  /**
+   * Computes top recommendations for a block of users, in one pass over all items, and sets them
+   * into {@code results}. Each row of Y is read once per block, while the block's user vectors stay in cache.
+   *
+   * @param block indices of users in the block
+   * @param blockSize number of users in the block
+   */
+  private void batchTopN(int[] block,
+                         int blockSize,
+                         float[][] userFeatures,
+                         LongSet[] usersKnownItemIDs,
+                         int[] howMany,
+                         Generation generation,
+                         List<List<IDValue>> results) {
+
+    final float[][] blockFeatures = new float[blockSize][];
+    final LongSet[] blockKnownItemIDs = new LongSet[blockSize];
+    final ConcurrentTopN[] topNs = new ConcurrentTopN[blockSize];
+    for (int i = 0; i < blockSize; i++) {
+      int user = block[i];
+      blockFeatures[i] = userFeatures[user];
+      blockKnownItemIDs[i] = usersKnownItemIDs[user];
+      topNs[i] = new ConcurrentTopN(howMany[user]);
+    }
+
+    final FeatureMatrix Y = generation.getY();
+    Lock yLock = generation.getYLock().readLock();
+    yLock.lock();
+    try {
+      int numRows = Y.size();
+      int numPartitions = numPartitions(numRows);
+      if (numPartitions == 1) {
+        batchTopNPartition(0, numRows, Y, blockFeatures, blockKnownItemIDs, topNs);
+      } else {
+        ExecutorService executorService = executor.get();
+        Collection<Future<Object>> futures = Lists.newArrayListWithCapacity(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+          final int fromRow = partitionStart(numRows, numPartitions, i);
+          final int toRow = partitionStart(numRows, numPartitions, i + 1);
+          futures.add(executorService.submit(new Callable<Object>() {
+            @Override
+            public Void call() {
+              batchTopNPartition(fromRow, toRow, Y, blockFeatures, blockKnownItemIDs, topNs);
+              return null;
+            }
+          }));
+        }
+        ExecutorUtils.getResults(futures);
+      }
+    } finally {
+      yLock.unlock();
+    }
+
+    StringLongMapping idMapping = generation.getIDMapping();
+    for (int i = 0; i < blockSize; i++) {
+      results.set(block[i], translateToStringIDs(topNs[i].merge(), idMapping));
+    }
+  }
+
+  private static void batchTopNPartition(int fromRow,
+                                         int toRow,
+                                         FeatureMatrix Y,
+                                         float[][] blockFeatures,
+                                         LongSet[] blockKnownItemIDs,
+                                         ConcurrentTopN[] topNs) {
+    int blockSize = blockFeatures.length;
+    ConcurrentTopN.Heap[] heaps = new ConcurrentTopN.Heap[blockSize];
+    for (int i = 0; i < blockSize; i++) {
+      heaps[i] = topNs[i].newHeap();
+    }
+    float[] data = Y.getData();
+    double[] dots = new double[blockSize * BATCH_ROWS_PER_KERNEL];
+    for (int from = fromRow; from < toRow; from += BATCH_ROWS_PER_KERNEL) {
+      int to = FastMath.min(toRow, from + BATCH_ROWS_PER_KERNEL);
+      int numRows = to - from;
+      VectorKernels.dotRows(blockFeatures, blockSize, data, from, to, dots);
+      for (int i = 0; i < blockSize; i++) {
+        ConcurrentTopN.Heap heap = heaps[i];
+        LongSet knownItemIDs = blockKnownItemIDs[i];
+        for (int r = 0; r < numRows; r++) {
+          float value = (float) dots[i * numRows + r];
+          if (heap.accepts(value)) {
+            long itemID = Y.getID(from + r);
+            if (knownItemIDs != null) {
+              synchronized (knownItemIDs) {
+                if (knownItemIDs.contains(itemID)) {
+                  continue;
+                }
+              }
+            }
+            heap.offer(itemID, value);
+          }
+        }
+      }
+    }
+  }
+
   private List<IDValue> multithreadedTopN(final float[][] userFeatures,
                                           final LongSet userKnownItemIDs,
                                           final Rescorer rescorer,
                                           final int howMany,
-                                          CandidateFilter candidateFilter) throws NotReadyException {
+                                          Generation generation) {
 
-    Collection<Iterator<LongObjectMap.MapEntry<float[]>>> candidateIterators =
-        candidateFilter.getCandidateIterator(userFeatures);
+    final FeatureMatrix Y = generation.getY();
+    final StringLongMapping idMapping = generation.getIDMapping();
+    Collection<IntPrimitiveIterator> candidateIterators =
+        generation.getCandidateFilter().getCandidateIterator(userFeatures);
 
     int numIterators = candidateIterators.size();
     int parallelism = FastMath.min(numCores, numIterators);
 
-    final Queue<NumericIDValue> topN = TopN.initialQueue(howMany);
+    List<NumericIDValue> topValues;
 
     if (parallelism > 1) {
 
       ExecutorService executorService = executor.get();
 
-      final Iterator<Iterator<LongObjectMap.MapEntry<float[]>>> candidateIteratorsIterator =
-          candidateIterators.iterator();
+      final Iterator<IntPrimitiveIterator> candidateIteratorsIterator = candidateIterators.iterator();
+      final ConcurrentTopN topN = new ConcurrentTopN(howMany);
 
       Collection<Future<Object>> futures = Lists.newArrayList();
       for (int i = 0; i < numCores; i++) {
         futures.add(executorService.submit(new Callable<Object>() {
           @Override
-          public Void call() throws NotReadyException {
-            float[] queueLeastValue = { Float.NEGATIVE_INFINITY };
+          public Void call() {
+            ConcurrentTopN.Heap heap = topN.newHeap();
             while (true) {
-              Iterator<LongObjectMap.MapEntry<float[]>> candidateIterator;
+              IntPrimitiveIterator candidateIterator;
               synchronized (candidateIteratorsIterator) {
                 if (!candidateIteratorsIterator.hasNext()) {
                   break;
@@ -303,36 +571,128 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
               Iterator<NumericIDValue> partialIterator =
                   new RecommendIterator(userFeatures,
                                         candidateIterator,
+                                        Y,
                                         userKnownItemIDs,
                                         rescorer,
-                                        getCurrentGeneration().getIDMapping());
-              TopN.selectTopNIntoQueueMultithreaded(topN, queueLeastValue, partialIterator, howMany);
+                                        idMapping);
+              heap.offerAll(partialIterator);
             }
             return null;
           }
         }));
       }
       ExecutorUtils.getResults(futures);
+      topValues = topN.merge();
 
     } else {
 
-      for (Iterator<LongObjectMap.MapEntry<float[]>> candidateIterator : candidateIterators) {
+      Queue<NumericIDValue> topN = TopN.initialQueue(howMany);
+      for (IntPrimitiveIterator candidateIterator : candidateIterators) {
         Iterator<NumericIDValue> partialIterator =
             new RecommendIterator(userFeatures,
                                   candidateIterator,
+                                  Y,
                                   userKnownItemIDs,
                                   rescorer,
-                                  getCurrentGeneration().getIDMapping());
+                                  idMapping);
         TopN.selectTopNIntoQueue(topN, partialIterator, howMany);
       }
+      topValues = TopN.selectTopNFromQueue(topN, howMany);
+
+    }
+
+    return translateToStringIDs(topValues, idMapping);
+  }
+
+  /**
+   * Creates an iterator that scores each of the given candidate rows.
+   */
+  private interface CandidateScorer {
+    Iterator<NumericIDValue> score(IntPrimitiveIterator candidateRows);
+  }
+
+  private static CandidateScorer mostSimilarItemScorer(final FeatureMatrix Y,
+                                                       final long[] toItemIDs,
+                                                       final float[][] itemFeatures,
+                                                       final PairRescorer rescorer,
+                                                       final StringLongMapping idMapping) {
+    return new CandidateScorer() {
+      @Override
+      public Iterator<NumericIDValue> score(IntPrimitiveIterator candidateRows) {
+        return new MostSimilarItemIterator(candidateRows, Y, toItemIDs, itemFeatures, rescorer, idMapping);
+      }
+    };
+  }
+
+  /**
+   * @return rows {@code [0,numRows)}, split into one contiguous range per core if there are enough rows
+   */
+  private List<IntPrimitiveIterator> partitionRows(int numRows) {
+    int numPartitions = numPartitions(numRows);
+    List<IntPrimitiveIterator> partitions = Lists.newArrayListWithCapacity(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      partitions.add(new IntRangeIterator(partitionStart(numRows, numPartitions, i),
+                                          partitionStart(numRows, numPartitions, i + 1)));
+    }
+    return partitions;
+  }
 
+  /**
+   * @return the first {@code numRows} rows in {@code rows}, split as in {@link #partitionRows(int)}
+   */
+  private List<IntPrimitiveIterator> partitionRows(int[] rows, int numRows) {
+    int numPartitions = numPartitions(numRows);
+    List<IntPrimitiveIterator> partitions = Lists.newArrayListWithCapacity(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      partitions.add(new IntPrimitiveArrayIterator(rows,
+                                                   partitionStart(numRows, numPartitions, i),
+                                                   partitionStart(numRows, numPartitions, i + 1)));
     }
+    return partitions;
+  }
+
+  private int numPartitions(int numRows) {
+    return FastMath.max(1, FastMath.min(numCores, numRows / MIN_ROWS_PER_PARTITION));
+  }
 
-    return translateToStringIDs(TopN.selectTopNFromQueue(topN, howMany));
+  private static int partitionStart(int numRows, int numPartitions, int partition) {
+    return (int) ((long) numRows * partition / numPartitions);
+  }
+
+  /**
+   * Finds the top-scoring candidates. Partitions are scored in parallel, each into its own
+   * {@link ConcurrentTopN.Heap}, without contention, and these are merged at the end.
+   *
+   * @param partitions candidate rows, split into partitions
+   * @param scorer scores candidates in one partition
+   * @param howMany how many top candidates to find
+   * @return top candidates and their scores, ordered by score descending
+   */
+  private List<NumericIDValue> partitionedTopN(List<IntPrimitiveIterator> partitions,
+                                               final CandidateScorer scorer,
+                                               final int howMany) {
+    if (partitions.size() == 1) {
+      return TopN.selectTopN(scorer.score(partitions.get(0)), howMany);
+    }
+
+    ExecutorService executorService = executor.get();
+    final ConcurrentTopN topN = new ConcurrentTopN(howMany);
+    Collection<Future<Object>> futures = Lists.newArrayListWithCapacity(partitions.size());
+    for (final IntPrimitiveIterator partition : partitions) {
+      futures.add(executorService.submit(new Callable<Object>() {
+        @Override
+        public Void call() {
+          topN.newHeap().offerAll(scorer.score(partition));
+          return null;
+        }
+      }));
+    }
+    ExecutorUtils.getResults(futures);
+    return topN.merge();
   }
 
-  private List<IDValue> translateToStringIDs(Collection<NumericIDValue> numericIDValues) throws NotReadyException {
-    StringLongMapping mapping = getCurrentGeneration().getIDMapping();
+  private static List<IDValue> translateToStringIDs(Collection<NumericIDValue> numericIDValues,
+                                                   StringLongMapping mapping) {
     List<IDValue> translated = Lists.newArrayListWithCapacity(numericIDValues.size());
     for (NumericIDValue numericIDValue : numericIDValues) {
       translated.add(new IDValue(mapping.toString(numericIDValue.getID()), numericIDValue.getValue()));
@@ -384,12 +744,19 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
                                userKnownItemIDs,
                                rescorer,
                                howMany,
-                               generation.getCandidateFilter());
+                               generation);
     } finally {
       yLock.unlock();
     }
   }
   
+  /**
+   * The anonymous user's vector is the sum of each item's vector, solved for with the YTY solver, and
+   * weighted as in {@link #updateFeatures(float[], float[], float, Generation)}. Since solving is linear, this
+   * is the same as solving for the weighted sum of item vectors, so that only one solve is needed.
+   *
+   * @return anonymous user's vector, which may be cached and must not be modified
+   */
   private float[] buildAnonymousUserFeatures(String[] itemIDs, float[] values)
       throws NotReadyException, NoSuchItemException {
 
@@ -398,44 +765,59 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     
     Generation generation = getCurrentGeneration();
 
-    LongObjectMap<float[]> Y = generation.getY();
+    long[] longItemIDs = new long[itemIDs.length];
+    for (int j = 0; j < itemIDs.length; j++) {
+      longItemIDs[j] = StringLongMapping.toLong(itemIDs[j]);
+    }
+
+    AnonymousUserCache.Key key = null;
+    if (anonymousUserCache != null) {
+      key = anonymousUserCache.key(generation, longItemIDs, values);
+      float[] cached = anonymousUserCache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
     Solver ytySolver = generation.getYTYSolver();
     if (ytySolver == null) {
       throw new NotReadyException();
     }
 
-    float[] anonymousUserFeatures = null;
+    FeatureMatrix Y = generation.getY();
+    double[] weightedItemFeaturesSum = null;
     Lock yLock = generation.getYLock().readLock();
-
-    boolean anyItemIDFound = false;
-    for (int j = 0; j < itemIDs.length; j++) {
-      String itemID = itemIDs[j];
-      float[] itemFeatures;
-      yLock.lock();
-      try {
-        itemFeatures = Y.get(StringLongMapping.toLong(itemID));
-      } finally {
-        yLock.unlock();
-      }
-      if (itemFeatures == null) {
-        continue;
-      }
-      anyItemIDFound = true;
-      double[] userFoldIn = ytySolver.solveFToD(itemFeatures);
-      if (anonymousUserFeatures == null) {
-        anonymousUserFeatures = new float[userFoldIn.length];
-      }
-      double signedFoldInWeight = foldInWeight(0.0, values == null ? 1.0f : values[j]);
-      if (signedFoldInWeight != 0.0) {
-        for (int i = 0; i < anonymousUserFeatures.length; i++) {
-          anonymousUserFeatures[i] += (float) (signedFoldInWeight * userFoldIn[i]);
+    yLock.lock();
+    try {
+      int numFeatures = Y.getNumFeatures();
+      float[] data = Y.getData();
+      for (int j = 0; j < longItemIDs.length; j++) {
+        int row = Y.indexOf(longItemIDs[j]);
+        if (row < 0) {
+          continue;
+        }
+        if (weightedItemFeaturesSum == null) {
+          weightedItemFeaturesSum = new double[numFeatures];
+        }
+        double signedFoldInWeight = foldInWeight(0.0, values == null ? 1.0f : values[j]);
+        if (signedFoldInWeight != 0.0) {
+          int offset = row * numFeatures;
+          for (int i = 0; i < numFeatures; i++) {
+            weightedItemFeaturesSum[i] += signedFoldInWeight * data[offset + i];
+          }
         }
       }
+    } finally {
+      yLock.unlock();
     }
-    if (!anyItemIDFound) {
+    if (weightedItemFeaturesSum == null) {
       throw new NoSuchItemException(Arrays.toString(itemIDs));
     }
 
+    float[] anonymousUserFeatures = ytySolver.solveDToF(weightedItemFeaturesSum);
+    if (key != null) {
+      anonymousUserCache.put(key, anonymousUserFeatures);
+    }
     return anonymousUserFeatures;
   }
 
@@ -450,68 +832,28 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     Preconditions.checkArgument(howMany > 0, "howMany must be positive");
 
     Generation generation = getCurrentGeneration();
-    LongObjectMap<LongSet> knownItemIDs = generation.getKnownItemIDs();
-    if (knownItemIDs == null) {
+    ItemPopularityIndex itemPopularity = generation.getItemPopularity();
+    if (itemPopularity == null) {
       throw new UnsupportedOperationException();
     }
 
-    LongFloatMap itemCounts = new LongFloatMap();
-    Lock knownItemReadLock = generation.getKnownItemLock().readLock();
-    knownItemReadLock.lock();
-    try {
-        Lock xReadLock = generation.getXLock().readLock();
-        xReadLock.lock();
-        try {
-          
-          for (LongObjectMap.MapEntry<LongSet> entry : generation.getKnownItemIDs().entrySet()) {
-            LongSet itemIDs = entry.getValue();
-            synchronized (itemIDs) {
-              LongPrimitiveIterator it = itemIDs.iterator();
-              while (it.hasNext()) {
-                long itemID = it.nextLong();
-                itemCounts.increment(itemID, 1.0f);
-              }
-            }
-          }
-          
-        } finally {
-          xReadLock.unlock();
-        }
-    } finally {
-      knownItemReadLock.unlock();
+    List<NumericIDValue> topN;
+    if (rescorer == null) {
+      topN = itemPopularity.getMostPopular(howMany);
+    } else {
+      synchronized (itemPopularity) {
+        topN = TopN.selectTopN(new MostPopularItemsIterator(itemPopularity.getCounts().entrySet().iterator(),
+                                                            rescorer,
+                                                            generation.getIDMapping()),
+                               howMany);
+      }
     }
-
-    return translateToStringIDs(
-        TopN.selectTopN(new MostPopularItemsIterator(itemCounts.entrySet().iterator(),
-                                                     rescorer,
-                                                     generation.getIDMapping()),
-                        howMany));
+    return translateToStringIDs(topN, generation.getIDMapping());
   }
 
   @Override
   public List<String> popularRepresentativeItems() throws NotReadyException {
-    Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> Y = generation.getY();
-    Lock yLock = generation.getYLock().readLock();
-    yLock.lock();
-    try {
-      int numFeatures = countFeatures(Y);
-      if (numFeatures == 0) {
-        return Collections.emptyList();
-      }
-      List<String> result = Lists.newArrayListWithCapacity(numFeatures);
-      float[] unitVector = new float[numFeatures];
-      float[][] unitVectorContainer = { unitVector };
-      for (int f = 0; f < numFeatures; f++) {
-        unitVector[f] = 1.0f;
-        List<IDValue> top = multithreadedTopN(unitVectorContainer, null, null, 1, generation.getCandidateFilter());
-        result.add(top == null || top.isEmpty() ? null : top.get(0).getID());
-        unitVector[f] = 0.0f;
-      }
-      return result;
-    } finally {
-      yLock.unlock();
-    }
+    return getCurrentGeneration().getRepresentativeItems().get();
   }
 
   /**
@@ -532,7 +874,7 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
   public float[] estimatePreferences(String userID, String... itemIDs) throws NotReadyException {
     
     Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> X = generation.getX();
+    FeatureMatrix X = generation.getX();
     
     float[] userFeatures;
     Lock xLock = generation.getXLock().readLock();
@@ -546,7 +888,7 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       return new float[itemIDs.length]; // All 0.0f
     }
     
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
 
     Lock yLock = generation.getYLock().readLock();
     yLock.lock();
@@ -554,9 +896,9 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       float[] result = new float[itemIDs.length];
       for (int i = 0; i < itemIDs.length; i++) {
         String itemID = itemIDs[i];
-        float[] itemFeatures = Y.get(StringLongMapping.toLong(itemID));
-        if (itemFeatures != null) {
-          float value = (float) SimpleVectorMath.dot(itemFeatures, userFeatures);
+        int row = Y.indexOf(StringLongMapping.toLong(itemID));
+        if (row >= 0) {
+          float value = (float) Y.dot(row, userFeatures);
           Preconditions.checkState(Floats.isFinite(value), "Bad estimate");
           result[i] = value;
         } // else leave value at 0.0f
@@ -577,7 +919,7 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       throws NotReadyException, NoSuchItemException {
 
     Generation generation = getCurrentGeneration();    
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
     Lock yLock = generation.getYLock().readLock();
     float[] toItemFeatures;    
     yLock.lock();
@@ -606,74 +948,130 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
 
   @Override
   public void setPreference(String userID, String itemID, float value) {
+    recordPreference(userID, itemID, value);
+    foldIn(userID, new String[] {itemID}, new float[] {value}, 1);
+  }
 
-    // Record datum
+  private void recordPreference(String userID, String itemID, float value) {
     try {
       generationManager.append(userID, itemID, value);
     } catch (IOException ioe) {
       log.warn("Could not append datum; continuing", ioe);
     }
+  }
+
+  /**
+   * Folds in new preferences of one user for several items, in order. The user's vector is read once, updated
+   * for each item in turn, and written back once.
+   */
+  private void foldIn(String userID, String[] itemIDs, float[] values, int count) {
 
     Generation generation;
     try {
       generation = getCurrentGeneration();
     } catch (NotReadyException nre) {
-      // Corner case -- no model ready so all we can do is record (above). Don't fail the request.
+      // Corner case -- no model ready so all we can do is record. Don't fail the request.
       return;
     }
 
     long longUserID = StringLongMapping.toLong(userID);
-    long longItemID = StringLongMapping.toLong(itemID);
-
     float[] userFeatures = getFeatures(longUserID, generation.getX(), generation.getXLock());
+    boolean userUpdated = false;
 
-    boolean newItem;
-    Lock yReadLock = generation.getYLock().readLock();
-    yReadLock.lock();
-    try {
-      newItem = generation.getY().get(longItemID) == null;
-    } finally {
-      yReadLock.unlock();
+    long[] longItemIDs = new long[count];
+    for (int i = 0; i < count; i++) {
+      String itemID = itemIDs[i];
+      long longItemID = StringLongMapping.toLong(itemID);
+      longItemIDs[i] = longItemID;
+
+      boolean newItem;
+      Lock yReadLock = generation.getYLock().readLock();
+      yReadLock.lock();
+      try {
+        newItem = !generation.getY().containsKey(longItemID);
+      } finally {
+        yReadLock.unlock();
+      }
+      if (newItem) {
+        generation.getCandidateFilter().addItem(itemID);
+      }
+
+      float[] itemFeatures = getFeatures(longItemID, generation.getY(), generation.getYLock());
+
+      if (updateFeatures(userFeatures, itemFeatures, values[i], generation)) {
+        setFeatures(longItemID, itemFeatures, generation.getY(), generation.getYLock());
+        generation.getRepresentativeItems().itemChanged();
+        userUpdated = true;
+      }
+
+      addKnownItem(longUserID, longItemID, generation);
     }
-    if (newItem) {
-      generation.getCandidateFilter().addItem(itemID);
+
+    if (userUpdated) {
+      setFeatures(longUserID, userFeatures, generation.getX(), generation.getXLock());
     }
-    
-    float[] itemFeatures = getFeatures(longItemID, generation.getY(), generation.getYLock());
 
-    updateFeatures(userFeatures, itemFeatures, value, generation);
+    for (long longItemID : longItemIDs) {
+      invalidateCachedResults(longUserID, longItemID);
+    }
+  }
 
+  private static void addKnownItem(long longUserID, long longItemID, Generation generation) {
     LongObjectMap<LongSet> knownItemIDs = generation.getKnownItemIDs();
-    if (knownItemIDs != null) {
-      LongSet userKnownItemIDs;
-      ReadWriteLock knownItemLock = generation.getKnownItemLock();
-      Lock knownItemReadLock = knownItemLock.readLock();
-      knownItemReadLock.lock();
-      try {
-        userKnownItemIDs = knownItemIDs.get(longUserID);
-        if (userKnownItemIDs == null) {
-          userKnownItemIDs = new LongSet();
-          Lock knownItemWriteLock = knownItemLock.writeLock();
-          knownItemReadLock.unlock();
-          knownItemWriteLock.lock();
-          try {
-            knownItemIDs.put(longUserID, userKnownItemIDs);
-          } finally {
-            knownItemReadLock.lock();
-            knownItemWriteLock.unlock();
-          }
-        }
-      } finally {
+    if (knownItemIDs == null) {
+      return;
+    }
+    LongSet userKnownItemIDs;
+    ReadWriteLock knownItemLock = generation.getKnownItemLock();
+    Lock knownItemReadLock = knownItemLock.readLock();
+    knownItemReadLock.lock();
+    try {
+      userKnownItemIDs = knownItemIDs.get(longUserID);
+      if (userKnownItemIDs == null) {
+        userKnownItemIDs = new LongSet();
+        Lock knownItemWriteLock = knownItemLock.writeLock();
         knownItemReadLock.unlock();
+        knownItemWriteLock.lock();
+        try {
+          knownItemIDs.put(longUserID, userKnownItemIDs);
+        } finally {
+          knownItemReadLock.lock();
+          knownItemWriteLock.unlock();
+        }
       }
+    } finally {
+      knownItemReadLock.unlock();
+    }
 
+    ItemPopularityIndex itemPopularity = generation.getItemPopularity();
+    // Add and count atomically with respect to a rebuild of the counts
+    Lock popularityLock = itemPopularity.getLock(longItemID);
+    popularityLock.lock();
+    try {
+      boolean added;
       synchronized (userKnownItemIDs) {
-        userKnownItemIDs.add(longItemID);
+        added = userKnownItemIDs.add(longItemID);
       }
+      if (added) {
+        itemPopularity.increment(longItemID);
+      }
+    } finally {
+      popularityLock.unlock();
     }
   }
+
+  /**
+   * Must be called after the user's and item's vectors and known items have been updated.
+   */
+  private void invalidateCachedResults(long longUserID, long longItemID) {
+    modelVersions.invalidate(longUserID);
+    modelVersions.invalidate(longItemID);
+  }
   
-  private static float[] getFeatures(long longID, LongObjectMap<float[]> matrix, ReadWriteLock lock) {
+  /**
+   * @return a copy of the feature vector for the given ID, which is added as a zero vector if not present
+   */
+  private static float[] getFeatures(long longID, FeatureMatrix matrix, ReadWriteLock lock) {
     float[] features;
     Lock readLock = lock.readLock();
     readLock.lock();
@@ -699,14 +1097,41 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     }
     return features;
   }
-  
-  private static void updateFeatures(float[] userFeatures, float[] itemFeatures, float value, Generation generation) {
+
+  /**
+   * Writes back an updated copy of a feature vector. Only the values change, so this only requires the read lock,
+   * and as before, concurrent readers may see a partially updated vector. Writers to the same row are serialized,
+   * so that the row's norm is always computed from the vector last written.
+   */
+  private static void setFeatures(long longID, float[] features, FeatureMatrix matrix, ReadWriteLock lock) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      int row = matrix.indexOf(longID);
+      if (row >= 0) {
+        // Rows don't move while the read lock is held
+        synchronized (ROW_WRITE_LOCKS[row & (NUM_ROW_WRITE_LOCKS - 1)]) {
+          matrix.setRow(row, features);
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * @return true if the given vectors were updated
+   */
+  private static boolean updateFeatures(float[] userFeatures,
+                                        float[] itemFeatures,
+                                        float value,
+                                        Generation generation) {
     if (userFeatures == null || itemFeatures == null) {
-      return;
+      return false;
     }
     double signedFoldInWeight = foldInWeight(SimpleVectorMath.dot(userFeatures, itemFeatures), value);
     if (signedFoldInWeight == 0.0) {
-      return;
+      return false;
     }
     // Here, we are using userFeatures, which is a row of X, as if it were a column of X'.
     // This is multiplied on the left by (X'*X)^-1. That's our left-inverse of X or at least the one
@@ -736,11 +1161,12 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
         userFeatures[i] += (float) delta;
       }
     }
+    return true;
   }
 
-  private static int countFeatures(LongObjectMap<float[]> M) {
+  private static int countFeatures(FeatureMatrix M) {
     // assumes the read lock is held
-    return M.isEmpty() ? 0 : M.entrySet().iterator().next().getValue().length;
+    return M.isEmpty() ? 0 : M.getNumFeatures();
   }
 
   /**
@@ -807,18 +1233,27 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
         return;
       }
 
-      synchronized (userKnownItemIDs) {
-        if (!userKnownItemIDs.remove(longItemID)) {
-          // Item unknown, so ignore this request
-          return;
+      ItemPopularityIndex itemPopularity = generation.getItemPopularity();
+      // Remove and count atomically with respect to a rebuild of the counts
+      Lock popularityLock = itemPopularity.getLock(longItemID);
+      popularityLock.lock();
+      try {
+        synchronized (userKnownItemIDs) {
+          if (!userKnownItemIDs.remove(longItemID)) {
+            // Item unknown, so ignore this request
+            return;
+          }
+          removeUser = userKnownItemIDs.isEmpty();
         }
-        removeUser = userKnownItemIDs.isEmpty();
+        itemPopularity.decrement(longItemID);
+      } finally {
+        popularityLock.unlock();
       }
     }
 
     // We can proceed with the request
 
-    LongObjectMap<float[]> X = generation.getX();
+    FeatureMatrix X = generation.getX();
 
     ReadWriteLock xLock = generation.getXLock();
 
@@ -842,6 +1277,7 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
 
     }
 
+    invalidateCachedResults(longUserID, longItemID);
   }
 
   /**
@@ -865,8 +1301,18 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
     long longItemID = StringLongMapping.toLong(itemID);
 
     Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
+
+    ResultCache.Key key = null;
+    if (resultCache != null && rescorer == null) {
+      key = resultCache.mostSimilarItemsKey(generation, longItemID, howMany);
+      List<IDValue> cached = resultCache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
 
+    List<IDValue> result;
     Lock yLock = generation.getYLock().readLock();
     yLock.lock();
     try {
@@ -876,17 +1322,23 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
         throw new NoSuchItemException(itemID);
       }
 
-      return translateToStringIDs(
-          TopN.selectTopN(new MostSimilarItemIterator(Y.entrySet().iterator(),
-                                                      new long[]{longItemID},
-                                                      new float[][]{itemFeatures},
-                                                      rescorer,
-                                                      generation.getIDMapping()),
-                          howMany));
+      result = translateToStringIDs(
+          partitionedTopN(partitionRows(Y.size()),
+                          mostSimilarItemScorer(Y,
+                                                new long[]{longItemID},
+                                                new float[][]{itemFeatures},
+                                                rescorer,
+                                                generation.getIDMapping()),
+                          howMany),
+          generation.getIDMapping());
     } finally {
       yLock.unlock();
     }
 
+    if (key != null) {
+      resultCache.put(key, result);
+    }
+    return result;
   }
 
   /**
@@ -917,13 +1369,18 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
 
     Preconditions.checkArgument(howMany > 0, "howMany must be positive");
 
+    if (itemIDs.length == 1) {
+      // Same result, but may be cached
+      return mostSimilarItems(itemIDs[0], howMany, rescorer);
+    }
+
     long[] longItemIDs = new long[itemIDs.length];
     for (int i = 0; i < longItemIDs.length; i++) {
       longItemIDs[i] = StringLongMapping.toLong(itemIDs[i]);
     }
 
     Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
 
     Lock yLock = generation.getYLock().readLock();
     yLock.lock();
@@ -942,12 +1399,14 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       float[][] itemFeaturesArray = itemFeatures.toArray(new float[itemFeatures.size()][]);
 
       return translateToStringIDs(
-          TopN.selectTopN(new MostSimilarItemIterator(Y.entrySet().iterator(),
-                                                      longItemIDs,
-                                                      itemFeaturesArray,
-                                                      rescorer,
-                                                      generation.getIDMapping()),
-                          howMany));
+          partitionedTopN(partitionRows(Y.size()),
+                          mostSimilarItemScorer(Y,
+                                                longItemIDs,
+                                                itemFeaturesArray,
+                                                rescorer,
+                                                generation.getIDMapping()),
+                          howMany),
+          generation.getIDMapping());
     } finally {
       yLock.unlock();
     }
@@ -957,28 +1416,29 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
   public float[] similarityToItem(String toItemID, String... itemIDs) throws NotReadyException, NoSuchItemException {
 
     Generation generation = getCurrentGeneration();
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
 
     float[] similarities = new float[itemIDs.length];
     Lock yLock = generation.getYLock().readLock();
     yLock.lock();
     try {
 
-      float[] toFeatures = Y.get(StringLongMapping.toLong(toItemID));
-      if (toFeatures == null) {
+      int toRow = Y.indexOf(StringLongMapping.toLong(toItemID));
+      if (toRow < 0) {
         throw new NoSuchItemException(toItemID);
       }
-      double toFeaturesNorm = SimpleVectorMath.norm(toFeatures);
+      float[] toFeatures = Y.getRow(toRow);
+      double toFeaturesNorm = Y.norm(toRow);
 
       boolean anyFound = false;
       for (int i = 0; i < similarities.length; i++) {
-        float[] features = Y.get(StringLongMapping.toLong(itemIDs[i]));
-        if (features == null) {
+        int row = Y.indexOf(StringLongMapping.toLong(itemIDs[i]));
+        if (row < 0) {
           similarities[i] = Float.NaN;
         } else {
           anyFound = true;
-          double featuresNorm = SimpleVectorMath.norm(features);
-          similarities[i] = (float) (SimpleVectorMath.dot(features, toFeatures) / (featuresNorm * toFeaturesNorm));
+          double featuresNorm = Y.norm(row);
+          similarities[i] = (float) (Y.dot(row, toFeatures) / (featuresNorm * toFeaturesNorm));
         }
       }
       if (!anyFound) {
@@ -1021,11 +1481,22 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       throw new UnsupportedOperationException("No known item IDs available");
     }
 
+    long longUserID = StringLongMapping.toLong(userID);
+    long longItemID = StringLongMapping.toLong(itemID);
+    ResultCache.Key key = null;
+    if (resultCache != null) {
+      key = resultCache.recommendedBecauseKey(generation, longUserID, longItemID, howMany);
+      List<IDValue> cached = resultCache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
     Lock knownItemLock = generation.getKnownItemLock().readLock();
     LongSet userKnownItemIDs;
     knownItemLock.lock();
     try {
-      userKnownItemIDs = knownItemIDs.get(StringLongMapping.toLong(userID));
+      userKnownItemIDs = knownItemIDs.get(longUserID);
     } finally {
       knownItemLock.unlock();
     }
@@ -1033,51 +1504,60 @@ public final class ServerRecommender implements OryxRecommender, Closeable {
       throw new NoSuchUserException(userID);
     }
 
-    LongObjectMap<float[]> Y = generation.getY();
+    FeatureMatrix Y = generation.getY();
 
+    List<IDValue> result;
     Lock yLock = generation.getYLock().readLock();
     yLock.lock();
     try {
 
-      float[] features = Y.get(StringLongMapping.toLong(itemID));
+      float[] features = Y.get(longItemID);
       if (features == null) {
         throw new NoSuchItemException(itemID);
       }
-      LongObjectMap<float[]> toFeatures;
+      int[] toRows;
+      int numToRows = 0;
       synchronized (userKnownItemIDs) {
-        toFeatures = new LongObjectMap<float[]>(userKnownItemIDs.size());
+        toRows = new int[userKnownItemIDs.size()];
         LongPrimitiveIterator it = userKnownItemIDs.iterator();
         while (it.hasNext()) {
-          long fromItemID = it.nextLong();
-          float[] fromFeatures = Y.get(fromItemID);
-          toFeatures.put(fromItemID, fromFeatures);
+          int fromRow = Y.indexOf(it.nextLong());
+          if (fromRow >= 0) {
+            toRows[numToRows++] = fromRow;
+          }
         }
       }
 
-      return translateToStringIDs(
-          TopN.selectTopN(new RecommendedBecauseIterator(toFeatures.entrySet().iterator(),
-                                                         features),
-                          howMany));
+      final FeatureMatrix theY = Y;
+      final float[] theFeatures = features;
+      result = translateToStringIDs(
+          partitionedTopN(partitionRows(toRows, numToRows),
+                          new CandidateScorer() {
+                            @Override
+                            public Iterator<NumericIDValue> score(IntPrimitiveIterator candidateRows) {
+                              return new RecommendedBecauseIterator(candidateRows, theY, theFeatures);
+                            }
+                          },
+                          howMany),
+          generation.getIDMapping());
     } finally {
       yLock.unlock();
     }
+
+    if (key != null) {
+      resultCache.put(key, result);
+    }
+    return result;
   }
 
   @Override
   public boolean isReady() {
-    try {
-      getCurrentGeneration();
-      return true;
-    } catch (NotReadyException ignored) {
-      return false;
-    }
+    return generationManager.isReady();
   }
 
   @Override
   public void await() throws InterruptedException {
-    while (!isReady()) {
-      Thread.sleep(1000L);
-    }
+    generationManager.awaitReady();
   }
 
 }
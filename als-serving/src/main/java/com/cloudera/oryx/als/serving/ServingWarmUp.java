@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.typesafe.config.Config;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.als.common.NoSuchItemException;
+import com.cloudera.oryx.als.common.NoSuchUserException;
+import com.cloudera.oryx.als.common.NotReadyException;
+import com.cloudera.oryx.als.common.OryxRecommender;
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.serving.generation.ALSGenerationManager;
+import com.cloudera.oryx.als.serving.generation.Generation;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * <p>Makes requests to a newly loaded {@link Generation} through an {@link OryxRecommender}, before it becomes
+ * current, for randomly chosen users and items in the model. The first real requests then run code that has been
+ * compiled, and find structures that are built on first use already built.</p>
+ *
+ * <p>Users are chosen only among those whose ID can be recovered as a string from the model, which excludes
+ * users with non-numeric IDs.</p>
+ *
+ * @author Sean Owen
+ */
+final class ServingWarmUp implements ALSGenerationManager.WarmUp {
+
+  private static final Logger log = LoggerFactory.getLogger(ServingWarmUp.class);
+
+  private static final int HOW_MANY = 10;
+
+  private final OryxRecommender recommender;
+  private final int numRequests;
+  private final long maxTimeNanos;
+
+  /**
+   * @param recommender recommender to make requests to
+   * @param config {@code serving-layer.warm-up} configuration
+   */
+  ServingWarmUp(OryxRecommender recommender, Config config) {
+    this.recommender = recommender;
+    numRequests = config.getInt("requests");
+    Preconditions.checkArgument(numRequests >= 0, "requests must be nonnegative: %s", numRequests);
+    maxTimeNanos = TimeUnit.SECONDS.toNanos(config.getLong("max-time-sec"));
+  }
+
+  @Override
+  public void warmUp(Generation generation) throws NotReadyException {
+    if (numRequests == 0) {
+      return;
+    }
+    RandomGenerator random = RandomManager.getRandom();
+    StringLongMapping idMapping = generation.getIDMapping();
+    List<String> userIDs = sampleIDs(generation.getX(), generation.getXLock(), idMapping, random);
+    List<String> itemIDs = sampleIDs(generation.getY(), generation.getYLock(), idMapping, random);
+    if (itemIDs.isEmpty()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    if (generation.getItemPopularity() != null) {
+      recommender.mostPopularItems(HOW_MANY);
+    }
+    recommender.popularRepresentativeItems();
+
+    int count = 0;
+    while (count < numRequests && System.nanoTime() - start < maxTimeNanos) {
+      String itemID = itemIDs.get(count % itemIDs.size());
+      String[] itemIDArray = { itemID };
+      try {
+        recommender.mostSimilarItems(itemID, HOW_MANY);
+        recommender.recommendToAnonymous(itemIDArray, HOW_MANY);
+        recommender.similarityToItem(itemID, itemIDArray);
+        if (!userIDs.isEmpty()) {
+          String userID = userIDs.get(count % userIDs.size());
+          recommender.recommend(userID, HOW_MANY);
+          recommender.estimatePreference(userID, itemID);
+        }
+      } catch (NoSuchUserException ignored) {
+        // Removed meanwhile; continue
+      } catch (NoSuchItemException ignored) {
+        // Removed meanwhile; continue
+      }
+      count++;
+    }
+    log.info("Warmed up with {} requests in {}ms",
+             count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * @return IDs of up to {@link #numRequests} random rows of {@code M} which map back to their string form
+   */
+  private List<String> sampleIDs(FeatureMatrix M,
+                                 ReadWriteLock lock,
+                                 StringLongMapping idMapping,
+                                 RandomGenerator random) {
+    List<String> ids = Lists.newArrayList();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      int size = M.size();
+      int numSamples = FastMath.min(numRequests, size);
+      for (int i = 0; i < numSamples; i++) {
+        long id = M.getID(random.nextInt(size));
+        String stringID = idMapping.toString(id);
+        if (StringLongMapping.toLong(stringID) == id) {
+          ids.add(stringID);
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return ids;
+  }
+
+}
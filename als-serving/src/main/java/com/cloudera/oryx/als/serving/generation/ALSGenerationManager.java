@@ -18,15 +18,19 @@ package com.cloudera.oryx.als.serving.generation;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 
+import com.google.common.base.Preconditions;
 import com.typesafe.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
 import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.io.BufferedValueWriter;
 import com.cloudera.oryx.common.math.SolverException;
 import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.parallel.AsyncBatchProcessor;
 import com.cloudera.oryx.common.settings.ConfigUtils;
 import com.cloudera.oryx.serving.generation.GenerationManager;
 
@@ -34,7 +38,17 @@ import com.cloudera.oryx.serving.generation.GenerationManager;
  * An implementation of {@link ALSGenerationManager} is responsible for interacting with successive generations of the
  * underlying recommender model. It sends updates to the component responsible for computing the model,
  * and manages switching in new models when they become available.
- * 
+ *
+ * <p>Unless {@code serving-layer.ingest-queue.capacity} is 0, new associations are queued, and written to the
+ * appender in batches by one thread. Callers return once the association is queued, having already marked its
+ * user and item as recently active. Queued associations are written before the appender is flushed by
+ * {@link #refresh()} or closed by {@link #close()}.</p>
+ *
+ * <p>Each newly loaded {@link Generation} is passed to a {@link WarmUp}, if any, before it becomes current.
+ * Meanwhile only the thread warming it up sees it from {@link #getCurrentGeneration()}. When reloading in place,
+ * the previous model keeps serving, and the manager stays ready, while it is updated; the manager only becomes
+ * ready once the first model is loaded and warmed up.</p>
+ *
  * @author Sean Owen
  */
 public final class ALSGenerationManager extends GenerationManager {
@@ -42,25 +56,77 @@ public final class ALSGenerationManager extends GenerationManager {
   private static final Logger log = LoggerFactory.getLogger(ALSGenerationManager.class);
 
   private int modelGeneration;
-  private Generation currentGeneration;
+  private volatile Generation currentGeneration;
   private final LongSet recentlyActiveUsers;
   private final LongSet recentlyActiveItems;
   private final GenerationLoader loader;
+  private final boolean copyOnWriteReload;
+  private final AsyncBatchProcessor<PendingWrite> writeQueue;
+  private final WarmUp warmUp;
+  /** Generation being warmed up by {@link #warmingThread}, which alone sees it as current */
+  private volatile Generation warmingGeneration;
+  private volatile Thread warmingThread;
 
   public ALSGenerationManager(File appendTempDir) throws IOException {
+    this(appendTempDir, null);
+  }
+
+  /**
+   * @param appendTempDir local directory where new associations are written before upload
+   * @param warmUp exercises each newly loaded {@link Generation}; may be {@code null}
+   */
+  public ALSGenerationManager(File appendTempDir, WarmUp warmUp) throws IOException {
     super(appendTempDir);
+    this.warmUp = warmUp;
     modelGeneration = NO_GENERATION;
     recentlyActiveUsers = new LongSet();
     recentlyActiveItems = new LongSet();
     Config config = ConfigUtils.getDefaultConfig();
-    loader = new GenerationLoader(config.getString("model.instance-dir"), recentlyActiveUsers, recentlyActiveItems, this);
+    Config loadConfig = config.getConfig("serving-layer.model-load");
+    String parseParallelismString = loadConfig.getString("parse-parallelism");
+    int parseParallelism = "auto".equals(parseParallelismString) ?
+        Runtime.getRuntime().availableProcessors() :
+        Integer.parseInt(parseParallelismString);
+    loader = new GenerationLoader(config.getString("model.instance-dir"),
+                                  recentlyActiveUsers,
+                                  recentlyActiveItems,
+                                  this,
+                                  loadConfig.getInt("fetch-parallelism"),
+                                  parseParallelism,
+                                  loadConfig.getInt("batch-size"));
+    copyOnWriteReload = config.getBoolean("model.copy-on-write-reload");
+
+    Config queueConfig = config.getConfig("serving-layer.ingest-queue");
+    int queueCapacity = queueConfig.getInt("capacity");
+    if (queueCapacity > 0) {
+      String whenFull = queueConfig.getString("when-full");
+      Preconditions.checkArgument("block".equals(whenFull) || "reject".equals(whenFull),
+                                  "Bad when-full: %s", whenFull);
+      writeQueue = new AsyncBatchProcessor<PendingWrite>("ALSGenerationManager-writer",
+                                                        queueCapacity,
+                                                        "block".equals(whenFull),
+                                                        queueConfig.getInt("max-batch-size"),
+                                                        new AsyncBatchProcessor.Handler<PendingWrite>() {
+        @Override
+        public void handle(List<PendingWrite> batch) throws IOException {
+          doAppendBatch(batch);
+        }
+      });
+      log.info("Queueing up to {} writes ({} when full)", queueCapacity, whenFull);
+    } else {
+      writeQueue = null;
+    }
   }
 
   /**
    * @return an instance of the latest {@link Generation} that has been made available by the
-   * implementation.
+   * implementation. While a newly loaded one is warmed up, it is returned to the warming thread only.
    */
   public Generation getCurrentGeneration() {
+    Generation theWarmingGeneration = warmingGeneration;
+    if (theWarmingGeneration != null && Thread.currentThread() == warmingThread) {
+      return theWarmingGeneration;
+    }
     return currentGeneration;
   }
 
@@ -72,11 +138,18 @@ public final class ALSGenerationManager extends GenerationManager {
    * @param itemID item involved
    * @param value strength of the user/item association
    * @throws IOException if an error occurs while sending the update
+   * @throws java.util.concurrent.RejectedExecutionException if the update can't be queued because the queue
+   *  is full and configured to reject when full
    */
   public void append(String userID, String itemID, float value) throws IOException {
+    markRecentlyActive(userID, itemID);
+    if (writeQueue != null) {
+      writeQueue.submit(new PendingWrite(userID, itemID, value));
+      return;
+    }
     StringBuilder line = new StringBuilder(32);
     line.append(DelimitedDataUtils.encode(',', userID, itemID, Float.toString(value))).append('\n');
-    doAppend(line, userID, itemID);
+    doAppend(line);
   }
 
   /**
@@ -86,18 +159,55 @@ public final class ALSGenerationManager extends GenerationManager {
    * @param userID user involved in new association
    * @param itemID item involved
    * @throws IOException if an error occurs while sending the update
+   * @throws java.util.concurrent.RejectedExecutionException if the update can't be queued because the queue
+   *  is full and configured to reject when full
    */
   public void remove(String userID, String itemID) throws IOException {
+    markRecentlyActive(userID, itemID);
+    if (writeQueue != null) {
+      writeQueue.submit(new PendingWrite(userID, itemID, Float.NaN));
+      return;
+    }
     StringBuilder line = new StringBuilder(32);
     line.append(DelimitedDataUtils.encode(',', userID, itemID, "")).append('\n');
-    doAppend(line, userID, itemID);
+    doAppend(line);
   }
 
-  private synchronized void doAppend(CharSequence line, String userID, String itemID) throws IOException {
+  private synchronized void doAppend(CharSequence line) throws IOException {
     Writer appender = getAppender();
     if (appender != null) {
       appender.append(line);
     }
+    decrementCountdownToUpload();
+  }
+
+  private synchronized void doAppendBatch(List<PendingWrite> batch) throws IOException {
+    Writer appender = getAppender();
+    if (appender != null) {
+      BufferedValueWriter out = BufferedValueWriter.forWriter(appender);
+      try {
+        for (PendingWrite write : batch) {
+          out.writeDelimited(write.userID, ',');
+          out.write(',');
+          out.writeDelimited(write.itemID, ',');
+          out.write(',');
+          if (!Float.isNaN(write.value)) {
+            out.write(write.value);
+          }
+          out.write('\n');
+        }
+      } finally {
+        out.finish();
+      }
+    }
+    decrementCountdownToUpload(batch.size());
+  }
+
+  /**
+   * Marks the IDs recently active on the caller's thread, even when the association itself is queued, so that
+   * a fold-in that follows is carried over to a model being loaded meanwhile.
+   */
+  private synchronized void markRecentlyActive(String userID, String itemID) {
     // User ID reverse mapping is not important to serving layer
     long numericUserID = StringLongMapping.toLong(userID);
     long numericItemID;
@@ -108,13 +218,30 @@ public final class ALSGenerationManager extends GenerationManager {
     }
     recentlyActiveUsers.add(numericUserID);
     recentlyActiveItems.add(numericItemID);
-    decrementCountdownToUpload();
+  }
+
+  /**
+   * @return number of associations queued but not yet written, or 0 if associations are not queued
+   */
+  public int getPendingWrites() {
+    return writeQueue == null ? 0 : writeQueue.getPending();
+  }
+
+  @Override
+  protected void flushPendingWrites(boolean closing) {
+    if (writeQueue != null) {
+      if (closing) {
+        writeQueue.close();
+      } else {
+        writeQueue.flush();
+      }
+    }
   }
 
   @Override
-  protected void loadRecentModel(int mostRecentModelGeneration) throws IOException {
+  protected boolean loadRecentModel(int mostRecentModelGeneration) throws IOException {
     if (mostRecentModelGeneration <= modelGeneration) {
-      return;
+      return false;
     }
     if (modelGeneration == NO_GENERATION) {
       log.info("Most recent generation {} is the first available one", mostRecentModelGeneration);
@@ -125,23 +252,89 @@ public final class ALSGenerationManager extends GenerationManager {
     try {
 
       Generation theCurrentGeneration = currentGeneration;
+      if (copyOnWriteReload) {
+        // Build off to the side; current generation keeps serving until the swap
+        Generation newGeneration = loader.loadNewModel(mostRecentModelGeneration, theCurrentGeneration);
+        warmUp(newGeneration);
+        synchronized (this) {
+          loader.carryOverSinceLoad(theCurrentGeneration, newGeneration);
+          modelGeneration = mostRecentModelGeneration;
+          currentGeneration = newGeneration;
+        }
+        return true;
+      }
+
       if (theCurrentGeneration == null) {
+        // No model yet, so not ready until this one is loaded and warm; otherwise the previous one keeps serving
+        setReady(false);
         theCurrentGeneration = new Generation();
       }
-
       loader.loadModel(mostRecentModelGeneration, theCurrentGeneration);
+      warmUp(theCurrentGeneration);
 
       modelGeneration = mostRecentModelGeneration;
       currentGeneration = theCurrentGeneration;
+      return true;
 
     } catch (OutOfMemoryError oome) {
       log.warn("Increase heap size with -Xmx, decrease new generation size with larger " +
                    "-XX:NewRatio value, and/or use -XX:+UseCompressedOops");
-      currentGeneration = null;
+      if (copyOnWriteReload) {
+        log.warn("Copy-on-write reload needs room for two models; consider model.copy-on-write-reload=false");
+      } else {
+        currentGeneration = null;
+        setReady(false);
+      }
       throw oome;
     } catch (SolverException ignored) {
       log.warn("Unable to compute a valid generation yet; waiting for more data");
-      currentGeneration = null;
+      if (!copyOnWriteReload) {
+        // Otherwise the current generation is untouched and still usable
+        currentGeneration = null;
+        setReady(false);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Passes a newly loaded {@link Generation} to {@link #warmUp}, if any, and makes it current for this thread
+   * meanwhile. Failures are logged and do not prevent it from being used.
+   */
+  private void warmUp(Generation generation) {
+    if (warmUp == null) {
+      return;
+    }
+    warmingThread = Thread.currentThread();
+    warmingGeneration = generation;
+    try {
+      warmUp.warmUp(generation);
+    } catch (Exception e) {
+      log.warn("Unexpected exception while warming up; continuing", e);
+    } finally {
+      warmingGeneration = null;
+      warmingThread = null;
+    }
+  }
+
+  /**
+   * Exercises a newly loaded {@link Generation} before requests are directed to it.
+   */
+  public interface WarmUp {
+    void warmUp(Generation generation) throws Exception;
+  }
+
+  /**
+   * A queued association; a value of {@link Float#NaN} means it should be removed.
+   */
+  private static final class PendingWrite {
+    private final String userID;
+    private final String itemID;
+    private final float value;
+    private PendingWrite(String userID, String itemID, float value) {
+      this.userID = userID;
+      this.itemID = itemID;
+      this.value = value;
     }
   }
 
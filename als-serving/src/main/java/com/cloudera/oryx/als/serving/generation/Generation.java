@@ -15,15 +15,18 @@
 
 package com.cloudera.oryx.als.serving.generation;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.typesafe.config.Config;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongObjectMap;
 import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.math.IllConditionedSolverException;
@@ -46,29 +49,42 @@ public final class Generation {
 
   private static final Logger log = LoggerFactory.getLogger(Generation.class);
 
-  private final LongObjectMap<float[]> X;
+  private final FeatureMatrix X;
   private Solver XTXsolver;
-  private final LongObjectMap<float[]> Y;
+  private final FeatureMatrix Y;
   private Solver YTYsolver;
   private final StringLongMapping idMapping;
   private final LongObjectMap<LongSet> knownItemIDs;
+  private final ItemPopularityIndex itemPopularity;
+  private final RepresentativeItems representativeItems;
   private CandidateFilter candidateFilter;
   private final ReadWriteLock xLock;
   private final ReadWriteLock yLock;
   private final ReadWriteLock knownItemLock;
+  private volatile int stateVersion;
 
   public Generation() {
-    boolean noKnownItems = ConfigUtils.getDefaultConfig().getBoolean("model.no-known-items");
-    this.X = new LongObjectMap<float[]>();
+    Config config = ConfigUtils.getDefaultConfig();
+    boolean noKnownItems = config.getBoolean("model.no-known-items");
+    this.X = new FeatureMatrix();
     this.XTXsolver = null;
-    this.Y = new LongObjectMap<float[]>();
+    this.Y = new FeatureMatrix();
     this.YTYsolver = null;
     this.idMapping = new StringLongMapping();
     this.knownItemIDs = noKnownItems ? null : new LongObjectMap<LongSet>();
+    this.itemPopularity = noKnownItems ? null : new ItemPopularityIndex();
     this.candidateFilter = null;
     this.xLock = new ReentrantReadWriteLock();
     this.yLock = new ReentrantReadWriteLock();
     this.knownItemLock = new ReentrantReadWriteLock();
+    Config representativeConfig = config.getConfig("serving-layer.representative-items");
+    this.representativeItems = new RepresentativeItems(Y,
+                                                       yLock.readLock(),
+                                                       idMapping,
+                                                       representativeConfig.getInt("refresh-after-changes"),
+                                                       representativeConfig.getLong("min-refresh-interval-sec"),
+                                                       TimeUnit.SECONDS,
+                                                       Runtime.getRuntime().availableProcessors());
     recomputeState();
   }
 
@@ -76,15 +92,28 @@ public final class Generation {
     XTXsolver = recomputeSolver(X, xLock.readLock());
     YTYsolver = recomputeSolver(Y, yLock.readLock());
     candidateFilter = new CandidateFilterFactory().buildCandidateFilter(Y, yLock.readLock());
+    if (itemPopularity != null) {
+      itemPopularity.rebuild(knownItemIDs, knownItemLock.readLock());
+    }
+    representativeItems.rebuild();
+    stateVersion++;
   }
 
-  private static Solver recomputeSolver(LongObjectMap<float[]> M, Lock readLock) {
+  /**
+   * @return a number that changes each time {@link #recomputeState()} is called, as it is after the model
+   *  is loaded or reloaded
+   */
+  public int getStateVersion() {
+    return stateVersion;
+  }
+
+  private static Solver recomputeSolver(FeatureMatrix M, Lock readLock) {
     readLock.lock();
     try {
       if (M == null || M.isEmpty()) {
         return null;
       }
-      RealMatrix MTM = MatrixUtils.transposeTimesSelf(M);
+      RealMatrix MTM = MatrixUtils.transposeTimesSelf(M, Runtime.getRuntime().availableProcessors());
       double infNorm = MTM.getNorm();
       if (infNorm < 1.0) {
         log.warn("X'*X or Y'*Y has small inf norm ({}); try decreasing model.lambda", infNorm);
@@ -111,9 +140,9 @@ public final class Generation {
   }
 
   /**
-   * @return the user-feature matrix, implemented as a map from row number (user ID) to feature array
+   * @return the user-feature matrix, implemented as a {@link FeatureMatrix} from user ID to feature array
    */
-  public LongObjectMap<float[]> getX() {
+  public FeatureMatrix getX() {
     return X;
   }
 
@@ -125,9 +154,9 @@ public final class Generation {
   }
 
   /**
-   * @return the item-feature matrix, implemented as a map from row number (item ID) to feature array
+   * @return the item-feature matrix, implemented as a {@link FeatureMatrix} from item ID to feature array
    */
-  public LongObjectMap<float[]> getY() {
+  public FeatureMatrix getY() {
     return Y;
   }
 
@@ -149,6 +178,21 @@ public final class Generation {
     return knownItemIDs;
   }
 
+  /**
+   * @return number of users associated to each item, kept up to date as {@link #getKnownItemIDs()} changes,
+   *  or {@code null} if known items are not kept
+   */
+  public ItemPopularityIndex getItemPopularity() {
+    return itemPopularity;
+  }
+
+  /**
+   * @return the item most strongly associated to each feature, selected again as item vectors change
+   */
+  public RepresentativeItems getRepresentativeItems() {
+    return representativeItems;
+  }
+
   public CandidateFilter getCandidateFilter() {
     return candidateFilter;
   }
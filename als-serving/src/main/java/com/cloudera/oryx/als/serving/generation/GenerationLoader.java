@@ -18,9 +18,13 @@ package com.cloudera.oryx.als.serving.generation;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 
 import com.google.common.base.Preconditions;
@@ -30,7 +34,12 @@ import org.slf4j.LoggerFactory;
 
 import com.cloudera.oryx.als.common.DataUtils;
 import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.als.common.io.BinaryModelFormat;
+import com.cloudera.oryx.als.common.io.MappedFeatureVectors;
+import com.cloudera.oryx.als.common.io.MappedIDMapping;
+import com.cloudera.oryx.als.common.io.MappedKnownItems;
 import com.cloudera.oryx.als.common.pmml.ALSModelDescription;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongSet;
 import com.cloudera.oryx.common.io.IOUtils;
 import com.cloudera.oryx.common.iterator.FileLineIterable;
@@ -42,86 +51,79 @@ import com.cloudera.oryx.common.servcomp.Namespaces;
 import com.cloudera.oryx.common.servcomp.Store;
 
 /**
+ * <p>Loads a generation's model files into a {@link Generation} in three stages:</p>
+ *
+ * <ol>
+ *   <li>A few threads copy files from the {@link Store} to local temp files.</li>
+ *   <li>Parse workers read each local file into batches of rows.</li>
+ *   <li>The calling thread adds each batch to the {@link Generation}, taking the write lock it needs once per
+ *    batch rather than once per row.</li>
+ * </ol>
+ *
  * @author Sean Owen
  */
 final class GenerationLoader {
 
   private static final Logger log = LoggerFactory.getLogger(GenerationLoader.class);
 
+  /** Batches that may wait for the committer, per parse worker, before parse workers block */
+  private static final int BATCHES_PER_PARSER = 4;
+
   private final String instanceDir;
   private final LongSet recentlyActiveUsers;
   private final LongSet recentlyActiveItems;
   private final Object lockForRecent;
-  
+  private final int fetchParallelism;
+  private final int parseParallelism;
+  private final int batchSize;
+
+  /**
+   * @param fetchParallelism number of model files copied locally at once
+   * @param parseParallelism number of local model files parsed at once
+   * @param batchSize maximum number of rows added to the model per lock acquisition
+   */
   GenerationLoader(String instanceDir,
                    LongSet recentlyActiveUsers,
                    LongSet recentlyActiveItems,
-                   Object lockForRecent) {
+                   Object lockForRecent,
+                   int fetchParallelism,
+                   int parseParallelism,
+                   int batchSize) {
+    Preconditions.checkArgument(fetchParallelism > 0, "fetchParallelism must be positive");
+    Preconditions.checkArgument(parseParallelism > 0, "parseParallelism must be positive");
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
     this.instanceDir = instanceDir;
     this.recentlyActiveUsers = recentlyActiveUsers;
     this.recentlyActiveItems = recentlyActiveItems;
     // This must be acquired to access the 'recent' fields above:
     this.lockForRecent = lockForRecent;
+    this.fetchParallelism = fetchParallelism;
+    this.parseParallelism = parseParallelism;
+    this.batchSize = batchSize;
   }
 
+  /**
+   * Loads a generation's model into the given, live {@link Generation}, updating it in place. This
+   * requires only one copy of the model in memory, but readers contend with the loader for locks and
+   * may observe a partially-loaded model.
+   */
   void loadModel(int generationID, Generation currentGeneration) throws IOException {
 
-    File modelPMMLFile = File.createTempFile("oryx-model", ".pmml.gz");
-    modelPMMLFile.deleteOnExit();
-    IOUtils.delete(modelPMMLFile);
-
-    String generationPrefix = Namespaces.getInstanceGenerationPrefix(instanceDir, generationID);
-    String modelPMMLKey = generationPrefix + "model.pmml.gz";
-    Store.get().download(modelPMMLKey, modelPMMLFile);
-    log.info("Loading model description from {}", modelPMMLKey);
-
-    ALSModelDescription modelDescription = ALSModelDescription.read(modelPMMLFile);
-    IOUtils.delete(modelPMMLFile);
-
-    Collection<Future<Object>> futures = Lists.newArrayList();
-    // Limit this fairly sharply to 2 so as to not saturate the network link
-    ExecutorService executor = ExecutorUtils.buildExecutor("LoadModel", 2);
-
-    LongSet loadedUserIDs;
-    LongSet loadedItemIDs;
-    LongSet loadedUserIDsForKnownItems;
-    try {
-      loadedUserIDs = loadXOrY(generationPrefix, modelDescription, true, currentGeneration, futures, executor);
-      loadedItemIDs = loadXOrY(generationPrefix, modelDescription, false, currentGeneration, futures, executor);
-
-      if (currentGeneration.getKnownItemIDs() == null) {
-        loadedUserIDsForKnownItems = null;
-      } else {
-        loadedUserIDsForKnownItems =
-            loadKnownItemIDs(generationPrefix,
-                             modelDescription,
-                             currentGeneration,
-                             futures,
-                             executor);
-      }
-
-      loadIDMapping(generationPrefix, modelDescription, currentGeneration, futures, executor);
-
-      ExecutorUtils.getResults(futures);
-      log.info("Finished all load tasks");
-      
-    } finally {
-      ExecutorUtils.shutdownNowAndAwait(executor);
-    }
+    LoadedIDs loaded = loadFiles(generationID, currentGeneration);
 
     log.info("Pruning old entries...");
     synchronized (lockForRecent) {
-      removeNotUpdated(currentGeneration.getX().keySetIterator(),
-                       loadedUserIDs,
+      removeNotUpdated(currentGeneration.getX(),
+                       loaded.userIDs,
                        recentlyActiveUsers,
                        currentGeneration.getXLock().writeLock());
-      removeNotUpdated(currentGeneration.getY().keySetIterator(),
-                       loadedItemIDs,
+      removeNotUpdated(currentGeneration.getY(),
+                       loaded.itemIDs,
                        recentlyActiveItems,
                        currentGeneration.getYLock().writeLock());
-      if (loadedUserIDsForKnownItems != null && currentGeneration.getKnownItemIDs() != null) {
+      if (loaded.userIDsForKnownItems != null && currentGeneration.getKnownItemIDs() != null) {
         removeNotUpdated(currentGeneration.getKnownItemIDs().keySetIterator(),
-                         loadedUserIDsForKnownItems,
+                         loaded.userIDsForKnownItems,
                          recentlyActiveUsers,
                          currentGeneration.getKnownItemLock().writeLock());
       }
@@ -136,81 +138,145 @@ final class GenerationLoader {
              currentGeneration.getNumUsers(), currentGeneration.getNumItems());
   }
 
-  private static LongSet loadXOrY(String generationPrefix,
-                                    ALSModelDescription modelDescription,
-                                    boolean isX,
-                                    Generation generation,
-                                    Collection<Future<Object>> futures,
-                                    ExecutorService executor) throws IOException {
-
-    String xOrYPrefix = generationPrefix + (isX ? modelDescription.getXPath() : modelDescription.getYPath());
-    final LongSet loadedIDs = new LongSet();
-    
-    final Lock writeLock = isX ? generation.getXLock().writeLock() : generation.getYLock().writeLock();
-    final LongObjectMap<float[]> xOrYMatrix = isX ? generation.getX() : generation.getY();
-
-    for (final String xOrYFilePrefix : Store.get().list(xOrYPrefix, true)) {
-      futures.add(executor.submit(new Callable<Object>() {
-        @Override
-        public Void call() throws IOException {
-          for (String line : new FileLineIterable(Store.get().readFrom(xOrYFilePrefix))) {
-
-            int tab = line.indexOf('\t');
-            Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", xOrYFilePrefix, line);
-            long id = Long.parseLong(line.substring(0, tab));
-
-            float[] elements = DataUtils.readFeatureVector(line.substring(tab + 1));
-
-            writeLock.lock();
-            try {
-              xOrYMatrix.put(id, elements);
-              loadedIDs.add(id);
-            } finally {
-              writeLock.unlock();
-            }
-          }
-          log.info("Loaded feature vectors from {}", xOrYFilePrefix);
-          return null;
-        }
-      }));
+  /**
+   * Loads a generation's model into a new {@link Generation}, leaving the current one untouched so that it
+   * may continue to serve requests until the caller switches to the new one. Users and items that were
+   * recently active in the previous generation, but are not in the new model, are carried over before
+   * the new generation's state is computed. Those that become active after this returns are carried over
+   * by {@link #carryOverSinceLoad(Generation, Generation)}, which the caller must call when it switches.
+   *
+   * @param previousGeneration {@link Generation} currently being served, or {@code null} if none
+   * @return new, fully-loaded {@link Generation}
+   */
+  Generation loadNewModel(int generationID, Generation previousGeneration) throws IOException {
+
+    Generation newGeneration = new Generation();
+    loadFiles(generationID, newGeneration);
+
+    synchronized (lockForRecent) {
+      if (previousGeneration != null) {
+        log.info("Carrying over recently active entries...");
+        carryOverRecent(previousGeneration, newGeneration, false);
+      }
+      this.recentlyActiveItems.clear();
+      this.recentlyActiveUsers.clear();
     }
 
-    return loadedIDs;
+    log.info("Recomputing generation state...");
+    newGeneration.recomputeState();
+
+    log.info("All model elements loaded, {} users and {} items",
+             newGeneration.getNumUsers(), newGeneration.getNumItems());
+    return newGeneration;
   }
 
+  /**
+   * Carries over entries for users and items that became active in the previous {@link Generation} after
+   * {@link #loadNewModel(int, Generation)} carried over recent ones, and which the new one still lacks.
+   * They stay in the recently active sets, which {@link #loadNewModel(int, Generation)} cleared, so that the
+   * generation after carries them over too if its model lacks them. The caller must hold {@link #lockForRecent}
+   * from before this is called until the new {@link Generation} is published.
+   */
+  void carryOverSinceLoad(Generation previousGeneration, Generation newGeneration) {
+    Preconditions.checkState(Thread.holdsLock(lockForRecent));
+    if (previousGeneration != null) {
+      carryOverRecent(previousGeneration, newGeneration, true);
+    }
+  }
 
-  private static LongSet loadKnownItemIDs(String generationPrefix,
-                                            ALSModelDescription modelDescription,
-                                            final Generation generation,
-                                            Collection<Future<Object>> futures,
-                                            ExecutorService executor) throws IOException {
-    final LongSet loadedIDs = new LongSet();
-    String knownItemsPrefix = generationPrefix + modelDescription.getKnownItemsPath();
-    for (final String knownItemFilePrefix : Store.get().list(knownItemsPrefix, true)) {
-      futures.add(executor.submit(new Callable<Object>() {
-        @Override
-        public Void call() throws IOException {
-          for (String line : new FileLineIterable(Store.get().readFrom(knownItemFilePrefix))) {
-            int tab = line.indexOf('\t');
-            Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", knownItemFilePrefix, line);
-            long userID = Long.parseLong(line.substring(0, tab));
-            LongSet itemIDs = stringToSet(line.substring(tab + 1));
-            Lock writeLock = generation.getKnownItemLock().writeLock();
-            LongObjectMap<LongSet> knownItems = generation.getKnownItemIDs();
-            writeLock.lock();
-            try {
-              knownItems.put(userID, itemIDs);
-              loadedIDs.add(userID);
-            } finally {
-              writeLock.unlock();
-            }
+  private LoadedIDs loadFiles(int generationID, Generation generation) throws IOException {
+
+    File modelPMMLFile = File.createTempFile("oryx-model", ".pmml.gz");
+    modelPMMLFile.deleteOnExit();
+    IOUtils.delete(modelPMMLFile);
+
+    String generationPrefix = Namespaces.getInstanceGenerationPrefix(instanceDir, generationID);
+    String modelPMMLKey = generationPrefix + "model.pmml.gz";
+    Store.get().download(modelPMMLKey, modelPMMLFile);
+    log.info("Loading model description from {}", modelPMMLKey);
+
+    ALSModelDescription modelDescription = ALSModelDescription.read(modelPMMLFile);
+    IOUtils.delete(modelPMMLFile);
+
+    boolean binary = modelDescription.isBinary();
+    boolean loadKnownItems = generation.getKnownItemIDs() != null;
+    List<Part> parts = Lists.newArrayList();
+    addParts(parts, PartType.X, generationPrefix + modelDescription.getXPath(), binary);
+    addParts(parts, PartType.Y, generationPrefix + modelDescription.getYPath(), binary);
+    if (loadKnownItems) {
+      addParts(parts, PartType.KNOWN_ITEMS, generationPrefix + modelDescription.getKnownItemsPath(), binary);
+    }
+    addParts(parts, PartType.ID_MAPPING, generationPrefix + modelDescription.getIDMappingPath(), binary);
+
+    LoadedIDs loaded = new LoadedIDs(loadKnownItems);
+    BlockingQueue<Batch> batches = new ArrayBlockingQueue<Batch>(BATCHES_PER_PARSER * parseParallelism);
+    // Bounds local copies that wait to be parsed, so that the whole model need not fit on local disk
+    Semaphore localFilePermits = new Semaphore(fetchParallelism + 2 * parseParallelism);
+    // Fetching is limited separately, and usually more sharply, so as to not saturate the network link
+    ExecutorService fetchExecutor = ExecutorUtils.buildExecutor("LoadModel-fetch", fetchParallelism);
+    ExecutorService parseExecutor = ExecutorUtils.buildExecutor("LoadModel-parse", parseParallelism);
+    try {
+      for (Part part : parts) {
+        fetchExecutor.submit(new FetchTask(part, generation, batches, localFilePermits, parseExecutor));
+      }
+      commitBatches(batches, parts.size(), generation, loaded);
+      log.info("Finished all load tasks");
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(fetchExecutor);
+      ExecutorUtils.shutdownNowAndAwait(parseExecutor);
+    }
+    return loaded;
+  }
+
+  private static void addParts(Collection<Part> parts, PartType type, String prefix, boolean binary)
+      throws IOException {
+    for (String key : listFiles(prefix, binary)) {
+      parts.add(new Part(type, key, binary));
+    }
+  }
+
+  /**
+   * Applies batches in the order parse workers produce them, on this one thread, until all parts are done.
+   * Each batch takes the lock it needs once.
+   */
+  private static void commitBatches(BlockingQueue<Batch> batches,
+                                    int numParts,
+                                    Generation generation,
+                                    LoadedIDs loaded) throws IOException {
+    int partsDone = 0;
+    while (partsDone < numParts) {
+      Batch batch;
+      try {
+        batch = batches.take();
+      } catch (InterruptedException ie) {
+        throw new IllegalStateException(ie);
+      }
+      if (batch instanceof PartDone) {
+        PartDone done = (PartDone) batch;
+        if (done.failure != null) {
+          if (done.failure instanceof IOException) {
+            throw (IOException) done.failure;
           }
-          log.info("Loaded known items from {}", knownItemFilePrefix);
-          return null;
+          throw new IllegalStateException("Failed to load " + done.key, done.failure);
         }
-      }));
+        log.info("Loaded {}", done.key);
+        partsDone++;
+      } else {
+        batch.commit(generation, loaded);
+      }
+    }
+  }
+
+  /**
+   * @return false if interrupted while waiting for room, which happens only when loading is abandoned
+   */
+  private static boolean putBatch(BlockingQueue<Batch> batches, Batch batch) {
+    try {
+      batches.put(batch);
+      return true;
+    } catch (InterruptedException ignored) {
+      return false;
     }
-    return loadedIDs;
   }
 
   private static LongSet stringToSet(CharSequence values) {
@@ -238,32 +304,488 @@ final class GenerationLoader {
     }
   }
 
-  private static void loadIDMapping(String generationPrefix,
-                                    ALSModelDescription modelDescription,
-                                    final Generation generation,
-                                    Collection<Future<Object>> futures,
-                                    ExecutorService executor) throws IOException {
-    String idMappingPrefix = generationPrefix + modelDescription.getIDMappingPath();
-    for (final String prefix : Store.get().list(idMappingPrefix, true)) {
-      futures.add(executor.submit(new Callable<Object>() {
-        @Override
-        public Void call() throws IOException {
-          for (CharSequence line : new FileLineIterable(Store.get().readFrom(prefix))) {
-            String[] columns = DelimitedDataUtils.decode(line, ',');
-            long numericID = Long.parseLong(columns[0]);
-            String id = columns[1];
-            Lock writeLock = generation.getKnownItemLock().writeLock();
-            StringLongMapping idMapping = generation.getIDMapping();
-            writeLock.lock();
-            try {
-              idMapping.addMapping(id, numericID);
-            } finally {
-              writeLock.unlock();
+  private static void removeNotUpdated(FeatureMatrix matrix,
+                                       LongSet updated,
+                                       LongSet recentlyActive,
+                                       Lock writeLock) {
+    writeLock.lock();
+    try {
+      // Iterate backwards, since removal moves the last row into the removed one
+      for (int row = matrix.size() - 1; row >= 0; row--) {
+        long id = matrix.getID(row);
+        if (!updated.contains(id) && !recentlyActive.contains(id)) {
+          matrix.remove(id);
+        }
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Copies entries for recently active users and items that the new {@link Generation} does not contain from
+   * the previous one. The new {@link Generation} is not yet visible to other threads.
+   * Caller must hold {@link #lockForRecent}.
+   *
+   * @param stateComputed if true, the new {@link Generation}'s state has already been computed, and is
+   *  updated for what is carried over
+   */
+  private void carryOverRecent(Generation previous, Generation next, boolean stateComputed) {
+    int carriedUsers = 0;
+    Lock xReadLock = previous.getXLock().readLock();
+    Lock knownItemReadLock = previous.getKnownItemLock().readLock();
+    xReadLock.lock();
+    knownItemReadLock.lock();
+    try {
+      LongObjectMap<LongSet> previousKnownItemIDs = previous.getKnownItemIDs();
+      LongObjectMap<LongSet> nextKnownItemIDs = next.getKnownItemIDs();
+      LongPrimitiveIterator it = recentlyActiveUsers.iterator();
+      while (it.hasNext()) {
+        long userID = it.nextLong();
+        if (!next.getX().containsKey(userID) && copyRow(userID, previous.getX(), next.getX())) {
+          carriedUsers++;
+        }
+        if (previousKnownItemIDs != null && nextKnownItemIDs != null && !nextKnownItemIDs.containsKey(userID)) {
+          LongSet previousKnownItems = previousKnownItemIDs.get(userID);
+          if (previousKnownItems != null) {
+            // Copy, since the previous generation's set still takes writes, which must not change this one's
+            // without updating its popularity counts
+            LongSet knownItemIDs;
+            synchronized (previousKnownItems) {
+              knownItemIDs = previousKnownItems.clone();
             }
+            nextKnownItemIDs.put(userID, knownItemIDs);
+            ItemPopularityIndex itemPopularity = next.getItemPopularity();
+            if (stateComputed && itemPopularity != null) {
+              // The new generation is not current yet, so nothing rebuilds its counts meanwhile
+              LongPrimitiveIterator itemIt = knownItemIDs.iterator();
+              while (itemIt.hasNext()) {
+                itemPopularity.increment(itemIt.nextLong());
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      knownItemReadLock.unlock();
+      xReadLock.unlock();
+    }
+
+    int carriedItems = 0;
+    StringLongMapping previousMapping = previous.getIDMapping();
+    StringLongMapping nextMapping = next.getIDMapping();
+    Lock yReadLock = previous.getYLock().readLock();
+    yReadLock.lock();
+    try {
+      LongPrimitiveIterator it = recentlyActiveItems.iterator();
+      while (it.hasNext()) {
+        long itemID = it.nextLong();
+        if (!next.getY().containsKey(itemID) && copyRow(itemID, previous.getY(), next.getY())) {
+          String stringItemID = previousMapping.toString(itemID);
+          nextMapping.add(stringItemID);
+          if (stateComputed) {
+            // Otherwise the candidate filter is yet to be built from Y
+            next.getCandidateFilter().addItem(stringItemID);
           }
+          carriedItems++;
+        }
+      }
+    } finally {
+      yReadLock.unlock();
+    }
+    if (stateComputed && carriedItems > 0) {
+      next.getRepresentativeItems().itemChanged();
+    }
+
+    log.info("Carried over {} recent users and {} recent items", carriedUsers, carriedItems);
+  }
+
+  private static boolean copyRow(long id, FeatureMatrix from, FeatureMatrix to) {
+    float[] features = from.get(id);
+    if (features == null || (!to.isEmpty() && features.length != to.getNumFeatures())) {
+      return false;
+    }
+    to.put(id, features);
+    return true;
+  }
+
+  /**
+   * @param binary if true, list only part files of the binary model format
+   */
+  private static Iterable<String> listFiles(String prefix, boolean binary) throws IOException {
+    List<String> files = Store.get().list(prefix, true);
+    if (!binary) {
+      return files;
+    }
+    List<String> partFiles = Lists.newArrayListWithCapacity(files.size());
+    for (String file : files) {
+      if (BinaryModelFormat.isPartFile(file)) {
+        partFiles.add(file);
+      }
+    }
+    return partFiles;
+  }
+
+  /**
+   * Copies a model file to a local temp file, with the same suffix, so that a binary part can be memory-mapped
+   * and a compressed text file decompressed.
+   */
+  private static File fetch(String key) throws IOException {
+    int lastDot = key.lastIndexOf('.');
+    String suffix = lastDot > key.lastIndexOf('/') ? key.substring(lastDot) : null;
+    File localFile = File.createTempFile("oryx-model-part", suffix);
+    localFile.deleteOnExit();
+    IOUtils.delete(localFile);
+    Store.get().download(key, localFile);
+    return localFile;
+  }
+
+  /**
+   * IDs encountered while loading one generation's model files. Only the committing thread updates these.
+   */
+  private static final class LoadedIDs {
+    final LongSet userIDs;
+    final LongSet itemIDs;
+    final LongSet userIDsForKnownItems;
+    LoadedIDs(boolean loadKnownItems) {
+      userIDs = new LongSet();
+      itemIDs = new LongSet();
+      userIDsForKnownItems = loadKnownItems ? new LongSet() : null;
+    }
+  }
+
+  private enum PartType {
+    X,
+    Y,
+    KNOWN_ITEMS,
+    ID_MAPPING,
+  }
+
+  private static final class Part {
+    private final PartType type;
+    private final String key;
+    private final boolean binary;
+    private Part(PartType type, String key, boolean binary) {
+      this.type = type;
+      this.key = key;
+      this.binary = binary;
+    }
+  }
+
+  /**
+   * First stage: copies one file locally, then hands it to a parse worker.
+   */
+  private final class FetchTask implements Callable<Object> {
+
+    private final Part part;
+    private final Generation generation;
+    private final BlockingQueue<Batch> batches;
+    private final Semaphore localFilePermits;
+    private final ExecutorService parseExecutor;
+
+    private FetchTask(Part part,
+                      Generation generation,
+                      BlockingQueue<Batch> batches,
+                      Semaphore localFilePermits,
+                      ExecutorService parseExecutor) {
+      this.part = part;
+      this.generation = generation;
+      this.batches = batches;
+      this.localFilePermits = localFilePermits;
+      this.parseExecutor = parseExecutor;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      try {
+        localFilePermits.acquire();
+      } catch (InterruptedException ignored) {
+        // Loading was abandoned
+        return null;
+      }
+      File localFile;
+      try {
+        localFile = fetch(part.key);
+      } catch (Throwable t) {
+        localFilePermits.release();
+        putBatch(batches, new PartDone(part.key, t));
+        return null;
+      }
+      try {
+        parseExecutor.submit(new ParseTask(part, localFile, generation, batches, localFilePermits));
+      } catch (RejectedExecutionException ignored) {
+        // Loading was abandoned
+        IOUtils.delete(localFile);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Second stage: reads one local file into batches of rows for the committer.
+   */
+  private final class ParseTask implements Callable<Object> {
+
+    private final Part part;
+    private final File localFile;
+    private final Generation generation;
+    private final BlockingQueue<Batch> batches;
+    private final Semaphore localFilePermits;
+
+    private ParseTask(Part part,
+                      File localFile,
+                      Generation generation,
+                      BlockingQueue<Batch> batches,
+                      Semaphore localFilePermits) {
+      this.part = part;
+      this.localFile = localFile;
+      this.generation = generation;
+      this.batches = batches;
+      this.localFilePermits = localFilePermits;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      Throwable failure = null;
+      try {
+        boolean completed;
+        switch (part.type) {
+          case X:
+          case Y:
+            completed = parseFeatureVectors();
+            break;
+          case KNOWN_ITEMS:
+            completed = parseKnownItems();
+            break;
+          case ID_MAPPING:
+            parseIDMapping();
+            completed = true;
+            break;
+          default:
+            throw new IllegalStateException("Unknown part type " + part.type);
+        }
+        if (!completed) {
           return null;
         }
-      }));
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        IOUtils.delete(localFile);
+        localFilePermits.release();
+      }
+      putBatch(batches, new PartDone(part.key, failure));
+      return null;
+    }
+
+    /**
+     * @return false if loading was abandoned
+     */
+    private boolean parseFeatureVectors() throws IOException {
+      boolean isX = part.type == PartType.X;
+      FeatureVectorBatch batch = null;
+      if (part.binary) {
+        MappedFeatureVectors vectors = MappedFeatureVectors.open(localFile);
+        float[] elements = new float[vectors.getNumFeatures()];
+        for (int i = 0; i < vectors.size(); i++) {
+          if (batch == null) {
+            batch = new FeatureVectorBatch(isX, batchSize, elements.length);
+          }
+          vectors.getVector(i, elements);
+          batch.add(vectors.getID(i), elements);
+          if (batch.isFull()) {
+            if (!putBatch(batches, batch)) {
+              return false;
+            }
+            batch = null;
+          }
+        }
+      } else {
+        for (String line : new FileLineIterable(localFile)) {
+          int tab = line.indexOf('\t');
+          Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", part.key, line);
+          long id = Long.parseLong(line.substring(0, tab));
+          float[] elements = DataUtils.readFeatureVector(line.substring(tab + 1));
+          if (batch != null && batch.numFeatures != elements.length) {
+            if (!putBatch(batches, batch)) {
+              return false;
+            }
+            batch = null;
+          }
+          if (batch == null) {
+            batch = new FeatureVectorBatch(isX, batchSize, elements.length);
+          }
+          batch.add(id, elements);
+          if (batch.isFull()) {
+            if (!putBatch(batches, batch)) {
+              return false;
+            }
+            batch = null;
+          }
+        }
+      }
+      return batch == null || putBatch(batches, batch);
+    }
+
+    /**
+     * @return false if loading was abandoned
+     */
+    private boolean parseKnownItems() throws IOException {
+      KnownItemsBatch batch = new KnownItemsBatch(batchSize);
+      if (part.binary) {
+        MappedKnownItems knownItems = MappedKnownItems.open(localFile);
+        for (int i = 0; i < knownItems.size(); i++) {
+          batch.add(knownItems.getUserID(i), knownItems.getItemIDs(i));
+          if (batch.isFull()) {
+            if (!putBatch(batches, batch)) {
+              return false;
+            }
+            batch = new KnownItemsBatch(batchSize);
+          }
+        }
+      } else {
+        for (String line : new FileLineIterable(localFile)) {
+          int tab = line.indexOf('\t');
+          Preconditions.checkArgument(tab >= 0, "Bad input line in %s: %s", part.key, line);
+          long userID = Long.parseLong(line.substring(0, tab));
+          batch.add(userID, stringToSet(line.substring(tab + 1)));
+          if (batch.isFull()) {
+            if (!putBatch(batches, batch)) {
+              return false;
+            }
+            batch = new KnownItemsBatch(batchSize);
+          }
+        }
+      }
+      return batch.size == 0 || putBatch(batches, batch);
+    }
+
+    /**
+     * {@link StringLongMapping} serializes its own writes and needs no {@link Generation} lock, so mappings
+     * are added here rather than by the committer.
+     */
+    private void parseIDMapping() throws IOException {
+      StringLongMapping idMapping = generation.getIDMapping();
+      if (part.binary) {
+        MappedIDMapping.open(localFile).addTo(idMapping);
+      } else {
+        for (CharSequence line : new FileLineIterable(localFile)) {
+          String[] columns = DelimitedDataUtils.decode(line, ',');
+          idMapping.addMapping(columns[1], Long.parseLong(columns[0]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Rows parsed from a model file, to be added to a {@link Generation} together.
+   */
+  private abstract static class Batch {
+    /**
+     * Adds the rows to the generation, taking the lock they need once. Called only by the committing thread.
+     */
+    abstract void commit(Generation generation, LoadedIDs loaded);
+  }
+
+  private static final class FeatureVectorBatch extends Batch {
+
+    private final boolean isX;
+    private final int numFeatures;
+    private final long[] ids;
+    private final float[] data;
+    private int size;
+
+    private FeatureVectorBatch(boolean isX, int maxSize, int numFeatures) {
+      this.isX = isX;
+      this.numFeatures = numFeatures;
+      ids = new long[maxSize];
+      data = new float[maxSize * numFeatures];
+    }
+
+    private void add(long id, float[] elements) {
+      ids[size] = id;
+      System.arraycopy(elements, 0, data, size * numFeatures, numFeatures);
+      size++;
+    }
+
+    private boolean isFull() {
+      return size == ids.length;
+    }
+
+    @Override
+    void commit(Generation generation, LoadedIDs loaded) {
+      FeatureMatrix matrix = isX ? generation.getX() : generation.getY();
+      Lock writeLock = isX ? generation.getXLock().writeLock() : generation.getYLock().writeLock();
+      LongSet loadedIDs = isX ? loaded.userIDs : loaded.itemIDs;
+      writeLock.lock();
+      try {
+        if (matrix.getNumFeatures() != numFeatures && !matrix.isEmpty()) {
+          log.info("Number of features changed from {} to {}; discarding old feature vectors",
+                   matrix.getNumFeatures(), numFeatures);
+          matrix.clear();
+        }
+        for (int i = 0; i < size; i++) {
+          matrix.put(ids[i], data, i * numFeatures, numFeatures);
+          loadedIDs.add(ids[i]);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  private static final class KnownItemsBatch extends Batch {
+
+    private final long[] userIDs;
+    private final LongSet[] itemIDs;
+    private int size;
+
+    private KnownItemsBatch(int maxSize) {
+      userIDs = new long[maxSize];
+      itemIDs = new LongSet[maxSize];
+    }
+
+    private void add(long userID, LongSet userItemIDs) {
+      userIDs[size] = userID;
+      itemIDs[size] = userItemIDs;
+      size++;
+    }
+
+    private boolean isFull() {
+      return size == userIDs.length;
+    }
+
+    @Override
+    void commit(Generation generation, LoadedIDs loaded) {
+      Lock writeLock = generation.getKnownItemLock().writeLock();
+      LongObjectMap<LongSet> knownItems = generation.getKnownItemIDs();
+      writeLock.lock();
+      try {
+        for (int i = 0; i < size; i++) {
+          knownItems.put(userIDs[i], itemIDs[i]);
+          loaded.userIDsForKnownItems.add(userIDs[i]);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Marks that a part has been completely parsed, or failed.
+   */
+  private static final class PartDone extends Batch {
+
+    private final String key;
+    private final Throwable failure;
+
+    private PartDone(String key, Throwable failure) {
+      this.key = key;
+      this.failure = failure;
+    }
+
+    @Override
+    void commit(Generation generation, LoadedIDs loaded) {
+      // nothing to add
     }
   }
 
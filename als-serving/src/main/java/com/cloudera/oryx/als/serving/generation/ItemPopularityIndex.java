@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving.generation;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.util.FastMath;
+
+import com.cloudera.oryx.als.common.NumericIDValue;
+import com.cloudera.oryx.common.collection.LongFloatMap;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.collection.LongSet;
+import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+
+/**
+ * <p>Counts, for each item, how many users are associated to it, and caches the most popular items in order.
+ * Counts are computed from known items when a {@link Generation} is loaded, and then kept up to date as known items
+ * are added and removed, so that the most popular items need not be recounted on each request.</p>
+ *
+ * <p>The cached top items stay valid as long as no other item's count rises above the smallest count among them,
+ * and none of theirs falls below it. Only then are the top items selected again from all counts.</p>
+ *
+ * <p>Increments and decrements only take the lock of one of several stripes, chosen by item, and accumulate there
+ * until counts are next read, so that concurrent writers of different items rarely contend.</p>
+ *
+ * <p>This class is thread-safe. Synchronize on it while using {@link #getCounts()}. To change known items
+ * and record the change with {@link #increment(long)} or {@link #decrement(long)} atomically with respect to
+ * {@link #rebuild(LongObjectMap, Lock)}, hold the item's {@link #getLock(long)} while doing both; otherwise a
+ * rebuild may count the change once from the known items, and again when it is recorded.</p>
+ *
+ * @author Sean Owen
+ */
+public final class ItemPopularityIndex {
+
+  /** Minimum number of top items to cache */
+  private static final int MIN_TOP_SIZE = 100;
+  /** Number of stripes; a power of 2 */
+  private static final int NUM_STRIPES = 64;
+
+  /** Guards the corresponding pendingDeltas */
+  private final Lock[] stripeLocks;
+  /** Changes to counts of items in each stripe, not yet applied to counts */
+  private final LongFloatMap[] pendingDeltas;
+  private LongFloatMap counts;
+  private int maxTopSize;
+  private long[] topIDs;
+  private float[] topCounts;
+  private int topSize;
+  private final LongSet topIDSet;
+  /** Count of the last top item when the top items were selected */
+  private float topThreshold;
+  private boolean topValid;
+  private boolean topSorted;
+
+  public ItemPopularityIndex() {
+    stripeLocks = new Lock[NUM_STRIPES];
+    pendingDeltas = new LongFloatMap[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripeLocks[i] = new ReentrantLock();
+      pendingDeltas[i] = new LongFloatMap();
+    }
+    counts = new LongFloatMap();
+    maxTopSize = MIN_TOP_SIZE;
+    topIDSet = new LongSet();
+    topValid = false;
+  }
+
+  /**
+   * Recounts all items.
+   *
+   * @param knownItemIDs the item IDs already associated to each user
+   * @param knownItemReadLock read lock that should be acquired to access {@code knownItemIDs}
+   */
+  public synchronized void rebuild(LongObjectMap<LongSet> knownItemIDs, Lock knownItemReadLock) {
+    // Count holding all stripes' locks, so that no update made meanwhile is lost or counted twice
+    for (Lock stripeLock : stripeLocks) {
+      stripeLock.lock();
+    }
+    try {
+      LongFloatMap newCounts = new LongFloatMap();
+      knownItemReadLock.lock();
+      try {
+        for (LongObjectMap.MapEntry<LongSet> entry : knownItemIDs.entrySet()) {
+          LongSet itemIDs = entry.getValue();
+          synchronized (itemIDs) {
+            LongPrimitiveIterator it = itemIDs.iterator();
+            while (it.hasNext()) {
+              newCounts.increment(it.nextLong(), 1.0f);
+            }
+          }
+        }
+      } finally {
+        knownItemReadLock.unlock();
+      }
+      // Pending changes were made to known items before they were counted, so are included already
+      for (LongFloatMap deltas : pendingDeltas) {
+        deltas.clear();
+      }
+      counts = newCounts;
+      topValid = false;
+    } finally {
+      for (Lock stripeLock : stripeLocks) {
+        stripeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return lock to hold while changing an item's known items and recording the change with
+   *  {@link #increment(long)} or {@link #decrement(long)}, so that a rebuild sees both or neither
+   */
+  public Lock getLock(long itemID) {
+    return stripeLocks[stripe(itemID)];
+  }
+
+  /**
+   * Records that one more user is associated to an item.
+   */
+  public void increment(long itemID) {
+    addDelta(itemID, 1.0f);
+  }
+
+  /**
+   * Records that one less user is associated to an item.
+   */
+  public void decrement(long itemID) {
+    addDelta(itemID, -1.0f);
+  }
+
+  private void addDelta(long itemID, float delta) {
+    int stripe = stripe(itemID);
+    Lock stripeLock = stripeLocks[stripe];
+    stripeLock.lock();
+    try {
+      pendingDeltas[stripe].increment(itemID, delta);
+    } finally {
+      stripeLock.unlock();
+    }
+  }
+
+  private static int stripe(long itemID) {
+    return (int) (itemID ^ (itemID >>> 32)) & (NUM_STRIPES - 1);
+  }
+
+  /**
+   * Applies pending changes from all stripes to counts, and to the cached top items where they remain valid.
+   * Must be called while synchronized on this object.
+   */
+  private void applyPendingDeltas() {
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      Lock stripeLock = stripeLocks[i];
+      stripeLock.lock();
+      try {
+        LongFloatMap deltas = pendingDeltas[i];
+        if (!deltas.isEmpty()) {
+          for (LongFloatMap.MapEntry entry : deltas.entrySet()) {
+            applyDelta(entry.getKey(), entry.getValue());
+          }
+          deltas.clear();
+        }
+      } finally {
+        stripeLock.unlock();
+      }
+    }
+  }
+
+  private void applyDelta(long itemID, float delta) {
+    if (delta == 0.0f) {
+      return;
+    }
+    float count = counts.get(itemID);
+    if (Float.isNaN(count)) {
+      count = delta;
+    } else {
+      count += delta;
+    }
+    if (count <= 0.0f) {
+      counts.remove(itemID);
+    } else {
+      counts.put(itemID, count);
+    }
+    if (!topValid) {
+      return;
+    }
+    int index = indexInTop(itemID);
+    if (index >= 0) {
+      if (count <= 0.0f || count < topThreshold) {
+        topValid = false;
+      } else {
+        topCounts[index] = count;
+        topSorted = false;
+      }
+    } else if (count > topThreshold) {
+      topValid = false;
+    }
+  }
+
+  /**
+   * @param howMany number of most popular items to return
+   * @return (up to) the {@code howMany} most popular items, with their counts, most popular first
+   */
+  public synchronized List<NumericIDValue> getMostPopular(int howMany) {
+    Preconditions.checkArgument(howMany > 0, "howMany must be positive");
+    applyPendingDeltas();
+    if (howMany > maxTopSize) {
+      maxTopSize = howMany;
+      topValid = false;
+    }
+    if (!topValid) {
+      selectTop();
+    } else if (!topSorted) {
+      sortTop(topIDs, topCounts, topSize);
+      topSorted = true;
+    }
+    int resultSize = FastMath.min(howMany, topSize);
+    List<NumericIDValue> result = Lists.newArrayListWithCapacity(resultSize);
+    for (int i = 0; i < resultSize; i++) {
+      result.add(new NumericIDValue(topIDs[i], topCounts[i]));
+    }
+    return result;
+  }
+
+  /**
+   * @return count of users associated to each item. Synchronize on this object while using it.
+   */
+  public synchronized LongFloatMap getCounts() {
+    applyPendingDeltas();
+    return counts;
+  }
+
+  private int indexInTop(long itemID) {
+    if (!topIDSet.contains(itemID)) {
+      return -1;
+    }
+    long[] theTopIDs = topIDs;
+    for (int i = 0; i < topSize; i++) {
+      if (theTopIDs[i] == itemID) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void selectTop() {
+    // Min-heap of the largest counts seen so far
+    long[] heapIDs = new long[maxTopSize];
+    float[] heapCounts = new float[maxTopSize];
+    int heapSize = 0;
+    for (LongFloatMap.MapEntry entry : counts.entrySet()) {
+      float count = entry.getValue();
+      if (heapSize < maxTopSize) {
+        int i = heapSize++;
+        while (i > 0) {
+          int parent = (i - 1) >> 1;
+          if (heapCounts[parent] <= count) {
+            break;
+          }
+          heapIDs[i] = heapIDs[parent];
+          heapCounts[i] = heapCounts[parent];
+          i = parent;
+        }
+        heapIDs[i] = entry.getKey();
+        heapCounts[i] = count;
+      } else if (count > heapCounts[0]) {
+        siftDown(heapIDs, heapCounts, heapSize, entry.getKey(), count);
+      }
+    }
+
+    // Heap sort: repeatedly moving the smallest to the end leaves counts in descending order
+    for (int end = heapSize - 1; end > 0; end--) {
+      long id = heapIDs[end];
+      float count = heapCounts[end];
+      heapIDs[end] = heapIDs[0];
+      heapCounts[end] = heapCounts[0];
+      siftDown(heapIDs, heapCounts, end, id, count);
+    }
+
+    topIDs = heapIDs;
+    topCounts = heapCounts;
+    topSize = heapSize;
+    topIDSet.clear();
+    for (int i = 0; i < heapSize; i++) {
+      topIDSet.add(heapIDs[i]);
+    }
+    // With fewer items than top slots, any other item belongs in the top
+    topThreshold = heapSize < maxTopSize ? 0.0f : heapCounts[heapSize - 1];
+    topValid = true;
+    topSorted = true;
+  }
+
+  /**
+   * Replaces the root of a min-heap of counts with the given entry, and restores heap order.
+   */
+  private static void siftDown(long[] heapIDs, float[] heapCounts, int heapSize, long id, float count) {
+    int i = 0;
+    int half = heapSize >> 1;
+    while (i < half) {
+      int child = (i << 1) + 1;
+      int right = child + 1;
+      if (right < heapSize && heapCounts[right] < heapCounts[child]) {
+        child = right;
+      }
+      if (heapCounts[child] >= count) {
+        break;
+      }
+      heapIDs[i] = heapIDs[child];
+      heapCounts[i] = heapCounts[child];
+      i = child;
+    }
+    heapIDs[i] = id;
+    heapCounts[i] = count;
+  }
+
+  /**
+   * Sorts by count, descending. The arrays are short, and usually nearly sorted already.
+   */
+  private static void sortTop(long[] ids, float[] values, int size) {
+    for (int i = 1; i < size; i++) {
+      long id = ids[i];
+      float value = values[i];
+      int j = i - 1;
+      while (j >= 0 && values[j] < value) {
+        ids[j + 1] = ids[j];
+        values[j + 1] = values[j];
+        j--;
+      }
+      ids[j + 1] = id;
+      values[j + 1] = value;
+    }
+  }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving.generation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.util.FastMath;
+
+import com.cloudera.oryx.als.common.StringLongMapping;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+
+/**
+ * <p>Holds, for each feature, the item whose vector has the largest value for that feature, which is the item
+ * most strongly associated to the feature. These are selected when a {@link Generation} is loaded, rather than
+ * by scanning all item vectors once per feature on each request.</p>
+ *
+ * <p>Item vectors change as new preferences are folded in. Callers report each changed item vector with
+ * {@link #itemChanged()}. Once enough have changed, the next call to {@link #get()} selects items again, but
+ * not more often than a minimum interval, so that a steady stream of updates does not cause a rescan on every
+ * request. Until then, the items selected before are returned.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author Sean Owen
+ */
+public final class RepresentativeItems {
+
+  /** Below this many rows per thread, selecting in parallel is not worth starting threads */
+  private static final int MIN_ROWS_PER_TASK = 10000;
+
+  private final FeatureMatrix Y;
+  private final Lock yReadLock;
+  private final StringLongMapping idMapping;
+  private final int refreshAfterChanges;
+  private final long minRefreshIntervalNanos;
+  private final int parallelism;
+  private volatile List<String> items;
+  private volatile long lastRebuildNanos;
+  private final AtomicInteger changesSinceRebuild;
+  private final AtomicBoolean rebuilding;
+
+  /**
+   * @param Y item-feature matrix
+   * @param yReadLock read lock that should be acquired to access {@code Y}
+   * @param idMapping mapping from item IDs back to their original string form
+   * @param refreshAfterChanges number of changed item vectors after which items are selected again
+   * @param minRefreshInterval minimum time between selections, after the first
+   * @param unit unit of {@code minRefreshInterval}
+   * @param parallelism number of threads that select items from large matrices
+   */
+  public RepresentativeItems(FeatureMatrix Y,
+                             Lock yReadLock,
+                             StringLongMapping idMapping,
+                             int refreshAfterChanges,
+                             long minRefreshInterval,
+                             TimeUnit unit,
+                             int parallelism) {
+    Preconditions.checkArgument(refreshAfterChanges > 0, "refreshAfterChanges must be positive");
+    Preconditions.checkArgument(minRefreshInterval >= 0, "minRefreshInterval must be nonnegative");
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    this.Y = Y;
+    this.yReadLock = yReadLock;
+    this.idMapping = idMapping;
+    this.refreshAfterChanges = refreshAfterChanges;
+    this.minRefreshIntervalNanos = unit.toNanos(minRefreshInterval);
+    this.parallelism = parallelism;
+    items = Collections.emptyList();
+    changesSinceRebuild = new AtomicInteger();
+    rebuilding = new AtomicBoolean();
+  }
+
+  /**
+   * Selects items again from all item vectors.
+   */
+  public void rebuild() {
+    // Changes made while selecting are counted toward the next selection
+    changesSinceRebuild.set(0);
+    lastRebuildNanos = System.nanoTime();
+    List<String> newItems;
+    yReadLock.lock();
+    try {
+      int[] rows = selectRows(Y, parallelism);
+      newItems = Lists.newArrayListWithCapacity(rows.length);
+      for (int row : rows) {
+        newItems.add(row < 0 ? null : idMapping.toString(Y.getID(row)));
+      }
+    } finally {
+      yReadLock.unlock();
+    }
+    items = Collections.unmodifiableList(newItems);
+  }
+
+  /**
+   * Records that one item vector has changed or been added.
+   */
+  public void itemChanged() {
+    changesSinceRebuild.incrementAndGet();
+  }
+
+  /**
+   * @return for each feature, the ID of the item with the largest value for the feature, or {@code null} if
+   *  there is none. The list is empty if there are no item vectors.
+   */
+  public List<String> get() {
+    if (changesSinceRebuild.get() >= refreshAfterChanges &&
+        System.nanoTime() - lastRebuildNanos >= minRefreshIntervalNanos &&
+        rebuilding.compareAndSet(false, true)) {
+      // Only one caller selects again; others keep using the current items meanwhile
+      try {
+        rebuild();
+      } finally {
+        rebuilding.set(false);
+      }
+    }
+    return items;
+  }
+
+  /**
+   * @return for each feature, the row with the largest value for the feature, or -1 if there is none. Of equal
+   *  values, the first row's is chosen. Assumes the read lock is held.
+   */
+  private static int[] selectRows(final FeatureMatrix Y, int parallelism) {
+    int numRows = Y.size();
+    if (numRows == 0) {
+      return new int[0];
+    }
+    final int numFeatures = Y.getNumFeatures();
+    int numTasks = FastMath.max(1, FastMath.min(parallelism, numRows / MIN_ROWS_PER_TASK));
+    if (numTasks == 1) {
+      return selectRows(Y.getData(), numFeatures, 0, numRows).bestRows;
+    }
+
+    final float[] data = Y.getData();
+    int rowsPerTask = (numRows + numTasks - 1) / numTasks;
+    Collection<Future<BlockResult>> futures = Lists.newArrayListWithCapacity(numTasks);
+    ExecutorService executor = ExecutorUtils.buildExecutor("RepresentativeItems", numTasks);
+    List<BlockResult> blockResults;
+    try {
+      for (int fromRow = 0; fromRow < numRows; fromRow += rowsPerTask) {
+        final int from = fromRow;
+        final int to = FastMath.min(numRows, fromRow + rowsPerTask);
+        futures.add(executor.submit(new Callable<BlockResult>() {
+          @Override
+          public BlockResult call() {
+            return selectRows(data, numFeatures, from, to);
+          }
+        }));
+      }
+      blockResults = ExecutorUtils.getResults(futures);
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+
+    // Blocks are in row order, so only a strictly larger value in a later block replaces an earlier one
+    BlockResult merged = blockResults.get(0);
+    for (BlockResult blockResult : blockResults.subList(1, blockResults.size())) {
+      for (int f = 0; f < numFeatures; f++) {
+        if (blockResult.bestValues[f] > merged.bestValues[f]) {
+          merged.bestValues[f] = blockResult.bestValues[f];
+          merged.bestRows[f] = blockResult.bestRows[f];
+        }
+      }
+    }
+    return merged.bestRows;
+  }
+
+  /**
+   * Reads rows in order, once, finding the largest value of all features together.
+   */
+  private static BlockResult selectRows(float[] data, int numFeatures, int fromRow, int toRow) {
+    int[] bestRows = new int[numFeatures];
+    Arrays.fill(bestRows, -1);
+    float[] bestValues = new float[numFeatures];
+    Arrays.fill(bestValues, Float.NEGATIVE_INFINITY);
+    int offset = fromRow * numFeatures;
+    for (int row = fromRow; row < toRow; row++) {
+      for (int f = 0; f < numFeatures; f++) {
+        float value = data[offset + f];
+        if (value > bestValues[f]) {
+          bestValues[f] = value;
+          bestRows[f] = row;
+        }
+      }
+      offset += numFeatures;
+    }
+    return new BlockResult(bestRows, bestValues);
+  }
+
+  private static final class BlockResult {
+    private final int[] bestRows;
+    private final float[] bestValues;
+    private BlockResult(int[] bestRows, float[] bestValues) {
+      this.bestRows = bestRows;
+      this.bestValues = bestValues;
+    }
+  }
+
+}
@@ -92,6 +92,7 @@ public final class ALSServingInitListener extends AbstractOryxServingInitListene
   public void addServlets(Context context) {
     addServlet(context, new RecommendServlet(), "/recommend/*");
     addServlet(context, new RecommendToManyServlet(), "/recommendToMany/*");
+    addServlet(context, new RecommendToBatchServlet(), "/recommendToBatch/*");
     addServlet(context, new RecommendToAnonymousServlet(), "/recommendToAnonymous/*");
     addServlet(context, new SimilarityServlet(), "/similarity/*");
     addServlet(context, new SimilarityToItemServlet(), "/similarityToItem/*");
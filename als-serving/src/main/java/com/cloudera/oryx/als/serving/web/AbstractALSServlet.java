@@ -25,14 +25,13 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
-import java.io.Writer;
 import java.util.Collections;
 import java.util.List;
 
 import com.cloudera.oryx.als.common.IDValue;
 import com.cloudera.oryx.als.common.OryxRecommender;
 import com.cloudera.oryx.als.common.rescorer.RescorerProvider;
-import com.cloudera.oryx.common.io.DelimitedDataUtils;
+import com.cloudera.oryx.common.io.BufferedValueWriter;
 import com.cloudera.oryx.serving.web.AbstractOryxServlet;
 
 /**
@@ -68,7 +67,7 @@ public abstract class AbstractALSServlet extends AbstractOryxServlet {
     return rescorerProvider;
   }
 
-  private static int getHowMany(ServletRequest request) {
+  static int getHowMany(ServletRequest request) {
     String howManyString = request.getParameter("howMany");
     if (howManyString == null) {
       return DEFAULT_HOW_MANY;
@@ -128,35 +127,37 @@ public abstract class AbstractALSServlet extends AbstractOryxServlet {
       }
     }
 
-    Writer writer = response.getWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(response.getWriter());
     switch (determineResponseType(request)) {
       case JSON:
-        writer.write('[');
+        out.write('[');
         boolean first = true;
         for (IDValue item : items) {
           if (first) {
             first = false;
           } else {
-            writer.write(',');
+            out.write(',');
           }
-          writer.write("[\"");
-          writer.write(item.getID());
-          // Not using DelimitedDataUtils as JSON needs comma
-          writer.write("\",");
-          writer.write(Float.toString(item.getValue()));
-          writer.write(']');
+          out.write('[');
+          out.writeJSONString(item.getID());
+          out.write(',');
+          out.write(item.getValue());
+          out.write(']');
         }
-        writer.write("]\n");
+        out.write("]\n");
         break;
       case DELIMITED:
         for (IDValue item : items) {
-          writer.write(DelimitedDataUtils.encode(',', item.getID(), Float.toString(item.getValue())));
-          writer.write('\n');
+          out.writeDelimited(item.getID(), ',');
+          out.write(',');
+          out.write(item.getValue());
+          out.write('\n');
         }
         break;
       default:
         throw new IllegalStateException("Unknown response type");
     }
+    out.finish();
   }
 
 }
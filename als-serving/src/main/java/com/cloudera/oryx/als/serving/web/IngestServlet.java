@@ -23,6 +23,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipInputStream;
 import javax.servlet.ServletException;
@@ -102,6 +103,9 @@ public final class IngestServlet extends AbstractALSServlet {
     } catch (NoSuchElementException nsee) {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, nsee.toString());
       return;
+    } catch (RejectedExecutionException ree) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ree.toString());
+      return;
     }
 
     String referer = request.getHeader(HttpHeaders.REFERER);
@@ -19,6 +19,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,6 +35,9 @@ import com.cloudera.oryx.als.common.OryxRecommender;
  * <p>Also responds to a DELETE request to the same path, with the same defaults. This corresponds
  * to calling {@link OryxRecommender#removePreference(String, String)} instead.</p>
  *
+ * <p>Responds with 503 Service Unavailable if the preference can't be queued for writing because the
+ * queue is full.</p>
+ *
  * @author Sean Owen
  */
 public final class PreferenceServlet extends AbstractALSServlet {
@@ -73,7 +77,11 @@ public final class PreferenceServlet extends AbstractALSServlet {
     }
 
     OryxRecommender recommender = getRecommender();
-    recommender.setPreference(userID, itemID, prefValue);
+    try {
+      recommender.setPreference(userID, itemID, prefValue);
+    } catch (RejectedExecutionException ree) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ree.toString());
+    }
   }
 
   @Override
@@ -95,7 +103,11 @@ public final class PreferenceServlet extends AbstractALSServlet {
     }
 
     OryxRecommender recommender = getRecommender();
-    recommender.removePreference(userID, itemID);
+    try {
+      recommender.removePreference(userID, itemID);
+    } catch (RejectedExecutionException ree) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ree.toString());
+    }
   }
 
   private static float readValue(ServletRequest request) throws IOException {
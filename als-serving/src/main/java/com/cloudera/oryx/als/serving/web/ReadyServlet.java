@@ -22,7 +22,7 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * <p>Responds to a HEAD or GET request to {@code /ready} and in turn calls
  * {@link com.cloudera.oryx.als.common.OryxRecommender#isReady()}. Returns "OK" or "Unavailable" status depending on
- * whether the recommender is ready.</p>
+ * whether the recommender is ready, which is once a model has been loaded and warmed up.</p>
  *
  * @author Sean Owen
  */
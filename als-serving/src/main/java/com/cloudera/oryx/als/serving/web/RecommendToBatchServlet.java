@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.als.serving.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.util.FastMath;
+
+import com.cloudera.oryx.als.common.IDValue;
+import com.cloudera.oryx.als.common.NotReadyException;
+import com.cloudera.oryx.als.common.OryxRecommender;
+import com.cloudera.oryx.als.common.rescorer.Rescorer;
+import com.cloudera.oryx.common.io.BufferedValueWriter;
+import com.cloudera.oryx.common.io.DelimitedDataUtils;
+
+/**
+ * <p>Responds to a POST request to {@code /recommendToBatch(?howMany=n)(&considerKnownItems=true|false)}
+ * and in turn calls {@link OryxRecommender#recommendToBatch(String[], int[], boolean[])}. Each line of the
+ * request body is of the form {@code userID(,howMany(,considerKnownItems))}. {@code howMany} and
+ * {@code considerKnownItems} default to the values of the request parameters of the same name, which
+ * themselves default as in {@link RecommendServlet}. {@link Rescorer}s are not applied.</p>
+ *
+ * <p>Users are recommended to in groups, and output for each group is written as soon as it is ready, so the whole
+ * request, and the recommender's readiness, are checked first. Unknown users are skipped. CSV output contains one
+ * recommendation per line, and each line is of the form {@code userID,itemID,strength}, like {@code 1,325,0.53}. JSON
+ * output is an array with one element per user, like {@code ["1",[["325",0.53],...]]}.</p>
+ *
+ * @author Sean Owen
+ */
+public final class RecommendToBatchServlet extends AbstractALSServlet {
+
+  /** Number of users whose recommendations are computed and output together */
+  private static final int USERS_PER_WRITE = 1000;
+
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+    int defaultHowMany;
+    try {
+      defaultHowMany = getHowMany(request);
+    } catch (IllegalArgumentException iae) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, iae.toString());
+      return;
+    }
+    boolean defaultConsiderKnownItems = getConsiderKnownItems(request);
+
+    List<String> userIDs = Lists.newArrayList();
+    List<Integer> howManys = Lists.newArrayList();
+    List<Boolean> considerKnownItemses = Lists.newArrayList();
+    BufferedReader reader = new BufferedReader(request.getReader());
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] columns = DelimitedDataUtils.decode(line);
+        userIDs.add(columns[0]);
+        int howMany = columns.length > 1 ? Integer.parseInt(columns[1]) : defaultHowMany;
+        if (howMany <= 0) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST, "howMany must be positive");
+          return;
+        }
+        howManys.add(howMany);
+        considerKnownItemses.add(columns.length > 2 ? Boolean.valueOf(columns[2]) : defaultConsiderKnownItems);
+      }
+    } catch (IllegalArgumentException iae) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, iae.toString());
+      return;
+    } finally {
+      reader.close();
+    }
+
+    OryxRecommender recommender = getRecommender();
+    // Check what can be checked, including readiness, before output starts, after which an error can no longer
+    // be sent
+    try {
+      boolean hasKnownItems = recommender.hasKnownItems();
+      if (considerKnownItemses.contains(Boolean.FALSE) && !hasKnownItems) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                           "Can't ignore known items because no known items available");
+        return;
+      }
+    } catch (NotReadyException nre) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, nre.toString());
+      return;
+    }
+
+    boolean json = determineResponseType(request) == ResponseContentType.JSON;
+    if (json) {
+      response.setContentType("application/json");
+    }
+    BufferedValueWriter out = null;
+    boolean first = true;
+    int numUsers = userIDs.size();
+    for (int start = 0; start < numUsers; start += USERS_PER_WRITE) {
+      int end = FastMath.min(numUsers, start + USERS_PER_WRITE);
+      String[] someUserIDs = userIDs.subList(start, end).toArray(new String[end - start]);
+      int[] someHowManys = new int[end - start];
+      boolean[] someConsiderKnownItems = new boolean[end - start];
+      for (int i = start; i < end; i++) {
+        someHowManys[i - start] = howManys.get(i);
+        someConsiderKnownItems[i - start] = considerKnownItemses.get(i);
+      }
+
+      List<List<IDValue>> results;
+      try {
+        results = recommender.recommendToBatch(someUserIDs, someHowManys, someConsiderKnownItems);
+      } catch (NotReadyException nre) {
+        // Only if the model was lost since the check above
+        abortOrSendError(response, out, HttpServletResponse.SC_SERVICE_UNAVAILABLE, nre);
+        return;
+      } catch (UnsupportedOperationException uoe) {
+        abortOrSendError(response, out, HttpServletResponse.SC_BAD_REQUEST, uoe);
+        return;
+      }
+
+      if (out == null) {
+        out = BufferedValueWriter.forWriter(response.getWriter());
+        if (json) {
+          out.write('[');
+        }
+      }
+      for (int i = 0; i < someUserIDs.length; i++) {
+        List<IDValue> items = results.get(i);
+        if (items == null) {
+          continue;
+        }
+        if (json) {
+          if (first) {
+            first = false;
+          } else {
+            out.write(',');
+          }
+          writeJSON(out, someUserIDs[i], items);
+        } else {
+          for (IDValue item : items) {
+            out.writeDelimited(someUserIDs[i], ',');
+            out.write(',');
+            out.writeDelimited(item.getID(), ',');
+            out.write(',');
+            out.write(item.getValue());
+            out.write('\n');
+          }
+        }
+      }
+      out.flush();
+    }
+
+    if (out == null) {
+      out = BufferedValueWriter.forWriter(response.getWriter());
+      if (json) {
+        out.write('[');
+      }
+    }
+    if (json) {
+      out.write("]\n");
+    }
+    out.finish();
+  }
+
+  /**
+   * Sends an error if no output has been written yet. Otherwise the response is already committed, so it is
+   * abandoned by throwing an exception, which leaves the client with truncated output.
+   */
+  private static void abortOrSendError(HttpServletResponse response,
+                                       BufferedValueWriter out,
+                                       int status,
+                                       Exception e) throws IOException {
+    if (out == null) {
+      response.sendError(status, e.toString());
+    } else {
+      throw new IOException("Can't complete batch after output started", e);
+    }
+  }
+
+  private static void writeJSON(BufferedValueWriter out, String userID, Iterable<IDValue> items)
+      throws IOException {
+    out.write('[');
+    out.writeJSONString(userID);
+    out.write(",[");
+    boolean first = true;
+    for (IDValue item : items) {
+      if (first) {
+        first = false;
+      } else {
+        out.write(',');
+      }
+      out.write('[');
+      out.writeJSONString(item.getID());
+      out.write(',');
+      out.write(item.getValue());
+      out.write(']');
+    }
+    out.write("]]");
+  }
+
+}
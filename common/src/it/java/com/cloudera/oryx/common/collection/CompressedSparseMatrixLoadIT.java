@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares heap footprint and row iteration throughput of a {@link CompressedSparseMatrix} and its
+ * transpose versus the {@code LongObjectMap<LongFloatMap>} by row and by column holding the same entries.
+ *
+ * @author Sean Owen
+ */
+public final class CompressedSparseMatrixLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(CompressedSparseMatrixLoadIT.class);
+
+  private static final int NUM_ROWS = 200000;
+  private static final int NUM_COLUMNS = 50000;
+  private static final int ENTRIES_PER_ROW = 25;
+  private static final int SCANS = 10;
+
+  @Test
+  public void testHeapAndIteration() {
+    RandomGenerator random = RandomManager.getRandom();
+    long[] rowIDs = new long[NUM_ROWS * ENTRIES_PER_ROW];
+    long[] columnIDs = new long[rowIDs.length];
+    float[] values = new float[rowIDs.length];
+    for (int i = 0; i < rowIDs.length; i++) {
+      rowIDs[i] = random.nextInt(NUM_ROWS);
+      columnIDs[i] = random.nextInt(NUM_COLUMNS);
+      values[i] = random.nextFloat();
+    }
+
+    long before = usedHeap();
+    LongObjectMap<LongFloatMap> RbyRow = new LongObjectMap<LongFloatMap>();
+    LongObjectMap<LongFloatMap> RbyColumn = new LongObjectMap<LongFloatMap>();
+    for (int i = 0; i < rowIDs.length; i++) {
+      addTo(RbyRow, rowIDs[i], columnIDs[i], values[i]);
+      addTo(RbyColumn, columnIDs[i], rowIDs[i], values[i]);
+    }
+    long mapBytes = usedHeap() - before;
+
+    before = usedHeap();
+    Stopwatch stopwatch = new Stopwatch().start();
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    for (int i = 0; i < rowIDs.length; i++) {
+      builder.add(rowIDs[i], columnIDs[i], values[i]);
+    }
+    CompressedSparseMatrix R = builder.build(0.0f);
+    CompressedSparseMatrix RT = R.transpose();
+    long buildMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+    builder = null; // Only the built matrices count
+    long matrixBytes = usedHeap() - before;
+    assertEquals(RbyRow.size(), R.getNumRows());
+    assertEquals(RbyColumn.size(), RT.getNumRows());
+
+    log.info("Heap for {} entries by row and column: LongObjectMap of LongFloatMap {}MB, " +
+             "CompressedSparseMatrix {}MB (built in {}ms)",
+             R.size(), mapBytes / 1000000, matrixBytes / 1000000, buildMS);
+
+    // Warm up both paths, then time
+    double mapTotal = scanMap(RbyRow) + scanMap(RbyColumn);
+    double matrixTotal = scanMatrix(R) + scanMatrix(RT);
+    assertEquals(mapTotal, matrixTotal, 1.0e-6 * mapTotal);
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanMap(RbyRow);
+      scanMap(RbyColumn);
+    }
+    long mapMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanMatrix(R);
+      scanMatrix(RT);
+    }
+    long matrixMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    log.info("{} scans by row and column: LongObjectMap of LongFloatMap {}ms, CompressedSparseMatrix {}ms",
+             SCANS, mapMS, matrixMS);
+
+    assertTrue(2 * matrixBytes < mapBytes);
+  }
+
+  private static void addTo(LongObjectMap<LongFloatMap> matrix, long rowID, long columnID, float value) {
+    LongFloatMap row = matrix.get(rowID);
+    if (row == null) {
+      row = new LongFloatMap();
+      matrix.put(rowID, row);
+    }
+    row.increment(columnID, value);
+  }
+
+  private static double scanMap(LongObjectMap<LongFloatMap> matrix) {
+    double total = 0.0;
+    for (LongObjectMap.MapEntry<LongFloatMap> row : matrix.entrySet()) {
+      for (LongFloatMap.MapEntry entry : row.getValue().entrySet()) {
+        total += entry.getValue();
+      }
+    }
+    return total;
+  }
+
+  private static double scanMatrix(CompressedSparseMatrix matrix) {
+    double total = 0.0;
+    int numRows = matrix.getNumRows();
+    for (int row = 0; row < numRows; row++) {
+      for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+        total += matrix.valueAt(i);
+      }
+    }
+    return total;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
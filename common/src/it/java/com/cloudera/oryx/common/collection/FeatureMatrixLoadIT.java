@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.math.SimpleVectorMath;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * Compares heap footprint and scan throughput of {@link FeatureMatrix} versus a
+ * {@code LongObjectMap<float[]>} holding the same vectors. Also compares cosine similarity scans using
+ * the norms {@link FeatureMatrix} keeps against computing each row's norm during the scan.
+ *
+ * @author Sean Owen
+ */
+public final class FeatureMatrixLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(FeatureMatrixLoadIT.class);
+
+  private static final int NUM_FEATURES = 50;
+  private static final int NUM_ITEMS = 1000000;
+  private static final int SCANS = 20;
+
+  @Test
+  public void testHeapAndScan() {
+    RandomGenerator random = RandomManager.getRandom();
+    float[] query = RandomUtils.randomUnitVector(NUM_FEATURES, random);
+
+    long before = usedHeap();
+    LongObjectMap<float[]> map = new LongObjectMap<float[]>();
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      map.put(random.nextLong(), RandomUtils.randomUnitVector(NUM_FEATURES, random));
+    }
+    long mapBytes = usedHeap() - before;
+
+    before = usedHeap();
+    FeatureMatrix matrix = new FeatureMatrix(NUM_FEATURES, map.size());
+    for (LongObjectMap.MapEntry<float[]> entry : map.entrySet()) {
+      matrix.put(entry.getKey(), entry.getValue());
+    }
+    long matrixBytes = usedHeap() - before;
+
+    log.info("Heap for {} x {}: LongObjectMap {}MB, FeatureMatrix {}MB",
+             NUM_ITEMS, NUM_FEATURES, mapBytes / 1000000, matrixBytes / 1000000);
+
+    // Warm up both paths, then time
+    double mapTotal = scanMap(map, query);
+    double matrixTotal = scanMatrix(matrix, query);
+    assertEquals(mapTotal, matrixTotal, 1.0e-3);
+
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanMap(map, query);
+    }
+    long mapMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanMatrix(matrix, query);
+    }
+    long matrixMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    log.info("{} scans: LongObjectMap {}ms ({} rows/ms), FeatureMatrix {}ms ({} rows/ms)",
+             SCANS,
+             mapMS, (long) SCANS * NUM_ITEMS / (mapMS + 1),
+             matrixMS, (long) SCANS * NUM_ITEMS / (matrixMS + 1));
+
+    // Footprint is dominated by the vectors themselves; the slab saves per-array headers and
+    // pointers, so at least should not be meaningfully larger
+    assertTrue(matrixBytes < 1.1 * mapBytes);
+  }
+
+  @Test
+  public void testCosineScan() {
+    RandomGenerator random = RandomManager.getRandom();
+    float[] query = RandomUtils.randomUnitVector(NUM_FEATURES, random);
+    FeatureMatrix matrix = new FeatureMatrix(NUM_FEATURES, NUM_ITEMS);
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      matrix.put(i, RandomUtils.randomUnitVector(NUM_FEATURES, random));
+    }
+    double queryNorm = SimpleVectorMath.norm(query);
+
+    // Warm up both paths, then time
+    assertEquals(scanCosineComputingNorms(matrix, query, queryNorm),
+                 scanCosine(matrix, query, queryNorm));
+
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanCosineComputingNorms(matrix, query, queryNorm);
+    }
+    long computingMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < SCANS; i++) {
+      scanCosine(matrix, query, queryNorm);
+    }
+    long cachedMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+    log.info("{} cosine scans: computing norms {}ms ({}ns/row), cached norms {}ms ({}ns/row)",
+             SCANS,
+             computingMS, computingMS * 1000000L / ((long) SCANS * NUM_ITEMS),
+             cachedMS, cachedMS * 1000000L / ((long) SCANS * NUM_ITEMS));
+  }
+
+  private static double scanMap(LongObjectMap<float[]> map, float[] query) {
+    double total = 0.0;
+    for (LongObjectMap.MapEntry<float[]> entry : map.entrySet()) {
+      total += SimpleVectorMath.dot(entry.getValue(), query);
+    }
+    return total;
+  }
+
+  private static double scanMatrix(FeatureMatrix matrix, float[] query) {
+    double total = 0.0;
+    int size = matrix.size();
+    for (int row = 0; row < size; row++) {
+      total += matrix.dot(row, query);
+    }
+    return total;
+  }
+
+  private static double scanCosine(FeatureMatrix matrix, float[] query, double queryNorm) {
+    double total = 0.0;
+    int size = matrix.size();
+    for (int row = 0; row < size; row++) {
+      total += matrix.dot(row, query) / (matrix.norm(row) * queryNorm);
+    }
+    return total;
+  }
+
+  /**
+   * As similarity scans did before norms were kept in {@link FeatureMatrix}.
+   */
+  private static double scanCosineComputingNorms(FeatureMatrix matrix, float[] query, double queryNorm) {
+    double total = 0.0;
+    int size = matrix.size();
+    float[] data = matrix.getData();
+    for (int row = 0; row < size; row++) {
+      int offset = row * NUM_FEATURES;
+      double normSquared = 0.0;
+      for (int i = offset; i < offset + NUM_FEATURES; i++) {
+        float f = data[i];
+        normSquared += f * f;
+      }
+      total += matrix.dot(row, query) / (FastMath.sqrt(normSquared) * queryNorm);
+    }
+    return total;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the throughput and allocation of writing responses of several hundred IDs and values as CSV
+ * through {@link BufferedValueWriter}, and by writing a {@link String} for each value and line, as servlets
+ * did before.
+ *
+ * @author Sean Owen
+ */
+public final class BufferedValueWriterLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BufferedValueWriterLoadIT.class);
+
+  private static final int ITEMS_PER_RESPONSE = 500;
+  private static final int NUM_RESPONSES = 20000;
+
+  @Test
+  public void testCSVOutput() throws IOException {
+    RandomGenerator random = RandomManager.getRandom();
+    String[] ids = new String[ITEMS_PER_RESPONSE];
+    float[] values = new float[ITEMS_PER_RESPONSE];
+    for (int i = 0; i < ITEMS_PER_RESPONSE; i++) {
+      ids[i] = Long.toString(random.nextLong());
+      values[i] = random.nextFloat();
+    }
+    CountingWriter writer = new CountingWriter();
+
+    // Warm up
+    for (int i = 0; i < NUM_RESPONSES / 10; i++) {
+      writeStrings(writer, ids, values);
+      writeBuffered(writer, ids, values);
+    }
+
+    writer.count = 0;
+    long allocatedBefore = allocatedBytes();
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < NUM_RESPONSES; i++) {
+      writeStrings(writer, ids, values);
+    }
+    long stringsNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    long stringsAllocated = (allocatedBytes() - allocatedBefore) / NUM_RESPONSES;
+    long stringsChars = writer.count;
+
+    writer.count = 0;
+    allocatedBefore = allocatedBytes();
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < NUM_RESPONSES; i++) {
+      writeBuffered(writer, ids, values);
+    }
+    long bufferedNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    long bufferedAllocated = (allocatedBytes() - allocatedBefore) / NUM_RESPONSES;
+    assertEquals(stringsChars, writer.count);
+
+    log.info("Strings: {} MB/s, {} bytes allocated/response", megabytesPerSec(stringsChars, stringsNanos),
+             stringsAllocated);
+    log.info("Buffered: {} MB/s, {} bytes allocated/response", megabytesPerSec(writer.count, bufferedNanos),
+             bufferedAllocated);
+    if (stringsAllocated > 0) {
+      assertTrue(bufferedAllocated < stringsAllocated);
+    }
+  }
+
+  private static void writeStrings(Writer writer, String[] ids, float[] values) throws IOException {
+    for (int i = 0; i < ids.length; i++) {
+      writer.write(DelimitedDataUtils.encode(',', ids[i], Float.toString(values[i])));
+      writer.write('\n');
+    }
+  }
+
+  private static void writeBuffered(Writer writer, String[] ids, float[] values) throws IOException {
+    BufferedValueWriter out = BufferedValueWriter.forWriter(writer);
+    for (int i = 0; i < ids.length; i++) {
+      out.writeDelimited(ids[i], ',');
+      out.write(',');
+      out.write(values[i]);
+      out.write('\n');
+    }
+    out.finish();
+  }
+
+  /**
+   * @return bytes allocated by this thread so far, or 0 if the JVM does not report it
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0L;
+  }
+
+  private static long megabytesPerSec(long chars, long nanos) {
+    return chars * TimeUnit.SECONDS.toNanos(1) / nanos / (1 << 20);
+  }
+
+  /**
+   * Counts and discards chars written, as a stand-in for a servlet's writer.
+   */
+  private static final class CountingWriter extends Writer {
+
+    private long count;
+
+    @Override
+    public void write(int c) {
+      count++;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      count += length;
+    }
+
+    @Override
+    public void write(String s) {
+      count += s.length();
+    }
+
+    @Override
+    public void write(String s, int offset, int length) {
+      count += length;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the time per row of local ALS to build and solve its normal equations with {@link CholeskySolver},
+ * and with a copy of a {@link RealMatrix} solved by {@link MatrixUtils#getSolver(RealMatrix)}, at several
+ * numbers of features.
+ *
+ * @author Sean Owen
+ */
+public final class CholeskySolverLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(CholeskySolverLoadIT.class);
+
+  private static final int[] NUM_FEATURES = { 10, 30, 50, 100, 200 };
+  /** Nonzero values in each row of the input */
+  private static final int VALUES_PER_ROW = 20;
+  /** Multiply-adds of work per timed loop, from which its number of rows is derived */
+  private static final long WORK = 2000000000L;
+  private static final double LAMBDA = 0.1;
+
+  @Test
+  public void testSolvers() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int numFeatures : NUM_FEATURES) {
+      float[][] vectors = new float[VALUES_PER_ROW][numFeatures];
+      for (float[] vector : vectors) {
+        for (int i = 0; i < numFeatures; i++) {
+          vector[i] = (float) random.nextGaussian();
+        }
+      }
+      GramMatrixAccumulator accumulator = new GramMatrixAccumulator(numFeatures);
+      for (int i = 0; i < 10 * numFeatures; i++) {
+        float[] vector = new float[numFeatures];
+        for (int j = 0; j < numFeatures; j++) {
+          vector[j] = (float) random.nextGaussian();
+        }
+        accumulator.add(vector);
+      }
+      RealMatrix YTY = accumulator.toMatrix();
+      CholeskySolver solver = new CholeskySolver(numFeatures);
+      int rows = (int) (WORK / ((long) numFeatures * numFeatures * (VALUES_PER_ROW + numFeatures)));
+
+      // Warm up and check
+      float[] expected = solveWithRealMatrix(YTY, vectors);
+      float[] actual = solveWithCholesky(YTY, vectors, solver);
+      for (int i = 0; i < numFeatures; i++) {
+        assertEquals(expected[i], actual[i], 1.0e-4f * (1.0f + FastMath.abs(expected[i])));
+      }
+      for (int i = 0; i < rows; i++) {
+        solveWithRealMatrix(YTY, vectors);
+        solveWithCholesky(YTY, vectors, solver);
+      }
+
+      float check = 0.0f;
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (int i = 0; i < rows; i++) {
+        check += solveWithRealMatrix(YTY, vectors)[0];
+      }
+      long realMatrixNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+      stopwatch = new Stopwatch().start();
+      for (int i = 0; i < rows; i++) {
+        check += solveWithCholesky(YTY, vectors, solver)[0];
+      }
+      long choleskyNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+
+      log.info("{} features: {} vs {} us/row (RealMatrix vs Cholesky) [{}]",
+               numFeatures,
+               String.format("%.2f", realMatrixNanos / 1000.0 / rows),
+               String.format("%.2f", choleskyNanos / 1000.0 / rows),
+               check);
+    }
+  }
+
+  /**
+   * As local ALS computed a row before {@link CholeskySolver}.
+   */
+  private static float[] solveWithRealMatrix(RealMatrix YTY, float[][] vectors) {
+    int numFeatures = YTY.getRowDimension();
+    RealMatrix Wu = YTY.copy();
+    double[][] WuData = MatrixUtils.accessMatrixDataDirectly(Wu);
+    double[] YTCupu = new double[numFeatures];
+    for (float[] vector : vectors) {
+      for (int row = 0; row < numFeatures; row++) {
+        double[] WuDataRow = WuData[row];
+        for (int col = 0; col < numFeatures; col++) {
+          WuDataRow[col] += vector[row] * vector[col];
+        }
+        YTCupu[row] += 2.0 * vector[row];
+      }
+    }
+    for (int x = 0; x < numFeatures; x++) {
+      WuData[x][x] += LAMBDA * vectors.length;
+    }
+    return MatrixUtils.getSolver(Wu).solveDToF(YTCupu);
+  }
+
+  /**
+   * As local ALS computes a row now.
+   */
+  private static float[] solveWithCholesky(RealMatrix YTY, float[][] vectors, CholeskySolver solver) {
+    int numFeatures = solver.getDimension();
+    double[][] YTYData = MatrixUtils.accessMatrixDataDirectly(YTY);
+    double[] WuData = solver.getA();
+    double[] YTCupu = solver.getB();
+    for (int row = 0; row < numFeatures; row++) {
+      System.arraycopy(YTYData[row], row, WuData, row * numFeatures + row, numFeatures - row);
+      YTCupu[row] = 0.0;
+    }
+    for (float[] vector : vectors) {
+      for (int row = 0; row < numFeatures; row++) {
+        int rowOffset = row * numFeatures;
+        for (int col = row; col < numFeatures; col++) {
+          WuData[rowOffset + col] += vector[row] * vector[col];
+        }
+        YTCupu[row] += 2.0 * vector[row];
+      }
+    }
+    for (int x = 0; x < numFeatures; x++) {
+      WuData[x * numFeatures + x] += LAMBDA * vectors.length;
+    }
+    return solver.solveDToF();
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the speed of {@link MatrixUtils#transposeTimesSelf(LongObjectMap, int)} and
+ * {@link MatrixUtils#transposeTimesSelf(FeatureMatrix, int)}, at several levels of parallelism, with the
+ * simple loops they replaced, and checks that they agree.
+ *
+ * @author Sean Owen
+ */
+public final class GramMatrixLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(GramMatrixLoadIT.class);
+
+  private static final int NUM_ROWS = 1000000;
+  private static final int NUM_FEATURES = 50;
+  private static final int[] PARALLELISM = { 1, 2, 4, 8 };
+  private static final int ITERATIONS = 3;
+
+  @Test
+  public void testGramMatrix() {
+    RandomGenerator random = RandomManager.getRandom();
+    FeatureMatrix featureMatrix = new FeatureMatrix(NUM_FEATURES, NUM_ROWS);
+    LongObjectMap<float[]> map = new LongObjectMap<float[]>(NUM_ROWS);
+    for (int i = 0; i < NUM_ROWS; i++) {
+      float[] vector = new float[NUM_FEATURES];
+      for (int j = 0; j < NUM_FEATURES; j++) {
+        vector[j] = (float) random.nextGaussian();
+      }
+      featureMatrix.put(i, vector);
+      map.put(i, vector);
+    }
+
+    RealMatrix expected = null;
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < ITERATIONS; i++) {
+      expected = simpleTransposeTimesSelf(map);
+    }
+    log.info("Simple, map: {}ms", stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS) / ITERATIONS);
+    stopwatch = new Stopwatch().start();
+    for (int i = 0; i < ITERATIONS; i++) {
+      expected = simpleTransposeTimesSelf(featureMatrix);
+    }
+    long simpleNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+    log.info("Simple, matrix: {}ms", TimeUnit.NANOSECONDS.toMillis(simpleNanos) / ITERATIONS);
+
+    for (int parallelism : PARALLELISM) {
+      RealMatrix actual = null;
+      stopwatch = new Stopwatch().start();
+      for (int i = 0; i < ITERATIONS; i++) {
+        actual = MatrixUtils.transposeTimesSelf(map, parallelism);
+      }
+      log.info("Parallelism {}, map: {}ms",
+               parallelism, stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS) / ITERATIONS);
+      assertClose(expected, actual);
+      stopwatch = new Stopwatch().start();
+      for (int i = 0; i < ITERATIONS; i++) {
+        actual = MatrixUtils.transposeTimesSelf(featureMatrix, parallelism);
+      }
+      long nanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+      log.info("Parallelism {}, matrix: {}ms", parallelism, TimeUnit.NANOSECONDS.toMillis(nanos) / ITERATIONS);
+      assertClose(expected, actual);
+      if (parallelism == 1) {
+        // Timings are noisy; one thread should at least not be slower than the simple loop
+        assertTrue(nanos < simpleNanos);
+      }
+    }
+  }
+
+  private static RealMatrix simpleTransposeTimesSelf(LongObjectMap<float[]> M) {
+    RealMatrix result = new Array2DRowRealMatrix(NUM_FEATURES, NUM_FEATURES);
+    for (float[] vector : M.values()) {
+      for (int row = 0; row < NUM_FEATURES; row++) {
+        float rowValue = vector[row];
+        for (int col = 0; col < NUM_FEATURES; col++) {
+          result.addToEntry(row, col, rowValue * vector[col]);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static RealMatrix simpleTransposeTimesSelf(FeatureMatrix M) {
+    double[][] result = new double[NUM_FEATURES][NUM_FEATURES];
+    float[] data = M.getData();
+    for (int rowIndex = 0; rowIndex < M.size(); rowIndex++) {
+      int offset = rowIndex * NUM_FEATURES;
+      for (int row = 0; row < NUM_FEATURES; row++) {
+        double rowValue = data[offset + row];
+        double[] resultRow = result[row];
+        for (int col = 0; col < NUM_FEATURES; col++) {
+          resultRow[col] += rowValue * data[offset + col];
+        }
+      }
+    }
+    return new Array2DRowRealMatrix(result, false);
+  }
+
+  private static void assertClose(RealMatrix expected, RealMatrix actual) {
+    for (int i = 0; i < NUM_FEATURES; i++) {
+      for (int j = 0; j < NUM_FEATURES; j++) {
+        double expectedValue = expected.getEntry(i, j);
+        assertEquals(expectedValue, actual.getEntry(i, j), 1.0e-9 * (NUM_ROWS + FastMath.abs(expectedValue)));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Compares the speed of {@link VectorKernels} with simple loops, for a block of queries against all rows of a
+ * matrix, at several numbers of features.
+ *
+ * @author Sean Owen
+ */
+public final class VectorKernelsLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(VectorKernelsLoadIT.class);
+
+  private static final int[] NUM_FEATURES = { 10, 30, 50, 100, 200 };
+  /** Values in the matrix; rows are this divided by the number of features */
+  private static final int MATRIX_SIZE = 2000000;
+  private static final int NUM_QUERIES = 32;
+  private static final int ROWS_PER_BLOCK = 64;
+  private static final int ITERATIONS = 5;
+
+  @Test
+  public void testKernels() {
+    RandomGenerator random = RandomManager.getRandom();
+    float[] data = new float[MATRIX_SIZE];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (float) random.nextGaussian();
+    }
+
+    for (int numFeatures : NUM_FEATURES) {
+      int numRows = MATRIX_SIZE / numFeatures;
+      float[][] queries = new float[NUM_QUERIES][numFeatures];
+      for (float[] query : queries) {
+        for (int i = 0; i < numFeatures; i++) {
+          query[i] = (float) random.nextGaussian();
+        }
+      }
+      double[] result = new double[NUM_QUERIES * ROWS_PER_BLOCK];
+
+      // Warm up
+      double check = 0.0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        check += simpleMany(data, numRows, queries) + kernelMany(data, numRows, queries, result);
+      }
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (int i = 0; i < ITERATIONS; i++) {
+        check += simpleMany(data, numRows, queries);
+      }
+      long simpleManyNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+      stopwatch = new Stopwatch().start();
+      for (int i = 0; i < ITERATIONS; i++) {
+        check += kernelMany(data, numRows, queries, result);
+      }
+      long kernelManyNanos = stopwatch.stop().elapsedTime(TimeUnit.NANOSECONDS);
+
+      long dots = (long) ITERATIONS * numRows;
+      log.info("{} features: {} queries {} vs {} ns/dot (simple vs kernel) [{}]",
+               numFeatures,
+               NUM_QUERIES,
+               String.format("%.2f", (double) simpleManyNanos / (dots * NUM_QUERIES)),
+               String.format("%.2f", (double) kernelManyNanos / (dots * NUM_QUERIES)),
+               check > 0.0);
+    }
+  }
+
+  private static double simpleOne(float[] data, int numRows, float[] query) {
+    int numFeatures = query.length;
+    double total = 0.0;
+    for (int r = 0; r < numRows; r++) {
+      int offset = r * numFeatures;
+      double dot = 0.0;
+      for (int i = 0; i < numFeatures; i++) {
+        dot += data[offset + i] * query[i];
+      }
+      total += dot;
+    }
+    return total;
+  }
+
+  private static double simpleMany(float[] data, int numRows, float[][] queries) {
+    double total = 0.0;
+    for (float[] query : queries) {
+      total += simpleOne(data, numRows, query);
+    }
+    return total;
+  }
+
+  private static double kernelMany(float[] data, int numRows, float[][] queries, double[] result) {
+    double total = 0.0;
+    for (int from = 0; from < numRows; from += ROWS_PER_BLOCK) {
+      int to = FastMath.min(numRows, from + ROWS_PER_BLOCK);
+      VectorKernels.dotRows(queries, queries.length, data, from, to, result);
+      int n = queries.length * (to - from);
+      for (int i = 0; i < n; i++) {
+        total += result[i];
+      }
+    }
+    return total;
+  }
+
+}
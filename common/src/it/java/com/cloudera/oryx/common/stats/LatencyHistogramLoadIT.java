@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.stats;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+
+/**
+ * Compares the throughput of recording latencies from 64 threads at once into one {@link LatencyHistogram},
+ * and into a {@link RunningStatistics} and {@link RunningStatisticsPerTime} under a lock, as servlet statistics
+ * were recorded before.
+ *
+ * @author Sean Owen
+ */
+public final class LatencyHistogramLoadIT extends OryxTest {
+
+  private static final Logger log = LoggerFactory.getLogger(LatencyHistogramLoadIT.class);
+
+  private static final int NUM_THREADS = 64;
+  private static final int RECORDS_PER_THREAD = 200000;
+
+  @Test
+  public void testContention() {
+    ExecutorService executor = ExecutorUtils.buildExecutor("LatencyHistogramLoadIT", NUM_THREADS);
+    try {
+      // Warm up
+      runLocked(executor);
+      runHistogram(executor);
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      runLocked(executor);
+      long lockedMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+      stopwatch = new Stopwatch().start();
+      runHistogram(executor);
+      long histogramMS = stopwatch.stop().elapsedTime(TimeUnit.MILLISECONDS);
+
+      long totalRecords = (long) NUM_THREADS * RECORDS_PER_THREAD;
+      log.info("{} threads: {} records/ms locked, {} records/ms histogram",
+               NUM_THREADS, totalRecords / FastMath.max(1L, lockedMS), totalRecords / FastMath.max(1L, histogramMS));
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+  }
+
+  private static void runLocked(ExecutorService executor) {
+    final RunningStatistics allTime = new RunningStatistics();
+    final RunningStatisticsPerTime lastHour = new RunningStatisticsPerTime(TimeUnit.HOURS);
+    final Object lock = new Object();
+    run(executor, new Recorder() {
+      @Override
+      public void record(long latencyNanos) {
+        synchronized (lock) {
+          allTime.increment(latencyNanos);
+          lastHour.increment(latencyNanos);
+        }
+      }
+    });
+    assertEquals((long) NUM_THREADS * RECORDS_PER_THREAD, allTime.getCount());
+  }
+
+  private static void runHistogram(ExecutorService executor) {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    run(executor, new Recorder() {
+      @Override
+      public void record(long latencyNanos) {
+        histogram.record(latencyNanos);
+      }
+    });
+    assertEquals((long) NUM_THREADS * RECORDS_PER_THREAD, histogram.snapshot().getCount());
+  }
+
+  private static void run(ExecutorService executor, final Recorder recorder) {
+    Collection<Future<Object>> futures = Lists.newArrayListWithCapacity(NUM_THREADS);
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Void call() {
+          for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+            recorder.record(1000L * (1 + (i + thread) % 5000));
+          }
+          return null;
+        }
+      }));
+    }
+    ExecutorUtils.getResults(futures);
+  }
+
+  private interface Recorder {
+    void record(long latencyNanos);
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>A thread-safe cache holding at most a given number of entries, which evicts the least recently used entries
+ * beyond that. Entries may also expire a fixed time after they were added. Keys are spread across several
+ * independently locked segments, each of which is least-recently-used ordered on its own, so eviction order
+ * is only approximately least-recently-used overall.</p>
+ *
+ * <p>Counts of hits, misses and evictions, including expirations, are kept.</p>
+ *
+ * @author Sean Owen
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class BoundedCache<K,V> {
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private final Segment<K,V>[] segments;
+  private final long ttlNanos;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong evictions;
+
+  /**
+   * @param maxSize maximum number of entries
+   * @param ttl time after which an entry expires; nonpositive means entries do not expire
+   * @param unit unit of {@code ttl}
+   */
+  @SuppressWarnings("unchecked")
+  public BoundedCache(int maxSize, long ttl, TimeUnit unit) {
+    Preconditions.checkArgument(maxSize > 0, "maxSize must be positive: %s", maxSize);
+    int numSegments = FastMath.min(MAX_SEGMENTS, maxSize);
+    segments = new Segment[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      // Spread any remainder over the first segments
+      int segmentMaxSize = maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0);
+      segments[i] = new Segment<K,V>(segmentMaxSize, this);
+    }
+    ttlNanos = ttl > 0 ? unit.toNanos(ttl) : 0L;
+    hits = new AtomicLong();
+    misses = new AtomicLong();
+    evictions = new AtomicLong();
+  }
+
+  /**
+   * @return value for the key, or {@code null} if not present or expired
+   */
+  public V get(K key) {
+    Segment<K,V> segment = segmentFor(key);
+    Entry<V> entry;
+    synchronized (segment) {
+      entry = segment.get(key);
+      if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdNanos > ttlNanos) {
+        segment.remove(key);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.value;
+  }
+
+  /**
+   * Adds or replaces the value for a key, possibly evicting the least recently used entry in its segment.
+   */
+  public void put(K key, V value) {
+    Preconditions.checkNotNull(value);
+    Entry<V> entry = new Entry<V>(value, System.nanoTime());
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, entry);
+    }
+  }
+
+  public void invalidate(K key) {
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.remove(key);
+    }
+  }
+
+  public void invalidateAll() {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * @return current number of entries, including any that have expired but not yet been removed
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private Segment<K,V> segmentFor(K key) {
+    int hash = key.hashCode();
+    // Spread high bits down, as HashMap does, since segments are chosen by the low bits
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return segments[(hash & 0x7FFFFFFF) % segments.length];
+  }
+
+  @Override
+  public String toString() {
+    return "BoundedCache[size:" + size() + ", hits:" + hits + ", misses:" + misses +
+        ", evictions:" + evictions + ']';
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long createdNanos;
+    private Entry(V value, long createdNanos) {
+      this.value = value;
+      this.createdNanos = createdNanos;
+    }
+  }
+
+  private static final class Segment<K,V> extends LinkedHashMap<K,Entry<V>> {
+
+    private final int maxSize;
+    private final BoundedCache<K,V> cache;
+
+    private Segment(int maxSize, BoundedCache<K,V> cache) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+      this.cache = cache;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,Entry<V>> eldest) {
+      if (size() > maxSize) {
+        cache.evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+import com.cloudera.oryx.common.iterator.LongPrimitiveArrayIterator;
+import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+
+/**
+ * <p>An immutable sparse matrix of {@code float} values with {@code long} row and column IDs, in compressed
+ * sparse row form. It serves the same purpose as a {@code LongObjectMap<LongFloatMap>} keyed by row, but
+ * has no per-row object or hash table: row and column IDs are each kept once, in sorted arrays whose indices are
+ * the dense row and column numbers, and the entries of all rows are stored contiguously, row by row, in one
+ * {@code int[]} of column numbers and one {@code float[]} of values. This takes several times less memory, and
+ * iterating over rows reads memory sequentially.</p>
+ *
+ * <p>Entries of row {@code r} are at indices {@link #rowStart(int)} inclusive to {@link #rowEnd(int)} exclusive,
+ * in ascending order of column. Every row and column has at least one entry. {@link #transpose()} gives the same
+ * matrix in compressed sparse column form, keyed by column.</p>
+ *
+ * <p>Instances are made with a {@link Builder}.</p>
+ *
+ * @author Sean Owen
+ */
+public final class CompressedSparseMatrix {
+
+  private final long[] rowIDs;
+  private final long[] columnIDs;
+  // Entries of row r are at [rowStarts[r], rowStarts[r+1])
+  private final int[] rowStarts;
+  private final int[] columns;
+  private final float[] values;
+
+  private CompressedSparseMatrix(long[] rowIDs, long[] columnIDs, int[] rowStarts, int[] columns, float[] values) {
+    this.rowIDs = rowIDs;
+    this.columnIDs = columnIDs;
+    this.rowStarts = rowStarts;
+    this.columns = columns;
+    this.values = values;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getNumRows() {
+    return rowIDs.length;
+  }
+
+  public int getNumColumns() {
+    return columnIDs.length;
+  }
+
+  /**
+   * @return number of entries
+   */
+  public int size() {
+    return values.length;
+  }
+
+  public boolean isEmpty() {
+    return values.length == 0;
+  }
+
+  public long getRowID(int row) {
+    return rowIDs[row];
+  }
+
+  public long getColumnID(int column) {
+    return columnIDs[column];
+  }
+
+  /**
+   * @return row with the given ID, or a negative value if there is none
+   */
+  public int indexOfRow(long rowID) {
+    return Arrays.binarySearch(rowIDs, rowID);
+  }
+
+  /**
+   * @return column with the given ID, or a negative value if there is none
+   */
+  public int indexOfColumn(long columnID) {
+    return Arrays.binarySearch(columnIDs, columnID);
+  }
+
+  /**
+   * @return row IDs, in ascending order
+   */
+  public LongPrimitiveIterator rowIDIterator() {
+    return new LongPrimitiveArrayIterator(rowIDs);
+  }
+
+  /**
+   * @return column IDs, in ascending order
+   */
+  public LongPrimitiveIterator columnIDIterator() {
+    return new LongPrimitiveArrayIterator(columnIDs);
+  }
+
+  /**
+   * @return index of the first entry of the row
+   */
+  public int rowStart(int row) {
+    return rowStarts[row];
+  }
+
+  /**
+   * @return index after the last entry of the row
+   */
+  public int rowEnd(int row) {
+    return rowStarts[row + 1];
+  }
+
+  /**
+   * @return number of entries in the row
+   */
+  public int rowSize(int row) {
+    return rowStarts[row + 1] - rowStarts[row];
+  }
+
+  /**
+   * @return column of the entry at the given index
+   */
+  public int columnAt(int index) {
+    return columns[index];
+  }
+
+  /**
+   * @return value of the entry at the given index
+   */
+  public float valueAt(int index) {
+    return values[index];
+  }
+
+  /**
+   * @return the same matrix with rows and columns exchanged; that is, this matrix in compressed sparse
+   *  column form
+   */
+  public CompressedSparseMatrix transpose() {
+    int numColumns = columnIDs.length;
+    // Counting sort of entries by column. Rows are visited in order, so each column's rows stay sorted.
+    int[] columnStarts = new int[numColumns + 1];
+    for (int column : columns) {
+      columnStarts[column + 1]++;
+    }
+    for (int c = 0; c < numColumns; c++) {
+      columnStarts[c + 1] += columnStarts[c];
+    }
+    int[] next = Arrays.copyOf(columnStarts, numColumns);
+    int[] rows = new int[columns.length];
+    float[] transposedValues = new float[values.length];
+    for (int r = 0; r < rowIDs.length; r++) {
+      for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+        int to = next[columns[i]]++;
+        rows[to] = r;
+        transposedValues[to] = values[i];
+      }
+    }
+    return new CompressedSparseMatrix(columnIDs, rowIDs, columnStarts, rows, transposedValues);
+  }
+
+  /**
+   * @param zeroThreshold entries whose absolute value is less than this are left out
+   * @return this matrix without those entries, and without rows and columns left with no entries
+   */
+  public CompressedSparseMatrix prune(float zeroThreshold) {
+    if (!(zeroThreshold > 0.0f)) {
+      return this;
+    }
+    long[] newRowIDs = rowIDs.clone();
+    long[] newColumnIDs = columnIDs.clone();
+    int[] rowSizes = new int[rowIDs.length + 1];
+    int[] newColumns = new int[columns.length];
+    float[] newValues = new float[values.length];
+    boolean[] columnUsed = new boolean[columnIDs.length];
+    int numEntries = 0;
+    for (int r = 0; r < rowIDs.length; r++) {
+      for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+        float value = values[i];
+        if (!(FastMath.abs(value) < zeroThreshold)) {
+          int column = columns[i];
+          newColumns[numEntries] = column;
+          newValues[numEntries] = value;
+          columnUsed[column] = true;
+          rowSizes[r + 1]++;
+          numEntries++;
+        }
+      }
+    }
+    return compact(newRowIDs, newColumnIDs, rowSizes, newColumns, newValues, numEntries, columnUsed);
+  }
+
+  /**
+   * Drops rows and columns with no entries, renumbering the rest. Arguments are overwritten.
+   *
+   * @param rowIDs all row IDs, sorted
+   * @param columnIDs all column IDs, sorted
+   * @param rowSizes number of entries in row {@code r} at index {@code r + 1}; index 0 is 0
+   * @param columns column of each entry, row by row
+   * @param values value of each entry
+   * @param numEntries number of entries
+   * @param columnUsed whether each column has an entry
+   */
+  private static CompressedSparseMatrix compact(long[] rowIDs,
+                                                long[] columnIDs,
+                                                int[] rowSizes,
+                                                int[] columns,
+                                                float[] values,
+                                                int numEntries,
+                                                boolean[] columnUsed) {
+    int[] newColumns = new int[columnIDs.length];
+    int numUsedColumns = 0;
+    for (int c = 0; c < columnIDs.length; c++) {
+      if (columnUsed[c]) {
+        columnIDs[numUsedColumns] = columnIDs[c];
+        newColumns[c] = numUsedColumns++;
+      }
+    }
+    for (int e = 0; e < numEntries; e++) {
+      columns[e] = newColumns[columns[e]];
+    }
+    // Sizes become starts in place; row r moves down to numUsedRows <= r
+    int[] rowStarts = rowSizes;
+    int numUsedRows = 0;
+    for (int r = 0; r < rowIDs.length; r++) {
+      int rowSize = rowSizes[r + 1];
+      if (rowSize > 0) {
+        rowIDs[numUsedRows] = rowIDs[r];
+        rowStarts[numUsedRows + 1] = rowStarts[numUsedRows] + rowSize;
+        numUsedRows++;
+      }
+    }
+    return new CompressedSparseMatrix(Arrays.copyOf(rowIDs, numUsedRows),
+                                      Arrays.copyOf(columnIDs, numUsedColumns),
+                                      Arrays.copyOf(rowStarts, numUsedRows + 1),
+                                      Arrays.copyOf(columns, numEntries),
+                                      Arrays.copyOf(values, numEntries));
+  }
+
+  @Override
+  public String toString() {
+    return "CompressedSparseMatrix[rows:" + rowIDs.length + ", columns:" + columnIDs.length +
+        ", entries:" + values.length + ']';
+  }
+
+  /**
+   * <p>Collects changes to entries, in order, and then builds a {@link CompressedSparseMatrix} of their result.
+   * Adding to an entry increases its value, starting from 0 if it is not present. Removing an entry makes it
+   * not present.</p>
+   *
+   * <p>Changes are only appended to arrays until {@link #build(float)}, which sorts them into rows with two
+   * stable counting sorts, first by column and then by row, so that the changes to each entry end up together
+   * and in their original order. Memory used while collecting is about 20 bytes per change;
+   * building temporarily needs about as much again.</p>
+   *
+   * <p>This class is not thread-safe.</p>
+   */
+  public static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] changeRowIDs;
+    private long[] changeColumnIDs;
+    // NaN marks a removal
+    private float[] changeValues;
+    private int numChanges;
+
+    private Builder() {
+      changeRowIDs = new long[INITIAL_CAPACITY];
+      changeColumnIDs = new long[INITIAL_CAPACITY];
+      changeValues = new float[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a value to an entry.
+     */
+    public Builder add(long rowID, long columnID, float value) {
+      Preconditions.checkArgument(!Float.isNaN(value), "Value is NaN");
+      append(rowID, columnID, value);
+      return this;
+    }
+
+    /**
+     * Removes an entry, if present.
+     */
+    public Builder remove(long rowID, long columnID) {
+      append(rowID, columnID, Float.NaN);
+      return this;
+    }
+
+    /**
+     * Appends all changes collected by another builder, as if they were made to this one after its own.
+     */
+    public Builder addAll(Builder other) {
+      int otherChanges = other.numChanges;
+      ensureCapacity((long) numChanges + otherChanges);
+      System.arraycopy(other.changeRowIDs, 0, changeRowIDs, numChanges, otherChanges);
+      System.arraycopy(other.changeColumnIDs, 0, changeColumnIDs, numChanges, otherChanges);
+      System.arraycopy(other.changeValues, 0, changeValues, numChanges, otherChanges);
+      numChanges += otherChanges;
+      return this;
+    }
+
+    /**
+     * @return number of changes collected so far
+     */
+    public int size() {
+      return numChanges;
+    }
+
+    private void append(long rowID, long columnID, float value) {
+      ensureCapacity(numChanges + 1L);
+      changeRowIDs[numChanges] = rowID;
+      changeColumnIDs[numChanges] = columnID;
+      changeValues[numChanges] = value;
+      numChanges++;
+    }
+
+    private void ensureCapacity(long capacity) {
+      if (capacity > changeValues.length) {
+        int newCapacity = (int) FastMath.min(Integer.MAX_VALUE - 8, FastMath.max(capacity, 2L * changeValues.length));
+        Preconditions.checkState(newCapacity >= capacity, "Too many changes");
+        changeRowIDs = Arrays.copyOf(changeRowIDs, newCapacity);
+        changeColumnIDs = Arrays.copyOf(changeColumnIDs, newCapacity);
+        changeValues = Arrays.copyOf(changeValues, newCapacity);
+      }
+    }
+
+    /**
+     * @param zeroThreshold entries whose resulting absolute value is less than this are left out
+     * @return matrix of the entries resulting from all changes. Rows and columns with no entries are left out.
+     */
+    public CompressedSparseMatrix build(float zeroThreshold) {
+      int n = numChanges;
+      long[] allRowIDs = distinct(changeRowIDs, n);
+      long[] allColumnIDs = distinct(changeColumnIDs, n);
+      int numRows = allRowIDs.length;
+      int numColumns = allColumnIDs.length;
+
+      int[] changeRows = indicesOf(changeRowIDs, allRowIDs, n);
+      int[] changeColumns = indicesOf(changeColumnIDs, allColumnIDs, n);
+
+      // Sort changes by column, then stably by row, so that changes to each entry are together, in order
+      int[] byColumn = countingSort(changeColumns, numColumns, null, n);
+      int[] order = countingSort(changeRows, numRows, byColumn, n);
+
+      // Replay changes to each entry, keeping the entries that are present at the end
+      int[] rowStarts = new int[numRows + 1];
+      int[] columns = new int[n];
+      float[] values = new float[n];
+      boolean[] columnUsed = new boolean[numColumns];
+      int numEntries = 0;
+      int i = 0;
+      while (i < n) {
+        int first = order[i];
+        int row = changeRows[first];
+        int column = changeColumns[first];
+        boolean present = false;
+        float value = 0.0f;
+        for (; i < n && changeRows[order[i]] == row && changeColumns[order[i]] == column; i++) {
+          float change = changeValues[order[i]];
+          if (Float.isNaN(change)) {
+            present = false;
+            value = 0.0f;
+          } else {
+            present = true;
+            value += change;
+          }
+        }
+        if (present && !(FastMath.abs(value) < zeroThreshold)) {
+          columns[numEntries] = column;
+          values[numEntries] = value;
+          columnUsed[column] = true;
+          rowStarts[row + 1]++;
+          numEntries++;
+        }
+      }
+
+      return compact(allRowIDs, allColumnIDs, rowStarts, columns, values, numEntries, columnUsed);
+    }
+
+    /**
+     * @return distinct values among the first n of ids, sorted
+     */
+    private static long[] distinct(long[] ids, int n) {
+      long[] sorted = Arrays.copyOf(ids, n);
+      Arrays.sort(sorted);
+      int numDistinct = 0;
+      for (int i = 0; i < n; i++) {
+        if (numDistinct == 0 || sorted[i] != sorted[numDistinct - 1]) {
+          sorted[numDistinct++] = sorted[i];
+        }
+      }
+      return Arrays.copyOf(sorted, numDistinct);
+    }
+
+    /**
+     * @return index in sortedIDs of each of the first n of ids
+     */
+    private static int[] indicesOf(long[] ids, long[] sortedIDs, int n) {
+      int[] indices = new int[n];
+      for (int i = 0; i < n; i++) {
+        indices[i] = Arrays.binarySearch(sortedIDs, ids[i]);
+      }
+      return indices;
+    }
+
+    /**
+     * Stable counting sort of changes by the dense index of their ID.
+     *
+     * @param indices index of each change's ID
+     * @param numIndices number of distinct indices
+     * @param order changes in the order to sort stably, or {@code null} for their original order
+     * @param n number of changes
+     * @return changes, sorted
+     */
+    private static int[] countingSort(int[] indices, int numIndices, int[] order, int n) {
+      int[] starts = new int[numIndices + 1];
+      for (int i = 0; i < n; i++) {
+        starts[indices[i] + 1]++;
+      }
+      for (int i = 0; i < numIndices; i++) {
+        starts[i + 1] += starts[i];
+      }
+      int[] sorted = new int[n];
+      for (int i = 0; i < n; i++) {
+        int change = order == null ? i : order[i];
+        sorted[starts[indices[change]]++] = change;
+      }
+      return sorted;
+    }
+
+  }
+
+}
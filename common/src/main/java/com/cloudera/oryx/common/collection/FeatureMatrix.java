@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+import com.cloudera.oryx.common.iterator.AbstractIntPrimitiveIterator;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.iterator.IntRangeIterator;
+import com.cloudera.oryx.common.math.VectorKernels;
+
+/**
+ * <p>A mapping from {@code long} IDs to feature vectors of fixed length, which serves the same purpose as a
+ * {@code LongObjectMap<float[]>}. Instead of one {@code float[]} per ID, all vectors are stored in one
+ * contiguous, row-major {@code float[]}, and an open-addressed table maps each ID to its row. This avoids one
+ * object and one hash table slot per vector, and lets scans over all vectors read memory sequentially.</p>
+ *
+ * <p>Rows are dense: there are exactly {@link #size()} rows, numbered from 0. Removing an ID moves the vector in
+ * the last row into the freed row, so row numbers are only stable while the matrix is not modified
+ * structurally (by {@link #put(long, float[])} of a new ID, {@link #remove(long)} or {@link #clear()}).</p>
+ *
+ * <p>The L2 norm of each row is kept up to date as rows are written, so that {@link #norm(int)} costs no more
+ * than a lookup. This makes cosine similarity as cheap as a dot product.</p>
+ *
+ * <p>The number of features is set on construction, or, if given as 0, by the first vector that is added.
+ * It can change again only when the matrix is empty.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Sean Owen
+ */
+public final class FeatureMatrix {
+
+  private static final int MAX_ROWS = 1 << 30;
+  /** Largest array length that JVMs reliably allocate */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+  private static final double INDEX_LOAD_FACTOR = 0.7;
+  private static final int NO_ROW = -1;
+
+  private int numFeatures;
+  private int size;
+  // Row-major vector data; row i occupies [i * numFeatures, (i + 1) * numFeatures)
+  private float[] data;
+  // ID of each row
+  private long[] rowIDs;
+  // L2 norm of each row
+  private double[] norms;
+  // Open-addressed, linear-probing index from ID to row; a slot is empty when its row is NO_ROW
+  private long[] indexKeys;
+  private int[] indexRows;
+
+  /**
+   * Creates an empty matrix whose number of features is determined by the first vector added.
+   */
+  public FeatureMatrix() {
+    this(0, 2);
+  }
+
+  /**
+   * @param numFeatures length of vectors that will be stored, or 0 to determine from the first vector added
+   * @param initialCapacity number of vectors that can be stored before reallocating storage
+   */
+  public FeatureMatrix(int numFeatures, int initialCapacity) {
+    Preconditions.checkArgument(numFeatures >= 0, "numFeatures must be nonnegative");
+    Preconditions.checkArgument(initialCapacity >= 0 && initialCapacity < MAX_ROWS,
+                                "Bad initial capacity: %s", initialCapacity);
+    this.numFeatures = numFeatures;
+    int capacity = FastMath.max(2, initialCapacity);
+    data = new float[dataLength(numFeatures, capacity)];
+    rowIDs = new long[capacity];
+    norms = new double[capacity];
+    allocateIndex(indexSizeFor(capacity));
+  }
+
+  private static int indexSizeFor(int capacity) {
+    int indexSize = 4;
+    while (indexSize * INDEX_LOAD_FACTOR <= capacity) {
+      indexSize <<= 1;
+    }
+    return indexSize;
+  }
+
+  private void allocateIndex(int indexSize) {
+    indexKeys = new long[indexSize];
+    indexRows = new int[indexSize];
+    Arrays.fill(indexRows, NO_ROW);
+  }
+
+  private static int hash(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  /**
+   * @return index slot holding the key, or the empty slot where it would be inserted
+   */
+  private int findSlot(long key) {
+    long[] keys = indexKeys;
+    int[] rows = indexRows;
+    int mask = keys.length - 1;
+    int slot = hash(key, mask);
+    while (rows[slot] != NO_ROW && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * @return length of vectors in this matrix, or 0 if not yet determined
+   */
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * @return number of vectors, and rows, in the matrix
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true iff there are no vectors in the matrix
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @param id ID to look for
+   * @return true if there is a vector for the ID in this matrix
+   */
+  public boolean containsKey(long id) {
+    return indexOf(id) != NO_ROW;
+  }
+
+  /**
+   * @param id ID to look up
+   * @return row holding the vector for the ID, or -1 if there is no such ID
+   */
+  public int indexOf(long id) {
+    return indexRows[findSlot(id)];
+  }
+
+  /**
+   * @param row row number, in {@code [0, size())}
+   * @return ID whose vector is held in the row
+   */
+  public long getID(int row) {
+    checkRow(row);
+    return rowIDs[row];
+  }
+
+  /**
+   * @param id ID whose vector is requested
+   * @return a copy of the vector for the ID, or {@code null} if there is no such ID
+   */
+  public float[] get(long id) {
+    int row = indexOf(id);
+    return row == NO_ROW ? null : getRow(row);
+  }
+
+  /**
+   * @param row row number, in {@code [0, size())}
+   * @return a copy of the vector held in the row
+   */
+  public float[] getRow(int row) {
+    checkRow(row);
+    float[] result = new float[numFeatures];
+    System.arraycopy(data, row * numFeatures, result, 0, numFeatures);
+    return result;
+  }
+
+  /**
+   * @return the underlying row-major data -- not a copy. Row {@code i} starts at offset
+   *  {@code i * getNumFeatures()}. The array may be larger than needed to hold {@link #size()} rows, and is
+   *  replaced when the matrix grows, so a reference to it should not be held across modifications. It must not
+   *  be written; use {@link #put(long, float[])} or {@link #setRow(int, float[])}, which also update norms.
+   */
+  public float[] getData() {
+    return data;
+  }
+
+  /**
+   * Adds a vector for the ID, or replaces the existing vector for the ID. The vector is copied.
+   *
+   * @param id ID to map
+   * @param vector feature vector to copy into the matrix
+   */
+  public void put(long id, float[] vector) {
+    put(id, vector, 0, vector.length);
+  }
+
+  /**
+   * Adds a vector for the ID, or replaces the existing vector for the ID. The vector is copied from a slice
+   * of a larger array, like a batch of vectors stored one after the other.
+   *
+   * @param id ID to map
+   * @param source array holding the vector
+   * @param offset index in {@code source} where the vector starts
+   * @param length length of the vector
+   */
+  public void put(long id, float[] source, int offset, int length) {
+    if (numFeatures != length) {
+      Preconditions.checkArgument(size == 0,
+                                  "Expected vector of length %s but got %s", numFeatures, length);
+      numFeatures = length;
+      data = new float[dataLength(length, rowIDs.length)];
+    }
+    int slot = findSlot(id);
+    int row = indexRows[slot];
+    if (row == NO_ROW) {
+      if (size == rowIDs.length) {
+        grow();
+        slot = findSlot(id);
+      }
+      row = size++;
+      rowIDs[row] = id;
+      indexKeys[slot] = id;
+      indexRows[slot] = row;
+    }
+    System.arraycopy(source, offset, data, row * numFeatures, length);
+    updateNorm(row);
+  }
+
+  /**
+   * Overwrites the vector held in an existing row.
+   *
+   * @param row row number, in {@code [0, size())}
+   * @param vector new vector values to copy into the row
+   */
+  public void setRow(int row, float[] vector) {
+    checkRow(row);
+    Preconditions.checkArgument(vector.length == numFeatures,
+                                "Expected vector of length %s but got %s", numFeatures, vector.length);
+    System.arraycopy(vector, 0, data, row * numFeatures, numFeatures);
+    updateNorm(row);
+  }
+
+  /**
+   * Removes the vector for an ID. The vector in the last row, if different, is moved into the freed row.
+   *
+   * @param id ID to remove
+   * @return true if the ID was present
+   */
+  public boolean remove(long id) {
+    int slot = findSlot(id);
+    int row = indexRows[slot];
+    if (row == NO_ROW) {
+      return false;
+    }
+    deleteSlot(slot);
+    int last = --size;
+    if (row != last) {
+      long lastID = rowIDs[last];
+      rowIDs[row] = lastID;
+      System.arraycopy(data, last * numFeatures, data, row * numFeatures, numFeatures);
+      norms[row] = norms[last];
+      indexRows[findSlot(lastID)] = row;
+    }
+    return true;
+  }
+
+  /**
+   * Empties a slot in the index, shifting back later entries in its probe sequence so that they remain
+   * reachable, as is required for linear probing without "removed" markers.
+   */
+  private void deleteSlot(int slot) {
+    long[] keys = indexKeys;
+    int[] rows = indexRows;
+    int mask = keys.length - 1;
+    int empty = slot;
+    int current = slot;
+    while (true) {
+      current = (current + 1) & mask;
+      if (rows[current] == NO_ROW) {
+        break;
+      }
+      int home = hash(keys[current], mask);
+      // Move the entry back if its home slot is not cyclically within (empty, current]
+      boolean movable = empty <= current ? (home <= empty || home > current) : (home <= empty && home > current);
+      if (movable) {
+        keys[empty] = keys[current];
+        rows[empty] = rows[current];
+        empty = current;
+      }
+    }
+    rows[empty] = NO_ROW;
+  }
+
+  /**
+   * Removes all vectors.
+   */
+  public void clear() {
+    size = 0;
+    Arrays.fill(indexRows, NO_ROW);
+  }
+
+  /**
+   * Ensures storage for at least the given number of vectors without further reallocation.
+   *
+   * @param capacity number of vectors to make room for
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > rowIDs.length) {
+      resize(capacity);
+    }
+  }
+
+  private void grow() {
+    int capacity = rowIDs.length;
+    int maxRows = numFeatures == 0 ? MAX_ROWS : FastMath.min(MAX_ROWS, MAX_ARRAY_LENGTH / numFeatures);
+    Preconditions.checkState(capacity < maxRows,
+                             "Can't grow beyond %s vectors of %s features", capacity, numFeatures);
+    resize((int) FastMath.min(maxRows, capacity + (capacity >> 1) + 1L));
+  }
+
+  /**
+   * @return length of {@link #data} for the given number of vectors
+   * @throws IllegalStateException if that is more than an array can hold
+   */
+  private static int dataLength(int numFeatures, int capacity) {
+    long length = (long) numFeatures * capacity;
+    Preconditions.checkState(length <= MAX_ARRAY_LENGTH,
+                             "Can't store %s vectors of %s features", capacity, numFeatures);
+    return (int) length;
+  }
+
+  private void resize(int capacity) {
+    data = Arrays.copyOf(data, dataLength(numFeatures, capacity));
+    rowIDs = Arrays.copyOf(rowIDs, capacity);
+    norms = Arrays.copyOf(norms, capacity);
+    int indexSize = indexSizeFor(capacity);
+    if (indexSize != indexKeys.length) {
+      allocateIndex(indexSize);
+      for (int row = 0; row < size; row++) {
+        int slot = findSlot(rowIDs[row]);
+        indexKeys[slot] = rowIDs[row];
+        indexRows[slot] = row;
+      }
+    }
+  }
+
+  /**
+   * @param row row number, in {@code [0, size())}
+   * @param vector vector whose length is {@link #getNumFeatures()}
+   * @return dot product of the vector in the row with the given vector
+   */
+  public double dot(int row, float[] vector) {
+    return VectorKernels.dot(data, row * numFeatures, vector, 0, vector.length);
+  }
+
+  /**
+   * @param row row number, in {@code [0, size())}
+   * @return L2 norm of the vector in the row
+   */
+  public double norm(int row) {
+    return norms[row];
+  }
+
+  private void updateNorm(int row) {
+    norms[row] = FastMath.sqrt(VectorKernels.sumOfSquares(data, row * numFeatures, numFeatures));
+  }
+
+  /**
+   * @return iterator over all row numbers, in order
+   */
+  public IntPrimitiveIterator rowIterator() {
+    return new IntRangeIterator(0, size);
+  }
+
+  /**
+   * @param ids IDs to look up. The array is not copied, and rows are looked up as the iterator advances.
+   * @return iterator over the row numbers of the given IDs, in order, skipping IDs that have no row
+   */
+  public IntPrimitiveIterator rowIterator(long[] ids) {
+    return rowIterator(ids, ids.length);
+  }
+
+  /**
+   * @param ids IDs to look up. The array is not copied, and rows are looked up as the iterator advances.
+   * @param count number of IDs, from the start of {@code ids}, to look up
+   * @return iterator over the row numbers of the given IDs, in order, skipping IDs that have no row
+   */
+  public IntPrimitiveIterator rowIterator(long[] ids, int count) {
+    Preconditions.checkPositionIndex(count, ids.length);
+    return new IDArrayToRowIterator(ids, count);
+  }
+
+  /**
+   * @return a copy of all IDs in the matrix, in row order
+   */
+  public long[] keys() {
+    return Arrays.copyOf(rowIDs, size);
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " not in [0," + size + ')');
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FeatureMatrix[" + size + 'x' + numFeatures + ']';
+  }
+
+  /**
+   * Translates IDs into rows, skipping IDs that have no row.
+   */
+  private final class IDArrayToRowIterator extends AbstractIntPrimitiveIterator {
+
+    private int offset;
+    private final long[] input;
+    private final int count;
+    private int nextRow;
+
+    private IDArrayToRowIterator(long[] input, int count) {
+      this.input = input;
+      this.count = count;
+      this.nextRow = -1;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (nextRow < 0 && offset < count) {
+        nextRow = indexOf(input[offset++]);
+      }
+      return nextRow >= 0;
+    }
+
+    @Override
+    public int nextInt() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int row = nextRow;
+      nextRow = -1;
+      return row;
+    }
+
+    @Override
+    public void skip(int n) {
+      for (int i = 0; i < n && hasNext(); i++) {
+        nextInt();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>A bounded queue backed by an array, to which many threads may add, but from which only one thread
+ * removes. It does not lock; producers claim a slot by incrementing a counter, and then fill it in.</p>
+ *
+ * <p>Elements are removed in the order their slots were claimed. The consumer stops at a slot that has been
+ * claimed but not yet filled, so elements added after it are not seen until it is filled.</p>
+ *
+ * @author Sean Owen
+ * @param <E> element type
+ */
+public final class RingBuffer<E> {
+
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+  private final AtomicReferenceArray<E> slots;
+  private final int capacity;
+  private final int mask;
+  /** Number of slots ever claimed by producers */
+  private final AtomicLong tail;
+  /** Number of elements ever removed; written only by the consumer */
+  private volatile long head;
+
+  /**
+   * @param minCapacity minimum number of elements the buffer can hold; actual capacity is the next power of two
+   */
+  public RingBuffer(int minCapacity) {
+    Preconditions.checkArgument(minCapacity > 0 && minCapacity <= 1 << 30,
+                                "Bad capacity: %s", minCapacity);
+    capacity = minCapacity == 1 ? 1 : Integer.highestOneBit(minCapacity - 1) << 1;
+    mask = capacity - 1;
+    slots = new AtomicReferenceArray<E>(capacity);
+    tail = new AtomicLong();
+  }
+
+  /**
+   * @return true if the element was added, or false if the buffer was full
+   */
+  public boolean offer(E element) {
+    Preconditions.checkNotNull(element);
+    while (true) {
+      long t = tail.get();
+      if (t - head >= capacity) {
+        return false;
+      }
+      if (tail.compareAndSet(t, t + 1)) {
+        // The consumer cleared this slot before advancing head past it
+        slots.lazySet((int) t & mask, element);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Adds the element, waiting for room if the buffer is full.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void put(E element) throws InterruptedException {
+    while (!offer(element)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+
+  /**
+   * Removes up to {@code maxElements} elements, in order, and adds them to {@code sink}. Must only be called
+   * by one thread at a time.
+   *
+   * @return number of elements removed
+   */
+  public int drainTo(Collection<? super E> sink, int maxElements) {
+    long h = head;
+    int count = 0;
+    while (count < maxElements) {
+      int index = (int) h & mask;
+      E element = slots.get(index);
+      if (element == null) {
+        break;
+      }
+      slots.lazySet(index, null);
+      sink.add(element);
+      h++;
+      count++;
+    }
+    if (count > 0) {
+      head = h;
+    }
+    return count;
+  }
+
+  /**
+   * @return number of elements ever added, including those in slots claimed but not yet filled
+   */
+  public long getTotalAdded() {
+    return tail.get();
+  }
+
+  /**
+   * @return number of elements ever removed
+   */
+  public long getTotalRemoved() {
+    return head;
+  }
+
+  public int size() {
+    return (int) (tail.get() - head);
+  }
+
+  public boolean isEmpty() {
+    return tail.get() == head;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+}
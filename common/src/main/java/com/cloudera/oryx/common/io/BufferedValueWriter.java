@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>Writes strings and numbers to a {@link Writer} through a buffer, which is written to the {@link Writer}
+ * in chunks when full. It is meant for writing many small values, like IDs and scores in a response, without
+ * creating a {@link String} for each, or a {@link String} for the whole output.</p>
+ *
+ * <p>Each thread has one instance, which is reused for each {@link Writer} given to {@link #forWriter(Writer)}.
+ * Numbers are formatted into a reused {@link StringBuilder}, which formats them exactly as
+ * {@link Float#toString(float)} and {@link Double#toString(double)} do, and are copied to the buffer from there.
+ * Strings are quoted or escaped only if they contain characters that require it.</p>
+ *
+ * <p>{@link #finish()} must be called to write what remains in the buffer.</p>
+ *
+ * @author Sean Owen
+ */
+public final class BufferedValueWriter {
+
+  private static final int BUFFER_SIZE = 1 << 13;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final ThreadLocal<BufferedValueWriter> INSTANCES = new ThreadLocal<BufferedValueWriter>() {
+    @Override
+    protected BufferedValueWriter initialValue() {
+      return new BufferedValueWriter();
+    }
+  };
+
+  private final char[] buffer;
+  private final StringBuilder numberBuilder;
+  private int size;
+  private Writer writer;
+
+  private BufferedValueWriter() {
+    buffer = new char[BUFFER_SIZE];
+    numberBuilder = new StringBuilder(32);
+  }
+
+  /**
+   * @param writer {@link Writer} to write to
+   * @return this thread's instance, emptied, which writes to {@code writer} until {@link #finish()} is called
+   */
+  public static BufferedValueWriter forWriter(Writer writer) {
+    Preconditions.checkNotNull(writer);
+    BufferedValueWriter instance = INSTANCES.get();
+    instance.writer = writer;
+    instance.size = 0;
+    return instance;
+  }
+
+  public void write(char c) throws IOException {
+    if (size == buffer.length) {
+      drain();
+    }
+    buffer[size++] = c;
+  }
+
+  public void write(String s) throws IOException {
+    int length = s.length();
+    int written = 0;
+    while (written < length) {
+      if (size == buffer.length) {
+        drain();
+      }
+      int toCopy = FastMath.min(length - written, buffer.length - size);
+      s.getChars(written, written + toCopy, buffer, size);
+      size += toCopy;
+      written += toCopy;
+    }
+  }
+
+  /**
+   * Writes the value as {@link Float#toString(float)} would.
+   */
+  public void write(float value) throws IOException {
+    numberBuilder.setLength(0);
+    numberBuilder.append(value);
+    writeNumber();
+  }
+
+  /**
+   * Writes the value as {@link Double#toString(double)} would.
+   */
+  public void write(double value) throws IOException {
+    numberBuilder.setLength(0);
+    numberBuilder.append(value);
+    writeNumber();
+  }
+
+  public void write(long value) throws IOException {
+    numberBuilder.setLength(0);
+    numberBuilder.append(value);
+    writeNumber();
+  }
+
+  private void writeNumber() throws IOException {
+    int length = numberBuilder.length();
+    if (buffer.length - size < length) {
+      drain();
+    }
+    numberBuilder.getChars(0, length, buffer, size);
+    size += length;
+  }
+
+  /**
+   * Writes the string as a JSON string literal: in double quotes, and with quotes, backslashes and control
+   * characters escaped.
+   */
+  public void writeJSONString(String s) throws IOException {
+    write('"');
+    if (needsJSONEscape(s)) {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '"':
+          case '\\':
+            write('\\');
+            write(c);
+            break;
+          case '\n':
+            write("\\n");
+            break;
+          case '\r':
+            write("\\r");
+            break;
+          case '\t':
+            write("\\t");
+            break;
+          default:
+            if (c < ' ') {
+              write("\\u00");
+              write(HEX_DIGITS[c >> 4]);
+              write(HEX_DIGITS[c & 0xF]);
+            } else {
+              write(c);
+            }
+        }
+      }
+    } else {
+      write(s);
+    }
+    write('"');
+  }
+
+  private static boolean needsJSONEscape(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\' || c < ' ') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Writes the string as one column of delimited data, as {@link DelimitedDataUtils#encode(char, Object...)}
+   * would.
+   */
+  public void writeDelimited(String s, char delim) throws IOException {
+    if (needsDelimitedEncoding(s, delim)) {
+      write(DelimitedDataUtils.encode(delim, s));
+    } else {
+      write(s);
+    }
+  }
+
+  private static boolean needsDelimitedEncoding(String s, char delim) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == delim || c == '"' || c == '\r' || c == '\n') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Writes what is in the buffer, and flushes the {@link Writer}, so that what has been written so far can be
+   * sent before the rest is ready.
+   */
+  public void flush() throws IOException {
+    drain();
+    writer.flush();
+  }
+
+  /**
+   * Writes what remains in the buffer. This instance must not be used again until the next call to
+   * {@link #forWriter(Writer)}.
+   */
+  public void finish() throws IOException {
+    try {
+      drain();
+    } finally {
+      writer = null;
+    }
+  }
+
+  private void drain() throws IOException {
+    if (size > 0) {
+      writer.write(buffer, 0, size);
+      size = 0;
+    }
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.iterator;
+
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Like {@link LongPrimitiveArrayIterator}, but over an {@code int[]}.
+ *
+ * @author Sean Owen
+ */
+public final class IntPrimitiveArrayIterator extends AbstractIntPrimitiveIterator {
+
+  private final int[] array;
+  private int position;
+  private final int max;
+
+  /**
+   * Creates an {@link IntPrimitiveIterator} over an {@code int[]}.
+   *
+   * @param array array of {@code int}s
+   */
+  public IntPrimitiveArrayIterator(int[] array) {
+    this(array, array.length);
+  }
+
+  /**
+   * Creates an {@link IntPrimitiveIterator} over the first elements of an {@code int[]}.
+   *
+   * @param array array of {@code int}s
+   * @param length number of elements, from the start of the array, to iterate over
+   */
+  public IntPrimitiveArrayIterator(int[] array, int length) {
+    this(array, 0, length);
+  }
+
+  /**
+   * Creates an {@link IntPrimitiveIterator} over a range of elements of an {@code int[]}.
+   *
+   * @param array array of {@code int}s
+   * @param from index of first element to iterate over
+   * @param to index after the last element to iterate over
+   */
+  public IntPrimitiveArrayIterator(int[] array, int from, int to) {
+    this.array = Preconditions.checkNotNull(array); // not copied, for performance
+    Preconditions.checkArgument(to >= 0 && to <= array.length, "Bad end: %s", to);
+    Preconditions.checkArgument(from >= 0 && from <= to, "Bad start: %s", from);
+    this.position = from;
+    this.max = to;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return position < max;
+  }
+
+  @Override
+  public int nextInt() {
+    if (position >= max) {
+      throw new NoSuchElementException();
+    }
+    return array[position++];
+  }
+
+  @Override
+  public void skip(int n) {
+    if (n > 0) {
+      position = FastMath.min(max, position + n);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IntPrimitiveArrayIterator";
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.iterator;
+
+/**
+ * Like {@link LongPrimitiveIterator}, but iterates over {@code int} primitives. It is mostly used to
+ * iterate over row indices of a {@link com.cloudera.oryx.common.collection.FeatureMatrix}.
+ *
+ * @author Sean Owen
+ */
+public interface IntPrimitiveIterator extends SkippingIterator<Integer> {
+
+  /**
+   * @return next {@code int} in iteration
+   * @throws java.util.NoSuchElementException
+   *           if no more elements exist in the iteration
+   */
+  int nextInt();
+
+}
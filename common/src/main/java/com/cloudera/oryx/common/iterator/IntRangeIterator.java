@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.iterator;
+
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Iterates over the {@code int}s in a range, from a start value (inclusive) to an end value (exclusive).
+ *
+ * @author Sean Owen
+ */
+public final class IntRangeIterator extends AbstractIntPrimitiveIterator {
+
+  private int position;
+  private final int end;
+
+  /**
+   * @param start first value to return
+   * @param end value after the last value to return
+   */
+  public IntRangeIterator(int start, int end) {
+    Preconditions.checkArgument(start <= end, "start > end: %s > %s", start, end);
+    this.position = start;
+    this.end = end;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return position < end;
+  }
+
+  @Override
+  public int nextInt() {
+    if (position >= end) {
+      throw new NoSuchElementException();
+    }
+    return position++;
+  }
+
+  @Override
+  public void skip(int n) {
+    if (n > 0) {
+      position = (int) FastMath.min((long) position + n, end);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IntRangeIterator[" + position + ',' + end + ')';
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>Solves Ax = b for a symmetric positive definite A, like the normal equations of least squares, by Cholesky
+ * factorization. It is meant to be reused for many small systems of one dimension, by one thread; it holds A and b
+ * in its own arrays, which are filled in by the caller and factored in place, and allocates nothing but the
+ * result.</p>
+ *
+ * <p>Only the upper triangle of A, including the diagonal, needs to be filled in. The factor is written to the
+ * strict lower triangle and a separate diagonal, so that A is left intact. If A turns out not to be positive
+ * definite, the system is solved instead by the {@link Solver} from {@link MatrixUtils#getSolver(org.apache.commons.math3.linear.RealMatrix)},
+ * which also reports singular matrices.</p>
+ *
+ * @author Sean Owen
+ */
+public final class CholeskySolver {
+
+  private final int dimension;
+  /** A, row-major; its upper triangle is input and its strict lower triangle receives the factor L */
+  private final double[] a;
+  private final double[] b;
+  /** Diagonal of L */
+  private final double[] lDiagonal;
+
+  public CholeskySolver(int dimension) {
+    Preconditions.checkArgument(dimension > 0, "dimension must be positive: %s", dimension);
+    this.dimension = dimension;
+    a = new double[dimension * dimension];
+    b = new double[dimension];
+    lDiagonal = new double[dimension];
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * @return A, row-major: {@code A[i][j]} is at {@code i * dimension + j}. Only entries with {@code i <= j}
+   *  are read.
+   */
+  public double[] getA() {
+    return a;
+  }
+
+  /**
+   * @return b
+   */
+  public double[] getB() {
+    return b;
+  }
+
+  /**
+   * Solves the system whose A and b are currently held in {@link #getA()} and {@link #getB()}. b is overwritten.
+   *
+   * @return x
+   * @throws SingularMatrixSolverException if A is not positive definite and is near-singular
+   */
+  public float[] solveDToF() {
+    if (!factor()) {
+      return MatrixUtils.getSolver(new Array2DRowRealMatrix(copyA(), false)).solveDToF(b);
+    }
+    int dimension = this.dimension;
+    double[] a = this.a;
+    double[] b = this.b;
+    // Solve Ly = b, leaving y in b
+    for (int i = 0; i < dimension; i++) {
+      int iOffset = i * dimension;
+      double sum = b[i];
+      for (int j = 0; j < i; j++) {
+        sum -= a[iOffset + j] * b[j];
+      }
+      b[i] = sum / lDiagonal[i];
+    }
+    // Solve LT x = y
+    float[] x = new float[dimension];
+    for (int i = dimension - 1; i >= 0; i--) {
+      double sum = b[i];
+      for (int j = i + 1; j < dimension; j++) {
+        sum -= a[j * dimension + i] * b[j];
+      }
+      double xi = sum / lDiagonal[i];
+      b[i] = xi;
+      x[i] = (float) xi;
+    }
+    return x;
+  }
+
+  /**
+   * Computes L such that A = L * LT, row by row.
+   *
+   * @return false if A is not, numerically, positive definite
+   */
+  private boolean factor() {
+    int dimension = this.dimension;
+    double[] a = this.a;
+    for (int i = 0; i < dimension; i++) {
+      int iOffset = i * dimension;
+      for (int j = 0; j < i; j++) {
+        int jOffset = j * dimension;
+        // A[i][j] is read from the upper triangle, as A[j][i]
+        double sum = a[jOffset + i];
+        for (int k = 0; k < j; k++) {
+          sum -= a[iOffset + k] * a[jOffset + k];
+        }
+        a[iOffset + j] = sum / lDiagonal[j];
+      }
+      double sum = a[iOffset + i];
+      for (int k = 0; k < i; k++) {
+        double lik = a[iOffset + k];
+        sum -= lik * lik;
+      }
+      if (!(sum > LinearSystemSolver.SINGULARITY_THRESHOLD)) {
+        return false;
+      }
+      lDiagonal[i] = FastMath.sqrt(sum);
+    }
+    return true;
+  }
+
+  /**
+   * @return A, from its upper triangle, which factoring left intact
+   */
+  private double[][] copyA() {
+    double[][] copy = new double[dimension][dimension];
+    for (int i = 0; i < dimension; i++) {
+      for (int j = i; j < dimension; j++) {
+        double value = a[i * dimension + j];
+        copy[i][j] = value;
+        copy[j][i] = value;
+      }
+    }
+    return copy;
+  }
+
+}
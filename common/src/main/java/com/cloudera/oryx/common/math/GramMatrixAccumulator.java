@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * <p>Accumulates MT * M, the Gram matrix of the rows of a tall, skinny matrix M, one row at a time.
+ * Not thread-safe; to use several threads, give each its own instance and {@link #addAll(GramMatrixAccumulator)}
+ * them at the end.</p>
+ *
+ * <p>Rows are collected into a block, stored transposed so that each feature's values for the block are
+ * contiguous. When the block is full, it is added to the result with a rank-k update: each entry of the upper
+ * triangle is increased by the dot product of two features' values over the block, summed in registers rather
+ * than written back to the result for every row. Only the upper triangle is accumulated, as the result is
+ * symmetric. Products and sums are computed in {@code double}.</p>
+ *
+ * @author Sean Owen
+ */
+public final class GramMatrixAccumulator {
+
+  /** Rows per block; a block of 50 features fits in L1 cache */
+  private static final int BLOCK_ROWS = 32;
+
+  private final int dimension;
+  /** Upper triangle of the result, packed row by row */
+  private final double[] upperTriangle;
+  /** Block of rows, where value of feature f in row k of the block is at {@code f * BLOCK_ROWS + k} */
+  private final float[] block;
+  private int blockRows;
+
+  /**
+   * @param dimension number of columns of M, which is the dimension of the result
+   */
+  public GramMatrixAccumulator(int dimension) {
+    Preconditions.checkArgument(dimension > 0, "dimension must be positive: %s", dimension);
+    this.dimension = dimension;
+    upperTriangle = new double[dimension * (dimension + 1) / 2];
+    block = new float[dimension * BLOCK_ROWS];
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * @param vector row of M, of length {@link #getDimension()}
+   */
+  public void add(float[] vector) {
+    Preconditions.checkArgument(vector.length == dimension,
+                                "Expected vector of length %s but was %s", dimension, vector.length);
+    add(vector, 0);
+  }
+
+  /**
+   * @param data array containing a row of M
+   * @param offset index in {@code data} at which the row's {@link #getDimension()} values start
+   */
+  public void add(float[] data, int offset) {
+    int k = blockRows;
+    for (int f = 0; f < dimension; f++) {
+      block[f * BLOCK_ROWS + k] = data[offset + f];
+    }
+    if (++blockRows == BLOCK_ROWS) {
+      flush();
+    }
+  }
+
+  /**
+   * Adds all rows added to another accumulator, of the same dimension, to this one.
+   */
+  public void addAll(GramMatrixAccumulator other) {
+    Preconditions.checkArgument(other.dimension == dimension,
+                                "Expected dimension %s but was %s", dimension, other.dimension);
+    flush();
+    other.flush();
+    double[] otherUpperTriangle = other.upperTriangle;
+    for (int i = 0; i < upperTriangle.length; i++) {
+      upperTriangle[i] += otherUpperTriangle[i];
+    }
+  }
+
+  /**
+   * @return MT * M over all rows added so far, as a new dense matrix
+   */
+  public RealMatrix toMatrix() {
+    flush();
+    double[][] result = new double[dimension][dimension];
+    int index = 0;
+    for (int i = 0; i < dimension; i++) {
+      double[] resultRow = result[i];
+      for (int j = i; j < dimension; j++) {
+        double value = upperTriangle[index++];
+        resultRow[j] = value;
+        result[j][i] = value;
+      }
+    }
+    return new Array2DRowRealMatrix(result, false);
+  }
+
+  private void flush() {
+    int numRows = blockRows;
+    if (numRows == 0) {
+      return;
+    }
+    int index = 0;
+    for (int i = 0; i < dimension; i++) {
+      int iOffset = i * BLOCK_ROWS;
+      for (int j = i; j < dimension; j++) {
+        upperTriangle[index++] += dot(block, iOffset, j * BLOCK_ROWS, numRows);
+      }
+    }
+    blockRows = 0;
+  }
+
+  /**
+   * @return dot product of {@code block[xOffset, xOffset+length)} and {@code block[yOffset, yOffset+length)},
+   *  in {@code double}, keeping independent sums as {@link VectorKernels} does
+   */
+  private static double dot(float[] block, int xOffset, int yOffset, int length) {
+    double sum0 = 0.0;
+    double sum1 = 0.0;
+    double sum2 = 0.0;
+    double sum3 = 0.0;
+    int k = 0;
+    int unrolledEnd = length & ~3;
+    for (; k < unrolledEnd; k += 4) {
+      int xk = xOffset + k;
+      int yk = yOffset + k;
+      sum0 += (double) block[xk] * block[yk];
+      sum1 += (double) block[xk + 1] * block[yk + 1];
+      sum2 += (double) block[xk + 2] * block[yk + 2];
+      sum3 += (double) block[xk + 3] * block[yk + 3];
+    }
+    for (; k < length; k++) {
+      sum0 += (double) block[xOffset + k] * block[yOffset + k];
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+}
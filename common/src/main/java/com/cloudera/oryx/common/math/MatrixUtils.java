@@ -16,14 +16,23 @@
 package com.cloudera.oryx.common.math;
 
 import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.util.FastMath;
 
 import com.cloudera.oryx.common.ClassUtils;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
 import com.cloudera.oryx.common.collection.LongFloatMap;
 import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
 
 /**
  * Contains utility methods for dealing with matrices, which are here represented as
@@ -36,6 +45,8 @@ public final class MatrixUtils {
   // This hack saves a lot of time spent copying out data from Array2DRowRealMatrix objects
   private static final Field MATRIX_DATA_FIELD = ClassUtils.loadField(Array2DRowRealMatrix.class, "data");
   private static final LinearSystemSolver MATRIX_INVERTER = new CommonsMathLinearSystemSolver();
+  /** Below this many rows per thread, splitting the Gram matrix computation isn't worth starting threads */
+  private static final int MIN_ROWS_PER_GRAM_TASK = 10000;
 
   private MatrixUtils() {
   }
@@ -141,27 +152,131 @@ public final class MatrixUtils {
   /**
    * @param M tall, skinny matrix
    * @return MT * M as a dense matrix
+   * @see #transposeTimesSelf(LongObjectMap, int)
    */
   public static RealMatrix transposeTimesSelf(LongObjectMap<float[]> M) {
+    return transposeTimesSelf(M, 1);
+  }
+
+  /**
+   * @param M tall, skinny matrix
+   * @param parallelism maximum number of threads to split the rows of {@code M} across
+   * @return MT * M as a dense matrix
+   */
+  public static RealMatrix transposeTimesSelf(LongObjectMap<float[]> M, int parallelism) {
     if (M == null || M.isEmpty()) {
       return null;
     }
-    RealMatrix result = null;
-    for (LongObjectMap.MapEntry<float[]> entry : M.entrySet()) {
-      float[] vector = entry.getValue();
-      int dimension = vector.length;
-      if (result == null) {
-        result = new Array2DRowRealMatrix(dimension, dimension);
+    int numRows = M.size();
+    int numTasks = numGramTasks(numRows, parallelism);
+    if (numTasks == 1) {
+      GramMatrixAccumulator accumulator = null;
+      for (float[] vector : M.values()) {
+        if (accumulator == null) {
+          accumulator = new GramMatrixAccumulator(vector.length);
+        }
+        accumulator.add(vector);
       }
-      for (int row = 0; row < dimension; row++) {
-        float rowValue = vector[row];
-        for (int col = 0; col < dimension; col++) {
-          result.addToEntry(row, col, rowValue * vector[col]);
+      Preconditions.checkNotNull(accumulator);
+      return accumulator.toMatrix();
+    }
+
+    // Rows of a hash map can't be split in place, so collect references to them to split
+    final float[][] rows = new float[numRows][];
+    int i = 0;
+    for (float[] vector : M.values()) {
+      rows[i++] = vector;
+    }
+    final int dimension = rows[0].length;
+    return transposeTimesSelf(numRows, numTasks, new RowRangeAccumulator() {
+      @Override
+      public GramMatrixAccumulator accumulate(int fromRow, int toRow) {
+        GramMatrixAccumulator accumulator = new GramMatrixAccumulator(dimension);
+        for (int row = fromRow; row < toRow; row++) {
+          accumulator.add(rows[row]);
         }
+        return accumulator;
       }
+    });
+  }
+
+  /**
+   * @param M tall, skinny matrix
+   * @return MT * M as a dense matrix
+   * @see #transposeTimesSelf(FeatureMatrix, int)
+   */
+  public static RealMatrix transposeTimesSelf(FeatureMatrix M) {
+    return transposeTimesSelf(M, 1);
+  }
+
+  /**
+   * @param M tall, skinny matrix
+   * @param parallelism maximum number of threads to split the rows of {@code M} across
+   * @return MT * M as a dense matrix
+   */
+  public static RealMatrix transposeTimesSelf(FeatureMatrix M, int parallelism) {
+    if (M == null || M.isEmpty()) {
+      return null;
+    }
+    final int dimension = M.getNumFeatures();
+    final float[] data = M.getData();
+    int numRows = M.size();
+    RowRangeAccumulator rowRangeAccumulator = new RowRangeAccumulator() {
+      @Override
+      public GramMatrixAccumulator accumulate(int fromRow, int toRow) {
+        GramMatrixAccumulator accumulator = new GramMatrixAccumulator(dimension);
+        for (int row = fromRow; row < toRow; row++) {
+          accumulator.add(data, row * dimension);
+        }
+        return accumulator;
+      }
+    };
+    int numTasks = numGramTasks(numRows, parallelism);
+    if (numTasks == 1) {
+      return rowRangeAccumulator.accumulate(0, numRows).toMatrix();
     }
-    Preconditions.checkNotNull(result);
-    return result;
+    return transposeTimesSelf(numRows, numTasks, rowRangeAccumulator);
+  }
+
+  private static int numGramTasks(int numRows, int parallelism) {
+    return FastMath.max(1, FastMath.min(parallelism, numRows / MIN_ROWS_PER_GRAM_TASK));
+  }
+
+  /**
+   * Splits rows into contiguous ranges, one per task, accumulates each range's Gram matrix in parallel,
+   * and then adds them together.
+   */
+  private static RealMatrix transposeTimesSelf(int numRows,
+                                               int numTasks,
+                                               final RowRangeAccumulator rowRangeAccumulator) {
+    int rowsPerTask = (numRows + numTasks - 1) / numTasks;
+    Collection<Future<GramMatrixAccumulator>> futures = Lists.newArrayListWithCapacity(numTasks);
+    ExecutorService executor = ExecutorUtils.buildExecutor("GramMatrix", numTasks);
+    List<GramMatrixAccumulator> accumulators;
+    try {
+      for (int fromRow = 0; fromRow < numRows; fromRow += rowsPerTask) {
+        final int from = fromRow;
+        final int to = FastMath.min(numRows, fromRow + rowsPerTask);
+        futures.add(executor.submit(new Callable<GramMatrixAccumulator>() {
+          @Override
+          public GramMatrixAccumulator call() {
+            return rowRangeAccumulator.accumulate(from, to);
+          }
+        }));
+      }
+      accumulators = ExecutorUtils.getResults(futures);
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+    GramMatrixAccumulator total = accumulators.get(0);
+    for (GramMatrixAccumulator accumulator : accumulators.subList(1, accumulators.size())) {
+      total.addAll(accumulator);
+    }
+    return total.toMatrix();
+  }
+
+  private interface RowRangeAccumulator {
+    GramMatrixAccumulator accumulate(int fromRow, int toRow);
   }
 
 }
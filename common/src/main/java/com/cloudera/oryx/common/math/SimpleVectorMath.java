@@ -30,23 +30,14 @@ public final class SimpleVectorMath {
    * @return dot product of the two given arrays
    */
   public static double dot(float[] x, float[] y) {
-    int length = x.length;
-    double dot = 0.0;
-    for (int i = 0; i < length; i++) {
-      dot += x[i] * y[i];
-    }
-    return dot;
+    return VectorKernels.dot(x, 0, y, 0, x.length);
   }
 
   /**
    * @return the L2 norm of vector x
    */
   public static double norm(float[] x) {
-    double total = 0.0;
-    for (float f : x) {
-      total += f * f;
-    }
-    return FastMath.sqrt(total);
+    return FastMath.sqrt(VectorKernels.sumOfSquares(x, 0, x.length));
   }
 
   /**
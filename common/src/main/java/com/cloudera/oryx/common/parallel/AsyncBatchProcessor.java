@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.parallel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.oryx.common.collection.RingBuffer;
+
+/**
+ * <p>Accepts elements from many threads into a bounded {@link RingBuffer}, and hands them to a {@link Handler}
+ * in batches, in the order they were accepted, from one dedicated thread. Callers of {@link #submit(Object)}
+ * return as soon as the element is queued.</p>
+ *
+ * <p>When the buffer is full, {@link #submit(Object)} either waits for room or throws
+ * {@link RejectedExecutionException}, depending on how this was configured.</p>
+ *
+ * <p>{@link #close()} waits for all elements accepted so far to be handled before returning. An element is
+ * accepted if {@link #submit(Object)} returns normally, even if it races with {@link #close()}.</p>
+ *
+ * @author Sean Owen
+ * @param <E> element type
+ */
+public final class AsyncBatchProcessor<E> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncBatchProcessor.class);
+
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+  private static final long FLUSH_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+
+  /**
+   * Handles batches of elements on behalf of an {@link AsyncBatchProcessor}.
+   *
+   * @param <E> element type
+   */
+  public interface Handler<E> {
+
+    /**
+     * @param batch elements, in the order they were submitted. The list is reused after this returns.
+     * @throws IOException if the batch can't be handled; this is logged, and the batch is dropped
+     */
+    void handle(List<E> batch) throws IOException;
+
+  }
+
+  private final RingBuffer<E> buffer;
+  private final boolean blockWhenFull;
+  private final int maxBatchSize;
+  private final Handler<E> handler;
+  private final Thread consumer;
+  private volatile boolean closed;
+  /** Number of {@link #submit(Object)} calls that may have seen {@link #closed} false and not yet queued */
+  private final AtomicInteger submitting;
+  /** Set once {@link #closed} is set and no submit is in progress; the consumer exits after draining */
+  private volatile boolean stopping;
+  private volatile boolean consumerIdle;
+  /** Number of elements handled; written only by the consumer */
+  private volatile long handled;
+
+  /**
+   * @param name name of the consumer thread
+   * @param capacity minimum number of elements that may be waiting to be handled
+   * @param blockWhenFull if true, {@link #submit(Object)} waits when the buffer is full; otherwise it rejects
+   * @param maxBatchSize maximum number of elements passed to {@link Handler#handle(List)} at once
+   * @param handler handles batches
+   */
+  public AsyncBatchProcessor(String name,
+                             int capacity,
+                             boolean blockWhenFull,
+                             int maxBatchSize,
+                             Handler<E> handler) {
+    Preconditions.checkArgument(maxBatchSize > 0, "Bad max batch size: %s", maxBatchSize);
+    Preconditions.checkNotNull(handler);
+    this.buffer = new RingBuffer<E>(capacity);
+    this.blockWhenFull = blockWhenFull;
+    this.maxBatchSize = maxBatchSize;
+    this.handler = handler;
+    submitting = new AtomicInteger();
+    consumer = new Thread(new Consumer(), name);
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Queues an element to be handled.
+   *
+   * @throws RejectedExecutionException if the buffer is full and this does not wait for room, or if
+   *  interrupted while waiting
+   * @throws IllegalStateException if this has been closed
+   */
+  public void submit(E element) {
+    // Announce before checking closed; close() sets closed, then waits for this count to reach 0
+    submitting.incrementAndGet();
+    try {
+      Preconditions.checkState(!closed, "Closed");
+      if (!buffer.offer(element)) {
+        if (!blockWhenFull) {
+          throw new RejectedExecutionException("Queue is full (" + buffer.getCapacity() + ')');
+        }
+        try {
+          buffer.put(element);
+        } catch (InterruptedException ignored) {
+          Thread.currentThread().interrupt();
+          throw new RejectedExecutionException("Interrupted while waiting for room in queue");
+        }
+      }
+    } finally {
+      submitting.decrementAndGet();
+    }
+    if (consumerIdle) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * @return number of elements submitted but not yet handled
+   */
+  public int getPending() {
+    return (int) (buffer.getTotalAdded() - handled);
+  }
+
+  /**
+   * Waits until all elements submitted before this was called have been handled.
+   */
+  public void flush() {
+    Preconditions.checkState(Thread.currentThread() != consumer, "Can't flush from consumer thread");
+    long target = buffer.getTotalAdded();
+    while (handled < target) {
+      if (!consumer.isAlive()) {
+        log.warn("Consumer thread {} stopped with {} elements not handled", consumer.getName(), target - handled);
+        return;
+      }
+      LockSupport.unpark(consumer);
+      LockSupport.parkNanos(FLUSH_POLL_NANOS);
+    }
+  }
+
+  /**
+   * Stops accepting elements, waits for those already accepted to be handled, and stops the consumer thread.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    // Submits that got past the check may still be queueing; the consumer keeps running so blocked ones finish
+    while (submitting.get() > 0) {
+      LockSupport.unpark(consumer);
+      LockSupport.parkNanos(FLUSH_POLL_NANOS);
+    }
+    stopping = true;
+    LockSupport.unpark(consumer);
+    try {
+      consumer.join();
+    } catch (InterruptedException ignored) {
+      log.warn("Interrupted while waiting for {} to finish; {} elements not handled", consumer.getName(), getPending());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private final class Consumer implements Runnable {
+    @Override
+    public void run() {
+      List<E> batch = Lists.newArrayListWithCapacity(maxBatchSize);
+      List<E> unmodifiableBatch = Collections.unmodifiableList(batch);
+      while (true) {
+        // Read before draining, so that nothing accepted before close is missed
+        boolean wasStopping = stopping;
+        int count = buffer.drainTo(batch, maxBatchSize);
+        if (count > 0) {
+          try {
+            handler.handle(unmodifiableBatch);
+          } catch (IOException ioe) {
+            log.warn("Unable to handle batch of {}; dropping it", count, ioe);
+          } catch (RuntimeException re) {
+            log.warn("Unexpected error handling batch of {}; dropping it", count, re);
+          }
+          batch.clear();
+          handled += count;
+        } else if (wasStopping && buffer.isEmpty()) {
+          return;
+        } else {
+          consumerIdle = true;
+          // Re-check after announcing idleness, since a producer that added before then may not have unparked
+          if (buffer.isEmpty()) {
+            LockSupport.parkNanos(MAX_IDLE_NANOS);
+          }
+          consumerIdle = false;
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.random;
+
+/**
+ * <p>Computes the MD5 hash of a string as a {@code long}, exactly as
+ * {@code Hashing.md5().hashString(value).asLong()} does in Guava: the hash is of the string's UTF-16 chars in
+ * little-endian byte order, and the result is the first 8 bytes of the digest, also in little-endian order.</p>
+ *
+ * <p>Unlike Guava, this does not copy chars into a byte buffer or allocate a {@link java.security.MessageDigest}
+ * or result for each call. Two chars fill one 32-bit word of an MD5 block, so words are built directly from
+ * chars, in a block buffer reused by each thread.</p>
+ *
+ * @author Sean Owen
+ */
+final class MD5Hash {
+
+  private static final int[] SHIFTS = {
+      7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+      5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20,
+      4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+      6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21,
+  };
+
+  private static final int[] CONSTANTS = {
+      0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee,
+      0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+      0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be,
+      0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+      0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa,
+      0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+      0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed,
+      0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+      0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c,
+      0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+      0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05,
+      0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+      0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039,
+      0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+      0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1,
+      0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391,
+  };
+
+  /** Words 0-15 are the block; 16-19 are the state A, B, C, D */
+  private static final ThreadLocal<int[]> BUFFER = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[20];
+    }
+  };
+
+  private MD5Hash() {
+  }
+
+  static long hash(CharSequence value) {
+    int[] x = BUFFER.get();
+    x[16] = 0x67452301;
+    x[17] = 0xefcdab89;
+    x[18] = 0x98badcfe;
+    x[19] = 0x10325476;
+
+    int length = value.length();
+    int start = 0;
+    // Each 64-byte block holds 32 chars
+    for (; start + 32 <= length; start += 32) {
+      for (int j = 0; j < 16; j++) {
+        int c = start + 2 * j;
+        x[j] = value.charAt(c) | (value.charAt(c + 1) << 16);
+      }
+      transform(x);
+    }
+
+    for (int j = 0; j < 16; j++) {
+      x[j] = 0;
+    }
+    int remaining = length - start;
+    for (int i = 0; i < remaining; i++) {
+      x[i >> 1] |= value.charAt(start + i) << ((i & 1) << 4);
+    }
+    // Padding starts with a 1 bit, at the byte after the chars, which is always at an even byte
+    int padByte = remaining << 1;
+    x[padByte >> 2] |= 0x80 << ((padByte & 3) << 3);
+    if (padByte >= 56) {
+      // No room for the length in this block; it goes in another
+      transform(x);
+      for (int j = 0; j < 16; j++) {
+        x[j] = 0;
+      }
+    }
+    long bits = (long) length << 4;
+    x[14] = (int) bits;
+    x[15] = (int) (bits >>> 32);
+    transform(x);
+
+    return (x[16] & 0xFFFFFFFFL) | ((long) x[17] << 32);
+  }
+
+  private static void transform(int[] x) {
+    int a = x[16];
+    int b = x[17];
+    int c = x[18];
+    int d = x[19];
+    for (int i = 0; i < 64; i++) {
+      int f;
+      int g;
+      if (i < 16) {
+        f = (b & c) | (~b & d);
+        g = i;
+      } else if (i < 32) {
+        f = (d & b) | (~d & c);
+        g = (5 * i + 1) & 0xF;
+      } else if (i < 48) {
+        f = b ^ c ^ d;
+        g = (3 * i + 5) & 0xF;
+      } else {
+        f = c ^ (b | ~d);
+        g = (7 * i) & 0xF;
+      }
+      int temp = d;
+      d = c;
+      c = b;
+      b += Integer.rotateLeft(a + f + CONSTANTS[i] + x[g], SHIFTS[i]);
+      a = temp;
+    }
+    x[16] += a;
+    x[17] += b;
+    x[18] += c;
+    x[19] += d;
+  }
+
+}
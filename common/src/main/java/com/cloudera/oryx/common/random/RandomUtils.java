@@ -17,8 +17,6 @@ package com.cloudera.oryx.common.random;
 
 import java.util.List;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.google.common.primitives.Doubles;
 import org.apache.commons.math3.primes.Primes;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -39,8 +37,6 @@ public final class RandomUtils {
   /** The largest prime less than 2<sup>31</sup>-1 that is the smaller of a twin prime pair. */
   public static final int MAX_INT_SMALLER_TWIN_PRIME = 2147482949;
 
-  private static final HashFunction HASH = Hashing.md5();
-
   private RandomUtils() {
   }
 
@@ -111,10 +107,11 @@ public final class RandomUtils {
   }
 
   /**
-   * Convenience method to hash a string to a long.
+   * Convenience method to hash a string to a long. This is the first 8 bytes of the MD5 hash of its UTF-16
+   * chars, as computed by Guava's {@code Hashing.md5().hashString(value).asLong()}, but without allocating.
    */
   public static long hash(CharSequence value) {
-    return HASH.hashString(value).asLong();
+    return MD5Hash.hash(value);
   }
 
   /**
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.stats;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>A histogram of latencies, from which percentiles can be estimated over all time, and over windows of recent
+ * time up to an hour long. It is meant to be updated by many threads at once, on the path of requests.</p>
+ *
+ * <p>Buckets are log-linear: each power of 2 nanoseconds is split into 8 equal buckets, so that a bucket is
+ * at most 1/8 as wide as the values in it. Latencies above about 2 minutes all fall in the last bucket.</p>
+ *
+ * <p>{@link #record(long)} does not lock. Counts are kept in several stripes, each updated by a subset of threads
+ * with atomic operations, and stripes are added together when read. Counts only ever increase. For windows of
+ * time, a copy of the counts so far is taken at most once every 10 seconds, and once every minute, on the
+ * first call after each interval starts. Counts in a window are the current counts less those of a copy from the
+ * start of the window. The window's start is therefore only accurate to within 10 seconds for windows of up
+ * to 5 minutes, and to within a minute for windows up to an hour.</p>
+ *
+ * @author Sean Owen
+ * @see LatencySnapshot
+ */
+public final class LatencyHistogram implements Serializable {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** Latencies of at least 2^(this+1) nanoseconds fall in the last bucket */
+  private static final int MAX_EXPONENT = 37;
+  static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  /** Most that an estimated percentile differs from the exact value, relative to the exact value */
+  public static final double MAX_RELATIVE_ERROR = 1.0 / (2 * SUB_BUCKETS);
+
+  // Each stripe holds bucket counts, then sum, then max, then padding so stripes do not share cache lines
+  private static final int SUM_OFFSET = NUM_BUCKETS;
+  private static final int MAX_OFFSET = NUM_BUCKETS + 1;
+  private static final int STRIPE_LENGTH = NUM_BUCKETS + 16;
+  private static final int MAX_STRIPES = 64;
+
+  private static final long FINE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+  private static final long FINE_SPAN_MS = TimeUnit.MINUTES.toMillis(5);
+  private static final long COARSE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+  private static final long COARSE_SPAN_MS = TimeUnit.HOURS.toMillis(1);
+
+  private final AtomicLongArray stripes;
+  private final int stripeMask;
+  private final CopyRing fineCopies;
+  private final CopyRing coarseCopies;
+
+  public LatencyHistogram() {
+    this(System.currentTimeMillis());
+  }
+
+  LatencyHistogram(long nowMS) {
+    int numStripes = Integer.highestOneBit(FastMath.min(MAX_STRIPES, 2 * Runtime.getRuntime().availableProcessors()));
+    stripes = new AtomicLongArray(numStripes * STRIPE_LENGTH);
+    stripeMask = numStripes - 1;
+    fineCopies = new CopyRing(FINE_INTERVAL_MS, FINE_SPAN_MS, nowMS);
+    coarseCopies = new CopyRing(COARSE_INTERVAL_MS, COARSE_SPAN_MS, nowMS);
+  }
+
+  /**
+   * @param latencyNanos latency to record, in nanoseconds
+   */
+  public void record(long latencyNanos) {
+    record(latencyNanos, System.currentTimeMillis());
+  }
+
+  void record(long latencyNanos, long nowMS) {
+    if (nowMS >= fineCopies.nextDueMS) {
+      copyIfDue(nowMS);
+    }
+    long latency = FastMath.max(0L, latencyNanos);
+    int offset = ((int) Thread.currentThread().getId() & stripeMask) * STRIPE_LENGTH;
+    stripes.incrementAndGet(offset + bucket(latency));
+    stripes.addAndGet(offset + SUM_OFFSET, latency);
+    int maxIndex = offset + MAX_OFFSET;
+    long max;
+    while (latency > (max = stripes.get(maxIndex)) && !stripes.compareAndSet(maxIndex, max, latency)) {
+      // retry
+    }
+  }
+
+  /**
+   * @return latencies recorded over all time
+   */
+  public LatencySnapshot snapshot() {
+    long[] counts = new long[NUM_BUCKETS + 1];
+    long max = sumStripes(counts);
+    return new LatencySnapshot(bucketCounts(counts), counts[NUM_BUCKETS], max);
+  }
+
+  /**
+   * @param duration length of window of time, up to an hour
+   * @param unit unit of {@code duration}
+   * @return latencies recorded in the given window of time up to now
+   */
+  public LatencySnapshot snapshotOfLast(long duration, TimeUnit unit) {
+    return snapshotOfLast(duration, unit, System.currentTimeMillis());
+  }
+
+  LatencySnapshot snapshotOfLast(long duration, TimeUnit unit, long nowMS) {
+    long durationMS = unit.toMillis(duration);
+    Preconditions.checkArgument(durationMS > 0 && durationMS <= COARSE_SPAN_MS, "Bad window: %s", durationMS);
+    long[] counts = new long[NUM_BUCKETS + 1];
+    synchronized (this) {
+      copyIfDue(nowMS);
+      sumStripes(counts);
+      CopyRing copies = durationMS <= FINE_SPAN_MS ? fineCopies : coarseCopies;
+      long[] startCounts = copies.latestAtOrBefore(nowMS - durationMS);
+      if (startCounts != null) {
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] -= startCounts[i];
+        }
+      }
+    }
+    return new LatencySnapshot(bucketCounts(counts), counts[NUM_BUCKETS], -1L);
+  }
+
+  private synchronized void copyIfDue(long nowMS) {
+    boolean fineDue = nowMS >= fineCopies.nextDueMS;
+    boolean coarseDue = nowMS >= coarseCopies.nextDueMS;
+    if (fineDue || coarseDue) {
+      long[] counts = new long[NUM_BUCKETS + 1];
+      sumStripes(counts);
+      if (fineDue) {
+        fineCopies.add(counts, nowMS);
+      }
+      if (coarseDue) {
+        coarseCopies.add(counts, nowMS);
+      }
+    }
+  }
+
+  /**
+   * @param counts receives bucket counts, then sum, added over all stripes
+   * @return maximum over all stripes
+   */
+  private long sumStripes(long[] counts) {
+    long max = 0L;
+    for (int offset = 0; offset < stripes.length(); offset += STRIPE_LENGTH) {
+      for (int i = 0; i <= NUM_BUCKETS; i++) {
+        counts[i] += stripes.get(offset + i);
+      }
+      max = FastMath.max(max, stripes.get(offset + MAX_OFFSET));
+    }
+    return max;
+  }
+
+  private static long[] bucketCounts(long[] counts) {
+    long[] bucketCounts = new long[NUM_BUCKETS];
+    System.arraycopy(counts, 0, bucketCounts, 0, NUM_BUCKETS);
+    return bucketCounts;
+  }
+
+  /**
+   * @return index of bucket that the latency falls in
+   */
+  static int bucket(long latencyNanos) {
+    if (latencyNanos < SUB_BUCKETS) {
+      return (int) latencyNanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(latencyNanos);
+    if (exponent > MAX_EXPONENT) {
+      return NUM_BUCKETS - 1;
+    }
+    int subBucket = (int) (latencyNanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return smallest latency in the bucket
+   */
+  static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /**
+   * @return latency in the middle of the bucket, which is used as an estimate of all latencies in it
+   */
+  static long representative(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket; // Buckets are 1 wide
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return lowerBound(bucket) + (1L << (exponent - SUB_BUCKET_BITS - 1));
+  }
+
+  /**
+   * Copies of counts, taken at most once per interval, enough to cover a span of time.
+   */
+  private static final class CopyRing implements Serializable {
+
+    private final long intervalMS;
+    private final long[][] copies;
+    private final long[] validFromMS;
+    private int next;
+    private volatile long nextDueMS;
+
+    private CopyRing(long intervalMS, long spanMS, long nowMS) {
+      this.intervalMS = intervalMS;
+      int numCopies = (int) (spanMS / intervalMS) + 2;
+      copies = new long[numCopies][];
+      validFromMS = new long[numCopies];
+      // Nothing had been recorded when created
+      copies[0] = new long[NUM_BUCKETS + 1];
+      validFromMS[0] = nowMS;
+      next = 1;
+      nextDueMS = (nowMS / intervalMS + 1) * intervalMS;
+    }
+
+    /**
+     * A copy is taken on the first call after an interval starts. Nothing was recorded between the start of the
+     * interval and then, so the copy is valid from the start of the interval.
+     */
+    void add(long[] counts, long nowMS) {
+      copies[next] = counts;
+      validFromMS[next] = nextDueMS;
+      next = (next + 1) % copies.length;
+      nextDueMS = (nowMS / intervalMS + 1) * intervalMS;
+    }
+
+    /**
+     * @return latest copy valid at or before the given time, or {@code null} if there is none
+     */
+    long[] latestAtOrBefore(long timeMS) {
+      long[] latest = null;
+      long latestValidFromMS = Long.MIN_VALUE;
+      for (int i = 0; i < copies.length; i++) {
+        if (copies[i] != null && validFromMS[i] <= timeMS && validFromMS[i] > latestValidFromMS) {
+          latest = copies[i];
+          latestValidFromMS = validFromMS[i];
+        }
+      }
+      return latest;
+    }
+
+  }
+
+}
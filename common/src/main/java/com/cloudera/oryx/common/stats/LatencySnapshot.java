@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.stats;
+
+import java.io.Serializable;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * <p>Counts of latencies from a {@link LatencyHistogram}, over all time or some recent window of time, from
+ * which the count, mean and percentiles of the latencies can be computed. Percentiles are estimated as
+ * the middle of the histogram bucket the exact percentile falls in, and so are within
+ * {@link LatencyHistogram#MAX_RELATIVE_ERROR} of it.</p>
+ *
+ * @author Sean Owen
+ */
+public final class LatencySnapshot implements Serializable {
+
+  /** Snapshot of no latencies */
+  public static final LatencySnapshot NONE = new LatencySnapshot(new long[LatencyHistogram.NUM_BUCKETS], 0L, 0L);
+
+  private final long[] bucketCounts;
+  private final long count;
+  private final long sumNanos;
+  private final long maxNanos;
+
+  /**
+   * @param bucketCounts counts per bucket, which are not copied
+   * @param sumNanos sum of all latencies
+   * @param maxNanos maximum latency, or a negative value if not known
+   */
+  LatencySnapshot(long[] bucketCounts, long sumNanos, long maxNanos) {
+    long theCount = 0;
+    for (long bucketCount : bucketCounts) {
+      theCount += bucketCount;
+    }
+    this.bucketCounts = bucketCounts;
+    this.count = theCount;
+    this.sumNanos = sumNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * @return number of latencies recorded
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return mean latency in nanoseconds, or {@link Double#NaN} if there are none
+   */
+  public double getMeanNanos() {
+    return count == 0 ? Double.NaN : (double) sumNanos / count;
+  }
+
+  /**
+   * @return maximum latency in nanoseconds, or 0 if there are none. Over a window of time this is estimated
+   *  from the histogram, like percentiles.
+   */
+  public long getMaxNanos() {
+    if (maxNanos >= 0) {
+      return maxNanos;
+    }
+    for (int bucket = bucketCounts.length - 1; bucket >= 0; bucket--) {
+      if (bucketCounts[bucket] > 0) {
+        return LatencyHistogram.representative(bucket);
+      }
+    }
+    return 0L;
+  }
+
+  /**
+   * @param percentile percentile to estimate, in [0,100]
+   * @return estimate of the latency in nanoseconds below which the given percentage of latencies fall,
+   *  or 0 if there are none
+   */
+  public long getPercentileNanos(double percentile) {
+    Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0, "Bad percentile: %s", percentile);
+    if (count == 0) {
+      return 0L;
+    }
+    // Rank of the percentile, counting from 1, as in the nearest-rank method
+    long rank = (long) FastMath.ceil(percentile * count / 100.0);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+      seen += bucketCounts[bucket];
+      if (seen >= rank) {
+        long estimate = LatencyHistogram.representative(bucket);
+        return maxNanos >= 0 && estimate > maxNanos ? maxNanos : estimate;
+      }
+    }
+    return getMaxNanos();
+  }
+
+  /**
+   * @return snapshot of both this and another snapshot's latencies
+   */
+  public LatencySnapshot plus(LatencySnapshot other) {
+    long[] sumCounts = new long[bucketCounts.length];
+    for (int i = 0; i < sumCounts.length; i++) {
+      sumCounts[i] = bucketCounts[i] + other.bucketCounts[i];
+    }
+    long sumMax = maxNanos < 0 || other.maxNanos < 0 ? -1L : FastMath.max(maxNanos, other.maxNanos);
+    return new LatencySnapshot(sumCounts, sumNanos + other.sumNanos, sumMax);
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySnapshot[count:" + count + ", mean:" + getMeanNanos() + ", p50:" + getPercentileNanos(50.0) +
+        ", p99:" + getPercentileNanos(99.0) + ", max:" + getMaxNanos() + ']';
+  }
+
+}
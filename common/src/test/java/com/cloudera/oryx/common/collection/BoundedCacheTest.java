@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+
+/**
+ * Tests {@link BoundedCache}.
+ *
+ * @author Sean Owen
+ */
+public final class BoundedCacheTest extends OryxTest {
+
+  @Test
+  public void testGetPut() {
+    BoundedCache<String,String> cache = new BoundedCache<String,String>(10, 0, TimeUnit.SECONDS);
+    assertNull(cache.get("a"));
+    cache.put("a", "A");
+    assertEquals("A", cache.get("a"));
+    cache.put("a", "B");
+    assertEquals("B", cache.get("a"));
+    assertEquals(1, cache.size());
+    assertEquals(2L, cache.getHits());
+    assertEquals(1L, cache.getMisses());
+    assertEquals(0L, cache.getEvictions());
+  }
+
+  @Test
+  public void testInvalidate() {
+    BoundedCache<Integer,String> cache = new BoundedCache<Integer,String>(10, 0, TimeUnit.SECONDS);
+    cache.put(1, "A");
+    cache.put(2, "B");
+    cache.invalidate(1);
+    assertNull(cache.get(1));
+    assertEquals("B", cache.get(2));
+    cache.invalidateAll();
+    assertNull(cache.get(2));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testSizeBound() {
+    BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(100, 0, TimeUnit.SECONDS);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+    }
+    assertTrue(cache.size() <= 100);
+    assertEquals(1000L - cache.size(), cache.getEvictions());
+    // Most recent entries survive
+    assertEquals(999, cache.get(999).intValue());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    // One segment when the size is 1
+    BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(1, 0, TimeUnit.SECONDS);
+    cache.put(1, 1);
+    cache.put(2, 2);
+    assertNull(cache.get(1));
+    assertEquals(2, cache.get(2).intValue());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    BoundedCache<String,String> cache = new BoundedCache<String,String>(10, 50, TimeUnit.MILLISECONDS);
+    cache.put("a", "A");
+    assertEquals("A", cache.get("a"));
+    Thread.sleep(100);
+    assertNull(cache.get("a"));
+    assertEquals(1L, cache.getEvictions());
+    assertEquals(0, cache.size());
+  }
+
+}
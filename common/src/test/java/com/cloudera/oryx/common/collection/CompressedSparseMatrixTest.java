@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.iterator.LongPrimitiveIterator;
+
+/**
+ * @author Sean Owen
+ */
+public final class CompressedSparseMatrixTest extends OryxTest {
+
+  @Test
+  public void testEmpty() {
+    CompressedSparseMatrix matrix = CompressedSparseMatrix.builder().build(0.0f);
+    assertTrue(matrix.isEmpty());
+    assertEquals(0, matrix.size());
+    assertEquals(0, matrix.getNumRows());
+    assertEquals(0, matrix.getNumColumns());
+    assertFalse(matrix.rowIDIterator().hasNext());
+    assertTrue(matrix.transpose().isEmpty());
+  }
+
+  @Test
+  public void testAdd() {
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    builder.add(5L, 30L, 1.0f);
+    builder.add(-2L, 10L, 2.0f);
+    builder.add(5L, 10L, 3.0f);
+    builder.add(5L, 30L, 0.5f);
+    assertEquals(4, builder.size());
+    CompressedSparseMatrix matrix = builder.build(0.0f);
+
+    assertEquals(2, matrix.getNumRows());
+    assertEquals(2, matrix.getNumColumns());
+    assertEquals(3, matrix.size());
+    assertEquals(-2L, matrix.getRowID(0));
+    assertEquals(5L, matrix.getRowID(1));
+    assertEquals(10L, matrix.getColumnID(0));
+    assertEquals(30L, matrix.getColumnID(1));
+
+    assertEquals(1, matrix.rowSize(0));
+    assertEquals(2.0f, get(matrix, -2L, 10L));
+    assertEquals(2, matrix.rowSize(1));
+    // Columns within a row are in order
+    assertEquals(0, matrix.columnAt(matrix.rowStart(1)));
+    assertEquals(3.0f, get(matrix, 5L, 10L));
+    assertEquals(1.5f, get(matrix, 5L, 30L));
+    assertNaN(get(matrix, -2L, 30L));
+  }
+
+  @Test
+  public void testRemove() {
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    builder.add(1L, 1L, 1.0f);
+    builder.add(1L, 2L, 1.0f);
+    builder.add(2L, 1L, 1.0f);
+    builder.remove(1L, 2L);
+    builder.add(2L, 1L, 1.0f);
+    builder.remove(2L, 1L);
+    builder.add(2L, 1L, 4.0f);
+    builder.remove(3L, 3L);
+    CompressedSparseMatrix matrix = builder.build(0.0f);
+
+    assertEquals(2, matrix.getNumRows());
+    // Column 2 has no entries left, nor does anything ever added to row or column 3
+    assertEquals(1, matrix.getNumColumns());
+    assertEquals(1.0f, get(matrix, 1L, 1L));
+    assertNaN(get(matrix, 1L, 2L));
+    assertEquals(4.0f, get(matrix, 2L, 1L));
+    assertTrue(matrix.indexOfRow(3L) < 0);
+    assertTrue(matrix.indexOfColumn(2L) < 0);
+  }
+
+  @Test
+  public void testZeroThreshold() {
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    builder.add(1L, 1L, 1.0f);
+    builder.add(1L, 2L, 0.5f);
+    builder.add(1L, 2L, -0.499f);
+    builder.add(2L, 2L, 0.001f);
+    builder.add(3L, 3L, -1.0f);
+    CompressedSparseMatrix matrix = builder.build(0.01f);
+
+    assertEquals(2, matrix.size());
+    assertEquals(2, matrix.getNumRows());
+    assertEquals(2, matrix.getNumColumns());
+    assertEquals(1.0f, get(matrix, 1L, 1L));
+    assertNaN(get(matrix, 1L, 2L));
+    assertEquals(-1.0f, get(matrix, 3L, 3L));
+    assertTrue(matrix.indexOfRow(2L) < 0);
+
+    CompressedSparseMatrix all = builder.build(0.0f);
+    assertEquals(4, all.size());
+    assertSame(all, all.prune(0.0f));
+    CompressedSparseMatrix pruned = all.prune(0.01f);
+    assertEquals(matrix.size(), pruned.size());
+    assertEquals(matrix.getNumRows(), pruned.getNumRows());
+    assertEquals(matrix.getNumColumns(), pruned.getNumColumns());
+    for (int row = 0; row < matrix.getNumRows(); row++) {
+      assertEquals(matrix.getRowID(row), pruned.getRowID(row));
+      assertEquals(matrix.rowEnd(row), pruned.rowEnd(row));
+    }
+    for (int i = 0; i < matrix.size(); i++) {
+      assertEquals(matrix.columnAt(i), pruned.columnAt(i));
+      assertEquals(matrix.valueAt(i), pruned.valueAt(i));
+    }
+  }
+
+  @Test
+  public void testTranspose() {
+    CompressedSparseMatrix.Builder builder = CompressedSparseMatrix.builder();
+    for (long row = 0; row < 20; row++) {
+      for (long column = row % 3; column < 20; column += 3) {
+        builder.add(row, column, row * 100 + column);
+      }
+    }
+    CompressedSparseMatrix matrix = builder.build(0.0f);
+    CompressedSparseMatrix transpose = matrix.transpose();
+
+    assertEquals(matrix.size(), transpose.size());
+    assertEquals(matrix.getNumRows(), transpose.getNumColumns());
+    assertEquals(matrix.getNumColumns(), transpose.getNumRows());
+    for (int column = 0; column < transpose.getNumRows(); column++) {
+      long columnID = transpose.getRowID(column);
+      int previousRow = -1;
+      for (int i = transpose.rowStart(column); i < transpose.rowEnd(column); i++) {
+        int row = transpose.columnAt(i);
+        assertTrue(row > previousRow);
+        previousRow = row;
+        long rowID = transpose.getColumnID(row);
+        assertEquals(rowID * 100 + columnID, transpose.valueAt(i));
+        assertEquals(transpose.valueAt(i), get(matrix, rowID, columnID));
+      }
+    }
+  }
+
+  @Test
+  public void testIDIterators() {
+    CompressedSparseMatrix matrix =
+        CompressedSparseMatrix.builder().add(3L, 7L, 1.0f).add(1L, 8L, 1.0f).add(2L, 7L, 1.0f).build(0.0f);
+    LongPrimitiveIterator it = matrix.rowIDIterator();
+    assertEquals(1L, it.nextLong());
+    assertEquals(2L, it.nextLong());
+    assertEquals(3L, it.nextLong());
+    assertFalse(it.hasNext());
+    it = matrix.columnIDIterator();
+    assertEquals(7L, it.nextLong());
+    assertEquals(8L, it.nextLong());
+    assertFalse(it.hasNext());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddNaN() {
+    CompressedSparseMatrix.builder().add(1L, 1L, Float.NaN);
+  }
+
+  private static float get(CompressedSparseMatrix matrix, long rowID, long columnID) {
+    int row = matrix.indexOfRow(rowID);
+    int column = matrix.indexOfColumn(columnID);
+    if (row < 0 || column < 0) {
+      return Float.NaN;
+    }
+    for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+      if (matrix.columnAt(i) == column) {
+        return matrix.valueAt(i);
+      }
+    }
+    return Float.NaN;
+  }
+
+}
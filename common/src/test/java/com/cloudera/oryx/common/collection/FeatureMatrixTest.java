@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.iterator.IntPrimitiveIterator;
+import com.cloudera.oryx.common.math.SimpleVectorMath;
+import com.cloudera.oryx.common.random.RandomManager;
+import com.cloudera.oryx.common.random.RandomUtils;
+
+/**
+ * Tests {@link FeatureMatrix}.
+ *
+ * @author Sean Owen
+ */
+public final class FeatureMatrixTest extends OryxTest {
+
+  @Test
+  public void testPutAndGet() {
+    FeatureMatrix matrix = new FeatureMatrix();
+    assertNull(matrix.get(500000L));
+    assertEquals(0, matrix.getNumFeatures());
+    matrix.put(500000L, new float[] {1.0f, 2.0f});
+    assertEquals(2, matrix.getNumFeatures());
+    assertArrayEquals(new float[] {1.0f, 2.0f}, matrix.get(500000L));
+    matrix.put(500000L, new float[] {3.0f, 4.0f});
+    assertEquals(1, matrix.size());
+    assertArrayEquals(new float[] {3.0f, 4.0f}, matrix.get(500000L));
+    assertEquals(0, matrix.indexOf(500000L));
+    assertEquals(500000L, matrix.getID(0));
+  }
+
+  @Test
+  public void testPutSlice() {
+    FeatureMatrix matrix = new FeatureMatrix();
+    float[] batch = {1.0f, 2.0f, 3.0f, 4.0f, 5.0f, 6.0f};
+    matrix.put(1L, batch, 0, 3);
+    matrix.put(2L, batch, 3, 3);
+    assertEquals(3, matrix.getNumFeatures());
+    assertArrayEquals(new float[] {1.0f, 2.0f, 3.0f}, matrix.get(1L));
+    assertArrayEquals(new float[] {4.0f, 5.0f, 6.0f}, matrix.get(2L));
+    assertEquals(FastMath.sqrt(77.0), matrix.norm(1), 1.0e-6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongLength() {
+    FeatureMatrix matrix = new FeatureMatrix();
+    matrix.put(1L, new float[] {1.0f, 2.0f});
+    matrix.put(2L, new float[] {1.0f});
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTooLarge() {
+    // 50 * 50M floats is more than an array can hold; this must fail before allocating
+    new FeatureMatrix(50, 50000000);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEnsureCapacityTooLarge() {
+    FeatureMatrix matrix = new FeatureMatrix(50, 10);
+    matrix.ensureCapacity(50000000);
+  }
+
+  @Test
+  public void testRemove() {
+    FeatureMatrix matrix = new FeatureMatrix();
+    matrix.put(1L, new float[] {1.0f});
+    matrix.put(2L, new float[] {2.0f});
+    matrix.put(3L, new float[] {3.0f});
+    assertTrue(matrix.remove(1L));
+    assertFalse(matrix.remove(1L));
+    assertEquals(2, matrix.size());
+    assertFalse(matrix.containsKey(1L));
+    assertEquals(-1, matrix.indexOf(1L));
+    // Last row moves into freed row
+    assertEquals(0, matrix.indexOf(3L));
+    assertArrayEquals(new float[] {3.0f}, matrix.get(3L));
+    assertArrayEquals(new float[] {2.0f}, matrix.get(2L));
+  }
+
+  @Test
+  public void testClear() {
+    FeatureMatrix matrix = new FeatureMatrix();
+    matrix.put(1L, new float[] {1.0f});
+    matrix.clear();
+    assertTrue(matrix.isEmpty());
+    assertNull(matrix.get(1L));
+    // Features may change when empty
+    matrix.put(1L, new float[] {1.0f, 2.0f});
+    assertEquals(2, matrix.getNumFeatures());
+  }
+
+  @Test
+  public void testRowIteratorPrefix() {
+    FeatureMatrix matrix = new FeatureMatrix(1, 10);
+    matrix.put(1L, new float[] {1.0f});
+    matrix.put(2L, new float[] {2.0f});
+    matrix.put(3L, new float[] {3.0f});
+    IntPrimitiveIterator it = matrix.rowIterator(new long[] {3L, 4L, 1L, 2L}, 3);
+    assertEquals(matrix.indexOf(3L), it.nextInt());
+    assertEquals(matrix.indexOf(1L), it.nextInt());
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testDotNorm() {
+    FeatureMatrix matrix = new FeatureMatrix(3, 10);
+    float[] a = {1.0f, -2.0f, 3.0f};
+    float[] b = {0.5f, 0.5f, 2.0f};
+    matrix.put(7L, a);
+    int row = matrix.indexOf(7L);
+    assertEquals(SimpleVectorMath.dot(a, b), matrix.dot(row, b));
+    assertEquals(SimpleVectorMath.norm(a), matrix.norm(row));
+  }
+
+  @Test
+  public void testVersusMap() {
+    RandomGenerator random = RandomManager.getRandom();
+    LongObjectMap<float[]> expected = new LongObjectMap<float[]>();
+    FeatureMatrix actual = new FeatureMatrix();
+    for (int i = 0; i < 100000; i++) {
+      long id = random.nextInt(10000);
+      if (random.nextDouble() < 0.3) {
+        expected.remove(id);
+        actual.remove(id);
+      } else {
+        float[] vector = RandomUtils.randomUnitVector(5, random);
+        expected.put(id, vector);
+        actual.put(id, vector);
+      }
+    }
+    assertEquals(expected.size(), actual.size());
+    for (LongObjectMap.MapEntry<float[]> entry : expected.entrySet()) {
+      assertArrayEquals(entry.getValue(), actual.get(entry.getKey()));
+    }
+    for (int row = 0; row < actual.size(); row++) {
+      assertEquals(row, actual.indexOf(actual.getID(row)));
+    }
+  }
+
+  @Test
+  public void testNormsFollowWrites() {
+    RandomGenerator random = RandomManager.getRandom();
+    FeatureMatrix matrix = new FeatureMatrix(4, 2);
+    for (int i = 0; i < 10000; i++) {
+      long id = random.nextInt(1000);
+      double choice = random.nextDouble();
+      if (choice < 0.3) {
+        matrix.remove(id);
+      } else if (choice < 0.5 && !matrix.isEmpty()) {
+        matrix.setRow(random.nextInt(matrix.size()), randomVector(random));
+      } else {
+        matrix.put(id, randomVector(random));
+      }
+    }
+    for (int row = 0; row < matrix.size(); row++) {
+      // Exactly as computed from the vector
+      assertEquals(SimpleVectorMath.norm(matrix.getRow(row)), matrix.norm(row));
+    }
+  }
+
+  private static float[] randomVector(RandomGenerator random) {
+    float[] vector = RandomUtils.randomUnitVector(4, random);
+    float scale = (float) (10.0 * random.nextDouble());
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] *= scale;
+    }
+    return vector;
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.collection;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.parallel.ExecutorUtils;
+
+/**
+ * Tests {@link RingBuffer}.
+ *
+ * @author Sean Owen
+ */
+public final class RingBufferTest extends OryxTest {
+
+  @Test
+  public void testCapacity() {
+    assertEquals(1, new RingBuffer<Object>(1).getCapacity());
+    assertEquals(4, new RingBuffer<Object>(3).getCapacity());
+    assertEquals(4, new RingBuffer<Object>(4).getCapacity());
+    assertEquals(8, new RingBuffer<Object>(5).getCapacity());
+  }
+
+  @Test
+  public void testOfferDrain() {
+    RingBuffer<Integer> buffer = new RingBuffer<Integer>(4);
+    assertTrue(buffer.isEmpty());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+    assertEquals(4, buffer.size());
+
+    List<Integer> drained = Lists.newArrayList();
+    assertEquals(3, buffer.drainTo(drained, 3));
+    assertEquals(Lists.newArrayList(0, 1, 2), drained);
+    assertTrue(buffer.offer(4));
+    assertTrue(buffer.offer(5));
+    assertTrue(buffer.offer(6));
+    assertFalse(buffer.offer(7));
+
+    drained.clear();
+    assertEquals(4, buffer.drainTo(drained, 10));
+    assertEquals(Lists.newArrayList(3, 4, 5, 6), drained);
+    assertTrue(buffer.isEmpty());
+    assertEquals(7, buffer.getTotalAdded());
+    assertEquals(7, buffer.getTotalRemoved());
+    assertEquals(0, buffer.drainTo(drained, 10));
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    final int numProducers = 4;
+    final int perProducer = 100000;
+    final RingBuffer<long[]> buffer = new RingBuffer<long[]>(64);
+    ExecutorService executor = Executors.newFixedThreadPool(numProducers);
+    try {
+      List<Future<Object>> futures = Lists.newArrayList();
+      for (int p = 0; p < numProducers; p++) {
+        final int producer = p;
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Void call() throws InterruptedException {
+            for (int i = 0; i < perProducer; i++) {
+              buffer.put(new long[] {producer, i});
+            }
+            return null;
+          }
+        }));
+      }
+
+      // Each producer's elements must arrive in order, and all must arrive
+      int[] nextExpected = new int[numProducers];
+      List<long[]> drained = Lists.newArrayList();
+      int total = 0;
+      while (total < numProducers * perProducer) {
+        drained.clear();
+        total += buffer.drainTo(drained, 16);
+        for (long[] element : drained) {
+          int producer = (int) element[0];
+          assertEquals(nextExpected[producer], (int) element[1]);
+          nextExpected[producer]++;
+        }
+        if (drained.isEmpty()) {
+          Thread.yield();
+        }
+      }
+      ExecutorUtils.getResults(futures);
+      assertTrue(buffer.isEmpty());
+    } finally {
+      ExecutorUtils.shutdownNowAndAwait(executor);
+    }
+  }
+
+}
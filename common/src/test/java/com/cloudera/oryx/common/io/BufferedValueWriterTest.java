@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.google.common.base.Strings;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link BufferedValueWriter}.
+ *
+ * @author Sean Owen
+ */
+public final class BufferedValueWriterTest extends OryxTest {
+
+  @Test
+  public void testNumbers() throws IOException {
+    float[] floats = { 0.0f, -0.0f, 1.0f, 0.53f, -1.25e-5f, 3.4028235e38f, Float.MIN_VALUE, 1.0e7f,
+                       Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+    StringWriter expected = new StringWriter();
+    StringWriter actual = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+    for (float f : floats) {
+      expected.write(Float.toString(f));
+      expected.write(' ');
+      out.write(f);
+      out.write(' ');
+      expected.write(Double.toString(f / 3.0));
+      expected.write(' ');
+      out.write(f / 3.0);
+      out.write(' ');
+    }
+    expected.write(Long.toString(Long.MIN_VALUE));
+    out.write(Long.MIN_VALUE);
+    out.finish();
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testRandomFloats() throws IOException {
+    RandomGenerator random = RandomManager.getRandom();
+    StringBuilder expected = new StringBuilder();
+    StringWriter actual = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+    for (int i = 0; i < 10000; i++) {
+      float f = Float.intBitsToFloat(random.nextInt());
+      expected.append(Float.toString(f)).append(',');
+      out.write(f);
+      out.write(',');
+    }
+    out.finish();
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testJSONString() throws IOException {
+    assertEquals("\"\"", writeJSONString(""));
+    assertEquals("\"foo\"", writeJSONString("foo"));
+    assertEquals("\"a\\\"b\\\\c\"", writeJSONString("a\"b\\c"));
+    assertEquals("\"a\\nb\\rc\\td\\u0001\"", writeJSONString("a\nb\rc\td\u0001"));
+    assertEquals("\"\u00e9\u4e2d\"", writeJSONString("\u00e9\u4e2d"));
+  }
+
+  @Test
+  public void testDelimited() throws IOException {
+    String[] columns = { "", "foo", "foo,bar", "a\"b", "a\nb", "a\r\nb" };
+    for (String column : columns) {
+      StringWriter actual = new StringWriter();
+      BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+      out.writeDelimited(column, ',');
+      out.finish();
+      assertEquals(DelimitedDataUtils.encode(',', column), actual.toString());
+    }
+  }
+
+  @Test
+  public void testLongOutput() throws IOException {
+    String s = Strings.repeat("0123456789", 1000);
+    StringWriter actual = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+    for (int i = 0; i < 10; i++) {
+      out.write(s);
+      out.write(i);
+    }
+    out.finish();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      expected.append(s).append(i);
+    }
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testFlush() throws IOException {
+    StringWriter actual = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+    out.write("foo");
+    assertEquals("", actual.toString());
+    out.flush();
+    assertEquals("foo", actual.toString());
+    out.write('!');
+    out.finish();
+    assertEquals("foo!", actual.toString());
+  }
+
+  @Test
+  public void testReuse() throws IOException {
+    StringWriter first = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(first);
+    out.write("unfinished");
+    StringWriter second = new StringWriter();
+    out = BufferedValueWriter.forWriter(second);
+    out.write("second");
+    out.finish();
+    assertEquals("", first.toString());
+    assertEquals("second", second.toString());
+  }
+
+  private static String writeJSONString(String s) throws IOException {
+    StringWriter actual = new StringWriter();
+    BufferedValueWriter out = BufferedValueWriter.forWriter(actual);
+    out.writeJSONString(s);
+    out.finish();
+    return actual.toString();
+  }
+
+}
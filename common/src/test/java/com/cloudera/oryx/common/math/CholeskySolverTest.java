@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link CholeskySolver} against {@link MatrixUtils#getSolver(org.apache.commons.math3.linear.RealMatrix)}.
+ *
+ * @author Sean Owen
+ */
+public final class CholeskySolverTest extends OryxTest {
+
+  private static final int[] DIMENSIONS = { 1, 2, 5, 10, 50 };
+
+  @Test
+  public void testSolve() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int dimension : DIMENSIONS) {
+      CholeskySolver solver = new CholeskySolver(dimension);
+      // Reuse the solver, as callers do
+      for (int i = 0; i < 3; i++) {
+        double[][] A = randomSPD(random, dimension);
+        double[] b = new double[dimension];
+        for (int j = 0; j < dimension; j++) {
+          b[j] = random.nextGaussian();
+        }
+        float[] expected = MatrixUtils.getSolver(new Array2DRowRealMatrix(A)).solveDToF(b.clone());
+        setUpperTriangle(solver, A);
+        System.arraycopy(b, 0, solver.getB(), 0, dimension);
+        assertArrayEquals(expected, solver.solveDToF(), 1.0e-4f);
+      }
+    }
+  }
+
+  @Test
+  public void testNotPositiveDefinite() {
+    CholeskySolver solver = new CholeskySolver(2);
+    // Symmetric and invertible, but has a negative eigenvalue
+    setUpperTriangle(solver, new double[][] {{0.0, 2.0}, {2.0, 0.0}});
+    solver.getB()[0] = 4.0;
+    solver.getB()[1] = 6.0;
+    assertArrayEquals(new float[] {3.0f, 2.0f}, solver.solveDToF());
+  }
+
+  @Test(expected = SingularMatrixSolverException.class)
+  public void testSingular() {
+    CholeskySolver solver = new CholeskySolver(2);
+    setUpperTriangle(solver, new double[][] {{1.0, 1.0}, {1.0, 1.0}});
+    solver.getB()[0] = 1.0;
+    solver.getB()[1] = 1.0;
+    solver.solveDToF();
+  }
+
+  private static double[][] randomSPD(RandomGenerator random, int dimension) {
+    // M^T * M + I, for a random tall M
+    double[][] A = new double[dimension][dimension];
+    for (int r = 0; r < 2 * dimension; r++) {
+      double[] row = new double[dimension];
+      for (int i = 0; i < dimension; i++) {
+        row[i] = random.nextGaussian();
+      }
+      for (int i = 0; i < dimension; i++) {
+        for (int j = 0; j < dimension; j++) {
+          A[i][j] += row[i] * row[j];
+        }
+      }
+    }
+    for (int i = 0; i < dimension; i++) {
+      A[i][i] += 1.0;
+    }
+    return A;
+  }
+
+  private static void setUpperTriangle(CholeskySolver solver, double[][] A) {
+    int dimension = solver.getDimension();
+    double[] a = solver.getA();
+    for (int i = 0; i < dimension; i++) {
+      for (int j = 0; j < dimension; j++) {
+        // Lower triangle is garbage from any previous use
+        a[i * dimension + j] = j >= i ? A[i][j] : Double.NaN;
+      }
+    }
+  }
+
+}
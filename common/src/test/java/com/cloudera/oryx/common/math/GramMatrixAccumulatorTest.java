@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.collection.FeatureMatrix;
+import com.cloudera.oryx.common.collection.LongObjectMap;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link GramMatrixAccumulator} and {@link MatrixUtils#transposeTimesSelf(FeatureMatrix, int)} against
+ * a simple loop.
+ *
+ * @author Sean Owen
+ */
+public final class GramMatrixAccumulatorTest extends OryxTest {
+
+  private static final int[] NUM_FEATURES = { 1, 3, 10, 50 };
+  private static final int[] NUM_ROWS = { 1, 31, 32, 33, 100 };
+
+  @Test
+  public void testAccumulate() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int numFeatures : NUM_FEATURES) {
+      for (int numRows : NUM_ROWS) {
+        float[][] rows = randomRows(random, numRows, numFeatures);
+        GramMatrixAccumulator accumulator = new GramMatrixAccumulator(numFeatures);
+        for (float[] row : rows) {
+          accumulator.add(row);
+        }
+        assertMatrixEquals(simpleTransposeTimesSelf(rows), accumulator.toMatrix());
+      }
+    }
+  }
+
+  @Test
+  public void testAddAll() {
+    RandomGenerator random = RandomManager.getRandom();
+    float[][] rows = randomRows(random, 75, 10);
+    GramMatrixAccumulator first = new GramMatrixAccumulator(10);
+    GramMatrixAccumulator second = new GramMatrixAccumulator(10);
+    for (int i = 0; i < rows.length; i++) {
+      (i < 40 ? first : second).add(rows[i]);
+    }
+    first.addAll(second);
+    assertMatrixEquals(simpleTransposeTimesSelf(rows), first.toMatrix());
+  }
+
+  @Test
+  public void testAddAfterToMatrix() {
+    RandomGenerator random = RandomManager.getRandom();
+    float[][] rows = randomRows(random, 50, 5);
+    GramMatrixAccumulator accumulator = new GramMatrixAccumulator(5);
+    for (int i = 0; i < rows.length; i++) {
+      accumulator.add(rows[i]);
+      if (i == 10) {
+        accumulator.toMatrix();
+      }
+    }
+    assertMatrixEquals(simpleTransposeTimesSelf(rows), accumulator.toMatrix());
+  }
+
+  @Test
+  public void testAddOffset() {
+    float[] data = { 9.0f, 1.0f, 2.0f, 9.0f };
+    GramMatrixAccumulator accumulator = new GramMatrixAccumulator(2);
+    accumulator.add(data, 1);
+    RealMatrix MTM = accumulator.toMatrix();
+    assertArrayEquals(new double[] {1.0, 2.0}, MTM.getRow(0));
+    assertArrayEquals(new double[] {2.0, 4.0}, MTM.getRow(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongLength() {
+    new GramMatrixAccumulator(3).add(new float[2]);
+  }
+
+  @Test
+  public void testParallel() {
+    RandomGenerator random = RandomManager.getRandom();
+    int numFeatures = 20;
+    float[][] rows = randomRows(random, 45678, numFeatures);
+    FeatureMatrix featureMatrix = new FeatureMatrix(numFeatures, rows.length);
+    LongObjectMap<float[]> map = new LongObjectMap<float[]>(rows.length);
+    for (int i = 0; i < rows.length; i++) {
+      featureMatrix.put(i, rows[i]);
+      map.put(i, rows[i]);
+    }
+    RealMatrix expected = simpleTransposeTimesSelf(rows);
+    for (int parallelism : new int[] {1, 2, 4}) {
+      assertMatrixEquals(expected, MatrixUtils.transposeTimesSelf(featureMatrix, parallelism));
+      assertMatrixEquals(expected, MatrixUtils.transposeTimesSelf(map, parallelism));
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    assertNull(MatrixUtils.transposeTimesSelf(new FeatureMatrix(), 4));
+    assertNull(MatrixUtils.transposeTimesSelf(new LongObjectMap<float[]>(), 4));
+  }
+
+  private static float[][] randomRows(RandomGenerator random, int numRows, int numFeatures) {
+    float[][] rows = new float[numRows][numFeatures];
+    for (float[] row : rows) {
+      for (int i = 0; i < numFeatures; i++) {
+        row[i] = (float) random.nextGaussian();
+      }
+    }
+    return rows;
+  }
+
+  private static RealMatrix simpleTransposeTimesSelf(float[][] rows) {
+    int dimension = rows[0].length;
+    double[][] result = new double[dimension][dimension];
+    for (float[] row : rows) {
+      for (int i = 0; i < dimension; i++) {
+        double rowValue = row[i];
+        for (int j = 0; j < dimension; j++) {
+          result[i][j] += rowValue * row[j];
+        }
+      }
+    }
+    return new Array2DRowRealMatrix(result, false);
+  }
+
+  private static void assertMatrixEquals(RealMatrix expected, RealMatrix actual) {
+    int dimension = expected.getRowDimension();
+    assertEquals(dimension, actual.getRowDimension());
+    assertEquals(dimension, actual.getColumnDimension());
+    for (int i = 0; i < dimension; i++) {
+      for (int j = 0; j < dimension; j++) {
+        double expectedValue = expected.getEntry(i, j);
+        assertEquals(expectedValue, actual.getEntry(i, j), 1.0e-9 * (1.0 + FastMath.abs(expectedValue)));
+        assertEquals(actual.getEntry(i, j), actual.getEntry(j, i));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.math;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link VectorKernels} against simple loops.
+ *
+ * @author Sean Owen
+ */
+public final class VectorKernelsTest extends OryxTest {
+
+  private static final int[] NUM_FEATURES = { 1, 3, 10, 30, 50, 63, 64, 65, 100, 200 };
+
+  @Test
+  public void testDot() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int numFeatures : NUM_FEATURES) {
+      float[] x = randomVector(random, numFeatures + 7);
+      float[] y = randomVector(random, numFeatures + 3);
+      double expected = simpleDot(x, 7, y, 3, numFeatures);
+      assertEquals(expected, VectorKernels.dot(x, 7, y, 3, numFeatures), tolerance(x, y));
+      assertEquals(simpleDot(x, 7, x, 7, numFeatures), VectorKernels.sumOfSquares(x, 7, numFeatures), tolerance(x, x));
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals(0.0, VectorKernels.dot(new float[0], 0, new float[0], 0, 0));
+  }
+
+  @Test
+  public void testDotRowsManyQueries() {
+    RandomGenerator random = RandomManager.getRandom();
+    for (int numFeatures : NUM_FEATURES) {
+      int numRows = 20;
+      float[] data = randomVector(random, numRows * numFeatures);
+      // Not a multiple of 4, to exercise the remainder
+      int numQueries = 7;
+      float[][] queries = new float[numQueries + 1][];
+      for (int q = 0; q < queries.length; q++) {
+        queries[q] = randomVector(random, numFeatures);
+      }
+      double[] result = new double[numQueries * 12];
+      VectorKernels.dotRows(queries, numQueries, data, 5, 17, result);
+      for (int q = 0; q < numQueries; q++) {
+        for (int r = 5; r < 17; r++) {
+          double expected = simpleDot(data, r * numFeatures, queries[q], 0, numFeatures);
+          assertEquals(expected, result[q * 12 + (r - 5)], tolerance(data, queries[q]));
+        }
+      }
+    }
+  }
+
+  private static float[] randomVector(RandomGenerator random, int length) {
+    float[] vector = new float[length];
+    for (int i = 0; i < length; i++) {
+      vector[i] = (float) random.nextGaussian();
+    }
+    return vector;
+  }
+
+  private static double simpleDot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+    double dot = 0.0;
+    for (int i = 0; i < length; i++) {
+      dot += x[xOffset + i] * y[yOffset + i];
+    }
+    return dot;
+  }
+
+  /**
+   * @return tolerance for a dot product that may sum products in a different order: a few float ulps of the
+   *  sum of absolute products
+   */
+  private static double tolerance(float[] x, float[] y) {
+    double bound = 0.0;
+    for (int i = 0; i < FastMath.min(x.length, y.length); i++) {
+      bound += FastMath.abs(x[i]) * FastMath.abs(y[i]);
+    }
+    return 1.0e-6 * (1.0 + bound);
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.parallel;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+
+/**
+ * Tests {@link AsyncBatchProcessor}.
+ *
+ * @author Sean Owen
+ */
+public final class AsyncBatchProcessorTest extends OryxTest {
+
+  @Test
+  public void testCloseHandlesEverything() {
+    final List<Integer> handled = Lists.newArrayList();
+    final List<Integer> batchSizes = Lists.newArrayList();
+    AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+        "test", 16, true, 5, new AsyncBatchProcessor.Handler<Integer>() {
+          @Override
+          public void handle(List<Integer> batch) {
+            batchSizes.add(batch.size());
+            handled.addAll(batch);
+          }
+        });
+    for (int i = 0; i < 1000; i++) {
+      processor.submit(i);
+    }
+    processor.close();
+    assertEquals(0, processor.getPending());
+    assertEquals(1000, handled.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, handled.get(i).intValue());
+    }
+    for (int size : batchSizes) {
+      assertTrue(size >= 1 && size <= 5);
+    }
+  }
+
+  @Test
+  public void testFlush() {
+    final List<Integer> handled = Lists.newArrayList();
+    AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+        "test", 16, true, 16, new AsyncBatchProcessor.Handler<Integer>() {
+          @Override
+          public void handle(List<Integer> batch) {
+            synchronized (handled) {
+              handled.addAll(batch);
+            }
+          }
+        });
+    try {
+      for (int i = 0; i < 10; i++) {
+        processor.submit(i);
+      }
+      processor.flush();
+      synchronized (handled) {
+        assertEquals(10, handled.size());
+      }
+    } finally {
+      processor.close();
+    }
+  }
+
+  @Test
+  public void testReject() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final List<Integer> handled = Lists.newArrayList();
+    AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+        "test", 2, false, 1, new AsyncBatchProcessor.Handler<Integer>() {
+          @Override
+          public void handle(List<Integer> batch) throws IOException {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException ie) {
+              throw new IOException(ie);
+            }
+            handled.addAll(batch);
+          }
+        });
+    // First element is taken by the consumer, which then waits; two more fill the buffer
+    processor.submit(0);
+    started.await();
+    processor.submit(1);
+    processor.submit(2);
+    try {
+      processor.submit(3);
+      fail();
+    } catch (RejectedExecutionException ree) {
+      // good
+    }
+    release.countDown();
+    processor.close();
+    assertEquals(Lists.newArrayList(0, 1, 2), handled);
+  }
+
+  @Test
+  public void testHandlerFailureDoesNotStopConsumer() {
+    final List<Integer> handled = Lists.newArrayList();
+    AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+        "test", 16, true, 1, new AsyncBatchProcessor.Handler<Integer>() {
+          @Override
+          public void handle(List<Integer> batch) throws IOException {
+            if (batch.get(0) == 0) {
+              throw new IOException("fail");
+            }
+            handled.addAll(batch);
+          }
+        });
+    processor.submit(0);
+    processor.submit(1);
+    processor.close();
+    assertEquals(Lists.newArrayList(1), handled);
+  }
+
+  @Test
+  public void testCloseRacingSubmit() throws Exception {
+    for (int trial = 0; trial < 20; trial++) {
+      final AtomicInteger handled = new AtomicInteger();
+      final AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+          "test", 4, true, 2, new AsyncBatchProcessor.Handler<Integer>() {
+            @Override
+            public void handle(List<Integer> batch) {
+              handled.addAndGet(batch.size());
+            }
+          });
+      final AtomicInteger accepted = new AtomicInteger();
+      final CountDownLatch started = new CountDownLatch(4);
+      List<Thread> submitters = Lists.newArrayList();
+      for (int t = 0; t < 4; t++) {
+        Thread submitter = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            started.countDown();
+            try {
+              while (true) {
+                processor.submit(0);
+                accepted.incrementAndGet();
+              }
+            } catch (IllegalStateException ise) {
+              // closed
+            }
+          }
+        });
+        submitter.start();
+        submitters.add(submitter);
+      }
+      started.await();
+      processor.close();
+      for (Thread submitter : submitters) {
+        submitter.join();
+      }
+      assertEquals(accepted.get(), handled.get());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSubmitAfterClose() {
+    AsyncBatchProcessor<Integer> processor = new AsyncBatchProcessor<Integer>(
+        "test", 16, true, 1, new AsyncBatchProcessor.Handler<Integer>() {
+          @Override
+          public void handle(List<Integer> batch) {
+          }
+        });
+    processor.close();
+    processor.submit(0);
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.random;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+
+/**
+ * Tests {@link MD5Hash}.
+ *
+ * @author Sean Owen
+ */
+public final class MD5HashTest extends OryxTest {
+
+  private static final HashFunction MD5 = Hashing.md5();
+
+  @Test
+  public void testKnownValues() {
+    assertEquals(MD5.hashString("").asLong(), MD5Hash.hash(""));
+    assertEquals(MD5.hashString("foo").asLong(), MD5Hash.hash("foo"));
+    assertEquals(-7363431537935844490L, MD5Hash.hash("foo"));
+  }
+
+  @Test
+  public void testMatchesGuava() {
+    RandomGenerator random = RandomManager.getRandom();
+    // Covers lengths that fill one block exactly, and that leave no room for the length in the last block
+    for (int length = 0; length < 200; length++) {
+      for (int i = 0; i < 20; i++) {
+        StringBuilder value = new StringBuilder(length);
+        for (int j = 0; j < length; j++) {
+          // Mostly ASCII, but also any char at all, including unpaired surrogates
+          value.append(random.nextBoolean() ? (char) ('a' + random.nextInt(26)) : (char) random.nextInt(0x10000));
+        }
+        assertEquals(value.toString(), MD5.hashString(value).asLong(), MD5Hash.hash(value));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.common.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.cloudera.oryx.common.OryxTest;
+import com.cloudera.oryx.common.random.RandomManager;
+
+/**
+ * Tests {@link LatencyHistogram} and {@link LatencySnapshot}.
+ *
+ * @author Sean Owen
+ */
+public final class LatencyHistogramTest extends OryxTest {
+
+  private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+  @Test
+  public void testBuckets() {
+    assertEquals(0, LatencyHistogram.bucket(0L));
+    assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    long[] latencies = { 1L, 7L, 8L, 15L, 16L, 17L, 1000L, 1023L, 1024L, 123456789L, 1L << 37, (1L << 38) - 1 };
+    for (long latency : latencies) {
+      int bucket = LatencyHistogram.bucket(latency);
+      assertTrue(LatencyHistogram.lowerBound(bucket) <= latency);
+      assertTrue(latency < LatencyHistogram.lowerBound(bucket + 1));
+      double error = FastMath.abs(LatencyHistogram.representative(bucket) - latency) / (double) latency;
+      assertTrue(error <= LatencyHistogram.MAX_RELATIVE_ERROR);
+    }
+    for (int bucket = 1; bucket < LatencyHistogram.NUM_BUCKETS; bucket++) {
+      assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.lowerBound(bucket)));
+      assertEquals(bucket - 1, LatencyHistogram.bucket(LatencyHistogram.lowerBound(bucket) - 1));
+    }
+  }
+
+  @Test
+  public void testPercentilesAgainstExact() {
+    RandomGenerator random = RandomManager.getRandom();
+    LatencyHistogram histogram = new LatencyHistogram();
+    int numLatencies = 100000;
+    long[] latencies = new long[numLatencies];
+    long sum = 0L;
+    for (int i = 0; i < numLatencies; i++) {
+      // Log-normal, with median 1ms
+      long latency = (long) FastMath.exp(FastMath.log(1000000.0) + random.nextGaussian());
+      latencies[i] = latency;
+      sum += latency;
+      histogram.record(latency);
+    }
+    Arrays.sort(latencies);
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertEquals(numLatencies, snapshot.getCount());
+    assertEquals((double) sum / numLatencies, snapshot.getMeanNanos(), 1.0e-6);
+    assertEquals(latencies[numLatencies - 1], snapshot.getMaxNanos());
+    double[] percentiles = { 0.0, 1.0, 50.0, 90.0, 95.0, 99.0, 99.9, 99.99, 100.0 };
+    for (double percentile : percentiles) {
+      long exact = latencies[FastMath.max(0, (int) FastMath.ceil(percentile * numLatencies / 100.0) - 1)];
+      long estimate = snapshot.getPercentileNanos(percentile);
+      assertTrue(percentile + ": " + estimate + " vs " + exact,
+                 FastMath.abs(estimate - exact) <= LatencyHistogram.MAX_RELATIVE_ERROR * exact);
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+    assertEquals(0, snapshot.getCount());
+    assertNaN(snapshot.getMeanNanos());
+    assertEquals(0L, snapshot.getPercentileNanos(99.0));
+    assertEquals(0L, snapshot.getMaxNanos());
+    assertEquals(0, LatencySnapshot.NONE.getCount());
+  }
+
+  @Test
+  public void testPlus() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      a.record(i);
+      b.record(1000L * i);
+    }
+    LatencySnapshot sum = LatencySnapshot.NONE.plus(a.snapshot()).plus(b.snapshot());
+    assertEquals(200, sum.getCount());
+    assertEquals(100000L, sum.getMaxNanos());
+    assertTrue(sum.getPercentileNanos(50.0) <= 100L);
+    assertTrue(sum.getPercentileNanos(51.0) >= 1000L * (1.0 - LatencyHistogram.MAX_RELATIVE_ERROR));
+  }
+
+  @Test
+  public void testWindows() {
+    long start = 10 * MINUTE_MS;
+    LatencyHistogram histogram = new LatencyHistogram(start);
+    for (int i = 0; i < 100; i++) {
+      histogram.record(1000L, start + 1000L);
+    }
+    for (int i = 0; i < 50; i++) {
+      histogram.record(1000000L, start + 2 * MINUTE_MS);
+    }
+    long now = start + 2 * MINUTE_MS + 5000L;
+    LatencySnapshot lastMinute = histogram.snapshotOfLast(1, TimeUnit.MINUTES, now);
+    assertEquals(50, lastMinute.getCount());
+    assertEquals(1000000.0, lastMinute.getMeanNanos());
+    assertEquals(150, histogram.snapshotOfLast(5, TimeUnit.MINUTES, now).getCount());
+    assertEquals(150, histogram.snapshotOfLast(1, TimeUnit.HOURS, now).getCount());
+
+    // After a long gap with no requests
+    now = start + 65 * MINUTE_MS;
+    assertEquals(0, histogram.snapshotOfLast(5, TimeUnit.MINUTES, now).getCount());
+    assertEquals(0, histogram.snapshotOfLast(1, TimeUnit.HOURS, now).getCount());
+    histogram.record(1000L, now);
+    assertEquals(1, histogram.snapshotOfLast(1, TimeUnit.MINUTES, now + 1000L).getCount());
+    assertEquals(151, histogram.snapshot().getCount());
+  }
+
+}
@@ -52,9 +52,9 @@ public final class KMeansGenerationManager extends GenerationManager {
   }
 
   @Override
-  protected void loadRecentModel(int mostRecentModelGeneration) throws IOException {
+  protected boolean loadRecentModel(int mostRecentModelGeneration) throws IOException {
     if (mostRecentModelGeneration <= modelGeneration) {
-      return;
+      return false;
     }
     if (modelGeneration == NO_GENERATION) {
       log.info("Most recent generation {} is the first available one", mostRecentModelGeneration);
@@ -80,6 +80,7 @@ public final class KMeansGenerationManager extends GenerationManager {
     modelGeneration = mostRecentModelGeneration;
     //TODO: handle multi-cluster case
     currentGeneration = new Generation((ClusteringModel) pmmlModel.getModels().get(0));
+    return true;
   }
 
   public synchronized void append(CharSequence example) throws IOException {
@@ -62,9 +62,9 @@ public final class RDFGenerationManager extends GenerationManager {
   }
 
   @Override
-  protected void loadRecentModel(int mostRecentModelGeneration) throws IOException {
+  protected boolean loadRecentModel(int mostRecentModelGeneration) throws IOException {
     if (mostRecentModelGeneration <= modelGeneration) {
-      return;
+      return false;
     }
     if (modelGeneration == NO_GENERATION) {
       log.info("Most recent generation {} is the first available one", mostRecentModelGeneration);
@@ -91,6 +91,7 @@ public final class RDFGenerationManager extends GenerationManager {
 
     modelGeneration = mostRecentModelGeneration;
     currentModel = new Generation(forestAndCatalog.getFirst(), forestAndCatalog.getSecond());
+    return true;
   }
 
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Map;
 
+import com.cloudera.oryx.common.io.BufferedValueWriter;
 import com.cloudera.oryx.common.io.DelimitedDataUtils;
 import com.cloudera.oryx.common.settings.InboundSettings;
 import com.cloudera.oryx.rdf.common.example.Example;
@@ -99,12 +100,14 @@ public final class ClassificationDistributionServlet extends AbstractRDFServlet
     if (prediction.getFeatureType() == FeatureType.CATEGORICAL) {
       CategoricalPrediction categoricalPrediction = (CategoricalPrediction) prediction;
       float[] probabilities = categoricalPrediction.getCategoryProbabilities();
+      BufferedValueWriter valueOut = BufferedValueWriter.forWriter(out);
       for (int categoryID = 0; categoryID < probabilities.length; categoryID++) {
-        out.write(targetIDToCategory.get(categoryID));
-        out.write(',');
-        out.write(Float.toString(probabilities[categoryID]));
-        out.write('\n');
+        valueOut.write(targetIDToCategory.get(categoryID));
+        valueOut.write(',');
+        valueOut.write(probabilities[categoryID]);
+        valueOut.write('\n');
       }
+      valueOut.finish();
     } else {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Not a categorical target");
     }
@@ -39,9 +39,13 @@ import com.cloudera.oryx.common.servcomp.StoreUtils;
 import com.cloudera.oryx.common.settings.ConfigUtils;
 
 /**
- * An implementation of {@link GenerationManager} is responsible for interacting with successive generations of the
+ * <p>An implementation of {@link GenerationManager} is responsible for interacting with successive generations of the
  * underlying model. It sends updates to the component responsible for computing the model,
- * and manages switching in new models when they become available.
+ * and manages switching in new models when they become available.</p>
+ *
+ * <p>{@link #loadRecentModel(int)} may exercise a new model before making it current, so that the first
+ * requests to it do not pay for compiling code or building lazily built structures. The manager is then
+ * marked ready. {@link #awaitReady()} blocks until then.</p>
  *
  * @author Sean Owen
  */
@@ -60,6 +64,9 @@ public abstract class GenerationManager implements Closeable {
   private final long writesBetweenUpload;
   private long countdownToUpload;
   private final Semaphore refreshSemaphore;
+  /** Guards {@link #ready} */
+  private final Object readyMonitor;
+  private boolean ready;
 
   protected GenerationManager(File appendTempDir) throws IOException {
 
@@ -74,6 +81,7 @@ public abstract class GenerationManager implements Closeable {
 
     executorService = Executors.newScheduledThreadPool(3, new ThreadFactoryBuilder().setDaemon(true).build());
     refreshSemaphore = new Semaphore(1);
+    readyMonitor = new Object();
 
     executorService.scheduleWithFixedDelay(new Runnable() {
       @Override
@@ -204,6 +212,10 @@ public abstract class GenerationManager implements Closeable {
     countdownToUpload--;
   }
 
+  protected final synchronized void decrementCountdownToUpload(int writes) {
+    countdownToUpload -= writes;
+  }
+
   private synchronized void maybeRollAppender() throws IOException {
     int newMostRecentGeneration = getMostRecentGeneration();
     if (newMostRecentGeneration > writeGeneration || countdownToUpload <= 0) {
@@ -232,14 +244,28 @@ public abstract class GenerationManager implements Closeable {
         recentGenerationPathStrings.get(recentGenerationPathStrings.size() - 1));
   }
 
+  /**
+   * Called before the appender is flushed or closed, without holding this object's lock. Subclasses that
+   * write to the appender asynchronously should wait here until writes accepted so far are written.
+   *
+   * @param closing if true, this is being closed, and no further writes should be accepted
+   */
+  protected void flushPendingWrites(boolean closing) {
+    // do nothing by default
+  }
+
   @Override
-  public final synchronized void close() {
-    executorService.shutdown();
-    closeAppender();
-    try {
-      executorService.awaitTermination(10, TimeUnit.MINUTES); // How long to reasonably wait for uploads??
-    } catch (InterruptedException e) {
-      log.warn("Uploads timed out!");
+  public final void close() {
+    // Pending writes may need this object's lock to finish, so wait for them before taking it
+    flushPendingWrites(true);
+    synchronized (this) {
+      executorService.shutdown();
+      closeAppender();
+      try {
+        executorService.awaitTermination(10, TimeUnit.MINUTES); // How long to reasonably wait for uploads??
+      } catch (InterruptedException e) {
+        log.warn("Uploads timed out!");
+      }
     }
   }
 
@@ -247,7 +273,14 @@ public abstract class GenerationManager implements Closeable {
    * Triggers a refresh of the object's internal state, which particularly includes rebuilding or reloading
    * a matrix model.
    */
-  public final synchronized void refresh() {
+  public final void refresh() {
+    flushPendingWrites(false);
+    synchronized (this) {
+      doRefresh();
+    }
+  }
+
+  private void doRefresh() {
     try {
       if (appender != null) {
         appender.flush();
@@ -263,7 +296,45 @@ public abstract class GenerationManager implements Closeable {
     }
   }
 
-  protected abstract void loadRecentModel(int mostRecentModelGeneration) throws IOException;
+  /**
+   * @return true if a model was loaded and warmed up, and has not since become unavailable
+   */
+  public final boolean isReady() {
+    synchronized (readyMonitor) {
+      return ready;
+    }
+  }
+
+  /**
+   * Blocks until {@link #isReady()} would return {@code true}.
+   */
+  public final void awaitReady() throws InterruptedException {
+    synchronized (readyMonitor) {
+      while (!ready) {
+        readyMonitor.wait();
+      }
+    }
+  }
+
+  /**
+   * Subclasses call this with {@code false} if their model becomes unavailable, as when loading it fails.
+   */
+  protected final void setReady(boolean ready) {
+    synchronized (readyMonitor) {
+      if (this.ready != ready) {
+        log.info(ready ? "Ready" : "Not ready");
+        this.ready = ready;
+        readyMonitor.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @param mostRecentModelGeneration most recent generation with a complete model
+   * @return true if the model of that generation was loaded and is now current, or false if it was not
+   *  newer than the current model or could not be used
+   */
+  protected abstract boolean loadRecentModel(int mostRecentModelGeneration) throws IOException;
 
   private final class RefreshCallable implements Callable<Object> {
 
@@ -273,7 +344,9 @@ public abstract class GenerationManager implements Closeable {
         maybeRollAppender();
         int mostRecentModelGeneration = getMostRecentModelGeneration();
         if (mostRecentModelGeneration >= 0) {
-          loadRecentModel(mostRecentModelGeneration);
+          if (loadRecentModel(mostRecentModelGeneration)) {
+            setReady(true);
+          }
         } else {
           log.info("No available generation, nothing to do");
         }
@@ -16,53 +16,117 @@
 package com.cloudera.oryx.serving.stats;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
-import com.cloudera.oryx.common.stats.RunningStatistics;
-import com.cloudera.oryx.common.stats.RunningStatisticsPerTime;
+import com.google.common.collect.Maps;
+
+import com.cloudera.oryx.common.stats.LatencyHistogram;
+import com.cloudera.oryx.common.stats.LatencySnapshot;
 
 /**
+ * Latencies of one servlet's requests, kept in a {@link LatencyHistogram} per HTTP response status. Recording
+ * a request does not lock, except the first time a status is seen. Statistics for all statuses are computed
+ * by adding those for each status when read.
+ *
  * @author Sean Owen
  */
 public final class ServletStats implements Serializable {
 
-  private final RunningStatistics allTimeNanosec;
-  private final RunningStatisticsPerTime lastHourNanosec;
-  private int numClientErrors;
-  private int numServerErrors;
+  private final ConcurrentMap<Integer,LatencyHistogram> histogramsByStatus;
 
   public ServletStats() {
-    allTimeNanosec = new RunningStatistics();
-    lastHourNanosec = new RunningStatisticsPerTime(TimeUnit.HOURS);
+    histogramsByStatus = Maps.newConcurrentMap();
+  }
+
+  /**
+   * @param status HTTP status of the response
+   * @param timingNanosec time taken to respond
+   */
+  public void addTimingNanosec(int status, long timingNanosec) {
+    LatencyHistogram histogram = histogramsByStatus.get(status);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      LatencyHistogram existing = histogramsByStatus.putIfAbsent(status, histogram);
+      if (existing != null) {
+        histogram = existing;
+      }
+    }
+    histogram.record(timingNanosec);
+  }
+
+  /**
+   * @return latencies of all requests over all time
+   */
+  public LatencySnapshot getAllTimeNanosec() {
+    LatencySnapshot total = LatencySnapshot.NONE;
+    for (LatencyHistogram histogram : histogramsByStatus.values()) {
+      total = total.plus(histogram.snapshot());
+    }
+    return total;
+  }
+
+  /**
+   * @param duration length of window of time, up to an hour
+   * @param unit unit of {@code duration}
+   * @return latencies of all requests in the given window of time up to now
+   */
+  public LatencySnapshot getLastNanosec(long duration, TimeUnit unit) {
+    LatencySnapshot total = LatencySnapshot.NONE;
+    for (LatencyHistogram histogram : histogramsByStatus.values()) {
+      total = total.plus(histogram.snapshotOfLast(duration, unit));
+    }
+    return total;
   }
 
-  public synchronized void addTimingNanosec(long timingNanosec) {
-    allTimeNanosec.increment(timingNanosec);
-    lastHourNanosec.increment(timingNanosec);
+  public LatencySnapshot getLastMinuteNanosec() {
+    return getLastNanosec(1, TimeUnit.MINUTES);
   }
 
-  public synchronized RunningStatistics getAllTimeNanosec() {
-    return allTimeNanosec;
+  public LatencySnapshot getLastFiveMinutesNanosec() {
+    return getLastNanosec(5, TimeUnit.MINUTES);
   }
 
-  public synchronized RunningStatisticsPerTime getLastHourNanosec() {
-    return lastHourNanosec;
+  public LatencySnapshot getLastHourNanosec() {
+    return getLastNanosec(1, TimeUnit.HOURS);
   }
 
-  public synchronized int getNumClientErrors() {
-    return numClientErrors;
+  /**
+   * @return latencies of requests over all time, by HTTP response status
+   */
+  public SortedMap<Integer,LatencySnapshot> getAllTimeNanosecByStatus() {
+    SortedMap<Integer,LatencySnapshot> byStatus = Maps.newTreeMap();
+    for (Map.Entry<Integer,LatencyHistogram> entry : histogramsByStatus.entrySet()) {
+      byStatus.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return byStatus;
   }
 
-  public synchronized void incrementClientErrors() {
-    numClientErrors++;
+  /**
+   * @return number of responses with a 4xx status
+   */
+  public long getNumClientErrors() {
+    return countStatuses(400, 500);
   }
 
-  public synchronized int getNumServerErrors() {
-    return numServerErrors;
+  /**
+   * @return number of responses with a 5xx status
+   */
+  public long getNumServerErrors() {
+    return countStatuses(500, 600);
   }
 
-  public synchronized void incrementServerErrors() {
-    numServerErrors++;
+  private long countStatuses(int fromStatus, int toStatus) {
+    long count = 0;
+    for (Map.Entry<Integer,LatencyHistogram> entry : histogramsByStatus.entrySet()) {
+      int status = entry.getKey();
+      if (status >= fromStatus && status < toStatus) {
+        count += entry.getValue().snapshot().getCount();
+      }
+    }
+    return count;
   }
 
 }
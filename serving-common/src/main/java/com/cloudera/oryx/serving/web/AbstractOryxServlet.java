@@ -16,7 +16,6 @@
 package com.cloudera.oryx.serving.web;
 
 import java.io.IOException;
-import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -31,11 +30,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.net.HttpHeaders;
 
 import com.cloudera.oryx.common.LangUtils;
+import com.cloudera.oryx.common.io.BufferedValueWriter;
 import com.cloudera.oryx.serving.stats.ServletStats;
 
 /**
@@ -103,16 +102,7 @@ public abstract class AbstractOryxServlet extends HttpServlet {
 
     long start = System.nanoTime();
     super.service(request, response);
-    timing.addTimingNanosec(System.nanoTime() - start);
-
-    int status = response.getStatus();
-    if (status >= 400) {
-      if (status >= 500) {
-        timing.incrementServerErrors();
-      } else {
-        timing.incrementClientErrors();
-      }
-    }
+    timing.addTimingNanosec(response.getStatus(), System.nanoTime() - start);
   }
 
   /**
@@ -138,61 +128,85 @@ public abstract class AbstractOryxServlet extends HttpServlet {
     if (values.isEmpty()) {
       return;
     }
-    Writer writer = response.getWriter();
-    switch (determineResponseType(request)) {
+    ResponseContentType responseType = determineResponseType(request);
+    BufferedValueWriter out = startOutput(response, responseType, values.size());
+    for (int i = 0; i < values.size(); i++) {
+      writeSeparator(out, responseType, i);
+      out.write(String.valueOf(values.get(i)));
+    }
+    finishOutput(out, responseType, values.size());
+  }
+
+  protected final void output(HttpServletRequest request,
+                              ServletResponse response,
+                              float[] values) throws IOException {
+    if (values.length == 0) {
+      return;
+    }
+    ResponseContentType responseType = determineResponseType(request);
+    BufferedValueWriter out = startOutput(response, responseType, values.length);
+    for (int i = 0; i < values.length; i++) {
+      writeSeparator(out, responseType, i);
+      out.write(values[i]);
+    }
+    finishOutput(out, responseType, values.length);
+  }
+
+  protected final void output(HttpServletRequest request,
+                              ServletResponse response,
+                              double[] values) throws IOException {
+    if (values.length == 0) {
+      return;
+    }
+    ResponseContentType responseType = determineResponseType(request);
+    BufferedValueWriter out = startOutput(response, responseType, values.length);
+    for (int i = 0; i < values.length; i++) {
+      writeSeparator(out, responseType, i);
+      out.write(values[i]);
+    }
+    finishOutput(out, responseType, values.length);
+  }
+
+  /**
+   * JSON output of a single value is the value alone; of many values, an array. Delimited output has one value
+   * per line.
+   */
+  private static BufferedValueWriter startOutput(ServletResponse response,
+                                                 ResponseContentType responseType,
+                                                 int numValues) throws IOException {
+    BufferedValueWriter out = BufferedValueWriter.forWriter(response.getWriter());
+    switch (responseType) {
       case JSON:
         response.setContentType("application/json");
-        // Single value written alone
-        if (values.size() == 1) {
-          writer.write(String.valueOf(values.get(0)));
-          writer.write('\n');
-        } else {
-          // Many values written as array
-          writer.write('[');
-          boolean first = true;
-          for (Object value : values) {
-            if (first) {
-              first = false;
-            } else {
-              writer.write(',');
-            }
-            writer.write(String.valueOf(value));
-          }
-          writer.write("]\n");
+        if (numValues > 1) {
+          out.write('[');
         }
         break;
       case DELIMITED:
         // Leave content type at default
-        for (Object value : values) {
-          writer.write(String.valueOf(value));
-          writer.write('\n');
-        }
         break;
       default:
         throw new IllegalStateException("Unknown response type");
     }
+    return out;
   }
 
-  protected final void output(HttpServletRequest request,
-                              ServletResponse response,
-                              float[] values) throws IOException {
-    // Have to translate, so go straight to Strings
-    List<String> stringValues = Lists.newArrayListWithCapacity(values.length);
-    for (float value : values) {
-      stringValues.add(Float.toString(value));
+  private static void writeSeparator(BufferedValueWriter out,
+                                     ResponseContentType responseType,
+                                     int index) throws IOException {
+    if (index > 0) {
+      out.write(responseType == ResponseContentType.JSON ? ',' : '\n');
     }
-    output(request, response, stringValues);
   }
 
-  protected final void output(HttpServletRequest request,
-                              ServletResponse response,
-                              double[] values) throws IOException {
-    // Have to translate, so go straight to Strings
-    List<String> stringValues = Lists.newArrayListWithCapacity(values.length);
-    for (double value : values) {
-      stringValues.add(Double.toString(value));
+  private static void finishOutput(BufferedValueWriter out,
+                                   ResponseContentType responseType,
+                                   int numValues) throws IOException {
+    if (responseType == ResponseContentType.JSON && numValues > 1) {
+      out.write(']');
     }
-    output(request, response, stringValues);
+    out.write('\n');
+    out.finish();
   }
 
   /**
@@ -39,6 +39,7 @@ import com.cloudera.oryx.kmeans.serving.web.KMeansServingInitListener;
 import com.cloudera.oryx.rdf.serving.web.RDFServingInitListener;
 import com.cloudera.oryx.serving.web.AbstractOryxServingInitListener;
 import com.cloudera.oryx.serving.web.ConfigServlet;
+import com.cloudera.oryx.serving.web.StatsServlet;
 import com.cloudera.oryx.serving.web.error_jspx;
 import com.cloudera.oryx.serving.web.index_jspx;
 import com.cloudera.oryx.serving.web.status_jspx;
@@ -178,6 +179,7 @@ public final class Runner implements Callable<Object>, Closeable {
     AbstractOryxServingInitListener.addServlet(context, new error_jspx(), "/error.jspx");
     AbstractOryxServingInitListener.addServlet(context, new LogServlet(), "/log.txt");
     AbstractOryxServingInitListener.addServlet(context, new ConfigServlet(), "/config.json");
+    AbstractOryxServingInitListener.addServlet(context, new StatsServlet(), "/stats.json");
     AbstractOryxServingInitListener.addServlet(context, apiListener.getApiJSPXFile(), "/test.jspx");
     apiListener.addServlets(context);
 
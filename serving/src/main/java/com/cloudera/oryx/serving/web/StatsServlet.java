@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Cloudera, Inc. All Rights Reserved.
+ *
+ * Cloudera, Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"). You may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * This software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.cloudera.oryx.serving.web;
+
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Charsets;
+
+import com.cloudera.oryx.common.io.BufferedValueWriter;
+import com.cloudera.oryx.common.stats.LatencySnapshot;
+import com.cloudera.oryx.serving.stats.ServletStats;
+
+/**
+ * <p>Returns a JSON representation of the latencies of each endpoint, as shown on the status page. For each
+ * endpoint, there are latencies over all time, the last minute, the last 5 minutes, the last hour, and over
+ * all time by HTTP response status:</p>
+ *
+ * <p>{@code {"RecommendServlet":{"allTime":{...},"lastMinute":{...},"lastFiveMinutes":{...},"lastHour":{...},
+ * "byStatus":{"200":{...},...}},...}}</p>
+ *
+ * <p>Each is of the form {@code {"count":...,"meanNanos":...,"p50Nanos":...,"p95Nanos":...,"p99Nanos":...,
+ * "p999Nanos":...,"maxNanos":...}}.</p>
+ *
+ * @author Sean Owen
+ */
+public final class StatsServlet extends HttpServlet {
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("application/json");
+    response.setCharacterEncoding(Charsets.UTF_8.name());
+    @SuppressWarnings("unchecked")
+    Map<String,ServletStats> timings =
+        (Map<String,ServletStats>) getServletContext().getAttribute(AbstractOryxServlet.TIMINGS_KEY);
+    BufferedValueWriter out = BufferedValueWriter.forWriter(response.getWriter());
+    out.write('{');
+    if (timings != null) {
+      boolean first = true;
+      for (Map.Entry<String,ServletStats> entry : timings.entrySet()) {
+        if (first) {
+          first = false;
+        } else {
+          out.write(',');
+        }
+        out.writeJSONString(entry.getKey());
+        out.write(':');
+        writeStats(out, entry.getValue());
+      }
+    }
+    out.write("}\n");
+    out.finish();
+  }
+
+  private static void writeStats(BufferedValueWriter out, ServletStats stats) throws IOException {
+    out.write("{\"allTime\":");
+    writeSnapshot(out, stats.getAllTimeNanosec());
+    out.write(",\"lastMinute\":");
+    writeSnapshot(out, stats.getLastMinuteNanosec());
+    out.write(",\"lastFiveMinutes\":");
+    writeSnapshot(out, stats.getLastFiveMinutesNanosec());
+    out.write(",\"lastHour\":");
+    writeSnapshot(out, stats.getLastHourNanosec());
+    out.write(",\"byStatus\":{");
+    boolean first = true;
+    for (Map.Entry<Integer,LatencySnapshot> entry : stats.getAllTimeNanosecByStatus().entrySet()) {
+      if (first) {
+        first = false;
+      } else {
+        out.write(',');
+      }
+      out.writeJSONString(entry.getKey().toString());
+      out.write(':');
+      writeSnapshot(out, entry.getValue());
+    }
+    out.write("}}");
+  }
+
+  private static void writeSnapshot(BufferedValueWriter out, LatencySnapshot snapshot) throws IOException {
+    out.write("{\"count\":");
+    out.write(snapshot.getCount());
+    out.write(",\"meanNanos\":");
+    // NaN is not valid JSON
+    out.write(snapshot.getCount() == 0 ? 0L : (long) snapshot.getMeanNanos());
+    out.write(",\"p50Nanos\":");
+    out.write(snapshot.getPercentileNanos(50.0));
+    out.write(",\"p95Nanos\":");
+    out.write(snapshot.getPercentileNanos(95.0));
+    out.write(",\"p99Nanos\":");
+    out.write(snapshot.getPercentileNanos(99.0));
+    out.write(",\"p999Nanos\":");
+    out.write(snapshot.getPercentileNanos(99.9));
+    out.write(",\"maxNanos\":");
+    out.write(snapshot.getMaxNanos());
+    out.write('}');
+  }
+
+}